@@ -3,14 +3,29 @@ package ru.practicum.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.practicum.statsclient.HitFormat;
+import ru.practicum.statsclient.ShardedStatsClient;
 import ru.practicum.statsclient.SimpleStatsClient;
 import ru.practicum.statsclient.StatsClient;
 
+import java.util.List;
+
 @Configuration
 public class StatsClientConfig {
 
+    /**
+     * Если задан stats-server.shards (адреса узлов через запятую), статистика распределяется по узлам.
+     * Запросы с числом uri больше stats-server.max-query-string-uris уходят телом в POST /stats/query.
+     */
     @Bean
-    public StatsClient statsClient(@Value("${stats-server.url:http://localhost:9090}") String serverUrl) {
-        return new SimpleStatsClient(serverUrl);
+    public StatsClient statsClient(@Value("${stats-server.url:http://localhost:9090}") String serverUrl,
+                                   @Value("${stats-server.hit-format:JSON}") HitFormat hitFormat,
+                                   @Value("${stats-server.shards:}") List<String> shards,
+                                   @Value("${stats-server.virtual-nodes:160}") int virtualNodes,
+                                   @Value("${stats-server.max-query-string-uris:50}") int maxQueryStringUris) {
+        if (!shards.isEmpty()) {
+            return new ShardedStatsClient(shards, hitFormat, virtualNodes, maxQueryStringUris);
+        }
+        return new SimpleStatsClient(serverUrl, hitFormat, maxQueryStringUris);
     }
 }
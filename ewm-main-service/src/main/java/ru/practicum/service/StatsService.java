@@ -7,20 +7,19 @@ import org.springframework.stereotype.Service;
 import ru.practicum.model.Event;
 import ru.practicum.statsclient.StatsClient;
 import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.StatsQuery;
 import ru.practicum.statsdto.ViewStats;
 
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static ru.practicum.util.DateTimeUtil.EPOCH;
-
 @Service
 @RequiredArgsConstructor
 public class StatsService {
 
     private static final long DEFAULT_HITS = 0L;
-    private static final String EVENT_URI_PREFIX = "/events/";
+    private static final String EVENT_URI_PREFIX = StatsQuery.EVENT_URI_PREFIX;
     private static final String X_FORWARDED_FOR = "X-Forwarded-For";
 
     private final StatsClient statsClient;
@@ -43,12 +42,15 @@ public class StatsService {
             return Map.of();
         }
 
-        List<String> uris = events.stream()
-                .map(e -> EVENT_URI_PREFIX + e.getId())
+        List<Long> eventIds = events.stream()
+                .map(Event::getId)
                 .distinct()
                 .collect(Collectors.toList());
 
-        List<ViewStats> stats = statsClient.getStats(EPOCH, LocalDateTime.now(), uris, true);
+        List<ViewStats> stats = statsClient.getStats(StatsQuery.builder()
+                .eventIds(eventIds)
+                .unique(true)
+                .build());
 
         Map<String, Long> uriHits = new HashMap<>();
         for (ViewStats vs : stats) {
@@ -65,12 +67,7 @@ public class StatsService {
     }
 
     public long getViewsForEvent(long eventId) {
-        List<ViewStats> stats = statsClient.getStats(
-                EPOCH,
-                LocalDateTime.now(),
-                List.of(EVENT_URI_PREFIX + eventId),
-                true
-        );
+        List<ViewStats> stats = statsClient.getLifetimeStats(List.of(EVENT_URI_PREFIX + eventId), true);
 
         if (stats.isEmpty()) {
             return DEFAULT_HITS;
@@ -0,0 +1,121 @@
+package ru.practicum.statsbench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.HitBinaryReader;
+import ru.practicum.statsdto.HitBinaryWriter;
+import ru.practicum.statsdto.StatsJsonModule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Пакет хитов в JSON (ObjectMapper клиента и сервера) против {@link ru.practicum.statsdto.HitWireFormat}
+ * без сжатия и с gzip. Время указано на один хит; размер пакета в байтах на хит печатается при подготовке.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitWireFormatBenchmark {
+
+    static final int BATCH = 1000;
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new StatsJsonModule());
+
+    private List<EndpointHit> hits;
+    private byte[] json;
+    private byte[] binary;
+    private byte[] gzip;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        hits = SyntheticHits.batch(BATCH);
+        json = encodeJson();
+        binary = encodeBinary();
+        gzip = encodeGzip();
+        System.out.printf("%nБайт на хит: JSON %.1f, бинарный %.1f, бинарный+gzip %.1f%n",
+                (double) json.length / BATCH, (double) binary.length / BATCH, (double) gzip.length / BATCH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] encodeJson() throws IOException {
+        return mapper.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<EndpointHit> decodeJson() throws IOException {
+        return mapper.readValue(json, new TypeReference<List<EndpointHit>>() {
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] encodeBinary() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(binary == null ? 64 * BATCH : binary.length);
+        write(bytes);
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<EndpointHit> decodeBinary() throws IOException {
+        return read(new ByteArrayInputStream(binary));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] encodeGzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(gzip == null ? 16 * BATCH : gzip.length);
+        write(new GZIPOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<EndpointHit> decodeGzip() throws IOException {
+        return read(new GZIPInputStream(new ByteArrayInputStream(gzip)));
+    }
+
+    private void write(OutputStream out) throws IOException {
+        try (HitBinaryWriter writer = new HitBinaryWriter(out)) {
+            for (EndpointHit hit : hits) {
+                writer.write(hit);
+            }
+        }
+    }
+
+    private static List<EndpointHit> read(InputStream in) throws IOException {
+        HitBinaryReader reader = new HitBinaryReader(in);
+        List<EndpointHit> read = new ArrayList<>(BATCH);
+        for (EndpointHit hit = reader.next(); hit != null; hit = reader.next()) {
+            read.add(hit);
+        }
+        return read;
+    }
+}
@@ -0,0 +1,92 @@
+package ru.practicum.statsbench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.StatsJsonModule;
+import ru.practicum.statsdto.ViewStats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ручные кодеки {@link StatsJsonModule} против прежнего пути: bean-сериализаторов Jackson и
+ * LocalDateTimeDeserializer из JavaTimeModule с форматом из {@code @JsonFormat}. Время указано на один объект;
+ * выделение памяти на объект показывает профилировщик {@code -prof gc} (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsJsonBenchmark {
+
+    private static final int BATCH = HitWireFormatBenchmark.BATCH;
+
+    @Param({"jackson", "codec"})
+    public String mapper;
+
+    private ObjectMapper objectMapper;
+    private List<EndpointHit> hits;
+    private List<ViewStats> stats;
+    private byte[] hitsJson;
+    private byte[] statsJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        if (mapper.equals("codec")) {
+            objectMapper.registerModule(new StatsJsonModule());
+        }
+        hits = SyntheticHits.batch(BATCH);
+        stats = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            stats.add(new ViewStats("ewm-main-service", "/events/" + i, (long) (BATCH - i) * 37));
+        }
+        hitsJson = objectMapper.writeValueAsBytes(hits);
+        statsJson = objectMapper.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<EndpointHit> readHits() throws IOException {
+        return objectMapper.readValue(hitsJson, new TypeReference<List<EndpointHit>>() {
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] writeHits() throws IOException {
+        return objectMapper.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<ViewStats> readStats() throws IOException {
+        return objectMapper.readValue(statsJson, new TypeReference<List<ViewStats>>() {
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] writeStats() throws IOException {
+        return objectMapper.writeValueAsBytes(stats);
+    }
+}
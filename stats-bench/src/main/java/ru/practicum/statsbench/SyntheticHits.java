@@ -0,0 +1,28 @@
+package ru.practicum.statsbench;
+
+import ru.practicum.statsdto.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Хиты, похожие на поток основного сервиса: одно приложение, uri событий и IPv4-адреса посетителей.
+ */
+final class SyntheticHits {
+    private SyntheticHits() {
+    }
+
+    static List<EndpointHit> batch(int size) {
+        Random random = new Random(42);
+        LocalDateTime timestamp = LocalDateTime.of(2024, 5, 1, 10, 0);
+        List<EndpointHit> hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String uri = random.nextInt(10) == 0 ? "/events" : "/events/" + random.nextInt(10_000);
+            String ip = "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+            hits.add(new EndpointHit("ewm-main-service", uri, ip, timestamp.plusSeconds(i / 10)));
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,202 @@
+package ru.practicum.statsbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Точное число уникальных посетителей uri за последние range-days дней: COUNT(DISTINCT ip_id) по сырым хитам
+ * против объединения дневных roaring-битмапов, как в stats-server (hit_bitmap_day). Нужна PostgreSQL: адрес
+ * и учётная запись задаются свойствами bench.jdbc-url, bench.user и bench.password. Синтетические данные
+ * создаются в схеме bench и удаляются после прогона.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UniqueVisitorsBenchmark {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final String COUNT_DISTINCT_SQL = "SELECT uri_id, COUNT(DISTINCT ip_id) FROM bench.hits " +
+            "WHERE timestamp >= ? AND timestamp < ? GROUP BY uri_id";
+    private static final String BITMAPS_SQL = "SELECT uri_id, bitmap FROM bench.bitmap_day " +
+            "WHERE bucket >= ? AND bucket < ?";
+
+    @Param("10000000")
+    public int hits;
+    @Param("1000")
+    public int uris;
+    @Param("200000")
+    public int visitors;
+    @Param("30")
+    public int days;
+    @Param({"1", "7", "30"})
+    public int rangeDays;
+
+    private Connection connection;
+    private Timestamp from;
+    private Timestamp to;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("bench.jdbc-url", "jdbc:postgresql://localhost:5432/stats"),
+                System.getProperty("bench.user", "postgres"),
+                System.getProperty("bench.password", "postgres"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA IF EXISTS bench CASCADE");
+            statement.execute("CREATE SCHEMA bench");
+            statement.execute("CREATE TABLE bench.hits (uri_id INTEGER NOT NULL, ip_id INTEGER NOT NULL, " +
+                    "timestamp TIMESTAMP NOT NULL)");
+            statement.execute("SELECT setseed(0.42)");
+            // Посетители распределены неравномерно: небольшая часть IP даёт большую часть хитов
+            statement.execute("INSERT INTO bench.hits SELECT floor(random() * " + uris + "), " +
+                    "floor(power(random(), 3) * " + visitors + "), " +
+                    "TIMESTAMP '" + START + "' + random() * INTERVAL '" + days + " days' " +
+                    "FROM generate_series(1, " + hits + ")");
+            statement.execute("CREATE INDEX ON bench.hits (timestamp)");
+            statement.execute("CREATE TABLE bench.bitmap_day (bucket TIMESTAMP NOT NULL, uri_id INTEGER NOT NULL, " +
+                    "bitmap BYTEA NOT NULL, PRIMARY KEY (bucket, uri_id))");
+        }
+        buildBitmaps();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE bench.hits");
+            statement.execute("ANALYZE bench.bitmap_day");
+        }
+        from = Timestamp.valueOf(START.plusDays(days - rangeDays));
+        to = Timestamp.valueOf(START.plusDays(days));
+        if (!countDistinct().equals(bitmapUnion())) {
+            throw new IllegalStateException("Битмапы и COUNT(DISTINCT) дают разное число посетителей");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA bench CASCADE");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public Map<Integer, Long> countDistinct() throws SQLException {
+        Map<Integer, Long> visitorsByUri = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(COUNT_DISTINCT_SQL)) {
+            statement.setTimestamp(1, from);
+            statement.setTimestamp(2, to);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    visitorsByUri.put(rs.getInt(1), rs.getLong(2));
+                }
+            }
+        }
+        return visitorsByUri;
+    }
+
+    @Benchmark
+    public Map<Integer, Long> bitmapUnion() throws SQLException {
+        Map<Integer, RoaringBitmap> bitmaps = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(BITMAPS_SQL)) {
+            statement.setTimestamp(1, from);
+            statement.setTimestamp(2, to);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    RoaringBitmap day = decode(rs.getBytes(2));
+                    bitmaps.merge(rs.getInt(1), day, (left, right) -> {
+                        left.or(right);
+                        return left;
+                    });
+                }
+            }
+        }
+        Map<Integer, Long> visitorsByUri = new HashMap<>(bitmaps.size());
+        bitmaps.forEach((uriId, bitmap) -> visitorsByUri.put(uriId, bitmap.getLongCardinality()));
+        return visitorsByUri;
+    }
+
+    /**
+     * Дневные битмапы по сырым хитам, как их строит BitmapBackfill.
+     */
+    private void buildBitmaps() throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement select = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO bench.bitmap_day (bucket, uri_id, bitmap) VALUES (?, ?, ?)")) {
+            // Курсор PostgreSQL работает только внутри транзакции
+            select.setFetchSize(10_000);
+            try (ResultSet rs = select.executeQuery("SELECT date_trunc('day', timestamp), uri_id, ip_id " +
+                    "FROM bench.hits ORDER BY 1, 2")) {
+                Timestamp bucket = null;
+                int uriId = -1;
+                RoaringBitmap bitmap = new RoaringBitmap();
+                while (rs.next()) {
+                    if (!rs.getTimestamp(1).equals(bucket) || rs.getInt(2) != uriId) {
+                        if (bucket != null) {
+                            addBitmap(insert, bucket, uriId, bitmap);
+                            bitmap = new RoaringBitmap();
+                        }
+                        bucket = rs.getTimestamp(1);
+                        uriId = rs.getInt(2);
+                    }
+                    bitmap.add(rs.getInt(3));
+                }
+                if (bucket != null) {
+                    addBitmap(insert, bucket, uriId, bitmap);
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void addBitmap(PreparedStatement insert, Timestamp bucket, int uriId, RoaringBitmap bitmap)
+            throws SQLException {
+        bitmap.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        insert.setTimestamp(1, bucket);
+        insert.setInt(2, uriId);
+        insert.setBytes(3, buffer.array());
+        insert.addBatch();
+    }
+
+    private static RoaringBitmap decode(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,10 @@
+package ru.practicum.statsclient;
+
+/**
+ * Формат, в котором клиент отправляет хиты.
+ */
+public enum HitFormat {
+    JSON,
+    BINARY,
+    BINARY_GZIP
+}
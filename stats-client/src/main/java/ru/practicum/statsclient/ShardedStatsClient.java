@@ -0,0 +1,192 @@
+package ru.practicum.statsclient;
+
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.StatsQuery;
+import ru.practicum.statsdto.ViewStats;
+import ru.practicum.statsdto.WindowStats;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+/**
+ * Клиент кластера stats-server, в котором uri распределены по узлам консистентным хешированием.
+ * Хит отправляется узлу, владеющему его uri; статистика запрашивается параллельно у узлов, владеющих
+ * запрошенными uri (без uris — у всех), и результаты объединяются и сортируются заново.
+ * <p>
+ * Хиты uri, перешедшего на новый узел после изменения состава, остаются на прежнем узле: запрос без uris
+ * их учитывает (просмотры одного uri с разных узлов складываются), запрос с uris — только с текущего владельца.
+ * <p>
+ * Уникальные просмотры (unique=true) складываются так же, хотя IP-адреса узлов не объединяются: пока uri живёт
+ * на одном узле, это точное значение, а для uri с хитами на нескольких узлах — приближение сверху, в котором
+ * посетитель, заходивший и до, и после перехода uri, считается на каждом узле.
+ * <p>
+ * Запросы к узлам выполняются в собственном пуле виртуальных потоков, который освобождает {@link #close()};
+ * Spring вызывает его при остановке контекста сам.
+ */
+public class ShardedStatsClient implements StatsClient, AutoCloseable {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private static final Comparator<ViewStats> BY_HITS_DESC =
+            Comparator.comparing(ViewStats::getHits).reversed()
+                    .thenComparing(ViewStats::getApp)
+                    .thenComparing(ViewStats::getUri);
+
+    private final List<StatsClient> shards;
+    private final ConsistentHashRing<StatsClient> ring;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ShardedStatsClient(List<String> shardUrls) {
+        this(shardUrls, HitFormat.JSON, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardedStatsClient(List<String> shardUrls, HitFormat hitFormat, int virtualNodes) {
+        this(shardUrls, hitFormat, virtualNodes, SimpleStatsClient.DEFAULT_MAX_QUERY_STRING_URIS);
+    }
+
+    public ShardedStatsClient(List<String> shardUrls, HitFormat hitFormat, int virtualNodes, int maxQueryStringUris) {
+        this(clients(shardUrls, hitFormat, maxQueryStringUris), virtualNodes);
+    }
+
+    ShardedStatsClient(Map<String, StatsClient> clients, int virtualNodes) {
+        this.shards = List.copyOf(clients.values());
+        this.ring = new ConsistentHashRing<>(clients, virtualNodes);
+    }
+
+    /**
+     * Дожидается начатых запросов к узлам и останавливает пул.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    @Override
+    public void hit(EndpointHit endpointHit) {
+        ring.nodeFor(endpointHit.getUri()).hit(endpointHit);
+    }
+
+    @Override
+    public void hits(List<EndpointHit> endpointHits) {
+        Map<StatsClient, List<EndpointHit>> byShard = new LinkedHashMap<>();
+        for (EndpointHit hit : endpointHits) {
+            byShard.computeIfAbsent(ring.nodeFor(hit.getUri()), shard -> new ArrayList<>()).add(hit);
+        }
+        List<CompletableFuture<Void>> sends = new ArrayList<>(byShard.size());
+        byShard.forEach((shard, hits) -> sends.add(CompletableFuture.runAsync(() -> shard.hits(hits), executor)));
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        return query(uris, (shard, shardUris) -> shard.getStats(start, end, shardUris, unique));
+    }
+
+    @Override
+    public List<ViewStats> getStatsByPrefix(LocalDateTime start, LocalDateTime end, String uriPrefix,
+                                            boolean unique) {
+        // uri с префиксом разбросаны по всем узлам
+        return query(null, (shard, shardUris) -> shard.getStatsByPrefix(start, end, uriPrefix, unique));
+    }
+
+    @Override
+    public List<ViewStats> getLifetimeStats(List<String> uris, boolean unique) {
+        return query(uris, (shard, shardUris) -> shard.getLifetimeStats(shardUris, unique));
+    }
+
+    @Override
+    public List<ViewStats> getStats(StatsQuery query) {
+        // Узел выбирается по uri, поэтому события раскрываются в uri до разбиения по узлам
+        if (query.getUris() == null && query.getEventIds() == null) {
+            return query(null, (shard, shardUris) -> shard.getStats(query));
+        }
+        List<String> uris = new ArrayList<>();
+        if (query.getUris() != null) {
+            uris.addAll(query.getUris());
+        }
+        if (query.getEventIds() != null) {
+            query.getEventIds().forEach(id -> uris.add(StatsQuery.EVENT_URI_PREFIX + id));
+        }
+        if (uris.isEmpty()) {
+            // Пустой список — ни одного uri; узлам он не отправляется, иначе fanOut принял бы его за «все uri»
+            return List.of();
+        }
+        return query(uris, (shard, shardUris) -> shard.getStats(StatsQuery.builder()
+                .start(query.getStart())
+                .end(query.getEnd())
+                .uris(shardUris)
+                .unique(query.isUnique())
+                .build()));
+    }
+
+    @Override
+    public List<WindowStats> getWindowStats(List<String> windows, List<String> uris, boolean unique) {
+        Map<List<String>, Map<String, Long>> merged = new HashMap<>();
+        for (List<WindowStats> response : fanOut(uris,
+                (shard, shardUris) -> shard.getWindowStats(windows, shardUris, unique))) {
+            for (WindowStats stats : response) {
+                Map<String, Long> hits = merged.computeIfAbsent(List.of(stats.getApp(), stats.getUri()),
+                        key -> new LinkedHashMap<>());
+                stats.getHits().forEach((window, count) -> hits.merge(window, count, Long::sum));
+            }
+        }
+        List<WindowStats> result = new ArrayList<>(merged.size());
+        merged.forEach((key, hits) -> result.add(new WindowStats(key.get(0), key.get(1), hits)));
+        String first = windows.get(0);
+        result.sort(Comparator.comparing((WindowStats stats) -> stats.getHits().getOrDefault(first, 0L)).reversed()
+                .thenComparing(WindowStats::getApp)
+                .thenComparing(WindowStats::getUri));
+        return result;
+    }
+
+    private static Map<String, StatsClient> clients(List<String> shardUrls, HitFormat hitFormat,
+                                                    int maxQueryStringUris) {
+        Map<String, StatsClient> clients = new LinkedHashMap<>();
+        for (String url : shardUrls) {
+            clients.put(url, new SimpleStatsClient(url, hitFormat, maxQueryStringUris));
+        }
+        return clients;
+    }
+
+    private List<ViewStats> query(List<String> uris, BiFunction<StatsClient, List<String>, List<ViewStats>> request) {
+        Map<List<String>, Long> merged = new HashMap<>();
+        for (List<ViewStats> response : fanOut(uris, request)) {
+            for (ViewStats stats : response) {
+                // Для unique=true сумма по узлам — приближение сверху, см. описание класса
+                merged.merge(List.of(stats.getApp(), stats.getUri()), stats.getHits(), Long::sum);
+            }
+        }
+        List<ViewStats> result = new ArrayList<>(merged.size());
+        merged.forEach((key, hits) -> result.add(new ViewStats(key.get(0), key.get(1), hits)));
+        result.sort(BY_HITS_DESC);
+        return result;
+    }
+
+    /**
+     * Параллельно отправляет запрос владельцам uri (без uris — всем узлам) и ждёт все ответы.
+     */
+    private <T> List<List<T>> fanOut(List<String> uris, BiFunction<StatsClient, List<String>, List<T>> request) {
+        Map<StatsClient, List<String>> requests = new LinkedHashMap<>();
+        if (uris == null || uris.isEmpty()) {
+            shards.forEach(shard -> requests.put(shard, uris));
+        } else {
+            for (String uri : uris) {
+                requests.computeIfAbsent(ring.nodeFor(uri), shard -> new ArrayList<>()).add(uri);
+            }
+        }
+
+        List<CompletableFuture<List<T>>> responses = new ArrayList<>(requests.size());
+        requests.forEach((shard, shardUris) -> responses.add(
+                CompletableFuture.supplyAsync(() -> request.apply(shard, shardUris), executor)));
+        return responses.stream().map(CompletableFuture::join).toList();
+    }
+}
@@ -7,10 +7,18 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import lombok.extern.slf4j.Slf4j;
 import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.HitBinaryWriter;
+import ru.practicum.statsdto.HitWireFormat;
+import ru.practicum.statsdto.StatsJsonModule;
+import ru.practicum.statsdto.StatsQuery;
 import ru.practicum.statsdto.ViewStats;
+import ru.practicum.statsdto.WindowStats;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
@@ -21,19 +29,41 @@ import java.net.http.HttpResponse;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
+@Slf4j
 public class SimpleStatsClient implements StatsClient {
+    /**
+     * Больше стольких uri запрос уходит телом в POST /stats/query, а не параметрами URL.
+     */
+    public static final int DEFAULT_MAX_QUERY_STRING_URIS = 50;
+
     private final HttpClient httpClient;
     private final String serverUrl;
     private final ObjectMapper objectMapper;
+    private final HitFormat hitFormat;
+    private final int maxQueryStringUris;
 
     private static final DateTimeFormatter FORMATTER =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private static final Charset CHARSET = StandardCharsets.UTF_8;
+    // Запись одного хита в бинарном формате обычно меньше 200 байт
+    private static final int SINGLE_HIT_BUFFER_SIZE = 256;
+    private static final int BATCH_BUFFER_SIZE = 8192;
 
     public SimpleStatsClient(String serverUrl) {
+        this(serverUrl, HitFormat.JSON);
+    }
+
+    public SimpleStatsClient(String serverUrl, HitFormat hitFormat) {
+        this(serverUrl, hitFormat, DEFAULT_MAX_QUERY_STRING_URIS);
+    }
+
+    public SimpleStatsClient(String serverUrl, HitFormat hitFormat, int maxQueryStringUris) {
         this.httpClient = HttpClient.newHttpClient();
         this.serverUrl = serverUrl;
+        this.hitFormat = hitFormat;
+        this.maxQueryStringUris = maxQueryStringUris;
 
         this.objectMapper = new ObjectMapper();
         this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
@@ -46,10 +76,15 @@ public class SimpleStatsClient implements StatsClient {
             }
         });
         this.objectMapper.registerModule(module);
+        this.objectMapper.registerModule(new StatsJsonModule());
     }
 
     @Override
     public void hit(EndpointHit endpointHit) {
+        if (hitFormat != HitFormat.JSON) {
+            sendBinary(List.of(endpointHit), SINGLE_HIT_BUFFER_SIZE);
+            return;
+        }
         try {
             String json = objectMapper.writeValueAsString(endpointHit);
             HttpRequest request = HttpRequest.newBuilder()
@@ -64,31 +99,149 @@ public class SimpleStatsClient implements StatsClient {
         }
     }
 
+    @Override
+    public void hits(List<EndpointHit> endpointHits) {
+        if (endpointHits.isEmpty()) {
+            return;
+        }
+        if (hitFormat != HitFormat.JSON) {
+            sendBinary(endpointHits, BATCH_BUFFER_SIZE);
+            return;
+        }
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(serverUrl + "/hits"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(endpointHits)))
+                    .build();
+
+            httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (Exception e) {
+            log.warn("Ошибка при отправке статистики: {}", e.getMessage(), e);
+        }
+    }
+
     @Override
     public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
                                     List<String> uris, boolean unique) {
+        if (uris != null && uris.size() > maxQueryStringUris) {
+            return getStats(StatsQuery.builder().start(start).end(end).uris(uris).unique(unique).build());
+        }
         try {
             StringBuilder urlBuilder = new StringBuilder(serverUrl + "/stats")
                     .append("?start=").append(URLEncoder.encode(start.format(FORMATTER), CHARSET))
                     .append("&end=").append(URLEncoder.encode(end.format(FORMATTER), CHARSET))
                     .append("&unique=").append(unique);
 
-            if (uris != null && !uris.isEmpty()) {
-                urlBuilder.append("&uris=").append(String.join(",", uris));
-            }
+            return fetch(urlBuilder, uris);
+        } catch (Exception e) {
+            System.err.println("Ошибка при получении статистики: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    @Override
+    public List<ViewStats> getStatsByPrefix(LocalDateTime start, LocalDateTime end, String uriPrefix,
+                                            boolean unique) {
+        try {
+            StringBuilder urlBuilder = new StringBuilder(serverUrl + "/stats")
+                    .append("?start=").append(URLEncoder.encode(start.format(FORMATTER), CHARSET))
+                    .append("&end=").append(URLEncoder.encode(end.format(FORMATTER), CHARSET))
+                    .append("&unique=").append(unique)
+                    .append("&uriPrefix=").append(URLEncoder.encode(uriPrefix, CHARSET));
+            return fetch(urlBuilder, null);
+        } catch (Exception e) {
+            log.warn("Ошибка при получении статистики: {}", e.getMessage(), e);
+            return List.of();
+        }
+    }
+
+    @Override
+    public List<ViewStats> getLifetimeStats(List<String> uris, boolean unique) {
+        if (uris != null && uris.size() > maxQueryStringUris) {
+            return getStats(StatsQuery.builder().uris(uris).unique(unique).build());
+        }
+        try {
+            return fetch(new StringBuilder(serverUrl + "/stats/lifetime").append("?unique=").append(unique), uris);
+        } catch (Exception e) {
+            log.warn("Ошибка при получении статистики: {}", e.getMessage(), e);
+            return List.of();
+        }
+    }
 
+    @Override
+    public List<ViewStats> getStats(StatsQuery query) {
+        try {
             HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(urlBuilder.toString()))
-                    .GET()
+                    .uri(URI.create(serverUrl + "/stats/query"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(query)))
                     .build();
 
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
 
             return objectMapper.readValue(response.body(), new TypeReference<List<ViewStats>>() {
             });
         } catch (Exception e) {
-            System.err.println("Ошибка при получении статистики: " + e.getMessage());
+            log.warn("Ошибка при получении статистики: {}", e.getMessage(), e);
+            return List.of();
+        }
+    }
+
+    @Override
+    public List<WindowStats> getWindowStats(List<String> windows, List<String> uris, boolean unique) {
+        try {
+            StringBuilder urlBuilder = new StringBuilder(serverUrl + "/stats/windows")
+                    .append("?windows=").append(URLEncoder.encode(String.join(",", windows), CHARSET))
+                    .append("&unique=").append(unique);
+            return fetch(urlBuilder, uris, new TypeReference<List<WindowStats>>() {
+            });
+        } catch (Exception e) {
+            log.warn("Ошибка при получении статистики: {}", e.getMessage(), e);
             return List.of();
         }
     }
+
+    private List<ViewStats> fetch(StringBuilder urlBuilder, List<String> uris) throws Exception {
+        return fetch(urlBuilder, uris, new TypeReference<List<ViewStats>>() {
+        });
+    }
+
+    private <T> List<T> fetch(StringBuilder urlBuilder, List<String> uris, TypeReference<List<T>> type)
+            throws Exception {
+        if (uris != null && !uris.isEmpty()) {
+            urlBuilder.append("&uris=").append(String.join(",", uris));
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(urlBuilder.toString()))
+                .GET()
+                .build();
+
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        return objectMapper.readValue(response.body(), type);
+    }
+
+    private void sendBinary(List<EndpointHit> endpointHits, int bufferSize) {
+        try {
+            boolean gzip = hitFormat == HitFormat.BINARY_GZIP;
+            ByteArrayOutputStream body = new ByteArrayOutputStream(bufferSize);
+            OutputStream out = gzip ? new GZIPOutputStream(body) : body;
+            try (HitBinaryWriter writer = new HitBinaryWriter(out, bufferSize)) {
+                for (EndpointHit hit : endpointHits) {
+                    writer.write(hit);
+                }
+            }
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(serverUrl + "/hits"))
+                    .header("Content-Type", gzip ? HitWireFormat.MEDIA_TYPE_GZIP : HitWireFormat.MEDIA_TYPE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                    .build();
+
+            httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (Exception e) {
+            log.warn("Ошибка при отправке статистики: {}", e.getMessage(), e);
+        }
+    }
 }
@@ -1,7 +1,9 @@
 package ru.practicum.statsclient;
 
 import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.StatsQuery;
 import ru.practicum.statsdto.ViewStats;
+import ru.practicum.statsdto.WindowStats;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -9,6 +11,31 @@ import java.util.List;
 public interface StatsClient {
     void hit(EndpointHit endpointHit);
 
+    default void hits(List<EndpointHit> endpointHits) {
+        endpointHits.forEach(this::hit);
+    }
+
     List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
                              List<String> uris, boolean unique);
+
+    /**
+     * Статистика по всем uri, начинающимся с uriPrefix, без их перечисления в запросе.
+     */
+    List<ViewStats> getStatsByPrefix(LocalDateTime start, LocalDateTime end, String uriPrefix, boolean unique);
+
+    /**
+     * Хиты или уникальные посетители за всё время; в отличие от {@link #getStats} не зависит от объёма истории.
+     */
+    List<ViewStats> getLifetimeStats(List<String> uris, boolean unique);
+
+    /**
+     * Статистика по запросу в теле POST /stats/query: для длинных списков uri и для списков событий.
+     */
+    List<ViewStats> getStats(StatsQuery query);
+
+    /**
+     * Хиты по нескольким окнам, заканчивающимся сейчас (например, {@code 24h}, {@code 7d}, {@code all}),
+     * одним запросом вместо отдельного {@link #getStats} на каждое окно.
+     */
+    List<WindowStats> getWindowStats(List<String> windows, List<String> uris, boolean unique);
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package ru.practicum.statsclient;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    void assignmentDependsOnlyOnNodeNames() {
+        ConsistentHashRing<String> ring = ring(List.of("a", "b", "c", "d"));
+        ConsistentHashRing<String> reordered = ring(List.of("d", "b", "a", "c"));
+
+        for (int i = 0; i < KEYS; i++) {
+            assertThat(reordered.nodeFor(key(i))).isEqualTo(ring.nodeFor(key(i)));
+        }
+    }
+
+    @Test
+    void keysAreSpreadEvenly() {
+        Map<String, Integer> counts = new HashMap<>();
+        ConsistentHashRing<String> ring = ring(List.of("a", "b", "c", "d"));
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.nodeFor(key(i)), 1, Integer::sum);
+        }
+
+        assertThat(counts).hasSize(4);
+        int fair = KEYS / 4;
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(fair * 3 / 4, fair * 5 / 4));
+    }
+
+    @Test
+    void addingNodeMovesAboutOneNthOfKeysOnlyToNewNode() {
+        ConsistentHashRing<String> before = ring(List.of("a", "b", "c", "d"));
+        ConsistentHashRing<String> after = ring(List.of("a", "b", "c", "d", "e"));
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String owner = after.nodeFor(key(i));
+            if (!owner.equals(before.nodeFor(key(i)))) {
+                moved++;
+                assertThat(owner).isEqualTo("e");
+            }
+        }
+
+        assertThat((double) moved / KEYS).isBetween(0.15, 0.25);
+    }
+
+    @Test
+    void removingNodeMovesOnlyItsKeys() {
+        ConsistentHashRing<String> before = ring(List.of("a", "b", "c", "d"));
+        ConsistentHashRing<String> after = ring(List.of("a", "b", "c"));
+
+        for (int i = 0; i < KEYS; i++) {
+            String owner = before.nodeFor(key(i));
+            if (!owner.equals("d")) {
+                assertThat(after.nodeFor(key(i))).isEqualTo(owner);
+            }
+        }
+    }
+
+    @Test
+    void emptyRingIsRejected() {
+        assertThatThrownBy(() -> new ConsistentHashRing<>(Map.of(), 160))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ConsistentHashRing<String> ring(List<String> names) {
+        Map<String, String> nodes = new LinkedHashMap<>();
+        names.forEach(name -> nodes.put(name, name));
+        return new ConsistentHashRing<>(nodes, ShardedStatsClient.DEFAULT_VIRTUAL_NODES);
+    }
+
+    private static String key(int i) {
+        return "/events/" + i;
+    }
+}
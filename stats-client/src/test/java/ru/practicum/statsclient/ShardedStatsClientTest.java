@@ -0,0 +1,181 @@
+package ru.practicum.statsclient;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.StatsQuery;
+import ru.practicum.statsdto.ViewStats;
+import ru.practicum.statsdto.WindowStats;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ShardedStatsClientTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 5, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2024, 5, 2, 0, 0);
+
+    private final Map<String, StatsClient> shards = new LinkedHashMap<>();
+    private final ConsistentHashRing<StatsClient> ring;
+    private final ShardedStatsClient client;
+
+    ShardedStatsClientTest() {
+        for (String name : List.of("http://stats-1", "http://stats-2", "http://stats-3")) {
+            shards.put(name, mock(StatsClient.class));
+        }
+        ring = new ConsistentHashRing<>(shards, ShardedStatsClient.DEFAULT_VIRTUAL_NODES);
+        client = new ShardedStatsClient(shards, ShardedStatsClient.DEFAULT_VIRTUAL_NODES);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+    }
+
+    @Test
+    void statsForUrisAreRequestedFromTheirOwnersOnly() {
+        List<String> uris = uris(30);
+        for (StatsClient shard : shards.values()) {
+            when(shard.getStats(eq(START), eq(END), anyList(), eq(false))).thenAnswer(invocation -> {
+                List<String> shardUris = invocation.getArgument(2);
+                return shardUris.stream().map(uri -> new ViewStats("ewm", uri, (long) uri.length())).toList();
+            });
+        }
+
+        List<ViewStats> stats = client.getStats(START, END, uris, false);
+
+        assertThat(stats).extracting(ViewStats::getUri).containsExactlyInAnyOrderElementsOf(uris);
+        for (StatsClient shard : shards.values()) {
+            List<String> owned = uris.stream().filter(uri -> ring.nodeFor(uri) == shard).toList();
+            if (owned.isEmpty()) {
+                verify(shard, never()).getStats(any(), any(), anyList(), anyBoolean());
+            } else {
+                verify(shard).getStats(START, END, owned, false);
+            }
+        }
+    }
+
+    @Test
+    void statsWithoutUrisAreMergedFromAllShardsAndSorted() {
+        List<StatsClient> all = new ArrayList<>(shards.values());
+        when(all.get(0).getStats(START, END, null, true)).thenReturn(List.of(
+                new ViewStats("ewm", "/events/1", 5L), new ViewStats("ewm", "/events/2", 1L)));
+        when(all.get(1).getStats(START, END, null, true)).thenReturn(List.of(
+                new ViewStats("ewm", "/events/2", 7L)));
+        when(all.get(2).getStats(START, END, null, true)).thenReturn(List.of(
+                new ViewStats("admin", "/events/1", 5L)));
+
+        List<ViewStats> stats = client.getStats(START, END, null, true);
+
+        // Хиты uri, переехавшего на другой узел, складываются; при равенстве порядок по app и uri
+        assertThat(stats).containsExactly(
+                new ViewStats("ewm", "/events/2", 8L),
+                new ViewStats("admin", "/events/1", 5L),
+                new ViewStats("ewm", "/events/1", 5L));
+    }
+
+    @Test
+    void hitsAreSplitByUriOwner() {
+        List<EndpointHit> hits = uris(50).stream()
+                .map(uri -> new EndpointHit("ewm", uri, "10.0.0.1", START))
+                .toList();
+
+        client.hits(hits);
+
+        for (StatsClient shard : shards.values()) {
+            List<EndpointHit> owned = hits.stream().filter(hit -> ring.nodeFor(hit.getUri()) == shard).toList();
+            verify(shard).hits(owned);
+        }
+    }
+
+    @Test
+    void singleHitGoesToUriOwner() {
+        EndpointHit hit = new EndpointHit("ewm", "/events/42", "10.0.0.1", START);
+
+        client.hit(hit);
+
+        verify(ring.nodeFor("/events/42")).hit(hit);
+    }
+
+    @Test
+    void queryEventIdsAreExpandedBeforeSharding() {
+        for (StatsClient shard : shards.values()) {
+            when(shard.getStats(any(StatsQuery.class))).thenReturn(List.of());
+        }
+        StatsQuery query = StatsQuery.builder().start(START).end(END).eventIds(List.of(1L, 2L, 3L)).build();
+
+        client.getStats(query);
+
+        List<String> requested = new ArrayList<>();
+        for (StatsClient shard : shards.values()) {
+            ArgumentCaptor<StatsQuery> captor = ArgumentCaptor.forClass(StatsQuery.class);
+            verify(shard, atMost(1)).getStats(captor.capture());
+            captor.getAllValues().forEach(sent -> {
+                assertThat(sent.getEventIds()).isNull();
+                assertThat(sent.getUris()).allSatisfy(uri -> assertThat(ring.nodeFor(uri)).isSameAs(shard));
+                requested.addAll(sent.getUris());
+            });
+        }
+        assertThat(requested).containsExactlyInAnyOrder("/events/1", "/events/2", "/events/3");
+    }
+
+    @Test
+    void emptyQueryListsReachNoShard() {
+        StatsQuery query = StatsQuery.builder().start(START).end(END).uris(List.of()).eventIds(List.of()).build();
+
+        assertThat(client.getStats(query)).isEmpty();
+        shards.values().forEach(shard -> verifyNoInteractions(shard));
+    }
+
+    @Test
+    void windowStatsAreMergedPerWindowAndSortedByFirstWindow() {
+        List<StatsClient> all = new ArrayList<>(shards.values());
+        when(all.get(0).getWindowStats(eq(List.of("1h", "1d")), isNull(), eq(false))).thenReturn(List.of(
+                new WindowStats("ewm", "/events/1", Map.of("1h", 1L, "1d", 10L))));
+        when(all.get(1).getWindowStats(eq(List.of("1h", "1d")), isNull(), eq(false))).thenReturn(List.of(
+                new WindowStats("ewm", "/events/1", Map.of("1h", 2L, "1d", 3L)),
+                new WindowStats("ewm", "/events/2", Map.of("1h", 5L, "1d", 5L))));
+        when(all.get(2).getWindowStats(eq(List.of("1h", "1d")), isNull(), eq(false))).thenReturn(List.of());
+
+        List<WindowStats> stats = client.getWindowStats(List.of("1h", "1d"), null, false);
+
+        assertThat(stats).containsExactly(
+                new WindowStats("ewm", "/events/2", Map.of("1h", 5L, "1d", 5L)),
+                new WindowStats("ewm", "/events/1", Map.of("1h", 3L, "1d", 13L)));
+    }
+
+    @Test
+    void closeStopsExecutor() {
+        client.close();
+
+        ExecutorService executor = (ExecutorService) ReflectionTestUtils.getField(client, "executor");
+        assertThat(executor.isTerminated()).isTrue();
+    }
+
+    private static List<String> uris(int count) {
+        List<String> uris = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uris.add("/events/" + i);
+        }
+        return uris;
+    }
+}
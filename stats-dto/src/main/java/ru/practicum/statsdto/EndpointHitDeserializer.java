@@ -0,0 +1,32 @@
+package ru.practicum.statsdto;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+public class EndpointHitDeserializer extends StdDeserializer<EndpointHit> {
+
+    public EndpointHitDeserializer() {
+        super(EndpointHit.class);
+    }
+
+    @Override
+    public EndpointHit deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        EndpointHit hit = new EndpointHit();
+        // Имена полей парсер берёт из таблицы символов, поэтому сравнение строк не создаёт новых объектов
+        for (String name = StatsJsonModule.firstField(p, ctxt, EndpointHit.class); name != null;
+             name = p.nextFieldName()) {
+            p.nextToken();
+            switch (name) {
+                case "app" -> hit.setApp(StatsJsonModule.readString(p, ctxt));
+                case "uri" -> hit.setUri(StatsJsonModule.readString(p, ctxt));
+                case "ip" -> hit.setIp(StatsJsonModule.readString(p, ctxt));
+                case "timestamp" -> hit.setTimestamp(StatsJsonModule.readDateTime(p, ctxt));
+                default -> ctxt.handleUnknownProperty(p, this, hit, name);
+            }
+        }
+        return hit;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.statsdto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+public class EndpointHitSerializer extends StdSerializer<EndpointHit> {
+
+    private static final SerializedString APP = new SerializedString("app");
+    private static final SerializedString URI = new SerializedString("uri");
+    private static final SerializedString IP = new SerializedString("ip");
+    private static final SerializedString TIMESTAMP = new SerializedString("timestamp");
+
+    public EndpointHitSerializer() {
+        super(EndpointHit.class);
+    }
+
+    @Override
+    public void serialize(EndpointHit hit, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject(hit);
+        gen.writeFieldName(APP);
+        gen.writeString(hit.getApp());
+        gen.writeFieldName(URI);
+        gen.writeString(hit.getUri());
+        gen.writeFieldName(IP);
+        gen.writeString(hit.getIp());
+        gen.writeFieldName(TIMESTAMP);
+        StatsJsonModule.writeDateTime(gen, hit.getTimestamp());
+        gen.writeEndObject();
+    }
+}
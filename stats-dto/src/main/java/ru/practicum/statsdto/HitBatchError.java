@@ -0,0 +1,12 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HitBatchError {
+    private int index;
+    private String message;
+}
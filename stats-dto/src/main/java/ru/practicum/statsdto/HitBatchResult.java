@@ -0,0 +1,15 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HitBatchResult {
+    private int accepted;
+    private int rejected;
+    private List<HitBatchError> errors;
+}
@@ -0,0 +1,145 @@
+package ru.practicum.statsdto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Читает хиты из {@link HitWireFormat}. Данные читаются через собственный буфер; строки, совпадающие
+ * со значением того же поля в предыдущей записи, не декодируются заново, а переиспользуются —
+ * app и uri в пакете обычно повторяются. Не потокобезопасен.
+ */
+public class HitBinaryReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private final StringField app = new StringField();
+    private final StringField uri = new StringField();
+    private final StringField ip = new StringField();
+
+    public HitBinaryReader(InputStream in) throws IOException {
+        this.in = in;
+        for (byte expected : HitWireFormat.MAGIC) {
+            if (!fill(1) || buffer[position++] != expected) {
+                throw new IOException("Неизвестный формат пакета хитов");
+            }
+        }
+        if (!fill(1) || buffer[position++] != HitWireFormat.VERSION) {
+            throw new IOException("Неподдерживаемая версия формата пакета хитов");
+        }
+    }
+
+    /**
+     * @return следующий хит или null, если поток закончился
+     */
+    public EndpointHit next() throws IOException {
+        if (!fill(1)) {
+            return null;
+        }
+        EndpointHit hit = new EndpointHit();
+        hit.setApp(app.read());
+        hit.setUri(uri.read());
+        hit.setIp(ip.read());
+        long epochSecond = readLong();
+        try {
+            hit.setTimestamp(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC));
+        } catch (DateTimeException e) {
+            throw new IOException("Некорректный timestamp: " + epochSecond, e);
+        }
+        return hit;
+    }
+
+    private long readLong() throws IOException {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[position++] & 0xFF);
+        }
+        return value;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        require(2);
+        int value = ((buffer[position] & 0xFF) << 8) | (buffer[position + 1] & 0xFF);
+        position += 2;
+        return value;
+    }
+
+    private void require(int bytes) throws IOException {
+        if (!fill(bytes)) {
+            throw new EOFException("Пакет хитов оборван посреди записи");
+        }
+    }
+
+    /**
+     * Гарантирует, что в буфере есть bytes непрочитанных байт.
+     *
+     * @return false, если поток закончился раньше
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (limit - position >= bytes) {
+            return true;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < bytes) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private final class StringField {
+        private byte[] last = new byte[64];
+        private int lastLength = -1;
+        private String value;
+
+        String read() throws IOException {
+            int length = readUnsignedShort();
+            if (length > buffer.length) {
+                return readLarge(length);
+            }
+            require(length);
+            if (length != lastLength || !Arrays.equals(buffer, position, position + length, last, 0, length)) {
+                value = new String(buffer, position, length, StandardCharsets.UTF_8);
+                if (last.length < length) {
+                    last = new byte[Math.max(length, last.length * 2)];
+                }
+                System.arraycopy(buffer, position, last, 0, length);
+                lastLength = length;
+            }
+            position += length;
+            return value;
+        }
+
+        private String readLarge(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int copied = limit - position;
+            System.arraycopy(buffer, position, bytes, 0, copied);
+            position = limit;
+            while (copied < length) {
+                int read = in.read(bytes, copied, length - copied);
+                if (read < 0) {
+                    throw new EOFException("Пакет хитов оборван посреди записи");
+                }
+                copied += read;
+            }
+            lastLength = -1;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
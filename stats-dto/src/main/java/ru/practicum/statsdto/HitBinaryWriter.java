@@ -0,0 +1,125 @@
+package ru.practicum.statsdto;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneOffset;
+
+/**
+ * Пишет хиты в {@link HitWireFormat}. Строки кодируются в UTF-8 прямо во внутренний буфер,
+ * поэтому на запись не создаётся промежуточных объектов. Не потокобезопасен.
+ */
+public class HitBinaryWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int position;
+
+    public HitBinaryWriter(OutputStream out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    public HitBinaryWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, HitWireFormat.MAGIC.length + 1)];
+        System.arraycopy(HitWireFormat.MAGIC, 0, buffer, 0, HitWireFormat.MAGIC.length);
+        position = HitWireFormat.MAGIC.length;
+        buffer[position++] = HitWireFormat.VERSION;
+    }
+
+    public void write(EndpointHit hit) throws IOException {
+        String app = hit.getApp();
+        String uri = hit.getUri();
+        String ip = hit.getIp();
+        // UTF-8 занимает не больше 3 байт на UTF-16 символ, так что проверка места делается один раз на запись
+        ensureCapacity(3 * 2 + 3 * (checkLength(app) + checkLength(uri) + checkLength(ip)) + 8);
+        int start = position;
+        try {
+            writeString(app);
+            writeString(uri);
+            writeString(ip);
+        } catch (IllegalArgumentException e) {
+            position = start;
+            throw e;
+        }
+        writeLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeString(String value) {
+        int length = value.length();
+        int lengthPosition = position;
+        position += 2;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        int bytes = position - lengthPosition - 2;
+        if (bytes > HitWireFormat.MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Строка длиннее " + HitWireFormat.MAX_STRING_BYTES + " байт");
+        }
+        buffer[lengthPosition] = (byte) (bytes >>> 8);
+        buffer[lengthPosition + 1] = (byte) bytes;
+    }
+
+    private void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private static int checkLength(String value) {
+        if (value.length() > HitWireFormat.MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Строка длиннее " + HitWireFormat.MAX_STRING_BYTES + " байт");
+        }
+        return value.length();
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes <= buffer.length) {
+            return;
+        }
+        out.write(buffer, 0, position);
+        position = 0;
+        if (bytes > buffer.length) {
+            // Буфер растёт только под редкие длинные записи и дальше переиспользуется
+            buffer = new byte[bytes];
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ru.practicum.statsdto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Читает кадры хитов {@link HitWireFormat} из {@link ByteBuffer}, в том числе из direct-буфера сокета.
+ * Как и в {@link HitBinaryReader}, строки, совпадающие с тем же полем предыдущего кадра, не декодируются
+ * заново. Не потокобезопасен: один декодер на соединение.
+ */
+public class HitFrameDecoder {
+
+    private final StringField app = new StringField();
+    private final StringField uri = new StringField();
+    private final StringField ip = new StringField();
+
+    /**
+     * Проверяет и пропускает заголовок.
+     *
+     * @return false, если в буфере ещё нет всего заголовка; позиция тогда не меняется
+     */
+    public static boolean readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HitWireFormat.HEADER_BYTES) {
+            return false;
+        }
+        int start = buffer.position();
+        for (int i = 0; i < HitWireFormat.MAGIC.length; i++) {
+            if (buffer.get(start + i) != HitWireFormat.MAGIC[i]) {
+                throw new IOException("Неизвестный формат пакета хитов");
+            }
+        }
+        if (buffer.get(start + HitWireFormat.MAGIC.length) != HitWireFormat.VERSION) {
+            throw new IOException("Неподдерживаемая версия формата пакета хитов");
+        }
+        buffer.position(start + HitWireFormat.HEADER_BYTES);
+        return true;
+    }
+
+    /**
+     * @return хит из следующего кадра или null, если кадр в буфере ещё не целиком; позиция тогда не меняется
+     */
+    public EndpointHit next(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HitWireFormat.FRAME_LENGTH_BYTES) {
+            return null;
+        }
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        if (length < HitWireFormat.MIN_RECORD_BYTES || length > HitWireFormat.MAX_RECORD_BYTES) {
+            throw new IOException("Некорректная длина кадра: " + length);
+        }
+        if (buffer.remaining() < HitWireFormat.FRAME_LENGTH_BYTES + length) {
+            return null;
+        }
+        int end = start + HitWireFormat.FRAME_LENGTH_BYTES + length;
+        buffer.position(start + HitWireFormat.FRAME_LENGTH_BYTES);
+        EndpointHit hit = new EndpointHit();
+        hit.setApp(app.read(buffer, end));
+        hit.setUri(uri.read(buffer, end));
+        hit.setIp(ip.read(buffer, end));
+        if (end - buffer.position() != Long.BYTES) {
+            throw new IOException("Длина кадра не совпадает с длиной записи");
+        }
+        long epochSecond = buffer.getLong();
+        try {
+            hit.setTimestamp(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC));
+        } catch (DateTimeException e) {
+            throw new IOException("Некорректный timestamp: " + epochSecond, e);
+        }
+        return hit;
+    }
+
+    private static final class StringField {
+        private byte[] bytes = new byte[64];
+        private byte[] last = new byte[64];
+        private int lastLength = -1;
+        private String value;
+
+        String read(ByteBuffer buffer, int end) throws IOException {
+            if (end - buffer.position() < Short.BYTES) {
+                throw new IOException("Кадр оборван посреди записи");
+            }
+            int length = buffer.getShort() & 0xFFFF;
+            if (end - buffer.position() < length) {
+                throw new IOException("Кадр оборван посреди записи");
+            }
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            // Из direct-буфера строку всё равно нужно скопировать в массив, поэтому сравнение идёт по копии
+            buffer.get(bytes, 0, length);
+            if (length != lastLength || !Arrays.equals(bytes, 0, length, last, 0, length)) {
+                value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                byte[] previous = last;
+                last = bytes;
+                bytes = previous;
+                lastLength = length;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.practicum.statsdto;
+
+/**
+ * Компактный бинарный формат пакета хитов.
+ * <p>
+ * Заголовок: 3 байта сигнатуры {@code EWH} и байт версии. Далее записи подряд до конца потока:
+ * app, uri, ip — длина в байтах (unsigned short, big-endian) и UTF-8; timestamp — секунды
+ * от эпохи (long, big-endian), время трактуется как UTC. Сжатие gzip согласуется типом содержимого.
+ * <p>
+ * Для приёма через сокет записи идут кадрами: длина записи в байтах (int, big-endian) и сама запись.
+ * Соединение TCP начинается с заголовка, за которым следуют кадры; датаграмма UDP — заголовок и один
+ * или несколько целых кадров.
+ */
+public final class HitWireFormat {
+    private HitWireFormat() {
+    }
+
+    public static final String MEDIA_TYPE = "application/x-ewm-hits";
+    public static final String MEDIA_TYPE_GZIP = "application/x-ewm-hits+gzip";
+
+    static final byte[] MAGIC = {'E', 'W', 'H'};
+    static final byte VERSION = 1;
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    public static final int HEADER_BYTES = MAGIC.length + 1;
+    public static final int FRAME_LENGTH_BYTES = Integer.BYTES;
+    public static final int MAX_RECORD_BYTES = 3 * (Short.BYTES + MAX_STRING_BYTES) + Long.BYTES;
+    static final int MIN_RECORD_BYTES = 3 * Short.BYTES + Long.BYTES;
+}
@@ -0,0 +1,107 @@
+package ru.practicum.statsdto;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Разбор и запись времени в формате {@code yyyy-MM-dd HH:mm:ss} напрямую из массива символов, без
+ * промежуточных строк и {@link DateTimeFormatter}. Вместо пробела допускается {@code T}; прочие варианты
+ * ISO-8601 (доли секунды, время без секунд) и годы длиннее четырёх цифр разбираются медленным путём.
+ */
+public final class StatsDateTimeCodec {
+    private StatsDateTimeCodec() {
+    }
+
+    public static final String PATTERN = "yyyy-MM-dd HH:mm:ss";
+    public static final int LENGTH = PATTERN.length();
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(PATTERN);
+    private static final int ISO_SEPARATOR = 10;
+
+    public static LocalDateTime parse(char[] chars, int offset, int length) {
+        if (length == LENGTH) {
+            int year = digits(chars, offset, 4);
+            int month = digits(chars, offset + 5, 2);
+            int day = digits(chars, offset + 8, 2);
+            int hour = digits(chars, offset + 11, 2);
+            int minute = digits(chars, offset + 14, 2);
+            int second = digits(chars, offset + 17, 2);
+            char separator = chars[offset + ISO_SEPARATOR];
+            if ((year | month | day | hour | minute | second) >= 0
+                    && chars[offset + 4] == '-' && chars[offset + 7] == '-'
+                    && (separator == ' ' || separator == 'T')
+                    && chars[offset + 13] == ':' && chars[offset + 16] == ':') {
+                try {
+                    return LocalDateTime.of(year, month, day, hour, minute, second);
+                } catch (DateTimeException e) {
+                    throw new DateTimeParseException(e.getMessage(), new String(chars, offset, length), 0, e);
+                }
+            }
+        }
+        String text = new String(chars, offset, length);
+        if (length > ISO_SEPARATOR && chars[offset + ISO_SEPARATOR] == 'T') {
+            return LocalDateTime.parse(text, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        }
+        if (length > LENGTH && chars[offset] == '+') {
+            // Год длиннее четырёх цифр, как его пишет format
+            return LocalDateTime.parse(text, FORMATTER);
+        }
+        throw new DateTimeParseException("Ожидается время в формате " + PATTERN + ": " + text, text, 0);
+    }
+
+    public static LocalDateTime parse(String text) {
+        return parse(text.toCharArray(), 0, text.length());
+    }
+
+    /**
+     * Пишет время в буфер, в котором должно быть не меньше {@link #LENGTH} свободных символов.
+     *
+     * @return false, если год не укладывается в четыре цифры и время нужно записать через {@link #format}
+     */
+    public static boolean write(LocalDateTime time, char[] buffer, int offset) {
+        int year = time.getYear();
+        if (year < 0 || year > 9999) {
+            return false;
+        }
+        put(buffer, offset, year, 4);
+        buffer[offset + 4] = '-';
+        put(buffer, offset + 5, time.getMonthValue(), 2);
+        buffer[offset + 7] = '-';
+        put(buffer, offset + 8, time.getDayOfMonth(), 2);
+        buffer[offset + 10] = ' ';
+        put(buffer, offset + 11, time.getHour(), 2);
+        buffer[offset + 13] = ':';
+        put(buffer, offset + 14, time.getMinute(), 2);
+        buffer[offset + 16] = ':';
+        put(buffer, offset + 17, time.getSecond(), 2);
+        return true;
+    }
+
+    public static String format(LocalDateTime time) {
+        return time.format(FORMATTER);
+    }
+
+    /**
+     * @return значение или -1, если среди символов есть не цифра
+     */
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void put(char[] buffer, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.practicum.statsdto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * Jackson-модуль с ручными кодеками {@link EndpointHit} и {@link ViewStats}: поля читаются и пишутся
+ * без рефлексии, время — через {@link StatsDateTimeCodec} прямо из буфера парсера.
+ * Регистрируется и в stats-server, и в stats-client.
+ */
+public class StatsJsonModule extends SimpleModule {
+
+    // Буфер под время; на поток, поэтому пакет хитов сериализуется без новых массивов
+    private static final ThreadLocal<char[]> DATE_BUFFER =
+            ThreadLocal.withInitial(() -> new char[StatsDateTimeCodec.LENGTH]);
+
+    public StatsJsonModule() {
+        super("StatsJsonModule");
+        addSerializer(EndpointHit.class, new EndpointHitSerializer());
+        addDeserializer(EndpointHit.class, new EndpointHitDeserializer());
+        addSerializer(ViewStats.class, new ViewStatsSerializer());
+        addDeserializer(ViewStats.class, new ViewStatsDeserializer());
+    }
+
+    static String readString(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return p.getText();
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isScalarValue()) {
+            return p.getValueAsString();
+        }
+        return (String) ctxt.handleUnexpectedToken(String.class, p);
+    }
+
+    static LocalDateTime readDateTime(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_STRING) {
+            return (LocalDateTime) ctxt.handleUnexpectedToken(LocalDateTime.class, p);
+        }
+        try {
+            return StatsDateTimeCodec.parse(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+        } catch (DateTimeException e) {
+            return (LocalDateTime) ctxt.handleWeirdStringValue(LocalDateTime.class, p.getText(), e.getMessage());
+        }
+    }
+
+    static void writeDateTime(JsonGenerator gen, LocalDateTime time) throws IOException {
+        if (time == null) {
+            gen.writeNull();
+            return;
+        }
+        char[] buffer = DATE_BUFFER.get();
+        if (StatsDateTimeCodec.write(time, buffer, 0)) {
+            gen.writeString(buffer, 0, StatsDateTimeCodec.LENGTH);
+        } else {
+            gen.writeString(StatsDateTimeCodec.format(time));
+        }
+    }
+
+    /**
+     * @return имя первого поля объекта или null, если объект пуст
+     */
+    static String firstField(JsonParser p, DeserializationContext ctxt, Class<?> type) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            return p.nextFieldName();
+        }
+        if (token == JsonToken.FIELD_NAME) {
+            return p.currentName();
+        }
+        if (token == JsonToken.END_OBJECT) {
+            return null;
+        }
+        ctxt.handleUnexpectedToken(type, p);
+        return null;
+    }
+}
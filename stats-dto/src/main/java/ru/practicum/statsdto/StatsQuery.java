@@ -0,0 +1,27 @@
+package ru.practicum.statsdto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Тело запроса POST /stats/query: то же, что параметры /stats, но список uri не ограничен длиной URL.
+ * Идентификатор события из eventIds означает uri {@code /events/{id}}. Без start и end — статистика за всё время.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsQuery {
+    public static final String EVENT_URI_PREFIX = "/events/";
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime start;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime end;
+    private List<String> uris;
+    private List<Long> eventIds;
+    private boolean unique;
+}
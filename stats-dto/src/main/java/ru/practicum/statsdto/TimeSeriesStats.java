@@ -0,0 +1,19 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Статистика по бакетам времени в колоночном виде: общий массив начал бакетов
+ * и для каждого uri массив значений той же длины.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeSeriesStats {
+    private String interval;
+    private List<String> buckets;
+    private List<UriTimeSeries> series;
+}
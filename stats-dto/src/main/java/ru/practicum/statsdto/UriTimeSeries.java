@@ -0,0 +1,13 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UriTimeSeries {
+    private String app;
+    private String uri;
+    private long[] hits;
+}
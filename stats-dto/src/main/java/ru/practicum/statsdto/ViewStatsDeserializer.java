@@ -0,0 +1,41 @@
+package ru.practicum.statsdto;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+public class ViewStatsDeserializer extends StdDeserializer<ViewStats> {
+
+    public ViewStatsDeserializer() {
+        super(ViewStats.class);
+    }
+
+    @Override
+    public ViewStats deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        ViewStats stats = new ViewStats();
+        for (String name = StatsJsonModule.firstField(p, ctxt, ViewStats.class); name != null;
+             name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "app" -> stats.setApp(StatsJsonModule.readString(p, ctxt));
+                case "uri" -> stats.setUri(StatsJsonModule.readString(p, ctxt));
+                case "hits" -> stats.setHits(readHits(p, ctxt, token));
+                default -> ctxt.handleUnknownProperty(p, this, stats, name);
+            }
+        }
+        return stats;
+    }
+
+    private static Long readHits(JsonParser p, DeserializationContext ctxt, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return p.getLongValue();
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return ctxt.readValue(p, Long.class);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+/**
+ * Оценка числа просмотров по выборке: hits — оценка, hitsLower и hitsUpper — границы 95% доверительного интервала.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewStatsEstimate {
+    private String app;
+    private String uri;
+    private Long hits;
+    private Long hitsLower;
+    private Long hitsUpper;
+}
@@ -0,0 +1,35 @@
+package ru.practicum.statsdto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+public class ViewStatsSerializer extends StdSerializer<ViewStats> {
+
+    private static final SerializedString APP = new SerializedString("app");
+    private static final SerializedString URI = new SerializedString("uri");
+    private static final SerializedString HITS = new SerializedString("hits");
+
+    public ViewStatsSerializer() {
+        super(ViewStats.class);
+    }
+
+    @Override
+    public void serialize(ViewStats stats, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject(stats);
+        gen.writeFieldName(APP);
+        gen.writeString(stats.getApp());
+        gen.writeFieldName(URI);
+        gen.writeString(stats.getUri());
+        gen.writeFieldName(HITS);
+        if (stats.getHits() == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(stats.getHits());
+        }
+        gen.writeEndObject();
+    }
+}
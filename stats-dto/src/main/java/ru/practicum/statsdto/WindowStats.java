@@ -0,0 +1,19 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+import java.util.Map;
+
+/**
+ * Хиты одного uri сразу по нескольким окнам: имя окна из запроса (например, {@code 24h} или {@code all})
+ * и число хитов или уникальных посетителей в нём, в порядке окон в запросе.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WindowStats {
+    private String app;
+    private String uri;
+    private Map<String, Long> hits;
+}
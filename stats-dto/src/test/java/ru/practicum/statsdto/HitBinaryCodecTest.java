@@ -0,0 +1,141 @@
+package ru.practicum.statsdto;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitBinaryCodecTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 5, 1, 10, 30, 15);
+
+    @Test
+    void roundTripKeepsAllFields() throws IOException {
+        List<EndpointHit> hits = List.of(
+                hit("ewm-main-service", "/events/1", "192.168.0.1"),
+                hit("ewm-main-service", "/events/1", "2001:db8::1"),
+                hit("ewm-main-service", "/events/2", "192.168.0.1"),
+                hit("", "", ""));
+
+        assertThat(read(write(hits, 8192))).containsExactlyElementsOf(hits);
+    }
+
+    @Test
+    void nonAsciiStringsAreEncodedAsUtf8() throws IOException {
+        List<EndpointHit> hits = List.of(
+                hit("афиша", "/события/1?q=ёж", "10.0.0.1"),
+                hit("ewm", "/emoji/😀", "10.0.0.1"),
+                hit("ewm", "/€/ß", "10.0.0.1"));
+
+        assertThat(read(write(hits, 8192))).containsExactlyElementsOf(hits);
+    }
+
+    @Test
+    void loneSurrogateIsReplaced() throws IOException {
+        List<EndpointHit> read = read(write(List.of(hit("ewm", "/a\uD83D", "10.0.0.1")), 8192));
+
+        assertThat(read.get(0).getUri()).isEqualTo("/a?");
+    }
+
+    @Test
+    void recordsLargerThanBuffersRoundTrip() throws IOException {
+        String longUri = "/" + "ю".repeat(20_000);
+        List<EndpointHit> hits = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            hits.add(hit("ewm", i % 100 == 0 ? longUri : "/events/" + i, "10.0.0." + i % 256));
+        }
+
+        // Маленький буфер писателя: записи не помещаются целиком и буфер сбрасывается посреди пакета
+        assertThat(read(write(hits, 16))).containsExactlyElementsOf(hits);
+    }
+
+    @Test
+    void gzipRoundTrip() throws IOException {
+        List<EndpointHit> hits = List.of(hit("ewm", "/events/1", "10.0.0.1"), hit("ewm", "/events/2", "10.0.0.2"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HitBinaryWriter writer = new HitBinaryWriter(new GZIPOutputStream(bytes))) {
+            for (EndpointHit hit : hits) {
+                writer.write(hit);
+            }
+        }
+
+        assertThat(read(new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())))).isEqualTo(hits);
+    }
+
+    @Test
+    void tooLongStringIsRejectedWithoutCorruptingBatch() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HitBinaryWriter writer = new HitBinaryWriter(bytes)) {
+            writer.write(hit("ewm", "/a", "10.0.0.1"));
+            assertThatThrownBy(() -> writer.write(hit("ewm", "/" + "ж".repeat(40_000), "10.0.0.1")))
+                    .isInstanceOf(IllegalArgumentException.class);
+            writer.write(hit("ewm", "/b", "10.0.0.1"));
+        }
+
+        assertThat(read(bytes.toByteArray())).extracting(EndpointHit::getUri).containsExactly("/a", "/b");
+    }
+
+    @Test
+    void timestampIsTruncatedToSeconds() throws IOException {
+        EndpointHit hit = hit("ewm", "/a", "10.0.0.1");
+        hit.setTimestamp(TIMESTAMP.plusNanos(999_999_999));
+
+        assertThat(read(write(List.of(hit), 8192)).get(0).getTimestamp()).isEqualTo(TIMESTAMP);
+    }
+
+    @Test
+    void unknownHeaderIsRejected() {
+        assertThatThrownBy(() -> new HitBinaryReader(new ByteArrayInputStream("[{}]".getBytes())))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> new HitBinaryReader(new ByteArrayInputStream(new byte[]{'E', 'W', 'H', 9})))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void truncatedRecordFailsWithEof() throws IOException {
+        byte[] bytes = write(List.of(hit("ewm", "/a", "10.0.0.1"), hit("ewm", "/b", "10.0.0.1")), 8192);
+        HitBinaryReader reader = new HitBinaryReader(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)));
+
+        assertThat(reader.next().getUri()).isEqualTo("/a");
+        assertThatThrownBy(reader::next).isInstanceOf(EOFException.class);
+    }
+
+    private static byte[] write(List<EndpointHit> hits, int bufferSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HitBinaryWriter writer = new HitBinaryWriter(bytes, bufferSize)) {
+            for (EndpointHit hit : hits) {
+                writer.write(hit);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<EndpointHit> read(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    private static List<EndpointHit> read(InputStream in) throws IOException {
+        HitBinaryReader reader = new HitBinaryReader(in);
+        List<EndpointHit> hits = new ArrayList<>();
+        for (EndpointHit hit = reader.next(); hit != null; hit = reader.next()) {
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    private static EndpointHit hit(String app, String uri, String ip) {
+        return new EndpointHit(app, uri, ip, TIMESTAMP);
+    }
+}
@@ -0,0 +1,98 @@
+package ru.practicum.statsdto;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HitFrameDecoderTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 5, 1, 10, 30, 15);
+
+    @Test
+    void decodesFramesFromDirectBuffer() throws IOException {
+        List<EndpointHit> hits = List.of(hit("/events/1"), hit("/события/2"), hit("/events/1"));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        buffer.put(header());
+        hits.forEach(hit -> buffer.put(frame(hit)));
+        buffer.flip();
+
+        HitFrameDecoder decoder = new HitFrameDecoder();
+        assertThat(HitFrameDecoder.readHeader(buffer)).isTrue();
+        assertThat(decoder.next(buffer)).isEqualTo(hits.get(0));
+        assertThat(decoder.next(buffer)).isEqualTo(hits.get(1));
+        assertThat(decoder.next(buffer)).isEqualTo(hits.get(2));
+        assertThat(decoder.next(buffer)).isNull();
+    }
+
+    @Test
+    void incompleteHeaderAndFrameLeavePositionUnchanged() throws IOException {
+        byte[] frame = frame(hit("/events/1"));
+        ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(header(), 2));
+
+        assertThat(HitFrameDecoder.readHeader(buffer)).isFalse();
+        assertThat(buffer.position()).isZero();
+
+        buffer = ByteBuffer.wrap(Arrays.copyOf(frame, frame.length - 1));
+        assertThat(new HitFrameDecoder().next(buffer)).isNull();
+        assertThat(buffer.position()).isZero();
+    }
+
+    @Test
+    void malformedFramesAreRejected() {
+        byte[] frame = frame(hit("/events/1"));
+        ByteBuffer tooShort = ByteBuffer.allocate(8).putInt(3).flip();
+        ByteBuffer tooLong = ByteBuffer.allocate(8).putInt(HitWireFormat.MAX_RECORD_BYTES + 1).flip();
+        // Длина кадра на байт больше записи: после полей остаётся не ровно 8 байт timestamp
+        ByteBuffer mismatch = ByteBuffer.allocate(frame.length + 1)
+                .putInt(frame.length - HitWireFormat.FRAME_LENGTH_BYTES + 1)
+                .put(frame, HitWireFormat.FRAME_LENGTH_BYTES, frame.length - HitWireFormat.FRAME_LENGTH_BYTES)
+                .put((byte) 0)
+                .flip();
+
+        assertThatThrownBy(() -> new HitFrameDecoder().next(tooShort)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> new HitFrameDecoder().next(tooLong)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> new HitFrameDecoder().next(mismatch)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> HitFrameDecoder.readHeader(ByteBuffer.wrap(new byte[]{'E', 'W', 'X', 1})))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static byte[] header() {
+        return Arrays.copyOf(encode(null), HitWireFormat.HEADER_BYTES);
+    }
+
+    /**
+     * Кадр: длина записи и запись в том виде, в каком её пишет {@link HitBinaryWriter}.
+     */
+    private static byte[] frame(EndpointHit hit) {
+        byte[] encoded = encode(hit);
+        int length = encoded.length - HitWireFormat.HEADER_BYTES;
+        return ByteBuffer.allocate(HitWireFormat.FRAME_LENGTH_BYTES + length)
+                .putInt(length)
+                .put(encoded, HitWireFormat.HEADER_BYTES, length)
+                .array();
+    }
+
+    private static byte[] encode(EndpointHit hit) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HitBinaryWriter writer = new HitBinaryWriter(bytes)) {
+            if (hit != null) {
+                writer.write(hit);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static EndpointHit hit(String uri) {
+        return new EndpointHit("ewm", uri, "10.0.0.1", TIMESTAMP);
+    }
+}
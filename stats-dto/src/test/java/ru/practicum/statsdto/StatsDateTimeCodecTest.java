@@ -0,0 +1,61 @@
+package ru.practicum.statsdto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StatsDateTimeCodecTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 5, 1, 9, 5, 3);
+
+    @Test
+    void parsesPatternAtOffsetInsideLargerBuffer() {
+        char[] chars = "{\"timestamp\":\"2024-05-01 09:05:03\"}".toCharArray();
+
+        assertThat(StatsDateTimeCodec.parse(chars, 14, StatsDateTimeCodec.LENGTH)).isEqualTo(TIMESTAMP);
+    }
+
+    @Test
+    void acceptsIsoSeparatorAndIsoVariants() {
+        assertThat(StatsDateTimeCodec.parse("2024-05-01T09:05:03")).isEqualTo(TIMESTAMP);
+        assertThat(StatsDateTimeCodec.parse("2024-05-01T09:05:03.123456")).isEqualTo(TIMESTAMP.plusNanos(123_456_000));
+        assertThat(StatsDateTimeCodec.parse("2024-05-01T09:05")).isEqualTo(TIMESTAMP.withSecond(0));
+    }
+
+    @Test
+    void rejectsMalformedAndImpossibleValues() {
+        for (String text : new String[]{"2024-05-01 09:05", "2024/05/01 09:05:03", "2024-05-01 09:05:0x",
+                "2024-05-01 09:05:03.5", "2024-13-01 09:05:03", "2024-02-30 09:05:03", "2024-05-01 24:00:00", ""}) {
+            assertThatThrownBy(() -> StatsDateTimeCodec.parse(text))
+                    .as(text)
+                    .isInstanceOf(DateTimeParseException.class);
+        }
+    }
+
+    @Test
+    void writeRoundTripsAndPadsWithZeros() {
+        char[] buffer = new char[StatsDateTimeCodec.LENGTH + 2];
+        Arrays.fill(buffer, '#');
+
+        assertThat(StatsDateTimeCodec.write(LocalDateTime.of(7, 1, 2, 3, 4, 5, 999), buffer, 1)).isTrue();
+
+        assertThat(new String(buffer)).isEqualTo("#0007-01-02 03:04:05#");
+        assertThat(StatsDateTimeCodec.parse(buffer, 1, StatsDateTimeCodec.LENGTH))
+                .isEqualTo(LocalDateTime.of(7, 1, 2, 3, 4, 5));
+    }
+
+    @Test
+    void yearsLongerThanFourDigitsAreLeftToFormatter() {
+        LocalDateTime far = LocalDateTime.of(10_000, 1, 1, 0, 0);
+
+        assertThat(StatsDateTimeCodec.write(far, new char[StatsDateTimeCodec.LENGTH], 0)).isFalse();
+        assertThat(StatsDateTimeCodec.format(far)).isEqualTo("+10000-01-01 00:00:00");
+        assertThat(StatsDateTimeCodec.parse(StatsDateTimeCodec.format(far))).isEqualTo(far);
+        assertThat(StatsDateTimeCodec.format(TIMESTAMP)).isEqualTo("2024-05-01 09:05:03");
+    }
+}
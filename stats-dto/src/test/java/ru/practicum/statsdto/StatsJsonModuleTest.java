@@ -0,0 +1,85 @@
+package ru.practicum.statsdto;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StatsJsonModuleTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 5, 1, 9, 5, 3);
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new StatsJsonModule());
+
+    @Test
+    void endpointHitIsWrittenInApiFormat() throws Exception {
+        String json = mapper.writeValueAsString(new EndpointHit("ewm", "/events/1", "10.0.0.1", TIMESTAMP));
+
+        assertThat(json).isEqualTo(
+                "{\"app\":\"ewm\",\"uri\":\"/events/1\",\"ip\":\"10.0.0.1\",\"timestamp\":\"2024-05-01 09:05:03\"}");
+    }
+
+    @Test
+    void endpointHitsRoundTrip() throws Exception {
+        List<EndpointHit> hits = List.of(
+                new EndpointHit("ewm", "/события/1?q=\"ёж\"", "2001:db8::1", TIMESTAMP),
+                new EndpointHit("ewm", "/events/2", "10.0.0.1", LocalDateTime.of(12_345, 1, 1, 0, 0)),
+                new EndpointHit(null, null, null, null));
+
+        String json = mapper.writeValueAsString(hits);
+
+        assertThat(mapper.readValue(json, new TypeReference<List<EndpointHit>>() {
+        })).isEqualTo(hits);
+    }
+
+    @Test
+    void viewStatsRoundTrip() throws Exception {
+        List<ViewStats> stats = List.of(new ViewStats("ewm", "/events/1", 42L), new ViewStats("ewm", "/a", null));
+
+        String json = mapper.writeValueAsString(stats);
+
+        assertThat(json).startsWith("[{\"app\":\"ewm\",\"uri\":\"/events/1\",\"hits\":42}");
+        assertThat(mapper.readValue(json, new TypeReference<List<ViewStats>>() {
+        })).isEqualTo(stats);
+    }
+
+    @Test
+    void readerAcceptsAnyFieldOrderIsoTimeAndScalarCoercion() throws Exception {
+        EndpointHit hit = mapper.readValue(
+                "{\"timestamp\":\"2024-05-01T09:05:03.250\",\"ip\":\"10.0.0.1\",\"uri\":\"/a\",\"app\":7}",
+                EndpointHit.class);
+        ViewStats stats = mapper.readValue("{\"hits\":\"5\",\"uri\":\"/a\",\"app\":\"ewm\"}", ViewStats.class);
+
+        assertThat(hit).isEqualTo(new EndpointHit("7", "/a", "10.0.0.1", TIMESTAMP.plusNanos(250_000_000)));
+        assertThat(stats).isEqualTo(new ViewStats("ewm", "/a", 5L));
+        assertThat(mapper.readValue("{}", EndpointHit.class)).isEqualTo(new EndpointHit());
+    }
+
+    @Test
+    void invalidTimeAndUnknownFieldsAreReportedLikeDefaultJackson() {
+        assertThatThrownBy(() -> mapper.readValue("{\"timestamp\":\"2024-02-30 10:00:00\"}", EndpointHit.class))
+                .isInstanceOf(InvalidFormatException.class);
+        assertThatThrownBy(() -> mapper.readValue("{\"timestamp\":\"вчера\"}", EndpointHit.class))
+                .isInstanceOf(InvalidFormatException.class);
+        assertThatThrownBy(() -> mapper.readValue("{\"app\":\"ewm\",\"extra\":1}", EndpointHit.class))
+                .isInstanceOf(UnrecognizedPropertyException.class);
+    }
+
+    @Test
+    void unknownFieldsAreSkippedWhenAllowed() throws Exception {
+        ObjectMapper lenient = mapper.copy().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        ViewStats stats = lenient.readValue(
+                "{\"app\":\"ewm\",\"extra\":{\"nested\":[1,2]},\"uri\":\"/a\",\"hits\":1}", ViewStats.class);
+
+        assertThat(stats).isEqualTo(new ViewStats("ewm", "/a", 1L));
+    }
+}
@@ -0,0 +1,145 @@
+package ru.practicum.statsserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+
+/**
+ * Раздельные лимиты для записи хитов (/hit, /hits) и запросов статистики (/stats...), чтобы поток дорогих
+ * запросов статистики не вытеснял запись. Переполненная очередь — 429, истёкшее ожидание — 503,
+ * оба с Retry-After. Для потоковых ответов место освобождается по завершении асинхронной обработки.
+ */
+@Component
+@Slf4j
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String OVERLOADED_REASON = "Server is overloaded.";
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long retryAfterSeconds;
+    private final RequestBulkhead ingest;
+    private final RequestBulkhead query;
+
+    public AdmissionFilter(ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.admission.enabled:true}") boolean enabled,
+                           @Value("${stats.admission.retry-after-seconds:1}") long retryAfterSeconds,
+                           @Value("${stats.admission.ingest.max-concurrent:200}") int ingestConcurrent,
+                           @Value("${stats.admission.ingest.max-queue:1000}") int ingestQueue,
+                           @Value("${stats.admission.ingest.max-wait-ms:1000}") long ingestWaitMs,
+                           @Value("${stats.admission.query.max-concurrent:8}") int queryConcurrent,
+                           @Value("${stats.admission.query.max-queue:100}") int queryQueue,
+                           @Value("${stats.admission.query.max-wait-ms:2000}") long queryWaitMs) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.ingest = new RequestBulkhead("ingest", ingestConcurrent, ingestQueue, ingestWaitMs, meterRegistry);
+        this.query = new RequestBulkhead("query", queryConcurrent, queryQueue, queryWaitMs, meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || bulkhead(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestBulkhead bulkhead = bulkhead(request);
+        RequestBulkhead.Admission admission;
+        try {
+            admission = bulkhead.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admission = RequestBulkhead.Admission.TIMEOUT;
+        }
+        if (admission != RequestBulkhead.Admission.ADMITTED) {
+            reject(response, bulkhead, admission);
+            return;
+        }
+
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseListener(bulkhead));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    private RequestBulkhead bulkhead(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.equals("/hit") || path.equals("/hits")) {
+            return ingest;
+        }
+        if (path.equals("/stats") || path.startsWith("/stats/")) {
+            return query;
+        }
+        return null;
+    }
+
+    private void reject(HttpServletResponse response, RequestBulkhead bulkhead, RequestBulkhead.Admission admission)
+            throws IOException {
+        HttpStatus status = admission == RequestBulkhead.Admission.QUEUE_FULL
+                ? HttpStatus.TOO_MANY_REQUESTS
+                : HttpStatus.SERVICE_UNAVAILABLE;
+        String message = admission == RequestBulkhead.Admission.QUEUE_FULL
+                ? "Очередь запросов " + bulkhead.getName() + " заполнена"
+                : "Не дождались свободного места для запроса " + bulkhead.getName();
+        log.debug("Запрос отклонён: {}", message);
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), ApiError.builder()
+                .errors(Collections.emptyList())
+                .status(status.name())
+                .reason(OVERLOADED_REASON)
+                .message(message)
+                .timestamp(LocalDateTime.now().format(FORMATTER))
+                .build());
+    }
+
+    private record ReleaseListener(RequestBulkhead bulkhead) implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // Вызывается один раз и после таймаута или ошибки
+            bulkhead.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
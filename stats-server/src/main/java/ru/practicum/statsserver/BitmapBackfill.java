@@ -0,0 +1,72 @@
+package ru.practicum.statsserver;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Однократно заполняет дневные битмапы по уже накопленным сырым хитам, по дню за транзакцию и без блокировки
+ * таблиц. Битмапы объединяются через OR, поэтому хиты, записанные параллельно, не учитываются дважды.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BitmapBackfill {
+
+    private static final String MIGRATION_NAME = "bitmap-backfill";
+    private static final int FETCH_SIZE = 10_000;
+    private static final int FLUSH_KEYS = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OneTimeMigration oneTimeMigration;
+    private final BitmapWriter bitmapWriter;
+
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            oneTimeMigration.run(MIGRATION_NAME, oneTimeMigration::hitDays, this::backfillDay);
+            ready = true;
+        } catch (RuntimeException e) {
+            log.error("Не удалось построить битмапы посетителей, unique-статистика будет считаться по сырым хитам: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    private void backfillDay(long day) {
+        Map<BucketKey, RoaringBitmap> pending = new LinkedHashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT date_trunc('day', timestamp) AS bucket, app_id, uri_id, ip_id FROM endpoint_hits " +
+                            "WHERE timestamp >= ? AND timestamp < ? GROUP BY 1, 2, 3, 4 ORDER BY 1, 2, 3");
+            ps.setTimestamp(1, Timestamp.valueOf(OneTimeMigration.dayStart(day)));
+            ps.setTimestamp(2, Timestamp.valueOf(OneTimeMigration.dayStart(day + 1)));
+            ps.setFetchSize(FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            BucketKey key = new BucketKey(rs.getTimestamp("bucket").toLocalDateTime(),
+                    rs.getInt("app_id"), rs.getInt("uri_id"));
+            if (!pending.containsKey(key) && pending.size() >= FLUSH_KEYS) {
+                bitmapWriter.merge(pending);
+                pending.clear();
+            }
+            pending.computeIfAbsent(key, k -> new RoaringBitmap()).add(rs.getInt("ip_id"));
+        });
+        bitmapWriter.merge(pending);
+        log.debug("Битмапы посетителей за {} построены по накопленным хитам", OneTimeMigration.dayStart(day));
+    }
+}
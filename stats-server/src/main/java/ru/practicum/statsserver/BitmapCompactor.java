@@ -0,0 +1,77 @@
+package ru.practicum.statsserver;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сворачивает часовые битмапы посетителей завершившихся дней в дневные. День переносится одной транзакцией:
+ * часовые строки удаляются с RETURNING и объединяются с дневной строкой, поэтому запрос, читающий обе таблицы
+ * в одном снимке, видит каждый час ровно один раз. Хиты, пришедшие за уже свёрнутый день, снова попадают
+ * в часовую таблицу и сворачиваются при следующем проходе.
+ */
+@Component
+@Slf4j
+public class BitmapCompactor {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BitmapWriter bitmapWriter;
+    private final boolean enabled;
+    private final int graceHours;
+
+    public BitmapCompactor(JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           BitmapWriter bitmapWriter,
+                           @Value("${stats.unique.bitmaps-enabled:true}") boolean enabled,
+                           @Value("${stats.unique.compact-grace-hours:1}") int graceHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.bitmapWriter = bitmapWriter;
+        this.enabled = enabled;
+        this.graceHours = graceHours;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.unique.compact-interval-ms:3600000}",
+            initialDelayString = "${stats.unique.compact-interval-ms:3600000}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime threshold = RollupGranularity.DAY.floor(LocalDateTime.now().minusHours(graceHours));
+        try {
+            List<Timestamp> days = jdbcTemplate.queryForList("SELECT DISTINCT date_trunc('day', bucket) FROM " +
+                    BitmapWriter.HOUR_TABLE + " WHERE bucket < ? ORDER BY 1", Timestamp.class,
+                    Timestamp.valueOf(threshold));
+            for (Timestamp day : days) {
+                compactDay(day.toLocalDateTime());
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка сворачивания часовых битмапов: {}", e.getMessage(), e);
+        }
+    }
+
+    private void compactDay(LocalDateTime day) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<BucketKey, RoaringBitmap> bitmaps = new HashMap<>();
+            jdbcTemplate.query("DELETE FROM " + BitmapWriter.HOUR_TABLE + " WHERE bucket >= ? AND bucket < ? " +
+                            "RETURNING app_id, uri_id, bitmap",
+                    rs -> {
+                        bitmaps.computeIfAbsent(new BucketKey(day, rs.getInt("app_id"), rs.getInt("uri_id")),
+                                k -> new RoaringBitmap()).or(BitmapWriter.CODEC.decode(rs.getBytes("bitmap")));
+                    }, Timestamp.valueOf(day), Timestamp.valueOf(day.plusDays(1)));
+            bitmapWriter.merge(bitmaps);
+            log.info("Часовые битмапы за {} свёрнуты в дневные: {} ключей", day.toLocalDate(), bitmaps.size());
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package ru.practicum.statsserver;
+
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Обновляет roaring-битмапы идентификаторов IP, по которым считается точное число уникальных посетителей.
+ * Живая запись пополняет часовые битмапы, поэтому каждый сброс пакета перезаписывает небольшой битмап текущего
+ * часа, а не битмап всего дня; {@link BitmapCompactor} сворачивает часы завершившихся дней в дневные битмапы.
+ */
+@Component
+@RequiredArgsConstructor
+public class BitmapWriter implements HitBatchListener {
+
+    static final String TABLE = "hit_bitmap_day";
+    static final String HOUR_TABLE = "hit_bitmap_hour";
+
+    static final BucketBlobMerger.Codec<RoaringBitmap> CODEC = new BucketBlobMerger.Codec<>() {
+        @Override
+        public byte[] encode(RoaringBitmap value) {
+            value.runOptimize();
+            ByteBuffer buffer = ByteBuffer.allocate(value.serializedSizeInBytes());
+            value.serialize(buffer);
+            return buffer.array();
+        }
+
+        @Override
+        public RoaringBitmap decode(byte[] bytes) {
+            RoaringBitmap bitmap = new RoaringBitmap();
+            try {
+                bitmap.deserialize(ByteBuffer.wrap(bytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Повреждённый битмап посетителей", e);
+            }
+            return bitmap;
+        }
+
+        @Override
+        public RoaringBitmap merge(RoaringBitmap stored, RoaringBitmap delta) {
+            stored.or(delta);
+            return stored;
+        }
+    };
+
+    private final BucketBlobMerger blobMerger;
+
+    @Override
+    public void onBatch(HitBatch batch) {
+        Map<BucketKey, RoaringBitmap> bitmaps = new HashMap<>();
+        for (EndpointHit hit : batch.getHits()) {
+            BucketKey key = new BucketKey(RollupGranularity.HOUR.floor(hit.getTimestamp()), batch.appId(hit),
+                    batch.uriId(hit));
+            bitmaps.computeIfAbsent(key, k -> new RoaringBitmap()).add(batch.ipId(hit));
+        }
+        blobMerger.merge(HOUR_TABLE, "bitmap", bitmaps, CODEC);
+    }
+
+    /**
+     * Объединяет битмапы с дневными — для заполнения по истории и сворачивания часов.
+     */
+    void merge(Map<BucketKey, RoaringBitmap> bitmaps) {
+        blobMerger.merge(TABLE, "bitmap", bitmaps, CODEC);
+    }
+}
@@ -0,0 +1,105 @@
+package ru.practicum.statsserver;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Слияние бинарных агрегатов (скетчей, битмапов) по ключу (bucket, app_id, uri_id), которые нельзя объединить
+ * средствами SQL: строки создаются через ON CONFLICT DO NOTHING, блокируются в фиксированном порядке,
+ * объединяются с пакетом в Java и перезаписываются.
+ */
+@Component
+@RequiredArgsConstructor
+public class BucketBlobMerger {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public <T> void merge(String table, String column, Map<BucketKey, T> values, Codec<T> codec) {
+        if (values.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<BucketKey, T>> pending = new ArrayList<>(values.entrySet());
+        pending.sort(Map.Entry.comparingByKey(BucketKey.LOCK_ORDER));
+
+        // Строку могут удалить между вставкой и блокировкой (BitmapCompactor переносит часовые битмапы
+        // в дневные): такие ключи вставляются заново, пока все не окажутся заблокированы этой транзакцией.
+        List<Map.Entry<BucketKey, T>> merged = new ArrayList<>(pending.size());
+        while (!pending.isEmpty()) {
+            insert(table, column, pending, codec);
+            Set<BucketKey> locked = new HashSet<>();
+            lock(table, column, pending, rs -> {
+                BucketKey key = new BucketKey(rs.getTimestamp("bucket").toLocalDateTime(),
+                        rs.getInt("app_id"), rs.getInt("uri_id"));
+                T stored = codec.decode(rs.getBytes(column));
+                merged.add(Map.entry(key, codec.merge(stored, values.get(key))));
+                locked.add(key);
+            });
+            pending.removeIf(row -> locked.contains(row.getKey()));
+        }
+
+        jdbcTemplate.batchUpdate("UPDATE " + table + " SET " + column + " = ? " +
+                        "WHERE bucket = ? AND app_id = ? AND uri_id = ?", merged, merged.size(),
+                (ps, row) -> {
+                    ps.setBytes(1, codec.encode(row.getValue()));
+                    setKey(ps, row.getKey(), 2);
+                });
+    }
+
+    private <T> void insert(String table, String column, List<Map.Entry<BucketKey, T>> rows, Codec<T> codec) {
+        jdbcTemplate.batchUpdate("INSERT INTO " + table + " (bucket, app_id, uri_id, " + column + ") " +
+                        "VALUES (?, ?, ?, ?) ON CONFLICT (bucket, app_id, uri_id) DO NOTHING", rows, rows.size(),
+                (ps, row) -> {
+                    setKey(ps, row.getKey(), 1);
+                    ps.setBytes(4, codec.encode(row.getValue()));
+                });
+    }
+
+    private <T> void lock(String table, String column, List<Map.Entry<BucketKey, T>> rows,
+                          RowCallbackHandler handler) {
+        Timestamp[] buckets = new Timestamp[rows.size()];
+        Integer[] appIds = new Integer[rows.size()];
+        Integer[] uriIds = new Integer[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            BucketKey key = rows.get(i).getKey();
+            buckets[i] = Timestamp.valueOf(key.getBucket());
+            appIds[i] = key.getAppId();
+            uriIds[i] = key.getUriId();
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT t.bucket, t.app_id, t.uri_id, t." + column +
+                    " FROM " + table + " t " +
+                    "JOIN unnest(?, ?, ?) AS k(bucket, app_id, uri_id) " +
+                    "ON t.bucket = k.bucket AND t.app_id = k.app_id AND t.uri_id = k.uri_id " +
+                    "ORDER BY t.bucket, t.app_id, t.uri_id FOR UPDATE OF t");
+            ps.setArray(1, con.createArrayOf("timestamp", buckets));
+            ps.setArray(2, con.createArrayOf("integer", appIds));
+            ps.setArray(3, con.createArrayOf("integer", uriIds));
+            return ps;
+        }, handler);
+    }
+
+    private static void setKey(PreparedStatement ps, BucketKey key, int firstIndex) throws SQLException {
+        ps.setTimestamp(firstIndex, Timestamp.valueOf(key.getBucket()));
+        ps.setInt(firstIndex + 1, key.getAppId());
+        ps.setInt(firstIndex + 2, key.getUriId());
+    }
+
+    public interface Codec<T> {
+        byte[] encode(T value);
+
+        T decode(byte[] bytes);
+
+        T merge(T stored, T delta);
+    }
+}
@@ -0,0 +1,24 @@
+package ru.practicum.statsserver;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+@Data
+@AllArgsConstructor
+public class BucketKey {
+
+    /**
+     * Порядок, в котором строки агрегатов блокируются при записи, чтобы параллельные транзакции не взаимоблокировались.
+     */
+    public static final Comparator<BucketKey> LOCK_ORDER = Comparator
+            .comparing(BucketKey::getBucket)
+            .thenComparingInt(BucketKey::getAppId)
+            .thenComparingInt(BucketKey::getUriId);
+
+    private LocalDateTime bucket;
+    private int appId;
+    private int uriId;
+}
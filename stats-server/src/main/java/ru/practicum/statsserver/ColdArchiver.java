@@ -0,0 +1,136 @@
+package ru.practicum.statsserver;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Переносит сырые хиты старше after-days дней из endpoint_hits в архивные сегменты {@link ColdSegment},
+ * по одному сегменту на день. Чтение хитов, запись сегмента, его регистрация и удаление хитов выполняются
+ * в одной транзакции REPEATABLE READ: удаляются ровно прочитанные строки, а хит, пришедший за архивный день
+ * во время переноса, остаётся в БД и попадёт в следующий сегмент.
+ * <p>
+ * Роллапы, скетчи и битмапы остаются в БД, поэтому архив читается только для краёв диапазонов и точных
+ * подсчётов по сырым хитам. Архивирование начинается после заполнения всех агрегатов.
+ */
+@Component
+@Slf4j
+public class ColdArchiver {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ColdSegmentStore coldSegmentStore;
+    private final RollupBackfill rollupBackfill;
+    private final SketchBackfill sketchBackfill;
+    private final BitmapBackfill bitmapBackfill;
+    private final boolean enabled;
+    private final int afterDays;
+
+    public ColdArchiver(JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager,
+                        ColdSegmentStore coldSegmentStore,
+                        RollupBackfill rollupBackfill,
+                        SketchBackfill sketchBackfill,
+                        BitmapBackfill bitmapBackfill,
+                        @Value("${stats.cold.enabled:false}") boolean enabled,
+                        @Value("${stats.cold.after-days:90}") int afterDays,
+                        @Value("${stats.query.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.streamingJdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.coldSegmentStore = coldSegmentStore;
+        this.rollupBackfill = rollupBackfill;
+        this.sketchBackfill = sketchBackfill;
+        this.bitmapBackfill = bitmapBackfill;
+        this.enabled = enabled;
+        this.afterDays = afterDays;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.cold.check-interval-ms:3600000}",
+            initialDelayString = "${stats.cold.initial-delay-ms:60000}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        if (!rollupBackfill.isReady() || !sketchBackfill.isReady() || !bitmapBackfill.isReady()) {
+            log.info("Архивирование хитов отложено до заполнения агрегатов");
+            return;
+        }
+        LocalDateTime threshold = LocalDate.now().minusDays(afterDays).atStartOfDay();
+        try {
+            Timestamp oldest;
+            while ((oldest = jdbcTemplate.queryForObject("SELECT min(timestamp) FROM endpoint_hits WHERE timestamp < ?",
+                    Timestamp.class, Timestamp.valueOf(threshold))) != null) {
+                LocalDate day = oldest.toLocalDateTime().toLocalDate();
+                archiveDay(day);
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка архивирования хитов: {}", e.getMessage(), e);
+        }
+    }
+
+    private void archiveDay(LocalDate day) {
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        long started = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            ColdSegmentWriter writer = new ColdSegmentWriter();
+            streamingJdbcTemplate.query("SELECT app_id, uri_id, ip_id, timestamp FROM endpoint_hits " +
+                            "WHERE timestamp >= ? AND timestamp < ? ORDER BY timestamp",
+                    rs -> {
+                        writer.add(rs.getInt(1), rs.getInt(2), rs.getInt(3),
+                                ColdSegment.toMicros(rs.getTimestamp(4).toLocalDateTime()));
+                    }, from, to);
+            Map<Integer, String> apps = names("SELECT id, name FROM dim_app WHERE id = ANY(?)", writer.appIds());
+            Map<Integer, String> uris = names("SELECT id, uri FROM dim_uri WHERE id = ANY(?)", writer.uriIds());
+
+            long bytes;
+            Path path;
+            try {
+                path = coldSegmentStore.newSegmentPath(day);
+                bytes = writer.write(path, apps::get, uris::get);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            coldSegmentStore.register(path, writer, bytes);
+            int deleted = jdbcTemplate.update("DELETE FROM endpoint_hits WHERE timestamp >= ? AND timestamp < ?",
+                    from, to);
+            if (deleted != writer.getRows()) {
+                throw new IllegalStateException("Удалено " + deleted + " хитов вместо " + writer.getRows());
+            }
+            log.info("Хиты за {} перенесены в архив {}: {} строк, {} байт, {} мс", day, path.getFileName(),
+                    writer.getRows(), bytes, (System.nanoTime() - started) / 1_000_000);
+        });
+    }
+
+    private Map<Integer, String> names(String sql, Set<Integer> ids) {
+        Map<Integer, String> names = new HashMap<>(ids.size());
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("integer", ids.toArray()));
+            return ps;
+        }, rs -> {
+            names.put(rs.getInt(1), rs.getString(2));
+        });
+        return names;
+    }
+}
@@ -0,0 +1,264 @@
+package ru.practicum.statsserver;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Неизменяемый колоночный сегмент архивных хитов, отображённый в память.
+ * <p>
+ * Строки отсортированы по timestamp и хранятся тремя колонками varint: разность timestamp в микросекундах
+ * с предыдущей строкой, номер пары (app, uri) в словаре сегмента и идентификатор IP из dim_ip.
+ * Каждые {@link #BLOCK_ROWS} строк начинается блок: в индексе блоков — timestamp его первой строки
+ * и смещения колонок, поэтому чтение края диапазона начинается с нужного блока, а не с начала файла.
+ * <p>
+ * Формат: MAGIC (int), VERSION (byte), min и max timestamp (long), число строк (int), число пар (int),
+ * фильтр Блума по uri (число хешей, число слов, слова), индекс блоков (число, затем timestamp и три смещения),
+ * длины словаря и трёх колонок (int), словарь (app и uri — unsigned short длины и UTF-8), колонки.
+ */
+public class ColdSegment {
+
+    static final int MAGIC = 0x45574353;
+    static final byte VERSION = 1;
+    static final int BLOCK_ROWS = 4096;
+
+    private static final boolean[] NONE = new boolean[0];
+
+    @Getter
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    @Getter
+    private final long minMicros;
+    @Getter
+    private final long maxMicros;
+    @Getter
+    private final int rows;
+    private final int pairCount;
+    private final UriBloomFilter bloom;
+    private final long[] blockFirst;
+    private final int[] blockTimestamps;
+    private final int[] blockPairs;
+    private final int[] blockIps;
+    private final int dictionaryStart;
+    private final int timestampsStart;
+    private final int pairsStart;
+    private final int ipsStart;
+
+    private volatile String[] apps;
+    private volatile String[] uris;
+
+    private ColdSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        ByteBuffer header = buffer.duplicate();
+        if (header.getInt() != MAGIC || header.get() != VERSION) {
+            throw new IllegalStateException("Файл " + path + " не является архивным сегментом");
+        }
+        minMicros = header.getLong();
+        maxMicros = header.getLong();
+        rows = header.getInt();
+        pairCount = header.getInt();
+        int hashes = header.getInt();
+        long[] words = new long[header.getInt()];
+        header.asLongBuffer().get(words);
+        header.position(header.position() + words.length * Long.BYTES);
+        bloom = new UriBloomFilter(words, hashes);
+        int blocks = header.getInt();
+        blockFirst = new long[blocks];
+        blockTimestamps = new int[blocks];
+        blockPairs = new int[blocks];
+        blockIps = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            blockFirst[i] = header.getLong();
+            blockTimestamps[i] = header.getInt();
+            blockPairs[i] = header.getInt();
+            blockIps[i] = header.getInt();
+        }
+        int dictionaryLength = header.getInt();
+        int timestampsLength = header.getInt();
+        int pairsLength = header.getInt();
+        header.getInt();
+        dictionaryStart = header.position();
+        timestampsStart = dictionaryStart + dictionaryLength;
+        pairsStart = timestampsStart + timestampsLength;
+        ipsStart = pairsStart + pairsLength;
+    }
+
+    public static ColdSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Отображение остаётся действительным и после закрытия канала
+            return new ColdSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    public static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    public boolean overlaps(long from, long to) {
+        return minMicros < to && maxMicros >= from;
+    }
+
+    /**
+     * Проверка по фильтру Блума без разбора словаря: false — в сегменте точно нет ни одного из uri фильтра.
+     */
+    public boolean mayMatch(UriFilter filter) {
+        if (filter.getUris() == null) {
+            return true;
+        }
+        for (String uri : filter.getUris()) {
+            if (bloom.mightContain(uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return отметки пар словаря, проходящих фильтр, или null, если проходят все
+     */
+    public boolean[] select(UriFilter filter) {
+        if (filter.isEmpty()) {
+            return null;
+        }
+        loadDictionary();
+        boolean[] selected = new boolean[pairCount];
+        boolean any = false;
+        for (int pair = 0; pair < pairCount; pair++) {
+            selected[pair] = filter.matches(uris[pair]);
+            any |= selected[pair];
+        }
+        return any ? selected : NONE;
+    }
+
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    public String app(int pair) {
+        loadDictionary();
+        return apps[pair];
+    }
+
+    public String uri(int pair) {
+        loadDictionary();
+        return uris[pair];
+    }
+
+    /**
+     * Передаёт visitor строки с timestamp в [from, to) и парой, отмеченной в pairs (null — любой).
+     */
+    public void scan(long from, long to, boolean[] pairs, RowVisitor visitor) {
+        if (!overlaps(from, to) || pairs == NONE) {
+            return;
+        }
+        int block = firstBlock(from);
+        Varints timestamps = new Varints(timestampsStart + blockTimestamps[block]);
+        Varints pairColumn = new Varints(pairsStart + blockPairs[block]);
+        Varints ips = new Varints(ipsStart + blockIps[block]);
+        long timestamp = 0;
+        for (int row = block * BLOCK_ROWS; row < rows; row++) {
+            if (row % BLOCK_ROWS == 0) {
+                timestamp = blockFirst[row / BLOCK_ROWS];
+            }
+            timestamp += timestamps.next();
+            if (timestamp >= to) {
+                return;
+            }
+            int pair = (int) pairColumn.next();
+            int ip = (int) ips.next();
+            if (timestamp >= from && (pairs == null || pairs[pair])) {
+                visitor.visit(pair, ip, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Последний блок, начинающийся раньше from: строки с timestamp == from могут лежать в конце предыдущего блока.
+     */
+    private int firstBlock(long from) {
+        int low = 0;
+        int high = blockFirst.length - 1;
+        int result = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blockFirst[mid] < from) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    private void loadDictionary() {
+        if (uris != null) {
+            return;
+        }
+        synchronized (this) {
+            if (uris != null) {
+                return;
+            }
+            ByteBuffer dictionary = buffer.duplicate().position(dictionaryStart);
+            Map<String, String> interned = new HashMap<>();
+            String[] loadedApps = new String[pairCount];
+            String[] loadedUris = new String[pairCount];
+            for (int pair = 0; pair < pairCount; pair++) {
+                loadedApps[pair] = interned.computeIfAbsent(readString(dictionary), app -> app);
+                loadedUris[pair] = readString(dictionary);
+            }
+            apps = loadedApps;
+            uris = loadedUris;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public interface RowVisitor {
+        void visit(int pair, int ipId, long micros);
+    }
+
+    /**
+     * Последовательное чтение колонки по абсолютным смещениям: общий буфер не меняет позицию,
+     * поэтому сегмент можно читать из нескольких потоков.
+     */
+    private final class Varints {
+        private int position;
+
+        private Varints(int position) {
+            this.position = position;
+        }
+
+        private long next() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
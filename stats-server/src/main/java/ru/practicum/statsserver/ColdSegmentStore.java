@@ -0,0 +1,368 @@
+package ru.practicum.statsserver;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Архивные сегменты хитов, перенесённые из endpoint_hits {@link ColdArchiver}. Список сегментов хранится
+ * в stats_cold_segment и меняется в одной транзакции с удалением хитов из БД; запросы, читающие и БД,
+ * и сегменты, выполняются под разделяемой блокировкой, чтобы не увидеть хиты ни там, ни там или дважды.
+ * Пересекающиеся с запросом сегменты читаются параллельно.
+ */
+@Component
+@Slf4j
+public class ColdSegmentStore {
+
+    private static final String FILE_PREFIX = "cold-";
+    private static final String FILE_SUFFIX = ".seg";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Path dir;
+    private final boolean archiving;
+    private final int afterDays;
+    private final ExecutorService executor;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile List<ColdSegment> segments = List.of();
+    private volatile long coveredUntil = Long.MIN_VALUE;
+
+    public ColdSegmentStore(JdbcTemplate jdbcTemplate,
+                            @Value("${stats.cold.dir:data/cold}") String dir,
+                            @Value("${stats.cold.enabled:false}") boolean archiving,
+                            @Value("${stats.cold.after-days:90}") int afterDays,
+                            @Value("${stats.cold.scan-threads:0}") int scanThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dir = Path.of(dir);
+        this.archiving = archiving;
+        this.afterDays = afterDays;
+        int threads = scanThreads > 0 ? scanThreads : Runtime.getRuntime().availableProcessors();
+        this.executor = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("cold-scan-", 0).daemon(true).factory());
+    }
+
+    @PostConstruct
+    public void start() {
+        refresh();
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Перечитывает список сегментов из БД: на случай, если архивирует другой экземпляр с общим каталогом.
+     */
+    @Scheduled(fixedDelayString = "${stats.cold.refresh-interval-ms:60000}",
+            initialDelayString = "${stats.cold.refresh-interval-ms:60000}")
+    public void refresh() {
+        if (new HashSet<>(files()).equals(new HashSet<>(fileNames(segments)))) {
+            return;
+        }
+        // Список перечитывается под исключающей блокировкой, чтобы не разойтись с одновременной фиксацией архиватора
+        lock.writeLock().lock();
+        try {
+            Map<String, ColdSegment> opened = new HashMap<>();
+            for (ColdSegment segment : segments) {
+                opened.put(segment.getPath().getFileName().toString(), segment);
+            }
+            List<ColdSegment> loaded = new ArrayList<>();
+            for (String file : files()) {
+                ColdSegment segment = opened.get(file);
+                if (segment == null) {
+                    segment = open(dir.resolve(file));
+                }
+                if (segment != null) {
+                    loaded.add(segment);
+                }
+            }
+            setSegments(loaded);
+            log.info("Архивных сегментов: {}", loaded.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Path newSegmentPath(LocalDate day) throws IOException {
+        Files.createDirectories(dir);
+        return dir.resolve(FILE_PREFIX + day.format(DAY_FORMAT) + "-" + System.currentTimeMillis() + FILE_SUFFIX);
+    }
+
+    /**
+     * Регистрирует записанный сегмент в текущей транзакции: строка в stats_cold_segment вставляется сразу,
+     * в памяти сегмент появляется в момент фиксации под исключающей блокировкой, при откате файл удаляется.
+     */
+    public void register(Path path, ColdSegmentWriter writer, long bytes) {
+        jdbcTemplate.update("INSERT INTO stats_cold_segment (file, min_ts, max_ts, row_count, bytes, created_at) " +
+                        "VALUES (?, ?, ?, ?, ?, now())", path.getFileName().toString(),
+                Timestamp.valueOf(ColdSegment.fromMicros(writer.getMinMicros())),
+                Timestamp.valueOf(ColdSegment.fromMicros(writer.getMaxMicros())), writer.getRows(), bytes);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                lock.writeLock().lock();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        ColdSegment segment = open(path);
+                        if (segment != null) {
+                            List<ColdSegment> updated = new ArrayList<>(segments);
+                            updated.add(segment);
+                            setSegments(updated);
+                        }
+                    } else {
+                        Files.deleteIfExists(path);
+                    }
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить файл несохранённого сегмента {}: {}", path, e.getMessage());
+                } finally {
+                    if (lock.isWriteLockedByCurrentThread()) {
+                        lock.writeLock().unlock();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Нужны ли сегменты для сырых частей запроса: до этой границы хиты могли быть перенесены в архив.
+     */
+    public boolean involves(List<QuerySegment> ranges) {
+        long horizon = horizon();
+        for (QuerySegment range : ranges) {
+            if (range.isRaw() && ColdSegment.toMicros(range.getFrom()) < horizon) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean involves(QuerySegment range) {
+        return involves(List.of(range));
+    }
+
+    /**
+     * Выполняет чтение из БД и сегментов так, чтобы перенос хитов в архив не пришёлся на его середину.
+     */
+    public <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void countHits(List<QuerySegment> ranges, UriFilter filter, Map<StatsKey, Long> hits) {
+        for (Map<StatsKey, Long> partial : scan(ranges, filter, (segment, from, to, pairs) -> {
+            long[] counts = new long[segment.getPairCount()];
+            segment.scan(from, to, pairs, (pair, ip, micros) -> counts[pair]++);
+            Map<StatsKey, Long> result = new HashMap<>();
+            for (int pair = 0; pair < counts.length; pair++) {
+                if (counts[pair] > 0) {
+                    result.merge(new StatsKey(segment.app(pair), segment.uri(pair)), counts[pair], Long::sum);
+                }
+            }
+            return result;
+        })) {
+            partial.forEach((key, count) -> hits.merge(key, count, Long::sum));
+        }
+    }
+
+    public void distinctIps(List<QuerySegment> ranges, UriFilter filter, Map<StatsKey, RoaringBitmap> ips) {
+        for (Map<StatsKey, RoaringBitmap> partial : scan(ranges, filter, (segment, from, to, pairs) -> {
+            RoaringBitmap[] bitmaps = new RoaringBitmap[segment.getPairCount()];
+            segment.scan(from, to, pairs, (pair, ip, micros) -> {
+                if (bitmaps[pair] == null) {
+                    bitmaps[pair] = new RoaringBitmap();
+                }
+                bitmaps[pair].add(ip);
+            });
+            return toKeys(segment, bitmaps);
+        })) {
+            partial.forEach((key, bitmap) -> ips.merge(key, bitmap, ColdSegmentStore::union));
+        }
+    }
+
+    public void countHitsByBucket(List<QuerySegment> ranges, RollupGranularity interval, UriFilter filter,
+                                  TimeSeriesBuilder builder) {
+        long bucketMicros = interval.getUnit().getDuration().toNanos() / 1_000;
+        for (Map<Long, Map<StatsKey, Long>> partial : scan(ranges, filter, (segment, from, to, pairs) -> {
+            Map<Long, long[]> buckets = new HashMap<>();
+            segment.scan(from, to, pairs, (pair, ip, micros) -> buckets
+                    .computeIfAbsent(Math.floorDiv(micros, bucketMicros), b -> new long[segment.getPairCount()])[pair]++);
+            Map<Long, Map<StatsKey, Long>> result = new HashMap<>();
+            buckets.forEach((bucket, counts) -> {
+                Map<StatsKey, Long> row = result.computeIfAbsent(bucket, b -> new HashMap<>());
+                for (int pair = 0; pair < counts.length; pair++) {
+                    if (counts[pair] > 0) {
+                        row.merge(new StatsKey(segment.app(pair), segment.uri(pair)), counts[pair], Long::sum);
+                    }
+                }
+            });
+            return result;
+        })) {
+            partial.forEach((bucket, row) -> row.forEach((key, count) ->
+                    builder.add(ColdSegment.fromMicros(bucket * bucketMicros), key.getApp(), key.getUri(), count)));
+        }
+    }
+
+    public void distinctIpsByBucket(QuerySegment range, RollupGranularity interval, UriFilter filter,
+                                    Map<LocalDateTime, Map<StatsKey, RoaringBitmap>> ips) {
+        long bucketMicros = interval.getUnit().getDuration().toNanos() / 1_000;
+        for (Map<Long, Map<StatsKey, RoaringBitmap>> partial : scan(List.of(range), filter,
+                (segment, from, to, pairs) -> {
+                    Map<Long, RoaringBitmap[]> buckets = new HashMap<>();
+                    segment.scan(from, to, pairs, (pair, ip, micros) -> {
+                        RoaringBitmap[] bitmaps = buckets.computeIfAbsent(Math.floorDiv(micros, bucketMicros),
+                                b -> new RoaringBitmap[segment.getPairCount()]);
+                        if (bitmaps[pair] == null) {
+                            bitmaps[pair] = new RoaringBitmap();
+                        }
+                        bitmaps[pair].add(ip);
+                    });
+                    Map<Long, Map<StatsKey, RoaringBitmap>> result = new HashMap<>();
+                    buckets.forEach((bucket, bitmaps) -> result.put(bucket, toKeys(segment, bitmaps)));
+                    return result;
+                })) {
+            partial.forEach((bucket, row) -> {
+                Map<StatsKey, RoaringBitmap> target =
+                        ips.computeIfAbsent(ColdSegment.fromMicros(bucket * bucketMicros), b -> new HashMap<>());
+                row.forEach((key, bitmap) -> target.merge(key, bitmap, ColdSegmentStore::union));
+            });
+        }
+    }
+
+    private static RoaringBitmap union(RoaringBitmap target, RoaringBitmap other) {
+        target.or(other);
+        return target;
+    }
+
+    private static Map<StatsKey, RoaringBitmap> toKeys(ColdSegment segment, RoaringBitmap[] bitmaps) {
+        Map<StatsKey, RoaringBitmap> result = new HashMap<>();
+        for (int pair = 0; pair < bitmaps.length; pair++) {
+            if (bitmaps[pair] != null) {
+                result.merge(new StatsKey(segment.app(pair), segment.uri(pair)), bitmaps[pair], ColdSegmentStore::union);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сканирует каждую пару (сегмент, сырой диапазон запроса), которые пересекаются, отдельной задачей.
+     */
+    private <T> List<T> scan(List<QuerySegment> ranges, UriFilter filter, SegmentScan<T> scan) {
+        List<Callable<T>> tasks = new ArrayList<>();
+        for (ColdSegment segment : segments) {
+            if (!segment.mayMatch(filter)) {
+                continue;
+            }
+            for (QuerySegment range : ranges) {
+                long from = ColdSegment.toMicros(range.getFrom());
+                long to = ColdSegment.toMicros(range.getTo());
+                if (range.isRaw() && segment.overlaps(from, to)) {
+                    tasks.add(() -> scan.scan(segment, from, to, segment.select(filter)));
+                }
+            }
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (tasks.size() == 1) {
+                results.add(tasks.get(0).call());
+                return results;
+            }
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Чтение архивных сегментов прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка чтения архивного сегмента: " + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Ошибка чтения архивного сегмента: " + e.getMessage(), e);
+        }
+    }
+
+    private List<String> files() {
+        return jdbcTemplate.queryForList("SELECT file FROM stats_cold_segment ORDER BY min_ts, file", String.class);
+    }
+
+    private static List<String> fileNames(List<ColdSegment> segments) {
+        return segments.stream().map(segment -> segment.getPath().getFileName().toString()).toList();
+    }
+
+    private ColdSegment open(Path path) {
+        try {
+            return ColdSegment.open(path);
+        } catch (IOException | RuntimeException e) {
+            log.error("Архивный сегмент {} недоступен, его хиты не попадут в статистику: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private void setSegments(List<ColdSegment> updated) {
+        long until = Long.MIN_VALUE;
+        for (ColdSegment segment : updated) {
+            until = Math.max(until, segment.getMaxMicros() + 1);
+        }
+        List<ColdSegment> sorted = new ArrayList<>(updated);
+        sorted.sort(Comparator.comparingLong(ColdSegment::getMinMicros));
+        segments = List.copyOf(sorted);
+        coveredUntil = until;
+    }
+
+    /**
+     * Всё, что раньше границы, может лежать в архиве: уже перенесённые сегменты и, при включённом архивировании,
+     * дни, которые могут быть перенесены во время запроса (с запасом в сутки на смену даты).
+     */
+    private long horizon() {
+        long horizon = coveredUntil;
+        if (archiving) {
+            horizon = Math.max(horizon,
+                    ColdSegment.toMicros(LocalDate.now().minusDays(afterDays - 1L).atStartOfDay()));
+        }
+        return horizon;
+    }
+
+    private interface SegmentScan<T> {
+        T scan(ColdSegment segment, long from, long to, boolean[] pairs);
+    }
+}
@@ -0,0 +1,220 @@
+package ru.practicum.statsserver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Собирает колонки архивного сегмента в памяти по строкам, упорядоченным по timestamp,
+ * и записывает файл в формате {@link ColdSegment}.
+ */
+public class ColdSegmentWriter {
+
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private final Map<Long, Integer> pairIndex = new HashMap<>();
+    private int[] pairApps = new int[64];
+    private int[] pairUris = new int[64];
+    private int pairCount;
+
+    private final ByteSink timestamps = new ByteSink();
+    private final ByteSink pairs = new ByteSink();
+    private final ByteSink ips = new ByteSink();
+
+    private long[] blockFirst = new long[16];
+    private int[] blockTimestamps = new int[16];
+    private int[] blockPairs = new int[16];
+    private int[] blockIps = new int[16];
+    private int blocks;
+
+    private long minMicros;
+    private long lastMicros = Long.MIN_VALUE;
+    private int rows;
+
+    public void add(int appId, int uriId, int ipId, long micros) {
+        if (micros < lastMicros) {
+            throw new IllegalArgumentException("Строки сегмента должны идти по возрастанию timestamp");
+        }
+        if (rows % ColdSegment.BLOCK_ROWS == 0) {
+            startBlock(micros);
+        }
+        if (rows == 0) {
+            minMicros = micros;
+        }
+        timestamps.writeVarint(micros - lastMicros(micros));
+        pairs.writeVarint(pair(appId, uriId));
+        ips.writeVarint(Integer.toUnsignedLong(ipId));
+        lastMicros = micros;
+        rows++;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public long getMinMicros() {
+        return minMicros;
+    }
+
+    public long getMaxMicros() {
+        return lastMicros;
+    }
+
+    public Set<Integer> appIds() {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (int i = 0; i < pairCount; i++) {
+            ids.add(pairApps[i]);
+        }
+        return ids;
+    }
+
+    public Set<Integer> uriIds() {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (int i = 0; i < pairCount; i++) {
+            ids.add(pairUris[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Пишет сегмент во временный файл, сбрасывает его на диск и атомарно переименовывает в path.
+     *
+     * @return размер файла в байтах
+     */
+    public long write(Path path, IntFunction<String> appNames, IntFunction<String> uriNames) throws IOException {
+        if (rows == 0) {
+            throw new IllegalStateException("Пустой сегмент не записывается");
+        }
+        UriBloomFilter bloom = UriBloomFilter.create(pairCount);
+        ByteSink dictionary = new ByteSink();
+        for (int i = 0; i < pairCount; i++) {
+            String uri = uriNames.apply(pairUris[i]);
+            dictionary.writeString(appNames.apply(pairApps[i]));
+            dictionary.writeString(uri);
+            bloom.add(uri);
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(ColdSegment.MAGIC);
+            out.writeByte(ColdSegment.VERSION);
+            out.writeLong(minMicros);
+            out.writeLong(lastMicros);
+            out.writeInt(rows);
+            out.writeInt(pairCount);
+            out.writeInt(bloom.getHashes());
+            out.writeInt(bloom.getWords().length);
+            for (long word : bloom.getWords()) {
+                out.writeLong(word);
+            }
+            out.writeInt(blocks);
+            for (int i = 0; i < blocks; i++) {
+                out.writeLong(blockFirst[i]);
+                out.writeInt(blockTimestamps[i]);
+                out.writeInt(blockPairs[i]);
+                out.writeInt(blockIps[i]);
+            }
+            out.writeInt(dictionary.size);
+            out.writeInt(timestamps.size);
+            out.writeInt(pairs.size);
+            out.writeInt(ips.size);
+            dictionary.writeTo(out);
+            timestamps.writeTo(out);
+            pairs.writeTo(out);
+            ips.writeTo(out);
+            out.flush();
+            file.getChannel().force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(path);
+    }
+
+    /**
+     * Первая строка блока хранит разность с timestamp начала блока, то есть 0.
+     */
+    private long lastMicros(long micros) {
+        return rows % ColdSegment.BLOCK_ROWS == 0 ? micros : lastMicros;
+    }
+
+    private void startBlock(long micros) {
+        if (blocks == blockFirst.length) {
+            int capacity = blocks * 2;
+            blockFirst = Arrays.copyOf(blockFirst, capacity);
+            blockTimestamps = Arrays.copyOf(blockTimestamps, capacity);
+            blockPairs = Arrays.copyOf(blockPairs, capacity);
+            blockIps = Arrays.copyOf(blockIps, capacity);
+        }
+        blockFirst[blocks] = micros;
+        blockTimestamps[blocks] = timestamps.size;
+        blockPairs[blocks] = pairs.size;
+        blockIps[blocks] = ips.size;
+        blocks++;
+    }
+
+    private int pair(int appId, int uriId) {
+        long key = (long) appId << 32 | Integer.toUnsignedLong(uriId);
+        Integer index = pairIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (pairCount == pairApps.length) {
+            pairApps = Arrays.copyOf(pairApps, pairCount * 2);
+            pairUris = Arrays.copyOf(pairUris, pairCount * 2);
+        }
+        pairApps[pairCount] = appId;
+        pairUris[pairCount] = uriId;
+        pairIndex.put(key, pairCount);
+        return pairCount++;
+    }
+
+    private static final class ByteSink {
+        private byte[] bytes = new byte[1 << 12];
+        private int size;
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            if (utf8.length > MAX_STRING_BYTES) {
+                throw new IllegalArgumentException("Строка длиннее " + MAX_STRING_BYTES + " байт");
+            }
+            ensure(2 + utf8.length);
+            bytes[size++] = (byte) (utf8.length >>> 8);
+            bytes[size++] = (byte) utf8.length;
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+    }
+}
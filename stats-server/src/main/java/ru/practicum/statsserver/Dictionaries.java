@@ -0,0 +1,32 @@
+package ru.practicum.statsserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class Dictionaries {
+
+    private final DimensionDictionary apps;
+    private final DimensionDictionary uris;
+    private final DimensionDictionary ips;
+
+    public Dictionaries(JdbcTemplate jdbcTemplate,
+                        @Value("${stats.dictionary.cache-size:1000000}") long cacheSize) {
+        this.apps = new DimensionDictionary(jdbcTemplate, "dim_app", "name", "varchar", cacheSize);
+        this.uris = new DimensionDictionary(jdbcTemplate, "dim_uri", "uri", "varchar", cacheSize);
+        this.ips = new DimensionDictionary(jdbcTemplate, "dim_ip", "addr", "inet", cacheSize);
+    }
+
+    public DimensionDictionary apps() {
+        return apps;
+    }
+
+    public DimensionDictionary uris() {
+        return uris;
+    }
+
+    public DimensionDictionary ips() {
+        return ips;
+    }
+}
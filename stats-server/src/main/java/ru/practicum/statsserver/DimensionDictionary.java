@@ -0,0 +1,95 @@
+package ru.practicum.statsserver;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Справочник значений измерения (app, uri, ip) с плотными целочисленными идентификаторами и кэшем в памяти.
+ * Запросы идут на соединении текущей транзакции, если она есть, а без неё фиксируются сразу; второе соединение
+ * справочник не берёт. Найденные в транзакции id попадают в кэш только после её фиксации, чтобы в кэше
+ * не остался id вставки, откаченной вместе с транзакцией.
+ */
+public class DimensionDictionary {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final String column;
+    private final String sqlType;
+    private final Cache<String, Integer> cache;
+
+    public DimensionDictionary(JdbcTemplate jdbcTemplate, String table, String column, String sqlType,
+                               long cacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.column = column;
+        this.sqlType = sqlType;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    public Map<String, Integer> resolve(Set<String> values) {
+        Map<String, Integer> ids = new HashMap<>(cache.getAllPresent(values));
+        if (ids.size() == values.size()) {
+            return ids;
+        }
+        String[] missing = values.stream()
+                .filter(value -> !ids.containsKey(value))
+                .sorted()
+                .toArray(String[]::new);
+
+        Map<String, Integer> found = new HashMap<>();
+        load(missing, found);
+        if (ids.size() + found.size() < values.size()) {
+            // Вставляются только отсутствующие значения: конфликты расходуют sequence и делают id менее плотными.
+            // Значения отсортированы, поэтому параллельные вставки берут блокировки в одном порядке
+            String[] absent = Arrays.stream(missing)
+                    .filter(value -> !found.containsKey(value))
+                    .toArray(String[]::new);
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement("INSERT INTO " + table + " (" + column + ") " +
+                        "SELECT k.value::" + sqlType + " FROM unnest(?::text[]) AS k(value) " +
+                        "ON CONFLICT (" + column + ") DO NOTHING");
+                ps.setArray(1, con.createArrayOf("text", absent));
+                return ps;
+            });
+            load(absent, found);
+        }
+        ids.putAll(found);
+        remember(found);
+        return ids;
+    }
+
+    private void remember(Map<String, Integer> found) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.putAll(found);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.putAll(found);
+            }
+        });
+    }
+
+    private void load(String[] values, Map<String, Integer> ids) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT k.value, d.id FROM unnest(?::text[]) AS k(value) " +
+                    "JOIN " + table + " d ON d." + column + " = k.value::" + sqlType);
+            ps.setArray(1, con.createArrayOf("text", values));
+            return ps;
+        }, rs -> {
+            ids.put(rs.getString("value"), rs.getInt("id"));
+        });
+    }
+}
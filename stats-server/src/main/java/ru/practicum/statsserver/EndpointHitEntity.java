@@ -1,32 +0,0 @@
-package ru.practicum.statsserver;
-
-import jakarta.persistence.*;
-import lombok.*;
-
-import java.time.LocalDateTime;
-
-@Entity
-@Table(name = "endpoint_hits")
-@Getter
-@Setter
-@Data
-@Builder
-@NoArgsConstructor
-@AllArgsConstructor
-public class EndpointHitEntity {
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
-
-    @Column(nullable = false)
-    private String app;
-
-    @Column(nullable = false)
-    private String uri;
-
-    @Column(nullable = false)
-    private String ip;
-
-    @Column(nullable = false)
-    private LocalDateTime timestamp;
-}
@@ -80,6 +80,15 @@ public class ErrorHandler {
                 .build();
     }
 
+    /**
+     * Ответ уже начат, поэтому ApiError не пишется: исключение пробрасывается дальше, и контейнер обрывает соединение.
+     */
+    @ExceptionHandler(StatsStreamAbortedException.class)
+    public void handleStreamAborted(StatsStreamAbortedException e) {
+        log.error("{}", e.getMessage(), e.getCause());
+        throw e;
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ApiError handleException(Exception e) {
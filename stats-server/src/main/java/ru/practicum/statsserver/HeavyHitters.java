@@ -0,0 +1,150 @@
+package ru.practicum.statsserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Самые просматриваемые uri за последнее окно времени. Окно разбито на слоты, в каждом — сводка
+ * {@link SpaceSaving} фиксированного размера, которая обновляется при записи хитов. Запрос топа
+ * сливает сводки текущего окна, и его стоимость зависит от числа слотов и ёмкости, а не от трафика.
+ */
+@Component
+public class HeavyHitters implements HitBatchListener {
+
+    private final boolean enabled;
+    private final long slotSeconds;
+    private final int slotCount;
+    private final int capacity;
+    private final AtomicReferenceArray<Slot> ring;
+
+    public HeavyHitters(@Value("${stats.top.live.enabled:true}") boolean enabled,
+                        @Value("${stats.top.live.slot-seconds:300}") long slotSeconds,
+                        @Value("${stats.top.live.slots:12}") int slotCount,
+                        @Value("${stats.top.live.capacity:1000}") int capacity) {
+        this.enabled = enabled;
+        this.slotSeconds = slotSeconds;
+        this.slotCount = slotCount;
+        this.capacity = capacity;
+        this.ring = new AtomicReferenceArray<>(enabled ? slotCount : 0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return длина окна, за которое считается живой топ
+     */
+    public long windowSeconds() {
+        return slotSeconds * slotCount;
+    }
+
+    @Override
+    public void onBatch(HitBatch batch) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(batch.getHits());
+                }
+            });
+        } else {
+            add(batch.getHits());
+        }
+    }
+
+    /**
+     * Приблизительный топ за последние slots * slot-seconds секунд; значения hits могут быть завышены
+     * не больше чем на число хитов слота, делённое на capacity, в каждом слоте.
+     */
+    public List<ViewStats> top(UriFilter filter, int limit) {
+        long current = period(LocalDateTime.now());
+        Map<StatsKey, Long> counts = new HashMap<>();
+        for (long period = current - slotCount + 1; period <= current; period++) {
+            Slot slot = ring.get(index(period));
+            if (slot == null || slot.period != period) {
+                continue;
+            }
+            synchronized (slot) {
+                for (SpaceSaving.Entry<StatsKey> entry : slot.summary.entries()) {
+                    if (filter.matches(entry.getKey().getUri())) {
+                        counts.merge(entry.getKey(), entry.getCount(), Long::sum);
+                    }
+                }
+            }
+        }
+        List<ViewStats> rows = new ArrayList<>(counts.size());
+        counts.forEach((key, count) -> rows.add(new ViewStats(key.getApp(), key.getUri(), count)));
+        return ViewStatsUtil.top(rows, limit);
+    }
+
+    private void add(List<EndpointHit> hits) {
+        Map<Long, Map<StatsKey, Long>> byPeriod = new HashMap<>();
+        for (EndpointHit hit : hits) {
+            byPeriod.computeIfAbsent(period(hit.getTimestamp()), k -> new HashMap<>())
+                    .merge(new StatsKey(hit.getApp(), hit.getUri()), 1L, Long::sum);
+        }
+        byPeriod.forEach((period, counts) -> {
+            Slot slot = slot(period);
+            if (slot == null) {
+                return;
+            }
+            synchronized (slot) {
+                counts.forEach(slot.summary::add);
+            }
+        });
+    }
+
+    /**
+     * @return слот периода или null, если период старше того, что сейчас хранится в его ячейке
+     */
+    private Slot slot(long period) {
+        int index = index(period);
+        while (true) {
+            Slot slot = ring.get(index);
+            if (slot != null && slot.period == period) {
+                return slot;
+            }
+            if (slot != null && slot.period > period) {
+                return null;
+            }
+            Slot fresh = new Slot(period, capacity);
+            if (ring.compareAndSet(index, slot, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private int index(long period) {
+        return (int) Math.floorMod(period, (long) slotCount);
+    }
+
+    private long period(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), slotSeconds);
+    }
+
+    private static final class Slot {
+        private final long period;
+        private final SpaceSaving<StatsKey> summary;
+
+        private Slot(long period, int capacity) {
+            this.period = period;
+            this.summary = new SpaceSaving<>(capacity);
+        }
+    }
+}
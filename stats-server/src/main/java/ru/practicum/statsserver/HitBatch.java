@@ -0,0 +1,32 @@
+package ru.practicum.statsserver;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Пакет хитов вместе с идентификаторами их app, uri и ip из справочников.
+ */
+@Getter
+@AllArgsConstructor
+public class HitBatch {
+    private final List<EndpointHit> hits;
+    private final Map<String, Integer> appIds;
+    private final Map<String, Integer> uriIds;
+    private final Map<String, Integer> ipIds;
+
+    public int appId(EndpointHit hit) {
+        return appIds.get(hit.getApp());
+    }
+
+    public int uriId(EndpointHit hit) {
+        return uriIds.get(hit.getUri());
+    }
+
+    public int ipId(EndpointHit hit) {
+        return ipIds.get(hit.getIp());
+    }
+}
@@ -0,0 +1,8 @@
+package ru.practicum.statsserver;
+
+/**
+ * Вызывается HitBatchWriter в той же транзакции, что и вставка сырых хитов.
+ */
+public interface HitBatchListener {
+    void onBatch(HitBatch batch);
+}
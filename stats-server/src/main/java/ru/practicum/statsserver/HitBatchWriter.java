@@ -0,0 +1,88 @@
+package ru.practicum.statsserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Запись пакета хитов в два шага: {@link #prepare} находит идентификаторы в справочниках до транзакции,
+ * поэтому новые значения справочников фиксируются сразу, а {@link #insert} вставляет хиты и вызывает
+ * слушателей в одной транзакции. Так запись пакета занимает одно соединение из пула, а не два.
+ */
+@Component
+public class HitBatchWriter {
+
+    private static final String INSERT_HIT_SQL =
+            "INSERT INTO endpoint_hits (app_id, uri_id, ip_id, timestamp) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Dictionaries dictionaries;
+    private final List<HitBatchListener> listeners;
+    private final TransactionTemplate transactionTemplate;
+    private final int jdbcBatchSize;
+
+    public HitBatchWriter(JdbcTemplate jdbcTemplate,
+                          Dictionaries dictionaries,
+                          List<HitBatchListener> listeners,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${stats.ingest.jdbc-batch-size:500}") int jdbcBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionaries = dictionaries;
+        this.listeners = listeners;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jdbcBatchSize = jdbcBatchSize;
+    }
+
+    public void write(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        insert(prepare(hits));
+    }
+
+    /**
+     * Идентификаторы app, uri и ip пакета; вызывается вне транзакции пакета.
+     */
+    public HitBatch prepare(List<EndpointHit> hits) {
+        Set<String> apps = new HashSet<>();
+        Set<String> uris = new HashSet<>();
+        Set<String> ips = new HashSet<>();
+        for (EndpointHit hit : hits) {
+            apps.add(hit.getApp());
+            uris.add(hit.getUri());
+            ips.add(hit.getIp());
+        }
+        return new HitBatch(hits,
+                dictionaries.apps().resolve(apps),
+                dictionaries.uris().resolve(uris),
+                dictionaries.ips().resolve(ips));
+    }
+
+    /**
+     * Вставляет подготовленный пакет в текущей транзакции, а если её нет — в своей.
+     */
+    public void insert(HitBatch batch) {
+        if (batch.getHits().isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_HIT_SQL, batch.getHits(), jdbcBatchSize, (ps, hit) -> {
+                ps.setInt(1, batch.appId(hit));
+                ps.setInt(2, batch.uriId(hit));
+                ps.setInt(3, batch.ipId(hit));
+                ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+            });
+            for (HitBatchListener listener : listeners) {
+                listener.onBatch(batch);
+            }
+        });
+    }
+}
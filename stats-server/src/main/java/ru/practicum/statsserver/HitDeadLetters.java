@@ -0,0 +1,66 @@
+package ru.practicum.statsserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.sql.Timestamp;
+
+/**
+ * Хиты, которые уже подтверждены клиенту, но не записываются в БД даже по одному. Такой хит сохраняется
+ * в hit_dead_letter вместе с ошибкой, чтобы его можно было разобрать и дописать вручную, а если недоступна
+ * и эта таблица — пишется в лог. Оба случая считаются в метрике stats.ingest.dead-letter.
+ */
+@Component
+@Slf4j
+public class HitDeadLetters {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO hit_dead_letter (app, uri, ip, timestamp, error) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter stored;
+    private final Counter logged;
+
+    public HitDeadLetters(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stored = counter(meterRegistry, "table");
+        this.logged = counter(meterRegistry, "log");
+    }
+
+    /**
+     * @return false, если не удалось записать и в hit_dead_letter: скорее всего, недоступна сама БД
+     */
+    public boolean store(EndpointHit hit, Exception error) {
+        try {
+            jdbcTemplate.update(INSERT_SQL, hit.getApp(), hit.getUri(), hit.getIp(),
+                    hit.getTimestamp() == null ? null : Timestamp.valueOf(hit.getTimestamp()),
+                    String.valueOf(error.getMessage()));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сохранить недоставленный хит: {}", e.getMessage());
+            return false;
+        }
+        stored.increment();
+        log.warn("Хит не записан и сохранён в hit_dead_letter: {}, ошибка: {}", hit, error.getMessage());
+        return true;
+    }
+
+    /**
+     * Последнее средство, когда хит некуда сохранить: полная запись в лог для ручного восстановления.
+     */
+    public void log(EndpointHit hit, String reason) {
+        logged.increment();
+        log.error("Хит потерян ({}): app={}, uri={}, ip={}, timestamp={}", reason, hit.getApp(), hit.getUri(),
+                hit.getIp(), hit.getTimestamp());
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("stats.ingest.dead-letter")
+                .description("Хиты, не записанные в endpoint_hits")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,314 @@
+package ru.practicum.statsserver;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Буфер отложенной записи хитов: потоки запросов кладут записи в неблокирующую очередь,
+ * фоновый поток сбрасывает их пакетами по достижении batch-size или по таймеру.
+ * Если включён {@link HitWal}, хит подтверждается только после записи в журнал.
+ * <p>
+ * Пакет, который не записался, повторяется один раз при сбросе после паузы, а затем пишется по одной записи:
+ * запись, которая не пишется и отдельно, уходит в {@link HitDeadLetters}, и один плохой хит не останавливает
+ * приём. Если не пишется ничего, БД считается недоступной: остаток пакета повторяется при следующих сбросах
+ * с нарастающей паузой, а новые хиты копятся в буфере до его ёмкости. Паузы выдерживаются между сбросами,
+ * а не под flushLock, поэтому чтения с flush-before-read не ждут их.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HitIngestBuffer {
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final HitBatchWriter hitBatchWriter;
+    private final HitWal hitWal;
+    private final HitDeadLetters deadLetters;
+
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Value("${stats.ingest.buffer.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stats.ingest.buffer.capacity:100000}")
+    private int capacity;
+
+    @Value("${stats.ingest.buffer.batch-size:500}")
+    private int batchSize;
+
+    @Value("${stats.ingest.buffer.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${stats.ingest.buffer.retry-backoff-ms:100}")
+    private long retryBackoffMs;
+
+    @Value("${stats.ingest.buffer.max-retry-backoff-ms:10000}")
+    private long maxRetryBackoffMs;
+
+    private volatile boolean running;
+    private Thread flusher;
+    // Пакет или его остаток, ждущий повтора; меняется под flushLock
+    private volatile List<Pending> retryBatch;
+    private volatile long retryAtNanos;
+    private int retryFailures;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = Thread.ofPlatform()
+                .name("hit-flusher")
+                .daemon(true)
+                .start(this::runFlusher);
+        log.info("Буфер хитов запущен: capacity={}, batchSize={}, flushInterval={}ms",
+                capacity, batchSize, flushIntervalMs);
+    }
+
+    /**
+     * @return false, если буфер выключен или переполнен и запись нужно выполнить синхронно
+     */
+    public boolean offer(EndpointHit hit) {
+        if (!running) {
+            return false;
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        if (hitWal.isEnabled()) {
+            long lsn;
+            try {
+                lsn = hitWal.append(hit, position -> queue.offer(new Pending(hit, position)));
+            } catch (RuntimeException e) {
+                size.decrementAndGet();
+                log.error("Не удалось записать хит в журнал, он будет записан синхронно: {}", e.getMessage());
+                return false;
+            }
+            hitWal.awaitDurable(lsn);
+        } else {
+            queue.offer(new Pending(hit, 0));
+        }
+        if (size.get() >= batchSize) {
+            LockSupport.unpark(flusher);
+        }
+        return true;
+    }
+
+    /**
+     * Принимает хиты по порядку, пока в буфере есть место; с журналом ждёт устойчивости один раз на весь список.
+     *
+     * @return число принятых хитов с начала списка, остальные нужно записать синхронно или отбросить
+     */
+    public int offerAll(List<EndpointHit> hits) {
+        if (!running) {
+            return 0;
+        }
+        int accepted = 0;
+        long lastLsn = -1;
+        for (EndpointHit hit : hits) {
+            if (size.incrementAndGet() > capacity) {
+                size.decrementAndGet();
+                break;
+            }
+            if (hitWal.isEnabled()) {
+                try {
+                    lastLsn = hitWal.append(hit, position -> queue.offer(new Pending(hit, position)));
+                } catch (RuntimeException e) {
+                    size.decrementAndGet();
+                    log.error("Не удалось записать хит в журнал, он будет записан синхронно: {}", e.getMessage());
+                    break;
+                }
+            } else {
+                queue.offer(new Pending(hit, 0));
+            }
+            accepted++;
+        }
+        if (lastLsn >= 0) {
+            hitWal.awaitDurable(lastLsn);
+        }
+        if (size.get() >= batchSize) {
+            LockSupport.unpark(flusher);
+        }
+        return accepted;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public void flush() {
+        if (size.get() == 0 && retryBatch == null && !flushLock.isLocked()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            if (retryBatch != null) {
+                // Пока идёт пауза, сброс не ждёт БД: чтения с flush-before-read не блокируются
+                if (System.nanoTime() - retryAtNanos < 0) {
+                    return;
+                }
+                List<Pending> retry = retryBatch;
+                retryBatch = null;
+                if (!writeBatch(retry, true)) {
+                    return;
+                }
+            }
+            List<Pending> batch = new ArrayList<>(batchSize);
+            Pending pending;
+            while ((pending = queue.poll()) != null) {
+                size.decrementAndGet();
+                batch.add(pending);
+                if (batch.size() == batchSize) {
+                    if (!writeBatch(batch, false)) {
+                        return;
+                    }
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch, false);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(SHUTDOWN_TIMEOUT_MS);
+        flushLock.lock();
+        try {
+            // При остановке паузы перед повтором не выдерживаются: пакет, не записанный целиком, сразу пишется
+            // по одной записи, а сброс продолжается, пока БД не окажется недоступной
+            do {
+                retryAtNanos = System.nanoTime();
+                flush();
+            } while (retryBatch != null && retryFailures == 0);
+            if (!hitWal.isEnabled()) {
+                // Без журнала хиты, оставшиеся в памяти, больше нигде не сохранятся
+                List<Pending> lost = retryBatch == null ? new ArrayList<>() : new ArrayList<>(retryBatch);
+                lost.addAll(queue);
+                lost.forEach(pending -> deadLetters.log(pending.hit(), "БД недоступна при остановке"));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        log.info("Буфер хитов остановлен");
+    }
+
+    private void runFlusher() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (running) {
+            long waitNanos = size.get() < batchSize ? intervalNanos : 0;
+            if (retryBatch != null) {
+                // До конца паузы перед повтором сброс ничего не запишет
+                waitNanos = Math.min(intervalNanos, retryAtNanos - System.nanoTime());
+            }
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Пишет пакет целиком; новый пакет при ошибке откладывается до сброса после паузы retry-backoff-ms,
+     * повторный — пишется по одной записи.
+     *
+     * @return false, если пакет или его остаток оставлен для повтора, и сброс нужно прервать
+     */
+    private boolean writeBatch(List<Pending> batch, boolean retried) {
+        List<EndpointHit> hits = new ArrayList<>(batch.size());
+        batch.forEach(pending -> hits.add(pending.hit()));
+        long lsn = batch.get(batch.size() - 1).lsn();
+        RuntimeException error;
+        try {
+            write(hits, lsn);
+            retryFailures = 0;
+            return true;
+        } catch (RuntimeException e) {
+            error = e;
+            log.warn("Не удалось записать пакет из {} хитов (попытка {}): {}", batch.size(), retried ? 2 : 1,
+                    e.getMessage());
+        }
+        if (!retried) {
+            retryAt(batch, retryBackoffMs);
+            return false;
+        }
+        log.error("Пакет из {} хитов записывается по одной записи: {}", batch.size(), error.getMessage(), error);
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            try {
+                write(List.of(pending.hit()), pending.lsn());
+                continue;
+            } catch (RuntimeException e) {
+                if (!deadLetters.store(pending.hit(), e)) {
+                    return postpone(batch.subList(i, batch.size()));
+                }
+            }
+            if (hitWal.isEnabled()) {
+                try {
+                    // Контрольная точка сдвигается за отложенный хит, чтобы он не повторялся из журнала
+                    hitWal.write(List.of(), pending.lsn());
+                } catch (RuntimeException e) {
+                    return postpone(batch.subList(i + 1, batch.size()));
+                }
+            }
+        }
+        retryFailures = 0;
+        return true;
+    }
+
+    private void write(List<EndpointHit> hits, long lsn) {
+        if (hitWal.isEnabled()) {
+            hitWal.write(hits, lsn);
+        } else {
+            hitBatchWriter.write(hits);
+        }
+    }
+
+    /**
+     * Откладывает остаток пакета до следующего сброса с паузой, удваивающейся до max-retry-backoff-ms.
+     */
+    private boolean postpone(List<Pending> rest) {
+        if (rest.isEmpty()) {
+            return true;
+        }
+        retryFailures++;
+        long backoffMs = Math.min(maxRetryBackoffMs, retryBackoffMs << Math.min(retryFailures, 20));
+        retryAt(rest, backoffMs);
+        log.error("БД недоступна: {} хитов будут записаны повторно через {} мс", rest.size(), backoffMs);
+        return false;
+    }
+
+    private void retryAt(List<Pending> batch, long backoffMs) {
+        retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+        retryBatch = new ArrayList<>(batch);
+    }
+
+    private record Pending(EndpointHit hit, long lsn) {
+    }
+}
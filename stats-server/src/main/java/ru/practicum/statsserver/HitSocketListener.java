@@ -0,0 +1,300 @@
+package ru.practicum.statsserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.HitFrameDecoder;
+import ru.practicum.statsdto.HitWireFormat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Приём хитов кадрами {@link HitWireFormat} через TCP и UDP в обход HTTP и JSON — для самых нагруженных
+ * источников. Каждое соединение TCP читается своим виртуальным потоком в direct-буфер из пула; хиты идут
+ * в тот же {@link HitIngestBuffer}, что и /hit. Если буфер заполнен, остаток пишется синхронно, и пока
+ * запись идёт, соединение не читается: окно TCP закрывается, и тормозит только этот источник.
+ * У UDP обратной связи нет, поэтому хиты, не поместившиеся в буфер, отбрасываются и учитываются в метриках.
+ */
+@Component
+@Slf4j
+public class HitSocketListener {
+
+    private final HitIngestBuffer hitIngestBuffer;
+    private final HitBatchWriter hitBatchWriter;
+    private final boolean enabled;
+    private final int tcpPort;
+    private final int udpPort;
+    private final int bufferSize;
+    private final int maxConnections;
+    private final int udpReceiveBuffer;
+    private final BlockingQueue<ByteBuffer> bufferPool;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+
+    private final Counter tcpHits;
+    private final Counter udpHits;
+    private final Counter tcpInvalid;
+    private final Counter udpInvalid;
+    private final Counter tcpErrors;
+    private final Counter udpErrors;
+    private final Counter udpDropped;
+    private final Counter backpressure;
+    private final Counter rejectedConnections;
+
+    private volatile boolean running;
+    private ServerSocketChannel server;
+    private DatagramChannel datagrams;
+
+    public HitSocketListener(HitIngestBuffer hitIngestBuffer,
+                             HitBatchWriter hitBatchWriter,
+                             MeterRegistry meterRegistry,
+                             @Value("${stats.ingest.socket.enabled:false}") boolean enabled,
+                             @Value("${stats.ingest.socket.tcp-port:9091}") int tcpPort,
+                             @Value("${stats.ingest.socket.udp-port:9092}") int udpPort,
+                             @Value("${stats.ingest.socket.buffer-size:262144}") int bufferSize,
+                             @Value("${stats.ingest.socket.buffer-pool-size:64}") int bufferPoolSize,
+                             @Value("${stats.ingest.socket.max-connections:1024}") int maxConnections,
+                             @Value("${stats.ingest.socket.udp-receive-buffer:4194304}") int udpReceiveBuffer) {
+        this.hitIngestBuffer = hitIngestBuffer;
+        this.hitBatchWriter = hitBatchWriter;
+        this.enabled = enabled;
+        this.tcpPort = tcpPort;
+        this.udpPort = udpPort;
+        this.bufferSize = bufferSize;
+        this.maxConnections = maxConnections;
+        this.udpReceiveBuffer = udpReceiveBuffer;
+        this.bufferPool = new ArrayBlockingQueue<>(bufferPoolSize);
+        this.tcpHits = counter(meterRegistry, "stats.ingest.socket.hits", "Хиты, принятые через сокет", "tcp");
+        this.udpHits = counter(meterRegistry, "stats.ingest.socket.hits", "Хиты, принятые через сокет", "udp");
+        this.tcpInvalid = counter(meterRegistry, "stats.ingest.socket.invalid", "Хиты, не прошедшие проверку", "tcp");
+        this.udpInvalid = counter(meterRegistry, "stats.ingest.socket.invalid", "Хиты, не прошедшие проверку", "udp");
+        this.tcpErrors = counter(meterRegistry, "stats.ingest.socket.errors",
+                "Соединения и датаграммы, отброшенные из-за ошибки", "tcp");
+        this.udpErrors = counter(meterRegistry, "stats.ingest.socket.errors",
+                "Соединения и датаграммы, отброшенные из-за ошибки", "udp");
+        this.udpDropped = counter(meterRegistry, "stats.ingest.socket.dropped",
+                "Хиты UDP, не поместившиеся в буфер", "udp");
+        this.backpressure = counter(meterRegistry, "stats.ingest.socket.backpressure",
+                "Синхронные записи, на время которых соединение перестаёт читаться", "tcp");
+        this.rejectedConnections = counter(meterRegistry, "stats.ingest.socket.connections.rejected",
+                "Соединения сверх max-connections", "tcp");
+        meterRegistry.gaugeCollectionSize("stats.ingest.socket.connections", List.of(), connections);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (bufferSize < HitWireFormat.FRAME_LENGTH_BYTES + HitWireFormat.MAX_RECORD_BYTES) {
+            throw new IllegalStateException("stats.ingest.socket.buffer-size должен вмещать самый длинный кадр: "
+                    + (HitWireFormat.FRAME_LENGTH_BYTES + HitWireFormat.MAX_RECORD_BYTES) + " байт");
+        }
+        running = true;
+        if (tcpPort > 0) {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(tcpPort));
+            Thread.ofVirtual().name("hit-tcp-acceptor").start(this::acceptLoop);
+        }
+        if (udpPort > 0) {
+            datagrams = DatagramChannel.open();
+            datagrams.setOption(StandardSocketOptions.SO_RCVBUF, udpReceiveBuffer);
+            datagrams.bind(new InetSocketAddress(udpPort));
+            Thread.ofVirtual().name("hit-udp-receiver").start(this::receiveLoop);
+        }
+        log.info("Приём хитов через сокет запущен: tcp={}, udp={}, буфер {} байт", tcpPort, udpPort, bufferSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        closeQuietly(server);
+        closeQuietly(datagrams);
+        connections.forEach(HitSocketListener::closeQuietly);
+        log.info("Приём хитов через сокет остановлен");
+    }
+
+    private void acceptLoop() {
+        long connectionNumber = 0;
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.error("Не удалось принять соединение: {}", e.getMessage());
+                continue;
+            }
+            if (connections.size() >= maxConnections) {
+                rejectedConnections.increment();
+                closeQuietly(channel);
+                continue;
+            }
+            connections.add(channel);
+            Thread.ofVirtual().name("hit-tcp-" + ++connectionNumber).start(() -> serve(channel));
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        ByteBuffer buffer = acquireBuffer();
+        HitFrameDecoder decoder = new HitFrameDecoder();
+        List<EndpointHit> hits = new ArrayList<>();
+        String remote = "?";
+        long received = 0;
+        long waits = 0;
+        try (channel) {
+            remote = String.valueOf(channel.getRemoteAddress());
+            boolean headerRead = false;
+            while (running && channel.read(buffer) >= 0) {
+                buffer.flip();
+                if (!headerRead) {
+                    headerRead = HitFrameDecoder.readHeader(buffer);
+                }
+                if (headerRead) {
+                    decodeAll(decoder, buffer, hits);
+                }
+                buffer.compact();
+                if (hits.isEmpty()) {
+                    continue;
+                }
+                received += hits.size();
+                tcpHits.increment(hits.size());
+                List<EndpointHit> valid = validate(hits, tcpInvalid);
+                int accepted = hitIngestBuffer.offerAll(valid);
+                if (accepted < valid.size()) {
+                    // Пока идёт синхронная запись, из соединения не читается, и источник упирается в окно TCP
+                    waits++;
+                    backpressure.increment();
+                    hitBatchWriter.write(valid.subList(accepted, valid.size()));
+                }
+                hits.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (running) {
+                tcpErrors.increment();
+                log.warn("Соединение {} закрыто из-за ошибки после {} хитов: {}", remote, received, e.getMessage());
+            }
+        } finally {
+            connections.remove(channel);
+            releaseBuffer(buffer);
+        }
+        log.info("Соединение {} закрыто: {} хитов, {} синхронных записей", remote, received, waits);
+    }
+
+    private void receiveLoop() {
+        ByteBuffer buffer = acquireBuffer();
+        HitFrameDecoder decoder = new HitFrameDecoder();
+        List<EndpointHit> hits = new ArrayList<>();
+        try {
+            while (running) {
+                buffer.clear();
+                SocketAddress source = datagrams.receive(buffer);
+                buffer.flip();
+                try {
+                    if (!HitFrameDecoder.readHeader(buffer)) {
+                        throw new IOException("датаграмма короче заголовка");
+                    }
+                    decodeAll(decoder, buffer, hits);
+                    if (buffer.hasRemaining()) {
+                        throw new IOException("датаграмма оборвана посреди кадра");
+                    }
+                } catch (IOException e) {
+                    // Целые кадры до ошибки принимаются, остаток датаграммы отбрасывается
+                    udpErrors.increment();
+                    log.debug("Некорректная датаграмма от {}: {}", source, e.getMessage());
+                }
+                if (hits.isEmpty()) {
+                    continue;
+                }
+                udpHits.increment(hits.size());
+                List<EndpointHit> valid = validate(hits, udpInvalid);
+                int accepted = hitIngestBuffer.offerAll(valid);
+                if (accepted < valid.size()) {
+                    udpDropped.increment(valid.size() - accepted);
+                }
+                hits.clear();
+            }
+        } catch (ClosedChannelException ignore) {
+            // Канал закрыт при остановке
+        } catch (IOException e) {
+            log.error("Приём хитов через UDP остановлен из-за ошибки: {}", e.getMessage(), e);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private static void decodeAll(HitFrameDecoder decoder, ByteBuffer buffer, List<EndpointHit> hits)
+            throws IOException {
+        EndpointHit hit;
+        while ((hit = decoder.next(buffer)) != null) {
+            hits.add(hit);
+        }
+    }
+
+    /**
+     * Те же проверки, что у /hit: некорректный хит отбрасывается, ответить источнику здесь нечем.
+     */
+    private static List<EndpointHit> validate(List<EndpointHit> hits, Counter invalid) {
+        List<EndpointHit> valid = new ArrayList<>(hits.size());
+        for (EndpointHit hit : hits) {
+            if (hit.getApp().isBlank() || hit.getUri().isBlank() || !IpAddresses.isValid(hit.getIp())) {
+                invalid.increment();
+            } else {
+                valid.add(hit);
+            }
+        }
+        return valid;
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        // Буферы сверх размера пула освобождает сборщик мусора
+        bufferPool.offer(buffer);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String description, String transport) {
+        return Counter.builder(name)
+                .description(description)
+                .tag("transport", transport)
+                .register(meterRegistry);
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Не удалось закрыть канал: {}", e.getMessage());
+        }
+    }
+}
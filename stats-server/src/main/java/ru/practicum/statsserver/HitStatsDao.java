@@ -0,0 +1,622 @@
+package ru.practicum.statsserver;
+
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsdto.ViewStats;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Запросы статистики. Сырые хиты агрегируются по идентификаторам из справочников,
+ * строки app и uri подставляются только в итоговые строки результата.
+ * Если сырая часть запроса может попасть в архив, хиты из {@link ColdSegmentStore} досчитываются в памяти.
+ */
+@Component
+public class HitStatsDao {
+
+    private static final RowMapper<ViewStats> VIEW_STATS_MAPPER = (rs, rowNum) ->
+            new ViewStats(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"));
+
+    private static final String JOIN_DIMENSIONS =
+            " s JOIN dim_app a ON a.id = s.app_id JOIN dim_uri u ON u.id = s.uri_id";
+
+    private static final String ORDER_BY = " ORDER BY hits DESC, app COLLATE \"C\", uri COLLATE \"C\"";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate streamingJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ColdSegmentStore coldSegmentStore;
+
+    public HitStatsDao(NamedParameterJdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       ColdSegmentStore coldSegmentStore,
+                       @Value("${stats.query.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.coldSegmentStore = coldSegmentStore;
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getJdbcTemplate().getDataSource());
+        streaming.setFetchSize(fetchSize);
+        this.streamingJdbcTemplate = new NamedParameterJdbcTemplate(streaming);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public List<ViewStats> countHits(List<QuerySegment> segments, UriFilter filter) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = hitsSql(segments, filter, params);
+        if (!coldSegmentStore.involves(segments)) {
+            return jdbcTemplate.query("SELECT app, uri, hits FROM (" + sql + ") r" + ORDER_BY, params,
+                    VIEW_STATS_MAPPER);
+        }
+        return coldSegmentStore.read(() -> {
+            Map<StatsKey, Long> hits = new HashMap<>();
+            jdbcTemplate.query(sql, params,
+                    rs -> {
+                        hits.merge(new StatsKey(rs.getString("app"), rs.getString("uri")), rs.getLong("hits"),
+                                Long::sum);
+                    });
+            coldSegmentStore.countHits(segments, filter, hits);
+            return ViewStatsUtil.toSortedList(hits);
+        });
+    }
+
+    /**
+     * Отдаёт строки в порядке выдачи по одной, не собирая результат в памяти: PostgreSQL
+     * читает их серверным курсором порциями по fetch-size, поэтому запрос идёт в транзакции.
+     *
+     * @param after строки до курсора включительно пропускаются, null — с начала
+     * @param limit максимальное число строк, null — без ограничения
+     */
+    public void streamHits(List<QuerySegment> segments, UriFilter filter, StatsCursor after, Integer limit,
+                           Consumer<ViewStats> sink) {
+        if (coldSegmentStore.involves(segments)) {
+            // С архивом результат сливается в памяти, поэтому порядок и страница строятся уже по нему
+            ViewStatsUtil.page(countHits(segments, filter), after, limit, sink);
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder("SELECT app, uri, hits FROM (")
+                .append(hitsSql(segments, filter, params))
+                .append(") r");
+        if (after != null) {
+            sql.append(" WHERE hits < :afterHits OR hits = :afterHits " +
+                    "AND (app COLLATE \"C\", uri COLLATE \"C\") > (:afterApp, :afterUri)");
+            params.addValue("afterHits", after.getHits());
+            params.addValue("afterApp", after.getApp());
+            params.addValue("afterUri", after.getUri());
+        }
+        sql.append(ORDER_BY);
+        if (limit != null) {
+            sql.append(" LIMIT :limit");
+            params.addValue("limit", limit);
+        }
+        readOnlyTransaction.executeWithoutResult(status -> streamingJdbcTemplate.query(sql.toString(), params,
+                rs -> {
+                    sink.accept(VIEW_STATS_MAPPER.mapRow(rs, rs.getRow()));
+                }));
+    }
+
+    /**
+     * Число хитов по бакетам interval: целые бакеты крупных роллапов уже лежат внутри бакета interval,
+     * поэтому строки любого сегмента группируются date_trunc до его начала.
+     */
+    public void countHitsByBucket(List<QuerySegment> segments, RollupGranularity interval, UriFilter filter,
+                                  TimeSeriesBuilder builder) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = hitsSql(segments, filter, params, interval);
+        consistent(coldSegmentStore.involves(segments), () -> {
+            jdbcTemplate.query(sql, params,
+                    rs -> {
+                        builder.add(rs.getTimestamp("bucket").toLocalDateTime(), rs.getString("app"),
+                                rs.getString("uri"), rs.getLong("hits"));
+                    });
+            coldSegmentStore.countHitsByBucket(segments, interval, filter, builder);
+            return null;
+        });
+    }
+
+    /**
+     * Точное число уникальных IP по бакетам interval из сырых хитов.
+     */
+    public void countUniqueByBucket(QuerySegment segment, RollupGranularity interval, UriFilter filter,
+                                    TimeSeriesBuilder builder) {
+        MapSqlParameterSource params = segmentParams(segment);
+        if (coldSegmentStore.involves(segment)) {
+            countUniqueByBucketWithArchive(segment, interval, filter, builder);
+            return;
+        }
+        jdbcTemplate.query("SELECT s.bucket, a.name AS app, u.uri AS uri, s.hits FROM (" +
+                        "SELECT date_trunc('" + interval.getTruncUnit() + "', timestamp) AS bucket, app_id, uri_id, " +
+                        "COUNT(DISTINCT ip_id) AS hits FROM endpoint_hits " +
+                        "WHERE timestamp >= :from AND timestamp < :to" + hitUriFilter(filter, params) +
+                        " GROUP BY 1, 2, 3)" + JOIN_DIMENSIONS, params,
+                rs -> {
+                    builder.add(rs.getTimestamp("bucket").toLocalDateTime(), rs.getString("app"),
+                            rs.getString("uri"), rs.getLong("hits"));
+                });
+    }
+
+    /**
+     * Уникальные IP сырых хитов и архива нельзя сложить числами, поэтому по бакетам объединяются сами идентификаторы.
+     */
+    private void countUniqueByBucketWithArchive(QuerySegment segment, RollupGranularity interval, UriFilter filter,
+                                                TimeSeriesBuilder builder) {
+        MapSqlParameterSource params = segmentParams(segment);
+        coldSegmentStore.read(() -> {
+            Map<LocalDateTime, Map<StatsKey, RoaringBitmap>> ips = new HashMap<>();
+            jdbcTemplate.query("SELECT s.bucket, a.name AS app, u.uri AS uri, s.ip_id FROM (" +
+                            "SELECT DISTINCT date_trunc('" + interval.getTruncUnit() + "', timestamp) AS bucket, " +
+                            "app_id, uri_id, ip_id FROM endpoint_hits " +
+                            "WHERE timestamp >= :from AND timestamp < :to" + hitUriFilter(filter, params) + ")" +
+                            JOIN_DIMENSIONS, params,
+                    rs -> {
+                        bitmap(ips.computeIfAbsent(rs.getTimestamp("bucket").toLocalDateTime(), b -> new HashMap<>()),
+                                rs.getString("app"), rs.getString("uri")).add(rs.getInt("ip_id"));
+                    });
+            coldSegmentStore.distinctIpsByBucket(segment, interval, filter, ips);
+            ips.forEach((bucket, row) -> row.forEach((key, bitmap) ->
+                    builder.add(bucket, key.getApp(), key.getUri(), bitmap.getLongCardinality())));
+            return null;
+        });
+    }
+
+    /**
+     * Точное число уникальных IP по целым дням: дневной битмап объединяется с ещё не свёрнутыми часовыми битмапами
+     * того же дня до подсчёта мощности.
+     */
+    public void countUniqueByDay(QuerySegment segment, UriFilter filter, TimeSeriesBuilder builder) {
+        MapSqlParameterSource params = segmentParams(segment);
+        Map<LocalDateTime, Map<StatsKey, RoaringBitmap>> days = new HashMap<>();
+        jdbcTemplate.query("SELECT s.bucket, a.name AS app, u.uri AS uri, s.bitmap FROM (" +
+                        bitmapsSql(filter, params) + ")" + JOIN_DIMENSIONS, params,
+                rs -> {
+                    bitmap(days.computeIfAbsent(rs.getTimestamp("bucket").toLocalDateTime(), b -> new HashMap<>()),
+                            rs.getString("app"), rs.getString("uri"))
+                            .or(BitmapWriter.CODEC.decode(rs.getBytes("bitmap")));
+                });
+        days.forEach((day, row) -> row.forEach((key, bitmap) ->
+                builder.add(day, key.getApp(), key.getUri(), bitmap.getLongCardinality())));
+    }
+
+    private static String hitsSql(List<QuerySegment> segments, UriFilter filter, MapSqlParameterSource params) {
+        return hitsSql(segments, filter, params, null);
+    }
+
+    /**
+     * @param interval если задан, строки дополнительно группируются по колонке bucket — началу бакета interval
+     */
+    private static String hitsSql(List<QuerySegment> segments, UriFilter filter, MapSqlParameterSource params,
+                                  RollupGranularity interval) {
+        String bucket = interval == null ? "" : "bucket, ";
+        return "SELECT " + (interval == null ? "" : "s.bucket, ") + "a.name AS app, u.uri AS uri, s.hits FROM (" +
+                "SELECT " + bucket + "app_id, uri_id, SUM(hits) AS hits FROM (" +
+                segmentsSql(segments, interval, filter, params) + ") h GROUP BY " + bucket + "app_id, uri_id)" +
+                JOIN_DIMENSIONS;
+    }
+
+    /**
+     * Хиты сегментов через UNION ALL с колонками app_id, uri_id, hits (и bucket, если задан interval).
+     */
+    private static String segmentsSql(List<QuerySegment> segments, RollupGranularity interval, UriFilter filter,
+                                      MapSqlParameterSource params) {
+        String hitUriFilter = hitUriFilter(filter, params);
+        StringJoiner union = new StringJoiner(" UNION ALL ");
+        for (int i = 0; i < segments.size(); i++) {
+            union.add(segmentSql(segments.get(i), String.valueOf(i), interval, hitUriFilter, params));
+        }
+        return union.toString();
+    }
+
+    /**
+     * Хиты одного сегмента с колонками app_id, uri_id, hits (и bucket, если задан interval); границы сегмента
+     * передаются параметрами from и to с суффиксом suffix.
+     */
+    private static String segmentSql(QuerySegment segment, String suffix, RollupGranularity interval,
+                                     String hitUriFilter, MapSqlParameterSource params) {
+        String from = "from" + suffix;
+        String to = "to" + suffix;
+        params.addValue(from, Timestamp.valueOf(segment.getFrom()));
+        params.addValue(to, Timestamp.valueOf(segment.getTo()));
+        String time = segment.isRaw() ? "timestamp" : "bucket";
+        String bucket = interval == null
+                ? ""
+                : "date_trunc('" + interval.getTruncUnit() + "', " + time + ") AS bucket, ";
+        return "SELECT " + bucket + "app_id, uri_id, " + (segment.isRaw() ? "COUNT(*)" : "SUM(hits)") + " AS hits " +
+                "FROM " + (segment.isRaw() ? "endpoint_hits" : segment.getGranularity().getTable()) +
+                " WHERE " + time + " >= :" + from + " AND " + time + " < :" + to + hitUriFilter +
+                (interval == null ? " GROUP BY 1, 2" : " GROUP BY 1, 2, 3");
+    }
+
+    /**
+     * Хиты сегментов из БД без архива по парам идентификаторов {@link LifetimeCounters#pair}: частичные
+     * результаты частей диапазона сливаются в памяти без строк, а app и uri подставляются один раз в конце
+     * через {@link #resolveNames}.
+     */
+    public LongCountMap countHitsByIds(List<QuerySegment> segments, UriFilter filter) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String union = segmentsSql(segments, null, filter, params);
+        LongCountMap hits = new LongCountMap();
+        jdbcTemplate.query("SELECT app_id, uri_id, SUM(hits) AS hits FROM (" + union + ") s GROUP BY 1, 2", params,
+                rs -> {
+                    hits.add(LifetimeCounters.pair(rs.getInt("uri_id"), rs.getInt("app_id")), rs.getLong("hits"));
+                });
+        return hits;
+    }
+
+    /**
+     * Строки результата по хитам из {@link #countHitsByIds} и хитам архива: по одному запросу
+     * к каждому справочнику за строками встретившихся идентификаторов.
+     */
+    public List<ViewStats> resolveNames(LongCountMap hits, Map<StatsKey, Long> archived) {
+        Set<Integer> uriIds = new HashSet<>();
+        Set<Integer> appIds = new HashSet<>();
+        hits.forEach((pair, count) -> {
+            uriIds.add((int) (pair >>> 32));
+            appIds.add((int) pair);
+        });
+        Map<Integer, String> uris = names("SELECT id, uri AS name FROM dim_uri WHERE id = ANY(:ids)", uriIds);
+        Map<Integer, String> apps = names("SELECT id, name FROM dim_app WHERE id = ANY(:ids)", appIds);
+
+        Map<StatsKey, Long> result = new HashMap<>(archived);
+        hits.forEach((pair, count) ->
+                result.merge(new StatsKey(apps.get((int) pair), uris.get((int) (pair >>> 32))), count, Long::sum));
+        return ViewStatsUtil.toSortedList(result);
+    }
+
+    private Map<Integer, String> names(String sql, Set<Integer> ids) {
+        Map<Integer, String> names = new HashMap<>(ids.size() * 2);
+        if (ids.isEmpty()) {
+            return names;
+        }
+        jdbcTemplate.query(sql, new MapSqlParameterSource("ids", ids.toArray(Integer[]::new)),
+                rs -> {
+                    names.put(rs.getInt("id"), rs.getString("name"));
+                });
+        return names;
+    }
+
+    /**
+     * Хиты по вложенным окнам из {@link StatsQueryPlanner#planWindows} одним запросом: строки сегментов
+     * полосы помечаются её номером, и окно i условной агрегацией суммирует полосы 0..i.
+     *
+     * @return хиты по окнам в порядке полос
+     */
+    public Map<StatsKey, long[]> countHitsByWindow(List<List<QuerySegment>> bands, UriFilter filter) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String hitUriFilter = hitUriFilter(filter, params);
+        StringJoiner union = new StringJoiner(" UNION ALL ");
+        for (int band = 0; band < bands.size(); band++) {
+            List<QuerySegment> segments = bands.get(band);
+            for (int i = 0; i < segments.size(); i++) {
+                String suffix = band + "_" + i;
+                union.add("SELECT " + band + " AS band, app_id, uri_id, hits FROM (" +
+                        segmentSql(segments.get(i), suffix, null, hitUriFilter, params) + ") s" + suffix);
+            }
+        }
+        StringJoiner windows = new StringJoiner(", ");
+        StringJoiner columns = new StringJoiner(", ");
+        for (int window = 0; window < bands.size(); window++) {
+            windows.add("COALESCE(SUM(hits) FILTER (WHERE band <= " + window + "), 0) AS w" + window);
+            columns.add("s.w" + window);
+        }
+        String sql = "SELECT a.name AS app, u.uri AS uri, " + columns + " FROM (" +
+                "SELECT app_id, uri_id, " + windows + " FROM (" + union + ") b GROUP BY app_id, uri_id)" +
+                JOIN_DIMENSIONS;
+
+        return consistent(bands.stream().anyMatch(coldSegmentStore::involves), () -> {
+            Map<StatsKey, long[]> hits = new HashMap<>();
+            jdbcTemplate.query(sql, params,
+                    rs -> {
+                        long[] counts = windowCounts(hits, rs.getString("app"), rs.getString("uri"), bands.size());
+                        for (int window = 0; window < counts.length; window++) {
+                            counts[window] += rs.getLong("w" + window);
+                        }
+                    });
+            for (int band = 0; band < bands.size(); band++) {
+                Map<StatsKey, Long> archived = new HashMap<>();
+                coldSegmentStore.countHits(bands.get(band), filter, archived);
+                int first = band;
+                archived.forEach((key, count) -> {
+                    long[] counts = windowCounts(hits, key.getApp(), key.getUri(), bands.size());
+                    for (int window = first; window < counts.length; window++) {
+                        counts[window] += count;
+                    }
+                });
+            }
+            return hits;
+        });
+    }
+
+    /**
+     * Уникальные IP по вложенным окнам: идентификаторы полос объединяются по нарастающей, и после полосы i
+     * накопленный битмап — это посетители окна i. Целые дни берутся из битмапов, если они есть среди сегментов.
+     *
+     * @return уникальные посетители по окнам в порядке полос
+     */
+    public Map<StatsKey, long[]> countUniqueByWindow(List<List<QuerySegment>> bands, UriFilter filter) {
+        return consistent(bands.stream().anyMatch(coldSegmentStore::involves), () -> {
+            Map<StatsKey, RoaringBitmap> bitmaps = new HashMap<>();
+            Map<StatsKey, long[]> visitors = new HashMap<>();
+            for (int band = 0; band < bands.size(); band++) {
+                collectDistinctIps(bands.get(band), filter, bitmaps);
+                int window = band;
+                bitmaps.forEach((key, bitmap) ->
+                        windowCounts(visitors, key.getApp(), key.getUri(), bands.size())[window] =
+                                bitmap.getLongCardinality());
+            }
+            return visitors;
+        });
+    }
+
+    /**
+     * Точное число уникальных IP по сырым хитам одного сегмента.
+     */
+    public List<ViewStats> countUniqueRaw(QuerySegment segment, UriFilter filter) {
+        if (coldSegmentStore.involves(segment)) {
+            return countUniqueExact(List.of(segment), filter);
+        }
+        MapSqlParameterSource params = segmentParams(segment);
+        return jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, s.hits FROM (" +
+                "SELECT app_id, uri_id, COUNT(DISTINCT ip_id) AS hits FROM endpoint_hits " +
+                "WHERE timestamp >= :from AND timestamp < :to" + hitUriFilter(filter, params) +
+                " GROUP BY app_id, uri_id)" + JOIN_DIMENSIONS + " ORDER BY s.hits DESC", params, VIEW_STATS_MAPPER);
+    }
+
+    /**
+     * Оценка числа уникальных IP: целые бакеты берутся из HLL-скетчей, края диапазона
+     * досчитываются по сырым хитам в те же скетчи.
+     */
+    public List<ViewStats> countUniqueApproximate(List<QuerySegment> segments, UriFilter filter) {
+        return consistent(coldSegmentStore.involves(segments), () -> {
+            Map<StatsKey, HyperLogLog> sketches = new HashMap<>();
+            for (QuerySegment segment : segments) {
+                MapSqlParameterSource params = segmentParams(segment);
+                if (segment.isRaw()) {
+                    jdbcTemplate.query(distinctIpsSql(filter, params), params,
+                            rs -> {
+                                sketch(sketches, rs.getString("app"), rs.getString("uri")).addId(rs.getInt("ip_id"));
+                            });
+                } else {
+                    jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, s.sketch FROM (" +
+                                    "SELECT app_id, uri_id, sketch FROM " + segment.getGranularity().getSketchTable() +
+                                    " WHERE bucket >= :from AND bucket < :to" + hitUriFilter(filter, params) + ")" +
+                                    JOIN_DIMENSIONS, params,
+                            rs -> {
+                                sketch(sketches, rs.getString("app"), rs.getString("uri"))
+                                        .merge(HyperLogLog.fromBytes(rs.getBytes("sketch")));
+                            });
+                }
+            }
+            Map<StatsKey, RoaringBitmap> archived = new HashMap<>();
+            coldSegmentStore.distinctIps(segments, filter, archived);
+            archived.forEach((key, ips) -> {
+                HyperLogLog sketch = sketch(sketches, key.getApp(), key.getUri());
+                ips.forEach((IntConsumer) sketch::addId);
+            });
+
+            Map<StatsKey, Long> hits = new HashMap<>(sketches.size());
+            sketches.forEach((key, sketch) -> hits.put(key, sketch.estimate()));
+            return ViewStatsUtil.toSortedList(hits);
+        });
+    }
+
+    /**
+     * Точное число уникальных IP: объединение дневных битмапов и идентификаторов IP с краёв диапазона.
+     */
+    public List<ViewStats> countUniqueExact(List<QuerySegment> segments, UriFilter filter) {
+        return consistent(coldSegmentStore.involves(segments), () -> {
+            Map<StatsKey, RoaringBitmap> bitmaps = new HashMap<>();
+            collectDistinctIps(segments, filter, bitmaps);
+
+            Map<StatsKey, Long> hits = new HashMap<>(bitmaps.size());
+            bitmaps.forEach((key, bitmap) -> hits.put(key, bitmap.getLongCardinality()));
+            return ViewStatsUtil.toSortedList(hits);
+        });
+    }
+
+    /**
+     * Добавляет в bitmaps идентификаторы IP сегментов: сырых, битмапов и архива.
+     */
+    private void collectDistinctIps(List<QuerySegment> segments, UriFilter filter,
+                                    Map<StatsKey, RoaringBitmap> bitmaps) {
+        collectDatabaseIps(segments, filter, bitmaps);
+        coldSegmentStore.distinctIps(segments, filter, bitmaps);
+    }
+
+    /**
+     * Добавляет в bitmaps идентификаторы IP сегментов из БД без архива — для частей диапазона,
+     * которые читаются параллельно и затем объединяются.
+     */
+    public void collectDatabaseIps(List<QuerySegment> segments, UriFilter filter,
+                                   Map<StatsKey, RoaringBitmap> bitmaps) {
+        for (QuerySegment segment : segments) {
+            MapSqlParameterSource params = segmentParams(segment);
+            if (segment.isRaw()) {
+                jdbcTemplate.query(distinctIpsSql(filter, params), params,
+                        rs -> {
+                            bitmap(bitmaps, rs.getString("app"), rs.getString("uri")).add(rs.getInt("ip_id"));
+                        });
+            } else {
+                jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, s.bitmap FROM (" +
+                                bitmapsSql(filter, params) + ")" + JOIN_DIMENSIONS, params,
+                        rs -> {
+                            bitmap(bitmaps, rs.getString("app"), rs.getString("uri"))
+                                    .or(BitmapWriter.CODEC.decode(rs.getBytes("bitmap")));
+                        });
+            }
+        }
+    }
+
+    /**
+     * Оценка числа хитов: сырые сегменты из sampled читаются через TABLESAMPLE BERNOULLI (каждая строка
+     * независимо, как предполагает дисперсия {@link StatsEstimator}), остальные сегменты и архив считаются точно.
+     * SYSTEM читал бы меньше страниц, но выбирает их целиком, и при хитах uri, идущих подряд, интервал
+     * получался бы заниженным. Без REPEATABLE повторный запрос берёт новую выборку, а не ту же самую.
+     */
+    public void sampleHits(List<QuerySegment> exact, List<QuerySegment> sampled, UriFilter filter,
+                           StatsEstimator estimator) {
+        consistent(coldSegmentStore.involves(sampled), () -> {
+            if (!exact.isEmpty()) {
+                countHits(exact, filter).forEach(row -> estimator.addExact(row.getApp(), row.getUri(), row.getHits()));
+            }
+            for (QuerySegment segment : sampled) {
+                MapSqlParameterSource params = segmentParams(segment)
+                        .addValue("percent", estimator.getFraction() * 100);
+                jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, s.hits FROM (" +
+                                "SELECT app_id, uri_id, COUNT(*) AS hits FROM endpoint_hits " +
+                                "TABLESAMPLE BERNOULLI (:percent) " +
+                                "WHERE timestamp >= :from AND timestamp < :to" + hitUriFilter(filter, params) +
+                                " GROUP BY app_id, uri_id)" + JOIN_DIMENSIONS, params,
+                        rs -> {
+                            estimator.addSampled(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"));
+                        });
+            }
+            Map<StatsKey, Long> archived = new HashMap<>();
+            coldSegmentStore.countHits(sampled, filter, archived);
+            archived.forEach((key, hits) -> estimator.addExact(key.getApp(), key.getUri(), hits));
+            return null;
+        });
+    }
+
+    /**
+     * Оценка числа уникальных IP по выборке IP по хешу идентификатора: каждый IP либо учитывается во всех
+     * хитах, либо не учитывается вовсе, поэтому число уникальных в выборке масштабируется без смещения.
+     */
+    public void sampleUnique(QuerySegment segment, UriFilter filter, StatsEstimator estimator) {
+        MapSqlParameterSource params = segmentParams(segment)
+                .addValue("multiplier", StatsEstimator.IP_HASH_MULTIPLIER)
+                .addValue("modulus", StatsEstimator.IP_HASH_MODULUS)
+                .addValue("bound", estimator.ipHashBound());
+        String sampledHits = "FROM endpoint_hits WHERE timestamp >= :from AND timestamp < :to" +
+                " AND ip_id::bigint * :multiplier % :modulus < :bound" + hitUriFilter(filter, params);
+        if (!coldSegmentStore.involves(segment)) {
+            jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, s.hits FROM (" +
+                            "SELECT app_id, uri_id, COUNT(DISTINCT ip_id) AS hits " + sampledHits +
+                            " GROUP BY app_id, uri_id)" + JOIN_DIMENSIONS, params,
+                    rs -> {
+                        estimator.addSampled(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"));
+                    });
+            return;
+        }
+        coldSegmentStore.read(() -> {
+            Map<StatsKey, RoaringBitmap> bitmaps = new HashMap<>();
+            jdbcTemplate.query("SELECT a.name AS app, u.uri AS uri, s.ip_id FROM (" +
+                            "SELECT DISTINCT app_id, uri_id, ip_id " + sampledHits + ")" + JOIN_DIMENSIONS, params,
+                    rs -> {
+                        bitmap(bitmaps, rs.getString("app"), rs.getString("uri")).add(rs.getInt("ip_id"));
+                    });
+            Map<StatsKey, RoaringBitmap> archived = new HashMap<>();
+            coldSegmentStore.distinctIps(List.of(segment), filter, archived);
+            archived.forEach((key, ips) -> {
+                RoaringBitmap target = bitmap(bitmaps, key.getApp(), key.getUri());
+                ips.forEach((IntConsumer) ip -> {
+                    if (estimator.isSampledIp(ip)) {
+                        target.add(ip);
+                    }
+                });
+            });
+            bitmaps.forEach((key, ips) -> estimator.addSampled(key.getApp(), key.getUri(), ips.getLongCardinality()));
+            return null;
+        });
+    }
+
+    /**
+     * Приблизительное число сырых хитов в диапазоне по дневному роллапу — для выбора доли выборки.
+     */
+    public long estimateRawRows(LocalDateTime start, LocalDateTime end) {
+        Long rows = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(hits), 0) FROM hit_rollup_day " +
+                        "WHERE bucket >= :from AND bucket <= :to",
+                new MapSqlParameterSource()
+                        .addValue("from", Timestamp.valueOf(RollupGranularity.DAY.floor(start)))
+                        .addValue("to", Timestamp.valueOf(end)), Long.class);
+        return rows == null ? 0 : rows;
+    }
+
+    /**
+     * Запрос, читающий и БД, и архив, выполняется так, чтобы перенос хитов в архив не пришёлся на его середину.
+     */
+    private <T> T consistent(boolean archived, Supplier<T> query) {
+        return archived ? coldSegmentStore.read(query) : query.get();
+    }
+
+    private static String distinctIpsSql(UriFilter filter, MapSqlParameterSource params) {
+        return "SELECT a.name AS app, u.uri AS uri, s.ip_id FROM (" +
+                "SELECT DISTINCT app_id, uri_id, ip_id FROM endpoint_hits " +
+                "WHERE timestamp >= :from AND timestamp < :to" + hitUriFilter(filter, params) + ")" + JOIN_DIMENSIONS;
+    }
+
+    private static MapSqlParameterSource segmentParams(QuerySegment segment) {
+        return new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(segment.getFrom()))
+                .addValue("to", Timestamp.valueOf(segment.getTo()));
+    }
+
+    private static RoaringBitmap bitmap(Map<StatsKey, RoaringBitmap> bitmaps, String app, String uri) {
+        return bitmaps.computeIfAbsent(new StatsKey(app, uri), k -> new RoaringBitmap());
+    }
+
+    private static long[] windowCounts(Map<StatsKey, long[]> counts, String app, String uri, int windows) {
+        return counts.computeIfAbsent(new StatsKey(app, uri), k -> new long[windows]);
+    }
+
+    private static HyperLogLog sketch(Map<StatsKey, HyperLogLog> sketches, String app, String uri) {
+        return sketches.computeIfAbsent(new StatsKey(app, uri), k -> new HyperLogLog());
+    }
+
+    /**
+     * Дневные битмапы сегмента и ещё не свёрнутые часовые, с колонкой bucket — началом дня. Обе таблицы читаются
+     * одним запросом, то есть в одном снимке: {@link BitmapCompactor} переносит часы в день одной транзакцией,
+     * поэтому каждый час виден ровно один раз.
+     */
+    private static String bitmapsSql(UriFilter filter, MapSqlParameterSource params) {
+        String hitUriFilter = hitUriFilter(filter, params);
+        return "SELECT bucket, app_id, uri_id, bitmap FROM " + BitmapWriter.TABLE +
+                " WHERE bucket >= :from AND bucket < :to" + hitUriFilter +
+                " UNION ALL SELECT date_trunc('day', bucket), app_id, uri_id, bitmap FROM " + BitmapWriter.HOUR_TABLE +
+                " WHERE bucket >= :from AND bucket < :to" + hitUriFilter;
+    }
+
+    /**
+     * Условие для таблиц с колонкой uri_id. Префикс и шаблон без разрешения через {@link UriTrie} проверяются
+     * по справочнику, где LIKE с известным началом идёт по индексу text_pattern_ops.
+     */
+    private static String hitUriFilter(UriFilter filter, MapSqlParameterSource params) {
+        if (filter.isResolved()) {
+            params.addValue("resolvedIds", filter.getResolvedIds());
+            return " AND uri_id = ANY(:resolvedIds)";
+        }
+        String condition = uriCondition(filter, params);
+        return condition.isEmpty() ? "" : " AND uri_id IN (SELECT id FROM dim_uri WHERE " + condition + ")";
+    }
+
+    private static String uriCondition(UriFilter filter, MapSqlParameterSource params) {
+        StringJoiner condition = new StringJoiner(" AND ");
+        if (filter.getUris() != null) {
+            // Один параметр-массив вместо IN со своим параметром на каждый uri
+            params.addValue("uris", filter.getUris().toArray(String[]::new));
+            condition.add("uri = ANY(:uris)");
+        }
+        List<String> likes = filter.likePatterns();
+        for (int i = 0; i < likes.size(); i++) {
+            params.addValue("uriLike" + i, likes.get(i));
+            condition.add("uri LIKE :uriLike" + i);
+        }
+        return condition.toString();
+    }
+}
@@ -0,0 +1,453 @@
+package ru.practicum.statsserver;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал упреждающей записи для хитов, принятых буфером до записи в БД. Записи дописываются
+ * в отображённые в память сегменты фиксированного размера; позиция записи (LSN) — номер сегмента,
+ * умноженный на его размер, плюс смещение конца записи.
+ * <p>
+ * Пакет хитов и LSN его последней записи фиксируются в БД одной транзакцией, поэтому при запуске
+ * повторно вставляются ровно те записи, которых в БД ещё нет, а сегменты до контрольной точки удаляются.
+ * <p>
+ * Сегмент начинается с заголовка: {@link #SEGMENT_MAGIC} (int) и версия формата (int). Формат записи:
+ * длина данных (int), CRC32C данных (int), timestamp в микросекундах от эпохи UTC (long) — той же точности,
+ * что и в БД, — затем app, uri, ip — длина (unsigned short) и UTF-8. Нулевая длина — конец сегмента.
+ */
+@Component
+@Slf4j
+public class HitWal {
+
+    public enum FsyncPolicy {
+        /**
+         * Хит подтверждается после fsync; одновременные записи разделяют один fsync.
+         */
+        ALWAYS,
+        /**
+         * fsync в фоне раз в fsync-interval-ms: при падении ОС теряется не больше этого интервала.
+         */
+        INTERVAL,
+        /**
+         * Сброс на диск на усмотрение ОС; переживает падение процесса, но не ОС.
+         */
+        NONE
+    }
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int SEGMENT_MAGIC = 0x4557414C;
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final long MICROS_PER_SECOND = 1_000_000;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    private static final int MIN_SEGMENT_SIZE = 1 << 20;
+    private static final String SAVE_CHECKPOINT_SQL =
+            "INSERT INTO stats_wal_checkpoint (node, lsn) VALUES (?, ?) " +
+                    "ON CONFLICT (node) DO UPDATE SET lsn = GREATEST(stats_wal_checkpoint.lsn, EXCLUDED.lsn)";
+
+    private final HitBatchWriter hitBatchWriter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+    private final String node;
+    private final int replayBatchSize;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Не synchronized: fsync под монитором закрепил бы виртуальный поток за его потоком-носителем
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final AtomicLong syncedLsn = new AtomicLong();
+    private Segment current;
+    private volatile long writtenLsn;
+    private volatile boolean running;
+    private Thread syncer;
+
+    public HitWal(HitBatchWriter hitBatchWriter,
+                  JdbcTemplate jdbcTemplate,
+                  PlatformTransactionManager transactionManager,
+                  @Value("${stats.wal.enabled:false}") boolean enabled,
+                  @Value("${stats.wal.dir:data/wal}") String dir,
+                  @Value("${stats.wal.segment-size:67108864}") int segmentSize,
+                  @Value("${stats.wal.fsync:interval}") String fsyncPolicy,
+                  @Value("${stats.wal.fsync-interval-ms:100}") long fsyncIntervalMs,
+                  @Value("${stats.wal.node:default}") String node,
+                  @Value("${stats.ingest.buffer.batch-size:500}") int replayBatchSize) {
+        this.hitBatchWriter = hitBatchWriter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.segmentSize = Math.max(segmentSize, MIN_SEGMENT_SIZE);
+        this.fsyncPolicy = FsyncPolicy.valueOf(fsyncPolicy.toUpperCase(Locale.ROOT));
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.node = node;
+        this.replayBatchSize = replayBatchSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(dir);
+        long checkpoint = loadCheckpoint();
+        // Следующий сегмент должен начинаться после контрольной точки, даже если каталог журнала очистили
+        long nextIndex = checkpoint / segmentSize + 1;
+        for (Path file : listSegments()) {
+            long index = segmentIndex(file);
+            replay(file, index, checkpoint);
+            Files.delete(file);
+            nextIndex = Math.max(nextIndex, index + 1);
+        }
+        current = openSegment(nextIndex);
+        segments.add(current);
+        writtenLsn = current.baseLsn;
+        syncedLsn.set(writtenLsn);
+        running = true;
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            syncer = Thread.ofPlatform()
+                    .name("hit-wal-sync")
+                    .daemon(true)
+                    .start(this::runSyncer);
+        }
+        log.info("Журнал хитов открыт: {}, сегмент {} байт, fsync={}", dir.toAbsolutePath(), segmentSize,
+                fsyncPolicy);
+    }
+
+    /**
+     * Дописывает хит в журнал. enqueue вызывается под той же блокировкой, поэтому порядок,
+     * в котором хиты попадают в очередь вызывающего, совпадает с порядком их LSN.
+     *
+     * @return LSN конца записи
+     */
+    public long append(EndpointHit hit, LongConsumer enqueue) {
+        byte[] app = utf8(hit.getApp());
+        byte[] uri = utf8(hit.getUri());
+        byte[] ip = utf8(hit.getIp());
+        int length = Long.BYTES + 3 * Short.BYTES + app.length + uri.length + ip.length;
+        appendLock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Журнал хитов закрыт");
+            }
+            if (current.buffer.remaining() < RECORD_HEADER_BYTES + length) {
+                rotate();
+            }
+            MappedByteBuffer buffer = current.buffer;
+            int start = buffer.position();
+            buffer.position(start + RECORD_HEADER_BYTES);
+            buffer.putLong(toMicros(hit.getTimestamp()));
+            putString(buffer, app);
+            putString(buffer, uri);
+            putString(buffer, ip);
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(start + RECORD_HEADER_BYTES, length));
+            buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+            // Длина пишется последней: недописанная запись читается как конец сегмента
+            buffer.putInt(start, length);
+
+            long lsn = current.baseLsn + buffer.position();
+            current.lastLsn = lsn;
+            writtenLsn = lsn;
+            enqueue.accept(lsn);
+            return lsn;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Ждёт, пока запись станет устойчивой согласно политике fsync.
+     */
+    public void awaitDurable(long lsn) {
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            sync(lsn);
+        }
+    }
+
+    /**
+     * Записывает пакет в БД вместе с LSN его последней записи и удаляет сегменты, целиком попавшие в БД.
+     * Справочники пополняются до транзакции пакета, см. {@link HitBatchWriter}.
+     */
+    public void write(List<EndpointHit> batch, long lsn) {
+        HitBatch prepared = hitBatchWriter.prepare(batch);
+        transactionTemplate.executeWithoutResult(status -> {
+            hitBatchWriter.insert(prepared);
+            jdbcTemplate.update(SAVE_CHECKPOINT_SQL, node, lsn);
+        });
+        truncate(lsn);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        if (syncer != null) {
+            running = false;
+            LockSupport.unpark(syncer);
+            syncer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        appendLock.lock();
+        try {
+            running = false;
+            current.buffer.force();
+            closeQuietly(current);
+        } finally {
+            appendLock.unlock();
+        }
+        log.info("Журнал хитов закрыт");
+    }
+
+    private void sync(long lsn) {
+        if (syncedLsn.get() >= lsn) {
+            return;
+        }
+        // Потоки, пришедшие во время fsync, дожидаются его и чаще всего уже покрыты им
+        syncLock.lock();
+        try {
+            if (syncedLsn.get() >= lsn) {
+                return;
+            }
+            long target;
+            MappedByteBuffer buffer;
+            appendLock.lock();
+            try {
+                target = writtenLsn;
+                buffer = current.buffer;
+            } finally {
+                appendLock.unlock();
+            }
+            buffer.force();
+            syncedLsn.accumulateAndGet(target, Math::max);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void runSyncer() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            try {
+                sync(writtenLsn);
+            } catch (RuntimeException e) {
+                log.error("Не удалось сбросить журнал хитов на диск: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Вызывается под appendLock.
+     */
+    private void rotate() {
+        Segment full = current;
+        full.buffer.force();
+        syncedLsn.accumulateAndGet(full.lastLsn, Math::max);
+        closeQuietly(full);
+        try {
+            current = openSegment(full.index + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать сегмент журнала хитов", e);
+        }
+        segments.add(current);
+    }
+
+    private void truncate(long checkpoint) {
+        appendLock.lock();
+        try {
+            while (segments.size() > 1 && segments.peekFirst().lastLsn <= checkpoint) {
+                Segment segment = segments.pollFirst();
+                try {
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить сегмент журнала {}: {}", segment.path, e.getMessage());
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void replay(Path file, long index, long checkpoint) throws IOException {
+        long base = index * segmentSize;
+        List<EndpointHit> batch = new ArrayList<>(replayBatchSize);
+        long batchLsn = 0;
+        int replayed = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < SEGMENT_HEADER_BYTES || buffer.getInt(0) == 0) {
+                // Заголовок не успел попасть на диск, а с ним и записи с той же страницы: сегмент пуст
+                return;
+            }
+            if (buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(Integer.BYTES) != FORMAT_VERSION) {
+                throw new IllegalStateException("Файл " + file + " не является сегментом журнала версии "
+                        + FORMAT_VERSION);
+            }
+            buffer.position(SEGMENT_HEADER_BYTES);
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining() - Integer.BYTES) {
+                    break;
+                }
+                int expectedCrc = buffer.getInt();
+                CRC32C crc = new CRC32C();
+                crc.update(buffer.slice(start + RECORD_HEADER_BYTES, length));
+                if ((int) crc.getValue() != expectedCrc) {
+                    log.warn("Повреждённая запись в {} на смещении {}, остаток сегмента пропущен", file, start);
+                    break;
+                }
+                EndpointHit hit = readHit(buffer);
+                long lsn = base + buffer.position();
+                if (lsn <= checkpoint) {
+                    continue;
+                }
+                batch.add(hit);
+                batchLsn = lsn;
+                if (batch.size() == replayBatchSize) {
+                    write(batch, batchLsn);
+                    replayed += batch.size();
+                    batch = new ArrayList<>(replayBatchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch, batchLsn);
+            replayed += batch.size();
+        }
+        if (replayed > 0) {
+            log.info("Из журнала {} восстановлено {} хитов", file.getFileName(), replayed);
+        }
+    }
+
+    private long loadCheckpoint() {
+        List<Long> lsn = jdbcTemplate.queryForList("SELECT lsn FROM stats_wal_checkpoint WHERE node = ?",
+                Long.class, node);
+        return lsn.isEmpty() ? 0 : lsn.get(0);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Segment openSegment(long index) throws IOException {
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buffer.putInt(SEGMENT_MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        return new Segment(index, index * segmentSize, path, channel, buffer);
+    }
+
+    private static long segmentIndex(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static EndpointHit readHit(ByteBuffer buffer) {
+        long micros = buffer.getLong();
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND),
+                (int) Math.floorMod(micros, MICROS_PER_SECOND) * 1_000, ZoneOffset.UTC);
+        return new EndpointHit(readString(buffer), readString(buffer), readString(buffer), timestamp);
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * MICROS_PER_SECOND + timestamp.getNano() / 1_000;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Строка длиннее " + MAX_STRING_BYTES + " байт");
+        }
+        return bytes;
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть сегмент журнала {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    private static final class Segment {
+        private final long index;
+        private final long baseLsn;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private long lastLsn;
+
+        private Segment(long index, long baseLsn, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.baseLsn = baseLsn;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.lastLsn = baseLsn;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.practicum.statsserver;
+
+/**
+ * Проверка IP-литералов без обращения к DNS: в dim_ip адреса хранятся как inet,
+ * и одна некорректная строка сорвала бы вставку всего пакета.
+ */
+public final class IpAddresses {
+    private IpAddresses() {
+    }
+
+    public static boolean isValid(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            return false;
+        }
+        return ip.indexOf(':') >= 0 ? isIpv6(ip) : isIpv4(ip);
+    }
+
+    private static boolean isIpv4(String ip) {
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            return false;
+        }
+        for (String part : parts) {
+            if (part.isEmpty() || part.length() > 3) {
+                return false;
+            }
+            int value = 0;
+            for (int i = 0; i < part.length(); i++) {
+                char c = part.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (value > 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIpv6(String ip) {
+        int compressed = ip.indexOf("::");
+        if (compressed >= 0 && ip.indexOf("::", compressed + 1) >= 0) {
+            return false;
+        }
+        String[] groups = ip.split(":", -1);
+        int count = 0;
+        for (int i = 0; i < groups.length; i++) {
+            String group = groups[i];
+            if (group.isEmpty()) {
+                // Пустые группы допустимы только как часть единственного "::"
+                if (compressed < 0) {
+                    return false;
+                }
+                continue;
+            }
+            if (i == groups.length - 1 && group.indexOf('.') >= 0) {
+                if (!isIpv4(group)) {
+                    return false;
+                }
+                count += 2;
+                continue;
+            }
+            if (group.length() > 4 || !isHex(group)) {
+                return false;
+            }
+            count++;
+        }
+        if (compressed < 0) {
+            return count == 8;
+        }
+        // Одиночное ':' на краю адреса (":1::2") недопустимо
+        if (ip.startsWith(":") && !ip.startsWith("::") || ip.endsWith(":") && !ip.endsWith("::")) {
+            return false;
+        }
+        return count < 8;
+    }
+
+    private static boolean isHex(String group) {
+        for (int i = 0; i < group.length(); i++) {
+            if (Character.digit(group.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
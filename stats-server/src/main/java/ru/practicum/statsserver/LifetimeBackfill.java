@@ -0,0 +1,183 @@
+package ru.practicum.statsserver;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Однократно заполняет счётчики за всё время по сырым хитам и архивным сегментам, по диапазону uri_id
+ * за транзакцию и без блокировки таблиц. Пока заполнение идёт, архив не меняется: перенос хитов в сегменты
+ * ждёт блокировку {@link ColdSegmentStore#read}.
+ * <p>
+ * Живая запись тем временем пополняет счётчики в той же транзакции, что и сырые хиты, поэтому к hits
+ * прибавляется только разница «сырые хиты и архив минус счётчик» в одном снимке. Посетители вставляются
+ * в hit_lifetime_visitor так же, как при живой записи: засчитывает посетителя тот, чья вставка прошла.
+ * Если счётчики выключены, отметка о заполнении снимается, счётчики очищаются, и при следующем включении
+ * они строятся заново.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LifetimeBackfill {
+
+    private static final String MIGRATION_NAME = "lifetime-backfill";
+    private static final int CHUNK_SIZE = 10_000;
+    private static final int URIS_PER_CHUNK = 1_000;
+    private static final QuerySegment ALL_TIME =
+            new QuerySegment(null, LifetimeCounters.START, LifetimeCounters.END);
+    private static final String BACKFILL_HITS_SQL =
+            "INSERT INTO hit_lifetime (uri_id, app_id, hits, visitors) " +
+                    "SELECT t.uri_id, t.app_id, t.hits - COALESCE(l.hits, 0), 0 FROM (" +
+                    "SELECT uri_id, app_id, SUM(hits) AS hits FROM (" +
+                    "SELECT uri_id, app_id, COUNT(*) AS hits FROM endpoint_hits " +
+                    "WHERE uri_id >= ? AND uri_id < ? GROUP BY 1, 2 " +
+                    "UNION ALL SELECT * FROM unnest(?::integer[], ?::integer[], ?::bigint[])) h GROUP BY 1, 2) t " +
+                    "LEFT JOIN hit_lifetime l ON l.uri_id = t.uri_id AND l.app_id = t.app_id " +
+                    "WHERE t.hits > COALESCE(l.hits, 0) " +
+                    "ON CONFLICT (uri_id, app_id) DO UPDATE SET hits = hit_lifetime.hits + EXCLUDED.hits";
+    private static final String BACKFILL_VISITORS_SQL =
+            "WITH inserted AS (INSERT INTO hit_lifetime_visitor (uri_id, app_id, ip_id) " +
+                    "SELECT DISTINCT uri_id, app_id, ip_id FROM endpoint_hits WHERE uri_id >= ? AND uri_id < ? " +
+                    "ON CONFLICT DO NOTHING RETURNING uri_id, app_id) " +
+                    "INSERT INTO hit_lifetime (uri_id, app_id, hits, visitors) " +
+                    "SELECT uri_id, app_id, 0, COUNT(*) FROM inserted GROUP BY 1, 2 " +
+                    "ON CONFLICT (uri_id, app_id) DO UPDATE SET visitors = hit_lifetime.visitors + EXCLUDED.visitors";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OneTimeMigration oneTimeMigration;
+    private final LifetimeCounters lifetimeCounters;
+    private final ColdSegmentStore coldSegmentStore;
+    private final Dictionaries dictionaries;
+
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            if (!lifetimeCounters.isEnabled()) {
+                if (jdbcTemplate.update("DELETE FROM stats_migration WHERE name = ?", MIGRATION_NAME) > 0) {
+                    // Без живой записи счётчики устаревают, и при включении строятся с нуля
+                    jdbcTemplate.execute("TRUNCATE " + LifetimeCounters.TABLES);
+                }
+                return;
+            }
+            coldSegmentStore.read(() -> {
+                Archived archived = new Archived();
+                oneTimeMigration.run(MIGRATION_NAME, () -> {
+                    archived.load();
+                    return uriChunks();
+                }, chunk -> backfillUris(chunk, archived));
+                return null;
+            });
+            ready = true;
+        } catch (RuntimeException e) {
+            log.error("Не удалось заполнить счётчики за всё время, статистика будет считаться по всей истории: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    private OneTimeMigration.Chunks uriChunks() {
+        Map<String, Object> range = jdbcTemplate.queryForMap("SELECT min(id) AS first, max(id) AS last FROM dim_uri");
+        if (range.get("first") == null) {
+            return null;
+        }
+        return new OneTimeMigration.Chunks(((Number) range.get("first")).longValue() / URIS_PER_CHUNK,
+                ((Number) range.get("last")).longValue() / URIS_PER_CHUNK);
+    }
+
+    private void backfillUris(long chunk, Archived archived) {
+        int fromUri = (int) (chunk * URIS_PER_CHUNK);
+        int toUri = fromUri + URIS_PER_CHUNK;
+        NavigableMap<Long, Long> archivedHits = archived.hits.subMap(
+                LifetimeCounters.pair(fromUri, 0), true, LifetimeCounters.pair(toUri, 0), false);
+        List<Integer> uriIds = new ArrayList<>(archivedHits.size());
+        List<Integer> appIds = new ArrayList<>(archivedHits.size());
+        List<Long> hits = new ArrayList<>(archivedHits.size());
+        archivedHits.forEach((pair, count) -> {
+            uriIds.add((int) (pair >>> 32));
+            appIds.add((int) pair.longValue());
+            hits.add(count);
+        });
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(BACKFILL_HITS_SQL);
+            ps.setInt(1, fromUri);
+            ps.setInt(2, toUri);
+            ps.setArray(3, con.createArrayOf("integer", uriIds.toArray()));
+            ps.setArray(4, con.createArrayOf("integer", appIds.toArray()));
+            ps.setArray(5, con.createArrayOf("bigint", hits.toArray()));
+            return ps;
+        });
+        jdbcTemplate.update(BACKFILL_VISITORS_SQL, fromUri, toUri);
+
+        Map<Long, long[]> visitors = new TreeMap<>();
+        List<LifetimeCounters.Visitor> batch = new ArrayList<>(CHUNK_SIZE);
+        archived.ips.subMap(LifetimeCounters.pair(fromUri, 0), true, LifetimeCounters.pair(toUri, 0), false)
+                .forEach((pair, ips) -> {
+                    int uriId = (int) (pair >>> 32);
+                    int appId = (int) pair.longValue();
+                    for (int ipId : ips) {
+                        batch.add(new LifetimeCounters.Visitor(uriId, appId, ipId));
+                        if (batch.size() == CHUNK_SIZE) {
+                            insertVisitors(batch, visitors);
+                        }
+                    }
+                });
+        insertVisitors(batch, visitors);
+        lifetimeCounters.addCounts(visitors);
+    }
+
+    private void insertVisitors(List<LifetimeCounters.Visitor> batch, Map<Long, long[]> visitors) {
+        lifetimeCounters.insertVisitors(batch, rs -> visitors.computeIfAbsent(
+                LifetimeCounters.pair(rs.getInt("uri_id"), rs.getInt("app_id")), k -> new long[2])[1]++);
+        batch.clear();
+    }
+
+    /**
+     * Хиты и IP из архивных сегментов по парам {@link LifetimeCounters#pair}, упорядоченным по uri_id.
+     */
+    private class Archived {
+        private final TreeMap<Long, Long> hits = new TreeMap<>();
+        private final TreeMap<Long, RoaringBitmap> ips = new TreeMap<>();
+
+        void load() {
+            Map<StatsKey, Long> archivedHits = new HashMap<>();
+            Map<StatsKey, RoaringBitmap> archivedIps = new HashMap<>();
+            coldSegmentStore.countHits(List.of(ALL_TIME), UriFilter.ALL, archivedHits);
+            coldSegmentStore.distinctIps(List.of(ALL_TIME), UriFilter.ALL, archivedIps);
+            if (archivedHits.isEmpty()) {
+                return;
+            }
+            Set<String> apps = new HashSet<>();
+            Set<String> uris = new HashSet<>();
+            archivedHits.keySet().forEach(key -> {
+                apps.add(key.getApp());
+                uris.add(key.getUri());
+            });
+            Map<String, Integer> appIds = dictionaries.apps().resolve(apps);
+            Map<String, Integer> uriIds = dictionaries.uris().resolve(uris);
+            archivedHits.forEach((key, count) ->
+                    hits.put(LifetimeCounters.pair(uriIds.get(key.getUri()), appIds.get(key.getApp())), count));
+            archivedIps.forEach((key, bitmap) ->
+                    ips.put(LifetimeCounters.pair(uriIds.get(key.getUri()), appIds.get(key.getApp())), bitmap));
+            log.info("Для счётчиков за всё время прочитан архив: {} пар uri/app", hits.size());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package ru.practicum.statsserver;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.ViewStats;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Счётчики за всё время по (uri, app): число хитов и число уникальных IP. Тройка (uri, app, ip) вставляется
+ * в hit_lifetime_visitor при первом появлении, и посетитель засчитывается, только если вставка прошла.
+ * Статистика за всё время поэтому читается по первичному ключу uri при любом объёме истории.
+ */
+@Component
+public class LifetimeCounters implements HitBatchListener {
+
+    static final String TABLES = "hit_lifetime, hit_lifetime_visitor";
+
+    /**
+     * Диапазон, которым статистика за всё время считается обычным запросом, пока счётчики не заполнены.
+     */
+    static final LocalDateTime START = LocalDateTime.of(1970, 1, 1, 0, 0);
+    static final LocalDateTime END = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private static final String INSERT_VISITORS_SQL =
+            "INSERT INTO hit_lifetime_visitor (uri_id, app_id, ip_id) " +
+                    "SELECT * FROM unnest(?::integer[], ?::integer[], ?::integer[]) " +
+                    "ON CONFLICT DO NOTHING RETURNING uri_id, app_id";
+    private static final String UPSERT_COUNTS_SQL =
+            "INSERT INTO hit_lifetime (uri_id, app_id, hits, visitors) " +
+                    "SELECT * FROM unnest(?::integer[], ?::integer[], ?::bigint[], ?::bigint[]) " +
+                    "ON CONFLICT (uri_id, app_id) DO UPDATE SET hits = hit_lifetime.hits + EXCLUDED.hits, " +
+                    "visitors = hit_lifetime.visitors + EXCLUDED.visitors";
+    private static final String SELECT_SQL =
+            "SELECT a.name AS app, u.uri AS uri, l.hits, l.visitors " +
+                    "FROM hit_lifetime l JOIN dim_uri u ON u.id = l.uri_id JOIN dim_app a ON a.id = l.app_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    public LifetimeCounters(JdbcTemplate jdbcTemplate,
+                            @Value("${stats.lifetime.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onBatch(HitBatch batch) {
+        if (!enabled) {
+            return;
+        }
+        // Ключи упорядочены, чтобы параллельные пакеты блокировали строки в одном порядке
+        Map<Long, long[]> counts = new TreeMap<>();
+        TreeSet<Visitor> visitors = new TreeSet<>();
+        for (EndpointHit hit : batch.getHits()) {
+            int uriId = batch.uriId(hit);
+            int appId = batch.appId(hit);
+            counts.computeIfAbsent(pair(uriId, appId), k -> new long[2])[0]++;
+            visitors.add(new Visitor(uriId, appId, batch.ipId(hit)));
+        }
+        insertVisitors(visitors, rs -> counts.get(pair(rs.getInt("uri_id"), rs.getInt("app_id")))[1]++);
+        addCounts(counts);
+    }
+
+    /**
+     * @return хиты или уникальные посетители за всё время по uri из фильтра, в порядке выдачи /stats
+     */
+    public List<ViewStats> getStats(UriFilter filter, boolean unique) {
+        Map<StatsKey, Long> result = new HashMap<>();
+        RowCallbackHandler collect = rs -> {
+            String uri = rs.getString("uri");
+            if (filter.matches(uri)) {
+                result.put(new StatsKey(rs.getString("app"), uri), rs.getLong(unique ? "visitors" : "hits"));
+            }
+        };
+        if (filter.getUris() == null) {
+            jdbcTemplate.query(SELECT_SQL, collect);
+        } else {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(SELECT_SQL + " WHERE u.uri = ANY(?)");
+                ps.setArray(1, con.createArrayOf("varchar", filter.getUris().toArray()));
+                return ps;
+            }, collect);
+        }
+        return ViewStatsUtil.toSortedList(result);
+    }
+
+    /**
+     * Вставляет ещё не встречавшиеся тройки; handler получает (uri_id, app_id) каждой вставленной.
+     */
+    void insertVisitors(Iterable<Visitor> visitors, RowCallbackHandler handler) {
+        List<Integer> uriIds = new ArrayList<>();
+        List<Integer> appIds = new ArrayList<>();
+        List<Integer> ipIds = new ArrayList<>();
+        for (Visitor visitor : visitors) {
+            uriIds.add(visitor.uriId());
+            appIds.add(visitor.appId());
+            ipIds.add(visitor.ipId());
+        }
+        if (uriIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(INSERT_VISITORS_SQL);
+            ps.setArray(1, con.createArrayOf("integer", uriIds.toArray()));
+            ps.setArray(2, con.createArrayOf("integer", appIds.toArray()));
+            ps.setArray(3, con.createArrayOf("integer", ipIds.toArray()));
+            return ps;
+        }, handler);
+    }
+
+    /**
+     * Прибавляет {хиты, посетители} к счётчикам пар из {@link #pair}.
+     */
+    void addCounts(Map<Long, long[]> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        List<Integer> uriIds = new ArrayList<>(counts.size());
+        List<Integer> appIds = new ArrayList<>(counts.size());
+        List<Long> hits = new ArrayList<>(counts.size());
+        List<Long> visitors = new ArrayList<>(counts.size());
+        counts.forEach((pair, count) -> {
+            uriIds.add((int) (pair >>> 32));
+            appIds.add((int) pair.longValue());
+            hits.add(count[0]);
+            visitors.add(count[1]);
+        });
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(UPSERT_COUNTS_SQL);
+            ps.setArray(1, con.createArrayOf("integer", uriIds.toArray()));
+            ps.setArray(2, con.createArrayOf("integer", appIds.toArray()));
+            ps.setArray(3, con.createArrayOf("bigint", hits.toArray()));
+            ps.setArray(4, con.createArrayOf("bigint", visitors.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Ключ пары, упорядоченный как первичный ключ hit_lifetime: сначала uri_id, затем app_id.
+     */
+    static long pair(int uriId, int appId) {
+        return ((long) uriId << 32) | (appId & 0xFFFFFFFFL);
+    }
+
+    record Visitor(int uriId, int appId, int ipId) implements Comparable<Visitor> {
+        @Override
+        public int compareTo(Visitor other) {
+            int byPair = Long.compare(pair(uriId, appId), pair(other.uriId, other.appId));
+            return byPair != 0 ? byPair : Integer.compare(ipId, other.ipId);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.practicum.statsserver;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@Slf4j
+public class NdjsonHitReader {
+
+    private final ObjectReader hitReader;
+
+    public NdjsonHitReader(ObjectMapper objectMapper) {
+        this.hitReader = objectMapper.readerFor(EndpointHit.class);
+    }
+
+    /**
+     * Читает по одной записи на строку. Строки, которые не удалось разобрать,
+     * попадают в результат как null, чтобы сохранить индексы записей в пакете.
+     */
+    public List<EndpointHit> read(InputStream body) throws IOException {
+        List<EndpointHit> hits = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                hits.add(hitReader.readValue(line));
+            } catch (IOException e) {
+                log.warn("Не удалось разобрать запись #{}: {}", hits.size(), e.getMessage());
+                hits.add(null);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Читает JSON-массив по одному элементу. Элемент сначала разбирается в дерево, поэтому запись
+     * с неверными полями или типами попадает в результат как null, а разбор остального массива
+     * продолжается; синтаксическая ошибка JSON обрывает весь пакет.
+     */
+    public List<EndpointHit> readArray(InputStream body) throws IOException {
+        List<EndpointHit> hits = new ArrayList<>();
+        try (JsonParser parser = hitReader.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Ожидается JSON-массив хитов");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new IllegalArgumentException("JSON-массив хитов оборван после записи #" + hits.size());
+                }
+                JsonNode node = hitReader.readTree(parser);
+                try {
+                    hits.add(node.isNull() ? null : hitReader.readValue(node));
+                } catch (IOException e) {
+                    log.warn("Не удалось разобрать запись #{}: {}", hits.size(), e.getMessage());
+                    hits.add(null);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Некорректный JSON после записи #" + hits.size() + ": "
+                    + e.getOriginalMessage(), e);
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,110 @@
+package ru.practicum.statsserver;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Выполняет пересчёт агрегатов ровно один раз, отмечая его в stats_migration.
+ * <p>
+ * Пересчёт идёт частями (например, днями) без блокировки таблиц: запись хитов не останавливается.
+ * Каждая часть выполняется в своей транзакции вместе со сдвигом водяной отметки stats_migration.watermark —
+ * номера следующей части, поэтому после перезапуска пересчёт продолжается с неё. Строка stats_migration
+ * блокируется на время части, и два экземпляра не пересчитывают одно и то же одновременно.
+ * Часть должна сходиться с живой записью сама: дописывать разницу между сырыми хитами и агрегатом,
+ * прочитанными в одном снимке, или объединять значения идемпотентно.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OneTimeMigration {
+
+    private static final int CHUNK_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Номера первой и последней части, включительно.
+     */
+    public record Chunks(long first, long last) {
+    }
+
+    /**
+     * @param chunks части, которые нужно пересчитать, или null, если пересчитывать нечего; вызывается,
+     *               только если пересчёт ещё не завершён
+     */
+    public void run(String name, Supplier<Chunks> chunks, LongConsumer migration) {
+        jdbcTemplate.update("INSERT INTO stats_migration (name) VALUES (?) ON CONFLICT (name) DO NOTHING", name);
+        if (isCompleted(name)) {
+            return;
+        }
+        Chunks range = chunks.get();
+        if (range != null) {
+            Long watermark = jdbcTemplate.queryForObject(
+                    "SELECT watermark FROM stats_migration WHERE name = ?", Long.class, name);
+            long first = watermark == null ? range.first() : Math.max(range.first(), watermark);
+            for (long chunk = first; chunk <= range.last(); chunk++) {
+                runChunk(name, chunk, migration);
+            }
+            log.info("Пересчёт {} завершён: части {}..{}", name, range.first(), range.last());
+        }
+        jdbcTemplate.update("UPDATE stats_migration SET completed_at = now() WHERE name = ?", name);
+    }
+
+    /**
+     * Дни с сырыми хитами, номера — {@link LocalDate#toEpochDay()}.
+     */
+    public Chunks hitDays() {
+        Map<String, Object> range = jdbcTemplate.queryForMap(
+                "SELECT min(timestamp) AS first, max(timestamp) AS last FROM endpoint_hits");
+        if (range.get("first") == null) {
+            return null;
+        }
+        return new Chunks(((Timestamp) range.get("first")).toLocalDateTime().toLocalDate().toEpochDay(),
+                ((Timestamp) range.get("last")).toLocalDateTime().toLocalDate().toEpochDay());
+    }
+
+    public static LocalDateTime dayStart(long chunk) {
+        return LocalDate.ofEpochDay(chunk).atStartOfDay();
+    }
+
+    private boolean isCompleted(String name) {
+        return jdbcTemplate.queryForObject("SELECT completed_at IS NOT NULL FROM stats_migration WHERE name = ?",
+                Boolean.class, name);
+    }
+
+    private void runChunk(String name, long chunk, LongConsumer migration) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    // Блокировка строки отметки: часть, уже пересчитанная другим экземпляром, пропускается
+                    Long watermark = jdbcTemplate.queryForObject(
+                            "SELECT watermark FROM stats_migration WHERE name = ? FOR UPDATE", Long.class, name);
+                    if (watermark != null && watermark > chunk) {
+                        return;
+                    }
+                    migration.accept(chunk);
+                    jdbcTemplate.update("UPDATE stats_migration SET watermark = ? WHERE name = ?", chunk + 1, name);
+                });
+                return;
+            } catch (PessimisticLockingFailureException e) {
+                // Взаимоблокировка с живой записью: часть откатилась целиком и повторяется
+                if (attempt == CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Часть {} пересчёта {} будет повторена: {}", chunk, name, e.getMessage());
+            }
+        }
+    }
+}
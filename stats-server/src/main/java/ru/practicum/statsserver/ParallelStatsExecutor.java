@@ -0,0 +1,170 @@
+package ru.practicum.statsserver;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Параллельное выполнение /stats по длинным диапазонам: диапазон делится на части по границам суток
+ * ({@link StatsQueryPlanner#planSplit}), части читаются из БД одновременно, каждая своим соединением,
+ * и частичные результаты сливаются в памяти. Пул потоков общий для всех запросов, поэтому одновременно
+ * занято не больше threads соединений, сколько бы длинных запросов ни пришло. Неуникальные хиты
+ * складываются точно по парам идентификаторов в {@link LongCountMap}; уникальные посетители
+ * объединяются битмапами IP. Архив досчитывается один раз по всему диапазону.
+ */
+@Component
+@Slf4j
+public class ParallelStatsExecutor {
+
+    private final HitStatsDao hitStatsDao;
+    private final StatsQueryPlanner queryPlanner;
+    private final ColdSegmentStore coldSegmentStore;
+    private final boolean enabled;
+    private final int threads;
+    private final long minRangeDays;
+    private final ExecutorService executor;
+
+    public ParallelStatsExecutor(HitStatsDao hitStatsDao,
+                                 StatsQueryPlanner queryPlanner,
+                                 ColdSegmentStore coldSegmentStore,
+                                 @Value("${stats.query.parallel.enabled:true}") boolean enabled,
+                                 @Value("${stats.query.parallel.threads:0}") int threads,
+                                 @Value("${stats.query.parallel.min-range-days:7}") long minRangeDays,
+                                 @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
+        this.hitStatsDao = hitStatsDao;
+        this.queryPlanner = queryPlanner;
+        this.coldSegmentStore = coldSegmentStore;
+        // По умолчанию по числу ядер, но не больше половины пула соединений: остальные нужны записи и коротким запросам
+        this.threads = threads > 0
+                ? threads
+                : Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), connectionPoolSize / 2));
+        this.enabled = enabled && this.threads > 1;
+        this.minRangeDays = minRangeDays;
+        this.executor = Executors.newFixedThreadPool(this.threads,
+                Thread.ofPlatform().name("stats-query-", 0).daemon(true).factory());
+        log.info("Параллельное выполнение запросов: enabled={}, threads={}, minRangeDays={}",
+                this.enabled, this.threads, minRangeDays);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return true, если диапазон достаточно длинный, чтобы делить его на части
+     */
+    public boolean applies(LocalDateTime start, LocalDateTime end) {
+        return enabled && ChronoUnit.DAYS.between(start, end) >= minRangeDays;
+    }
+
+    /**
+     * Неуникальные хиты в порядке выдачи /stats.
+     *
+     * @param plan разбиение части диапазона на сегменты, например {@link StatsQueryPlanner#plan}
+     */
+    public List<ViewStats> countHits(LocalDateTime start, LocalDateTime end, UriFilter filter,
+                                     BiFunction<LocalDateTime, LocalDateTime, List<QuerySegment>> plan) {
+        List<List<QuerySegment>> parts = queryPlanner.planSplit(start, end, threads, plan);
+        List<QuerySegment> segments = parts.stream().flatMap(List::stream).toList();
+        return consistent(segments, () -> {
+            List<Callable<LongCountMap>> tasks = new ArrayList<>(parts.size());
+            for (List<QuerySegment> part : parts) {
+                tasks.add(() -> hitStatsDao.countHitsByIds(part, filter));
+            }
+            List<LongCountMap> partials = invokeAll(tasks);
+            // Самая большая часть становится итоговой таблицей, остальные прибавляются к ней
+            LongCountMap hits = partials.stream()
+                    .max(Comparator.comparingInt(LongCountMap::size))
+                    .orElseGet(LongCountMap::new);
+            for (LongCountMap partial : partials) {
+                if (partial != hits) {
+                    hits.addAll(partial);
+                }
+            }
+            Map<StatsKey, Long> archived = new HashMap<>();
+            coldSegmentStore.countHits(segments, filter, archived);
+            return hitStatsDao.resolveNames(hits, archived);
+        });
+    }
+
+    /**
+     * Точное число уникальных IP в порядке выдачи /stats: посетители частей пересекаются, поэтому
+     * объединяются не числа, а битмапы идентификаторов IP.
+     *
+     * @param plan разбиение части диапазона на сегменты, например {@link StatsQueryPlanner#planBitmaps}
+     */
+    public List<ViewStats> countUnique(LocalDateTime start, LocalDateTime end, UriFilter filter,
+                                       BiFunction<LocalDateTime, LocalDateTime, List<QuerySegment>> plan) {
+        List<List<QuerySegment>> parts = queryPlanner.planSplit(start, end, threads, plan);
+        List<QuerySegment> segments = parts.stream().flatMap(List::stream).toList();
+        return consistent(segments, () -> {
+            List<Callable<Map<StatsKey, RoaringBitmap>>> tasks = new ArrayList<>(parts.size());
+            for (List<QuerySegment> part : parts) {
+                tasks.add(() -> {
+                    Map<StatsKey, RoaringBitmap> bitmaps = new HashMap<>();
+                    hitStatsDao.collectDatabaseIps(part, filter, bitmaps);
+                    return bitmaps;
+                });
+            }
+            Map<StatsKey, RoaringBitmap> bitmaps = new HashMap<>();
+            for (Map<StatsKey, RoaringBitmap> partial : invokeAll(tasks)) {
+                partial.forEach((key, bitmap) -> bitmaps.merge(key, bitmap, (merged, next) -> {
+                    merged.or(next);
+                    return merged;
+                }));
+            }
+            coldSegmentStore.distinctIps(segments, filter, bitmaps);
+
+            Map<StatsKey, Long> hits = new HashMap<>(bitmaps.size());
+            bitmaps.forEach((key, bitmap) -> hits.put(key, bitmap.getLongCardinality()));
+            return ViewStatsUtil.toSortedList(hits);
+        });
+    }
+
+    /**
+     * Части читаются из БД в потоках пула, архив — в вызывающем потоке; блокировка чтения архива
+     * берётся на весь запрос, чтобы перенос хитов в архив не пришёлся на его середину.
+     */
+    private <T> T consistent(List<QuerySegment> segments, Supplier<T> query) {
+        return coldSegmentStore.involves(segments) ? coldSegmentStore.read(query) : query.get();
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Параллельный запрос статистики прерван", e);
+        } catch (ExecutionException e) {
+            // Ошибка части пробрасывается как есть, чтобы обработка не отличалась от последовательного запроса
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка части запроса статистики: " + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ru.practicum.statsserver;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+@Getter
+@RequiredArgsConstructor
+public enum PartitionInterval {
+    DAY(DateTimeFormatter.ofPattern("yyyyMMdd"), "day"),
+    MONTH(DateTimeFormatter.ofPattern("yyyyMM"), "month");
+
+    private final DateTimeFormatter suffixFormat;
+    private final String truncUnit;
+
+    public LocalDate floor(LocalDate date) {
+        return this == DAY ? date : date.withDayOfMonth(1);
+    }
+
+    public LocalDate next(LocalDate start) {
+        return this == DAY ? start.plusDays(1) : start.plusMonths(1);
+    }
+
+    public LocalDate minus(LocalDate start, int count) {
+        return this == DAY ? start.minusDays(count) : start.minusMonths(count);
+    }
+
+    public LocalDate parseSuffix(String suffix) {
+        return this == DAY
+                ? LocalDate.parse(suffix, suffixFormat)
+                : LocalDate.parse(suffix + "01", DAY.suffixFormat);
+    }
+}
@@ -0,0 +1,163 @@
+package ru.practicum.statsserver;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Ведёт range-партиции endpoint_hits по timestamp: заранее создаёт будущие партиции
+ * и отсоединяет или удаляет партиции старше срока хранения. Агрегаты (роллапы, скетчи, битмапы)
+ * при этом сохраняются, поэтому статистика по старым периодам продолжает считаться по целым бакетам.
+ */
+@Component
+@Slf4j
+public class PartitionManager {
+
+    private static final String TABLE = "endpoint_hits";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final String PARTITION_PREFIX = TABLE + "_p";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final PartitionInterval interval;
+    private final int precreate;
+    private final int retention;
+    private final boolean dropExpired;
+
+    public PartitionManager(JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${stats.partitioning.enabled:true}") boolean enabled,
+                            @Value("${stats.partitioning.interval:day}") String interval,
+                            @Value("${stats.partitioning.precreate:7}") int precreate,
+                            @Value("${stats.partitioning.retention:0}") int retention,
+                            @Value("${stats.partitioning.retention-action:detach}") String retentionAction) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.interval = PartitionInterval.valueOf(interval.toUpperCase());
+        this.precreate = precreate;
+        this.retention = retention;
+        this.dropExpired = "drop".equalsIgnoreCase(retentionAction);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.partitioning.check-interval-ms:3600000}",
+            initialDelayString = "${stats.partitioning.check-interval-ms:3600000}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (!isPartitioned()) {
+                log.warn("Таблица {} не партиционирована (создана до перехода на партиции), " +
+                        "обслуживание партиций пропущено", TABLE);
+                return;
+            }
+            LocalDate current = interval.floor(LocalDate.now());
+            for (LocalDate period : defaultPeriods(current)) {
+                createPartition(period);
+            }
+            LocalDate start = current;
+            for (int i = 0; i <= precreate; i++) {
+                createPartition(start);
+                start = interval.next(start);
+            }
+            if (retention > 0) {
+                expirePartitions(interval.minus(current, retention));
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка обслуживания партиций {}: {}", TABLE, e.getMessage(), e);
+        }
+    }
+
+    private boolean isPartitioned() {
+        String kind = jdbcTemplate.queryForObject(
+                "SELECT relkind::text FROM pg_class WHERE oid = ?::regclass", String.class, TABLE);
+        return "p".equals(kind);
+    }
+
+    /**
+     * Прошедшие периоды, строки которых лежат в default-партиции: хиты, перенесённые из таблицы
+     * до партиционирования, и опоздавшие хиты за периоды без партиции. Для каждого создаётся своя партиция,
+     * чтобы к ним применялись отсечение партиций и срок хранения.
+     */
+    private List<LocalDate> defaultPeriods(LocalDate before) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT date_trunc('" + interval.getTruncUnit() +
+                        "', timestamp)::date FROM " + DEFAULT_PARTITION + " WHERE timestamp < ? ORDER BY 1",
+                LocalDate.class, Timestamp.valueOf(before.atStartOfDay()));
+    }
+
+    /**
+     * Партиция создаётся отдельно и присоединяется после переноса строк её диапазона из default-партиции,
+     * иначе ATTACH завершится ошибкой на хитах, пришедших раньше, чем партиция была создана.
+     */
+    private void createPartition(LocalDate from) {
+        String name = PARTITION_PREFIX + from.format(interval.getSuffixFormat());
+        if (exists(name)) {
+            return;
+        }
+        Timestamp lower = Timestamp.valueOf(from.atStartOfDay());
+        Timestamp upper = Timestamp.valueOf(interval.next(from).atStartOfDay());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE " + TABLE +
+                    " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION +
+                    " WHERE timestamp >= ? AND timestamp < ? RETURNING *) " +
+                    "INSERT INTO " + name + " SELECT * FROM moved", lower, upper);
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + name +
+                    " FOR VALUES FROM ('" + lower + "') TO ('" + upper + "')");
+            log.info("Создана партиция {} [{}, {}), перенесено из default {} строк", name, lower, upper, moved);
+        });
+    }
+
+    private void expirePartitions(LocalDate threshold) {
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = ?::regclass", String.class, TABLE);
+        for (String partition : partitions) {
+            if (!partition.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+            LocalDate from;
+            try {
+                from = interval.parseSuffix(partition.substring(PARTITION_PREFIX.length()));
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+            if (!interval.next(from).isAfter(threshold)) {
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+                if (dropExpired) {
+                    jdbcTemplate.execute("DROP TABLE " + partition);
+                }
+                log.info("Партиция {} {} по сроку хранения", partition, dropExpired ? "удалена" : "отсоединена");
+            }
+        }
+        if (dropExpired) {
+            int deleted = jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE timestamp < ?",
+                    Timestamp.valueOf(threshold.atStartOfDay()));
+            if (deleted > 0) {
+                log.info("Из {} удалено {} устаревших строк", DEFAULT_PARTITION, deleted);
+            }
+        }
+    }
+
+    private boolean exists(String table) {
+        Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table);
+        return Boolean.TRUE.equals(exists);
+    }
+}
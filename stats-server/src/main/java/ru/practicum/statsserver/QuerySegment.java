@@ -0,0 +1,22 @@
+package ru.practicum.statsserver;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Полуинтервал [from, to), который читается из роллапа заданной гранулярности
+ * или, если granularity == null, из сырых хитов.
+ */
+@Data
+@AllArgsConstructor
+public class QuerySegment {
+    private RollupGranularity granularity;
+    private LocalDateTime from;
+    private LocalDateTime to;
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+}
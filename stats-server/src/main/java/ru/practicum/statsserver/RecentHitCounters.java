@@ -0,0 +1,197 @@
+package ru.practicum.statsserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.ViewStats;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики хитов за последние слоты времени в памяти. Кольцо из slots слотов по slot-seconds секунд;
+ * слот хранит номер своего периода, и при записи более нового периода заменяется целиком.
+ * Запрос обслуживается из памяти, только если все его слоты ещё в кольце и пришлись на время работы процесса.
+ */
+@Component
+@Slf4j
+public class RecentHitCounters implements HitBatchListener {
+
+    private static final long NOT_READY = Long.MAX_VALUE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long slotSeconds;
+    private final int slotCount;
+    private final AtomicReferenceArray<Slot> ring;
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * Первый период, за который в памяти гарантированно есть все хиты.
+     */
+    private volatile long coveredFrom = NOT_READY;
+
+    public RecentHitCounters(JdbcTemplate jdbcTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${stats.recent.enabled:true}") boolean enabled,
+                             @Value("${stats.recent.slot-seconds:1}") long slotSeconds,
+                             @Value("${stats.recent.slots:3600}") int slotCount) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.slotSeconds = slotSeconds;
+        this.slotCount = slotCount;
+        this.ring = new AtomicReferenceArray<>(enabled ? slotCount : 0);
+        this.hits = Counter.builder("stats.recent.queries")
+                .description("Запросы /stats, обслуженные счётчиками в памяти")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("stats.recent.queries")
+                .description("Запросы /stats, обслуженные счётчиками в памяти")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        meterRegistry.gauge("stats.recent.hit.ratio", this, RecentHitCounters::hitRatio);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        // Хиты, записанные до появления счётчиков, в памяти отсутствуют: покрытие начинается после самого позднего из них
+        Timestamp latest = jdbcTemplate.queryForObject("SELECT max(timestamp) FROM endpoint_hits", Timestamp.class);
+        coveredFrom = latest == null ? Long.MIN_VALUE : period(latest.toLocalDateTime()) + 1;
+        log.info("Счётчики последних хитов запущены: {} слотов по {} с", slotCount, slotSeconds);
+    }
+
+    @Override
+    public void onBatch(HitBatch batch) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(batch.getHits());
+                }
+            });
+        } else {
+            add(batch.getHits());
+        }
+    }
+
+    /**
+     * @return статистика за включающий диапазон [start, end] или пусто, если диапазон нельзя ответить из памяти
+     */
+    public Optional<List<ViewStats>> getStats(LocalDateTime start, LocalDateTime end, UriFilter filter) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Optional<List<ViewStats>> result = count(start, end, filter);
+        (result.isPresent() ? hits : misses).increment();
+        return result;
+    }
+
+    private Optional<List<ViewStats>> count(LocalDateTime start, LocalDateTime end, UriFilter filter) {
+        LocalDateTime endExclusive = end.plusSeconds(1);
+        if (!isAligned(start) || !isAligned(endExclusive)) {
+            return Optional.empty();
+        }
+        long first = period(start);
+        long last = period(endExclusive) - 1;
+        if (first < coveredFrom || last - first + 1 > slotCount) {
+            return Optional.empty();
+        }
+
+        Map<StatsKey, Long> counts = new HashMap<>();
+        for (long period = first; period <= last; period++) {
+            Slot slot = ring.get(index(period));
+            if (slot == null || slot.period < period) {
+                continue;
+            }
+            if (slot.period > period) {
+                // Период уже вытеснен из кольца
+                return Optional.empty();
+            }
+            slot.counts.forEach((key, adder) -> {
+                if (filter.matches(key.getUri())) {
+                    counts.merge(key, adder.sum(), Long::sum);
+                }
+            });
+        }
+        return Optional.of(ViewStatsUtil.toSortedList(counts));
+    }
+
+    private void add(List<EndpointHit> batch) {
+        for (EndpointHit hit : batch) {
+            Slot slot = slot(period(hit.getTimestamp()));
+            if (slot != null) {
+                slot.counts.computeIfAbsent(new StatsKey(hit.getApp(), hit.getUri()), k -> new LongAdder())
+                        .increment();
+            }
+        }
+    }
+
+    /**
+     * @return слот периода или null, если период старше того, что сейчас хранится в его ячейке
+     */
+    private Slot slot(long period) {
+        int index = index(period);
+        while (true) {
+            Slot slot = ring.get(index);
+            if (slot != null && slot.period == period) {
+                return slot;
+            }
+            if (slot != null && slot.period > period) {
+                return null;
+            }
+            Slot fresh = new Slot(period);
+            if (ring.compareAndSet(index, slot, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private int index(long period) {
+        return (int) Math.floorMod(period, (long) slotCount);
+    }
+
+    private long period(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), slotSeconds);
+    }
+
+    private boolean isAligned(LocalDateTime time) {
+        return time.getNano() == 0 && Math.floorMod(time.toEpochSecond(ZoneOffset.UTC), slotSeconds) == 0;
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private static final class Slot {
+        private final long period;
+        private final Map<StatsKey, LongAdder> counts = new ConcurrentHashMap<>();
+
+        private Slot(long period) {
+            this.period = period;
+        }
+    }
+}
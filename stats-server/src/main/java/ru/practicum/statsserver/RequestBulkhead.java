@@ -0,0 +1,95 @@
+package ru.practicum.statsserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничение одновременных запросов одного класса: не больше maxConcurrent выполняются, не больше maxQueue
+ * ждут свободного места и не дольше maxWaitMs. Остальные отклоняются сразу, а не копятся в очереди.
+ */
+public class RequestBulkhead {
+
+    public enum Admission {
+        ADMITTED,
+        /**
+         * Очередь заполнена — запрос отклонён без ожидания.
+         */
+        QUEUE_FULL,
+        /**
+         * Место не освободилось за maxWaitMs.
+         */
+        TIMEOUT
+    }
+
+    @Getter
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long maxWaitMs;
+    // Честный семафор: ожидающие получают место в порядке прихода
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    public RequestBulkhead(String name, int maxConcurrent, int maxQueue, long maxWaitMs, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.maxWaitMs = maxWaitMs;
+        this.permits = new Semaphore(maxConcurrent, true);
+        Gauge.builder("stats.admission.active", this, RequestBulkhead::active)
+                .description("Выполняющиеся запросы")
+                .tag("class", name)
+                .register(meterRegistry);
+        Gauge.builder("stats.admission.queued", queued, AtomicInteger::get)
+                .description("Запросы, ожидающие места")
+                .tag("class", name)
+                .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("stats.admission.rejected")
+                .description("Отклонённые запросы")
+                .tag("class", name)
+                .tag("reason", "queue_full")
+                .register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("stats.admission.rejected")
+                .description("Отклонённые запросы")
+                .tag("class", name)
+                .tag("reason", "timeout")
+                .register(meterRegistry);
+    }
+
+    public Admission acquire() throws InterruptedException {
+        // tryAcquire с таймаутом, в отличие от tryAcquire(), не обгоняет уже ожидающих
+        if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+            return Admission.ADMITTED;
+        }
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            rejectedQueueFull.increment();
+            return Admission.QUEUE_FULL;
+        }
+        try {
+            if (permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                return Admission.ADMITTED;
+            }
+            rejectedTimeout.increment();
+            return Admission.TIMEOUT;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    private double active() {
+        return maxConcurrent - permits.availablePermits();
+    }
+}
@@ -0,0 +1,64 @@
+package ru.practicum.statsserver;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+
+/**
+ * Однократно пересчитывает роллапы по уже накопленным сырым хитам, по дню за раз.
+ * Пока пересчёт не завершён, статистика считается по сырым хитам.
+ * <p>
+ * Роллапы тем временем пополняет живая запись, в той же транзакции, что и сырые хиты. Поэтому в одном снимке
+ * разница «сырые хиты минус роллап» — ровно хиты, которых роллап не видел, и к роллапу прибавляется только она:
+ * хиты, записанные параллельно, не считаются дважды, а повтор дня ничего не меняет.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RollupBackfill {
+
+    private static final String MIGRATION_NAME = "rollup-backfill";
+    private static final String BACKFILL_SQL_TEMPLATE =
+            "INSERT INTO %1$s (bucket, app_id, uri_id, hits) " +
+                    "SELECT s.bucket, s.app_id, s.uri_id, s.hits - COALESCE(r.hits, 0) FROM (" +
+                    "SELECT date_trunc('%2$s', timestamp) AS bucket, app_id, uri_id, COUNT(*) AS hits " +
+                    "FROM endpoint_hits WHERE timestamp >= ? AND timestamp < ? GROUP BY 1, 2, 3) s " +
+                    "LEFT JOIN %1$s r ON r.bucket = s.bucket AND r.app_id = s.app_id AND r.uri_id = s.uri_id " +
+                    "WHERE s.hits > COALESCE(r.hits, 0) " +
+                    "ON CONFLICT (bucket, app_id, uri_id) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OneTimeMigration oneTimeMigration;
+
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            oneTimeMigration.run(MIGRATION_NAME, oneTimeMigration::hitDays, this::backfillDay);
+            ready = true;
+        } catch (RuntimeException e) {
+            log.error("Не удалось заполнить роллапы, статистика будет считаться по сырым хитам: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    private void backfillDay(long day) {
+        Timestamp from = Timestamp.valueOf(OneTimeMigration.dayStart(day));
+        Timestamp to = Timestamp.valueOf(OneTimeMigration.dayStart(day + 1));
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            int rows = jdbcTemplate.update(String.format(BACKFILL_SQL_TEMPLATE, granularity.getTable(),
+                    granularity.getTruncUnit()), from, to);
+            log.debug("Роллап {} за {} дополнен: {} строк", granularity.getTable(), from, rows);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.practicum.statsserver;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@Getter
+@RequiredArgsConstructor
+public enum RollupGranularity {
+    MINUTE("hit_rollup_minute", null, "minute", ChronoUnit.MINUTES),
+    HOUR("hit_rollup_hour", "hit_sketch_hour", "hour", ChronoUnit.HOURS),
+    DAY("hit_rollup_day", "hit_sketch_day", "day", ChronoUnit.DAYS);
+
+    private final String table;
+    private final String sketchTable;
+    private final String truncUnit;
+    private final ChronoUnit unit;
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? time : floor.plus(1, unit);
+    }
+}
@@ -0,0 +1,50 @@
+package ru.practicum.statsserver;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.sql.Timestamp;
+import java.util.*;
+
+@Component
+@RequiredArgsConstructor
+public class RollupWriter implements HitBatchListener {
+
+    private static final String UPSERT_SQL_TEMPLATE =
+            "INSERT INTO %1$s (bucket, app_id, uri_id, hits) VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (bucket, app_id, uri_id) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void onBatch(HitBatch batch) {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            upsert(granularity, aggregate(granularity, batch));
+        }
+    }
+
+    private Map<BucketKey, Long> aggregate(RollupGranularity granularity, HitBatch batch) {
+        Map<BucketKey, Long> counts = new TreeMap<>(BucketKey.LOCK_ORDER);
+        for (EndpointHit hit : batch.getHits()) {
+            BucketKey key = new BucketKey(granularity.floor(hit.getTimestamp()), batch.appId(hit), batch.uriId(hit));
+            counts.merge(key, 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    private void upsert(RollupGranularity granularity, Map<BucketKey, Long> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<BucketKey, Long>> rows = new ArrayList<>(counts.entrySet());
+        jdbcTemplate.batchUpdate(String.format(UPSERT_SQL_TEMPLATE, granularity.getTable()), rows, rows.size(),
+                (ps, row) -> {
+                    ps.setTimestamp(1, Timestamp.valueOf(row.getKey().getBucket()));
+                    ps.setInt(2, row.getKey().getAppId());
+                    ps.setInt(3, row.getKey().getUriId());
+                    ps.setLong(4, row.getValue());
+                });
+    }
+}
@@ -0,0 +1,89 @@
+package ru.practicum.statsserver;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Однократно строит HLL-скетчи по уже накопленным сырым хитам, по дню за транзакцию и без блокировки таблиц.
+ * Слияние скетчей идемпотентно, поэтому хиты, записанные параллельно с пересчётом, не учитываются дважды,
+ * а повтор дня после перезапуска ничего не меняет.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SketchBackfill {
+
+    private static final String MIGRATION_NAME = "sketch-backfill";
+    private static final int FETCH_SIZE = 10_000;
+    private static final int FLUSH_KEYS = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OneTimeMigration oneTimeMigration;
+    private final SketchWriter sketchWriter;
+
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            oneTimeMigration.run(MIGRATION_NAME, oneTimeMigration::hitDays, this::backfillDay);
+            ready = true;
+        } catch (RuntimeException e) {
+            log.error("Не удалось построить HLL-скетчи, unique-статистика будет считаться точно: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    private void backfillDay(long day) {
+        Timestamp from = Timestamp.valueOf(OneTimeMigration.dayStart(day));
+        Timestamp to = Timestamp.valueOf(OneTimeMigration.dayStart(day + 1));
+        rebuild(RollupGranularity.HOUR.getSketchTable(),
+                "SELECT date_trunc('hour', timestamp) AS bucket, app_id, uri_id, ip_id FROM endpoint_hits " +
+                        "WHERE timestamp >= ? AND timestamp < ? GROUP BY 1, 2, 3, 4 ORDER BY 1, 2, 3",
+                from, to, false);
+        rebuild(RollupGranularity.DAY.getSketchTable(),
+                "SELECT date_trunc('day', bucket) AS bucket, app_id, uri_id, sketch FROM hit_sketch_hour " +
+                        "WHERE bucket >= ? AND bucket < ? ORDER BY 1, 2, 3",
+                from, to, true);
+    }
+
+    private void rebuild(String table, String sourceSql, Timestamp from, Timestamp to, boolean sourceIsSketch) {
+        Map<BucketKey, HyperLogLog> pending = new LinkedHashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sourceSql);
+            ps.setTimestamp(1, from);
+            ps.setTimestamp(2, to);
+            ps.setFetchSize(FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            LocalDateTime bucket = rs.getTimestamp("bucket").toLocalDateTime();
+            BucketKey key = new BucketKey(bucket, rs.getInt("app_id"), rs.getInt("uri_id"));
+            if (!pending.containsKey(key) && pending.size() >= FLUSH_KEYS) {
+                sketchWriter.merge(table, pending);
+                pending.clear();
+            }
+            HyperLogLog sketch = pending.computeIfAbsent(key, k -> new HyperLogLog());
+            if (sourceIsSketch) {
+                sketch.merge(HyperLogLog.fromBytes(rs.getBytes("sketch")));
+            } else {
+                sketch.addId(rs.getInt("ip_id"));
+            }
+        });
+        sketchWriter.merge(table, pending);
+        log.debug("Скетчи {} за {} построены по накопленным хитам", table, from);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.practicum.statsserver;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Обновляет HLL-скетчи IP по часам и дням. В скетч добавляется идентификатор IP из справочника,
+ * поэтому разные текстовые записи одного адреса не считаются разными посетителями.
+ */
+@Component
+@RequiredArgsConstructor
+public class SketchWriter implements HitBatchListener {
+
+    static final BucketBlobMerger.Codec<HyperLogLog> CODEC = new BucketBlobMerger.Codec<>() {
+        @Override
+        public byte[] encode(HyperLogLog value) {
+            return value.toBytes();
+        }
+
+        @Override
+        public HyperLogLog decode(byte[] bytes) {
+            return HyperLogLog.fromBytes(bytes);
+        }
+
+        @Override
+        public HyperLogLog merge(HyperLogLog stored, HyperLogLog delta) {
+            stored.merge(delta);
+            return stored;
+        }
+    };
+
+    private final BucketBlobMerger blobMerger;
+
+    @Override
+    public void onBatch(HitBatch batch) {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            if (granularity.getSketchTable() != null) {
+                merge(granularity.getSketchTable(), aggregate(granularity, batch));
+            }
+        }
+    }
+
+    void merge(String table, Map<BucketKey, HyperLogLog> sketches) {
+        blobMerger.merge(table, "sketch", sketches, CODEC);
+    }
+
+    private Map<BucketKey, HyperLogLog> aggregate(RollupGranularity granularity, HitBatch batch) {
+        Map<BucketKey, HyperLogLog> sketches = new HashMap<>();
+        for (EndpointHit hit : batch.getHits()) {
+            BucketKey key = new BucketKey(granularity.floor(hit.getTimestamp()), batch.appId(hit),
+                    batch.uriId(hit));
+            sketches.computeIfAbsent(key, k -> new HyperLogLog()).addId(batch.ipId(hit));
+        }
+        return sketches;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.practicum.statsserver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Алгоритм Space-Saving: приблизительные счётчики самых частых ключей в фиксированном объёме памяти.
+ * Хранит не больше capacity ключей; новый ключ вытесняет ключ с минимальным счётчиком и наследует
+ * его значение как погрешность. Оценка завышает истинное значение не больше чем на N / capacity,
+ * где N — сумма всех добавленных весов. Не потокобезопасен.
+ */
+public class SpaceSaving<K> {
+
+    private final int capacity;
+    private final Map<K, Entry<K>> entries;
+    private final TreeSet<Entry<K>> byCount = new TreeSet<>(
+            Comparator.<Entry<K>>comparingLong(e -> e.count).thenComparingLong(e -> e.sequence));
+    private long sequence;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.entries = new HashMap<>(capacity * 2);
+    }
+
+    public void add(K key, long weight) {
+        Entry<K> entry = entries.get(key);
+        if (entry != null) {
+            byCount.remove(entry);
+            entry.count += weight;
+            byCount.add(entry);
+            return;
+        }
+        if (entries.size() < capacity) {
+            entry = new Entry<>(key, weight, 0, sequence++);
+        } else {
+            Entry<K> min = byCount.pollFirst();
+            entries.remove(min.key);
+            entry = new Entry<>(key, min.count + weight, min.count, sequence++);
+        }
+        entries.put(key, entry);
+        byCount.add(entry);
+    }
+
+    public List<Entry<K>> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public static final class Entry<K> {
+        private final K key;
+        private long count;
+        private final long error;
+        private final long sequence;
+
+        private Entry(K key, long count, long error, long sequence) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+            this.sequence = sequence;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+    }
+}
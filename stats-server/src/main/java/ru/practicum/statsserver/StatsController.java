@@ -1,23 +1,66 @@
 package ru.practicum.statsserver;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.HitBatchResult;
+import ru.practicum.statsdto.HitBinaryReader;
+import ru.practicum.statsdto.HitWireFormat;
+import ru.practicum.statsdto.StatsQuery;
+import ru.practicum.statsdto.TimeSeriesStats;
 import ru.practicum.statsdto.ViewStats;
+import ru.practicum.statsdto.ViewStatsEstimate;
+import ru.practicum.statsdto.WindowStats;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 @RestController
 @RequiredArgsConstructor
 @Slf4j
 public class StatsController {
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final MediaType NDJSON = MediaType.parseMediaType(NDJSON_VALUE);
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String SAMPLE_FRACTION_HEADER = "X-Sample-Fraction";
+
     private final StatsService statsService;
+    private final NdjsonHitReader ndjsonHitReader;
+    private final ObjectMapper objectMapper;
+
+    @Value("${stats.query.max-page-size:10000}")
+    private int maxPageSize;
+
+    @Value("${stats.top.max-limit:1000}")
+    private int maxTopLimit;
+
+    @Value("${stats.timeseries.max-buckets:10000}")
+    private int maxBuckets;
+
+    @Value("${stats.windows.max-count:10}")
+    private int maxWindows;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
@@ -26,22 +69,337 @@ public class StatsController {
         statsService.saveHit(endpointHit);
     }
 
+    @PostMapping(value = "/hits", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitBatchResult hits(InputStream body) throws IOException {
+        List<EndpointHit> hits = ndjsonHitReader.readArray(body);
+        log.info("Получен пакет статистики из {} записей", hits.size());
+        return statsService.saveHits(hits);
+    }
+
+    @PostMapping(value = "/hits", consumes = NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitBatchResult hitsNdjson(InputStream body) throws IOException {
+        List<EndpointHit> hits = ndjsonHitReader.read(body);
+        log.info("Получен NDJSON-пакет статистики из {} записей", hits.size());
+        return statsService.saveHits(hits);
+    }
+
+    @PostMapping(value = "/hits", consumes = HitWireFormat.MEDIA_TYPE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitBatchResult hitsBinary(InputStream body) {
+        List<EndpointHit> hits = readBinary(body);
+        log.info("Получен бинарный пакет статистики из {} записей", hits.size());
+        return statsService.saveHits(hits);
+    }
+
+    @PostMapping(value = "/hits", consumes = HitWireFormat.MEDIA_TYPE_GZIP)
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitBatchResult hitsBinaryGzip(InputStream body) throws IOException {
+        List<EndpointHit> hits = readBinary(new GZIPInputStream(body));
+        log.info("Получен сжатый бинарный пакет статистики из {} записей", hits.size());
+        return statsService.saveHits(hits);
+    }
+
+    /**
+     * Без limit результат пишется в ответ по мере чтения (JSON-массив или NDJSON при Accept: application/x-ndjson).
+     * С limit отдаётся страница не больше limit строк, курсор следующей страницы — в заголовке X-Next-Cursor.
+     * Полный результат из кэша отдаётся с ETag и учитывает If-None-Match.
+     * С sample или maxLatencyMs возвращается оценка по выборке с доверительным интервалом,
+     * доля выборки — в заголовке X-Sample-Fraction.
+     */
     @GetMapping("/stats")
-    public List<ViewStats> getStats(
+    public ResponseEntity<StreamingResponseBody> getStats(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(required = false) String uriPrefix,
+            @RequestParam(required = false) String uriPattern,
+            @RequestParam(defaultValue = "false") boolean unique,
+            @RequestParam(defaultValue = "false") boolean approximate,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Double sample,
+            @RequestParam(required = false) Long maxLatencyMs,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        log.info("Получен запрос на получение статистики с {} по {}, uris: {}, uriPrefix: {}, uriPattern: {}, " +
+                "unique: {}, approximate: {}, limit: {}, cursor: {}, sample: {}, maxLatencyMs: {}", start, end, uris,
+                uriPrefix, uriPattern, unique, approximate, limit, cursor, sample, maxLatencyMs);
+
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Дата начала должна быть раньше даты окончания");
+        }
+        if (limit != null && (limit < 1 || limit > maxPageSize)) {
+            throw new IllegalArgumentException("limit должен быть от 1 до " + maxPageSize);
+        }
+        UriFilter filter = UriFilter.of(uris, uriPrefix, uriPattern);
+        StatsCursor after = cursor == null ? null : StatsCursor.decode(cursor);
+        boolean ndjson = accept != null && MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(type -> type.equalsTypeAndSubtype(NDJSON));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(ndjson ? NDJSON : MediaType.APPLICATION_JSON);
+
+        if (sample != null || maxLatencyMs != null) {
+            if (sample != null && !(sample > 0 && sample <= 1)) {
+                throw new IllegalArgumentException("sample должен быть в диапазоне (0, 1]");
+            }
+            if (maxLatencyMs != null && maxLatencyMs < 1) {
+                throw new IllegalArgumentException("maxLatencyMs должен быть положительным");
+            }
+            if (cursor != null || approximate) {
+                throw new IllegalArgumentException("Выборка не сочетается с cursor и approximate");
+            }
+            double fraction = statsService.sampleFraction(start, end, sample, maxLatencyMs);
+            List<ViewStatsEstimate> estimates = statsService.estimateStats(start, end, filter, unique, fraction);
+            List<ViewStatsEstimate> limited = limit == null || estimates.size() <= limit
+                    ? estimates
+                    : estimates.subList(0, limit);
+            return response.header(SAMPLE_FRACTION_HEADER, Double.toString(fraction))
+                    .body(write(ndjson, ViewStatsEstimate.class, limited::forEach));
+        }
+
+        if (limit == null && after == null) {
+            StatsResultCache.CachedStats cached = statsService.getCachedStats(start, end, filter, unique, approximate);
+            if (cached != null) {
+                // ETag зависит и от формата ответа, поэтому ответ различается по Accept
+                String etag = "\"" + cached.getEtag() + (ndjson ? "-ndjson" : "") + "\"";
+                response.varyBy(HttpHeaders.ACCEPT).eTag(etag);
+                if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(etag))) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                            .eTag(etag)
+                            .varyBy(HttpHeaders.ACCEPT)
+                            .build();
+                }
+                return response.body(write(ndjson, ViewStats.class, cached.getRows()::forEach));
+            }
+        }
+        if (limit == null) {
+            return response.body(write(ndjson, ViewStats.class,
+                    statsService.streamStats(start, end, filter, unique, approximate, after, null)));
+        }
+        // Страница ограничена limit, поэтому её можно собрать заранее и узнать, есть ли продолжение
+        List<ViewStats> page = new ArrayList<>(limit + 1);
+        statsService.streamStats(start, end, filter, unique, approximate, after, limit + 1).accept(page::add);
+        if (page.size() > limit) {
+            page.remove(limit.intValue());
+            response.header(NEXT_CURSOR_HEADER, StatsCursor.after(page.get(limit - 1)).encode());
+        }
+        return response.body(write(ndjson, ViewStats.class, page::forEach));
+    }
+
+    @GetMapping("/stats/top")
+    public List<ViewStats> getTop(
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime start,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime end,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) String prefix,
+            @RequestParam(defaultValue = "false") boolean unique) {
+
+        log.info("Получен запрос топа статистики с {} по {}, limit: {}, prefix: {}, unique: {}",
+                start, end, limit, prefix, unique);
+
+        if ((start == null) != (end == null)) {
+            throw new IllegalArgumentException("start и end задаются вместе; без них возвращается живой топ");
+        }
+        if (start != null && start.isAfter(end)) {
+            throw new IllegalArgumentException("Дата начала должна быть раньше даты окончания");
+        }
+        if (limit < 1 || limit > maxTopLimit) {
+            throw new IllegalArgumentException("limit должен быть от 1 до " + maxTopLimit);
+        }
+        return statsService.getTop(start, end, prefix, unique, limit);
+    }
+
+    /**
+     * Хиты или уникальные посетители за всё время; каждый uri читается из счётчиков по первичному ключу.
+     */
+    @GetMapping("/stats/lifetime")
+    public List<ViewStats> getLifetimeStats(
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false") boolean unique) {
+
+        log.info("Получен запрос статистики за всё время, uris: {}, unique: {}", uris, unique);
+
+        return statsService.getLifetimeStats(UriFilter.of(uris), unique);
+    }
+
+    /**
+     * /stats или /stats/lifetime с телом вместо параметров: список uri или событий любой длины.
+     */
+    @PostMapping(value = "/stats/query", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> query(@RequestBody StatsQuery query) {
+        LocalDateTime start = query.getStart();
+        LocalDateTime end = query.getEnd();
+        List<String> uris = queryUris(query);
+
+        log.info("Получен запрос статистики с телом с {} по {}, uri: {}, unique: {}",
+                start, end, uris == null ? 0 : uris.size(), query.isUnique());
+
+        if ((start == null) != (end == null)) {
+            throw new IllegalArgumentException(
+                    "start и end задаются вместе; без них возвращается статистика за всё время");
+        }
+        if (start != null && start.isAfter(end)) {
+            throw new IllegalArgumentException("Дата начала должна быть раньше даты окончания");
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (uris != null && uris.isEmpty()) {
+            // Пустой список — ни одного uri, а не все: фильтр UriFilter не отличает его от отсутствующего
+            return response.body(write(false, ViewStats.class, sink -> {
+            }));
+        }
+        UriFilter filter = UriFilter.of(uris);
+        if (start == null) {
+            List<ViewStats> stats = statsService.getLifetimeStats(filter, query.isUnique());
+            return response.body(write(false, ViewStats.class, stats::forEach));
+        }
+        return response.body(write(false, ViewStats.class,
+                statsService.streamStats(start, end, filter, query.isUnique(), false, null, null)));
+    }
+
+    @GetMapping("/stats/timeseries")
+    public TimeSeriesStats getTimeSeries(
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
             LocalDateTime start,
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
             LocalDateTime end,
+            @RequestParam String interval,
             @RequestParam(required = false) List<String> uris,
+            @RequestParam(required = false) String uriPrefix,
+            @RequestParam(required = false) String uriPattern,
             @RequestParam(defaultValue = "false") boolean unique) {
 
-        log.info("Получен запрос на получение статистики с {} по {}, uris: {}, unique: {}",
-                start, end, uris, unique);
+        log.info("Получен запрос рядов статистики с {} по {}, interval: {}, uris: {}, uriPrefix: {}, uriPattern: {}, " +
+                "unique: {}", start, end, interval, uris, uriPrefix, uriPattern, unique);
 
         if (start.isAfter(end)) {
             throw new IllegalArgumentException("Дата начала должна быть раньше даты окончания");
         }
+        RollupGranularity granularity = parseInterval(interval);
+        int buckets = TimeSeriesBuilder.bucketCount(granularity, start, end);
+        if (buckets > maxBuckets) {
+            throw new IllegalArgumentException("Слишком много бакетов: " + buckets + ", допустимо " + maxBuckets);
+        }
+        return statsService.getTimeSeries(start, end, granularity, UriFilter.of(uris, uriPrefix, uriPattern), unique);
+    }
+
+    /**
+     * Хиты по нескольким окнам, заканчивающимся в end (по умолчанию — сейчас), за один проход по данным,
+     * например {@code windows=24h,7d,all}.
+     */
+    @GetMapping("/stats/windows")
+    public List<WindowStats> getWindowStats(
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+            LocalDateTime end,
+            @RequestParam List<String> windows,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(required = false) String uriPrefix,
+            @RequestParam(required = false) String uriPattern,
+            @RequestParam(defaultValue = "false") boolean unique) {
+
+        log.info("Получен запрос статистики по окнам {} до {}, uris: {}, uriPrefix: {}, uriPattern: {}, unique: {}",
+                windows, end, uris, uriPrefix, uriPattern, unique);
 
-        return statsService.getStats(start, end, uris, unique);
+        if (windows.isEmpty() || windows.size() > maxWindows) {
+            throw new IllegalArgumentException("windows должен содержать от 1 до " + maxWindows + " окон");
+        }
+        Set<String> names = new HashSet<>();
+        List<StatsWindow> parsed = new ArrayList<>(windows.size());
+        for (String window : windows) {
+            if (!names.add(window)) {
+                throw new IllegalArgumentException("Окно указано дважды: " + window);
+            }
+            parsed.add(StatsWindow.parse(window));
+        }
+        return statsService.getWindowStats(end == null ? LocalDateTime.now() : end, parsed,
+                UriFilter.of(uris, uriPrefix, uriPattern), unique);
+    }
+
+    private static RollupGranularity parseInterval(String interval) {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            if (granularity.getTruncUnit().equalsIgnoreCase(interval)) {
+                return granularity;
+            }
+        }
+        throw new IllegalArgumentException("interval должен быть minute, hour или day");
+    }
+
+    /**
+     * @return uri из тела вместе с uri событий; null, если нет ни uris, ни eventIds, и пустой список, если оба
+     *         пусты
+     */
+    private static List<String> queryUris(StatsQuery query) {
+        if (query.getUris() == null && query.getEventIds() == null) {
+            return null;
+        }
+        List<String> uris = new ArrayList<>();
+        if (query.getUris() != null) {
+            uris.addAll(query.getUris());
+        }
+        if (query.getEventIds() != null) {
+            query.getEventIds().forEach(id -> uris.add(StatsQuery.EVENT_URI_PREFIX + id));
+        }
+        return uris;
+    }
+
+    /**
+     * Пишет строки JSON-массивом или NDJSON. Статус 200 к этому моменту уже отправлен, поэтому ошибка посреди
+     * выдачи не должна выглядеть как успешный ответ: массив не закрывается, в NDJSON последней строкой идёт
+     * {"error": ...}, а соединение обрывается через {@link StatsStreamAbortedException}.
+     */
+    private <T> StreamingResponseBody write(boolean ndjson, Class<T> type, Consumer<Consumer<T>> source) {
+        return out -> {
+            ObjectWriter writer = objectMapper.writerFor(type);
+            SequenceWriter sequence = ndjson
+                    ? writer.withRootValueSeparator("\n").writeValues(out)
+                    : writer.writeValuesAsArray(out);
+            int[] rows = new int[1];
+            try {
+                source.accept(stats -> {
+                    try {
+                        sequence.write(stats);
+                        rows[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // Клиент отключился, дописывать некуда
+                throw e.getCause();
+            } catch (RuntimeException e) {
+                if (ndjson) {
+                    sequence.flush();
+                    if (rows[0] > 0) {
+                        out.write('\n');
+                    }
+                    out.write(objectMapper.writeValueAsBytes(Map.of("error", String.valueOf(e.getMessage()))));
+                    out.write('\n');
+                    out.flush();
+                }
+                throw new StatsStreamAbortedException(e);
+            }
+            sequence.close();
+        };
+    }
+
+    private static List<EndpointHit> readBinary(InputStream body) {
+        List<EndpointHit> hits = new ArrayList<>();
+        try {
+            HitBinaryReader reader = new HitBinaryReader(body);
+            EndpointHit hit;
+            while ((hit = reader.next()) != null) {
+                hits.add(hit);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Некорректный бинарный пакет хитов после записи #" + hits.size()
+                    + ": " + e.getMessage());
+        }
+        return hits;
     }
 }
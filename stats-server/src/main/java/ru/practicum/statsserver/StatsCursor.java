@@ -0,0 +1,53 @@
+package ru.practicum.statsserver;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import ru.practicum.statsdto.ViewStats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Позиция в выдаче /stats, упорядоченной по {@link ViewStatsUtil#BY_HITS_DESC}: следующая страница
+ * начинается со строки, стоящей строго после (hits, app, uri). Клиенту передаётся непрозрачной строкой.
+ */
+@Data
+@AllArgsConstructor
+public class StatsCursor {
+    private static final char SEPARATOR = '\n';
+
+    private long hits;
+    private String app;
+    private String uri;
+
+    public static StatsCursor after(ViewStats stats) {
+        return new StatsCursor(stats.getHits(), stats.getApp(), stats.getUri());
+    }
+
+    public static StatsCursor decode(String token) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int first = value.indexOf(SEPARATOR);
+            int second = value.indexOf(SEPARATOR, first + 1);
+            if (first < 0 || second < 0) {
+                throw new IllegalArgumentException("Некорректный курсор: " + token);
+            }
+            return new StatsCursor(Long.parseLong(value.substring(0, first)),
+                    value.substring(first + 1, second), value.substring(second + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор: " + token);
+        }
+    }
+
+    public String encode() {
+        String value = hits + String.valueOf(SEPARATOR) + app + SEPARATOR + uri;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return true, если строка идёт в выдаче после курсора
+     */
+    public boolean precedes(ViewStats stats) {
+        return ViewStatsUtil.BY_HITS_DESC.compare(new ViewStats(app, uri, hits), stats) < 0;
+    }
+}
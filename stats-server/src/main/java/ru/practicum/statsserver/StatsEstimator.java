@@ -0,0 +1,77 @@
+package ru.practicum.statsserver;
+
+import ru.practicum.statsdto.ViewStatsEstimate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Собирает оценку статистики из точно посчитанной части (роллапы, короткие края, архив) и выборки доли fraction.
+ * Каждая строка (TABLESAMPLE BERNOULLI) или IP для unique попадает в выборку независимо с вероятностью fraction,
+ * поэтому оценка — exact + sampled / fraction, а дисперсия — sampled * (1 - fraction) / fraction².
+ */
+public class StatsEstimator {
+
+    /**
+     * Квантиль нормального распределения для 95% доверительного интервала.
+     */
+    private static final double Z_95 = 1.96;
+
+    /**
+     * Множитель хеша идентификатора IP для выборки unique (как в Knuth multiplicative hashing).
+     */
+    public static final long IP_HASH_MULTIPLIER = 2654435761L;
+    public static final long IP_HASH_MODULUS = 1L << 32;
+
+    private static final Comparator<ViewStatsEstimate> BY_HITS_DESC =
+            Comparator.comparing(ViewStatsEstimate::getHits).reversed()
+                    .thenComparing(ViewStatsEstimate::getApp)
+                    .thenComparing(ViewStatsEstimate::getUri);
+
+    private final double fraction;
+    private final Map<StatsKey, long[]> counts = new HashMap<>();
+
+    public StatsEstimator(double fraction) {
+        this.fraction = fraction;
+    }
+
+    public double getFraction() {
+        return fraction;
+    }
+
+    /**
+     * Граница хеша: IP попадает в выборку, если (ip_id * IP_HASH_MULTIPLIER) mod 2^32 меньше её.
+     */
+    public long ipHashBound() {
+        return (long) (fraction * IP_HASH_MODULUS);
+    }
+
+    public boolean isSampledIp(int ipId) {
+        return Integer.toUnsignedLong(ipId) * IP_HASH_MULTIPLIER % IP_HASH_MODULUS < ipHashBound();
+    }
+
+    public void addExact(String app, String uri, long hits) {
+        counts.computeIfAbsent(new StatsKey(app, uri), k -> new long[2])[0] += hits;
+    }
+
+    public void addSampled(String app, String uri, long hits) {
+        counts.computeIfAbsent(new StatsKey(app, uri), k -> new long[2])[1] += hits;
+    }
+
+    public List<ViewStatsEstimate> build() {
+        List<ViewStatsEstimate> result = new ArrayList<>(counts.size());
+        counts.forEach((key, count) -> {
+            long exact = count[0];
+            long sampled = count[1];
+            double estimate = exact + sampled / fraction;
+            double halfWidth = Z_95 * Math.sqrt(sampled * (1 - fraction)) / fraction;
+            result.add(new ViewStatsEstimate(key.getApp(), key.getUri(), Math.round(estimate),
+                    Math.max(exact + sampled, Math.round(estimate - halfWidth)), Math.round(estimate + halfWidth)));
+        });
+        result.sort(BY_HITS_DESC);
+        return result;
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum.statsserver;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StatsKey {
+    private String app;
+    private String uri;
+}
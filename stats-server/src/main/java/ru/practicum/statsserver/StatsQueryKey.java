@@ -0,0 +1,32 @@
+package ru.practicum.statsserver;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Нормализованные параметры запроса /stats: порядок uri не важен, approximate учитывается только для unique.
+ */
+@Data
+public class StatsQueryKey {
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final List<String> uris;
+    private final String prefix;
+    private final String pattern;
+    private final boolean unique;
+    private final boolean approximate;
+
+    public static StatsQueryKey of(LocalDateTime start, LocalDateTime end, UriFilter filter,
+                                   boolean unique, boolean approximate) {
+        List<String> uris = null;
+        if (filter.getUris() != null) {
+            uris = new ArrayList<>(filter.getUris().stream().distinct().toList());
+            uris.sort(null);
+        }
+        return new StatsQueryKey(start, end, uris, filter.getPrefix(), filter.getPattern(), unique,
+                unique && approximate);
+    }
+}
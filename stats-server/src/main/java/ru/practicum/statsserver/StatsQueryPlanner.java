@@ -0,0 +1,135 @@
+package ru.practicum.statsserver;
+
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+@Component
+public class StatsQueryPlanner {
+
+    private static final RollupGranularity[] COARSE_TO_FINE = {
+            RollupGranularity.DAY, RollupGranularity.HOUR, RollupGranularity.MINUTE
+    };
+
+    private static final RollupGranularity[] SKETCH_COARSE_TO_FINE = {
+            RollupGranularity.DAY, RollupGranularity.HOUR
+    };
+
+    private static final RollupGranularity[] BITMAP_GRANULARITIES = {
+            RollupGranularity.DAY
+    };
+
+    /**
+     * Разбивает включающий диапазон [start, end] на сегменты: середина покрывается
+     * самыми крупными целыми бакетами, неполные края уходят в более мелкие роллапы
+     * и в последнюю очередь в сырые хиты.
+     */
+    public List<QuerySegment> plan(LocalDateTime start, LocalDateTime end) {
+        return plan(start, end, COARSE_TO_FINE);
+    }
+
+    /**
+     * То же разбиение, но только по гранулярностям, для которых хранятся HLL-скетчи.
+     */
+    public List<QuerySegment> planSketches(LocalDateTime start, LocalDateTime end) {
+        return plan(start, end, SKETCH_COARSE_TO_FINE);
+    }
+
+    /**
+     * Целые дни для битмапов посетителей, остальное — сырые хиты.
+     */
+    public List<QuerySegment> planBitmaps(LocalDateTime start, LocalDateTime end) {
+        return plan(start, end, BITMAP_GRANULARITIES);
+    }
+
+    /**
+     * Разбиение по роллапам не крупнее interval, чтобы каждый целый бакет сегмента целиком попадал в бакет interval.
+     */
+    public List<QuerySegment> planUpTo(LocalDateTime start, LocalDateTime end, RollupGranularity interval) {
+        int coarsest = Arrays.asList(COARSE_TO_FINE).indexOf(interval);
+        return plan(start, end, Arrays.copyOfRange(COARSE_TO_FINE, coarsest, COARSE_TO_FINE.length));
+    }
+
+    /**
+     * Весь диапазон одним сегментом по сырым хитам — пока агрегаты не готовы.
+     */
+    public QuerySegment planRaw(LocalDateTime start, LocalDateTime end) {
+        return new QuerySegment(null, start, end.plus(1, ChronoUnit.MICROS));
+    }
+
+    /**
+     * Разбивает вложенные окна [starts[i], end] с общим концом на непересекающиеся полосы: полоса i — часть
+     * окна i, не вошедшая в окно i - 1, поэтому окно i складывается из полос 0..i и каждый хит читается один раз.
+     *
+     * @param starts начала окон от позднего к раннему
+     * @param plan   разбиение включающего диапазона на сегменты, например {@link #plan}
+     */
+    public List<List<QuerySegment>> planWindows(List<LocalDateTime> starts, LocalDateTime end,
+                                                BiFunction<LocalDateTime, LocalDateTime, List<QuerySegment>> plan) {
+        List<List<QuerySegment>> bands = new ArrayList<>(starts.size());
+        LocalDateTime to = end;
+        for (LocalDateTime from : starts) {
+            bands.add(from.isAfter(to) ? List.of() : plan.apply(from, to));
+            // Следующая полоса заканчивается перед началом этой
+            to = from.minus(1, ChronoUnit.MICROS);
+        }
+        return bands;
+    }
+
+    /**
+     * Делит включающий диапазон [start, end] не больше чем на parts непересекающихся частей для параллельного
+     * выполнения. Границы частей приходятся на начало суток, поэтому середина каждой части по-прежнему
+     * покрывается дневными роллапами, а сырыми остаются только края всего диапазона.
+     *
+     * @param plan разбиение включающего диапазона части на сегменты, например {@link #plan}
+     */
+    public List<List<QuerySegment>> planSplit(LocalDateTime start, LocalDateTime end, int parts,
+                                              BiFunction<LocalDateTime, LocalDateTime, List<QuerySegment>> plan) {
+        LocalDateTime first = RollupGranularity.DAY.ceil(start);
+        long days = ChronoUnit.DAYS.between(first, RollupGranularity.DAY.floor(end));
+        int count = (int) Math.min(parts, days);
+        if (count < 2) {
+            return List.of(plan.apply(start, end));
+        }
+        List<List<QuerySegment>> result = new ArrayList<>(count);
+        LocalDateTime from = start;
+        for (int i = 1; i < count; i++) {
+            LocalDateTime boundary = first.plusDays(days * i / count);
+            result.add(plan.apply(from, boundary.minus(1, ChronoUnit.MICROS)));
+            from = boundary;
+        }
+        result.add(plan.apply(from, end));
+        return result;
+    }
+
+    private List<QuerySegment> plan(LocalDateTime start, LocalDateTime end, RollupGranularity[] granularities) {
+        List<QuerySegment> segments = new ArrayList<>();
+        // Точность timestamp в PostgreSQL — микросекунды, поэтому правая граница сдвигается на 1 мкс
+        split(start, end.plus(1, ChronoUnit.MICROS), granularities, 0, segments);
+        return segments;
+    }
+
+    private void split(LocalDateTime from, LocalDateTime to, RollupGranularity[] granularities, int level,
+                       List<QuerySegment> segments) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        for (int i = level; i < granularities.length; i++) {
+            RollupGranularity granularity = granularities[i];
+            LocalDateTime first = granularity.ceil(from);
+            LocalDateTime last = granularity.floor(to);
+            if (first.isBefore(last)) {
+                split(from, first, granularities, i + 1, segments);
+                segments.add(new QuerySegment(granularity, first, last));
+                split(last, to, granularities, i + 1, segments);
+                return;
+            }
+        }
+        segments.add(new QuerySegment(null, from, to));
+    }
+}
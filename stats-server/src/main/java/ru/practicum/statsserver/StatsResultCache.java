@@ -0,0 +1,214 @@
+package ru.practicum.statsserver;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.ViewStats;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Кэш полных результатов /stats. Диапазон, закончившийся раньше чем closed-grace-seconds назад, считается
+ * закрытым и хранится до вытеснения (TinyLFU, не больше max-entries записей); открытый живёт ttl-seconds.
+ * Хит с timestamp внутри закрытого диапазона (запоздавшая запись) удаляет пересекающиеся с ним записи.
+ */
+@Component
+public class StatsResultCache implements HitBatchListener {
+
+    private final boolean enabled;
+    private final long openTtlNanos;
+    private final long closedGraceSeconds;
+    private final int maxRows;
+    private final Cache<StatsQueryKey, CachedStats> cache;
+    private final Timer loadTimer;
+    // Растёт при каждой инвалидации: результат, посчитанный до неё, в кэш не кладётся
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public StatsResultCache(MeterRegistry meterRegistry,
+                            @Value("${stats.cache.enabled:true}") boolean enabled,
+                            @Value("${stats.cache.max-entries:10000}") long maxEntries,
+                            @Value("${stats.cache.max-rows:10000}") int maxRows,
+                            @Value("${stats.cache.ttl-seconds:5}") long openTtlSeconds,
+                            @Value("${stats.cache.closed-grace-seconds:60}") long closedGraceSeconds) {
+        this(meterRegistry, enabled, maxEntries, maxRows, openTtlSeconds, closedGraceSeconds, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ticker источник времени для срока жизни открытых диапазонов
+     */
+    StatsResultCache(MeterRegistry meterRegistry, boolean enabled, long maxEntries, int maxRows, long openTtlSeconds,
+                     long closedGraceSeconds, Ticker ticker) {
+        this.enabled = enabled;
+        this.maxRows = maxRows;
+        this.openTtlNanos = TimeUnit.SECONDS.toNanos(openTtlSeconds);
+        this.closedGraceSeconds = closedGraceSeconds;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<StatsQueryKey, CachedStats>() {
+                    @Override
+                    public long expireAfterCreate(StatsQueryKey key, CachedStats value, long currentTime) {
+                        return value.isClosed() ? Long.MAX_VALUE : openTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(StatsQueryKey key, CachedStats value, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(StatsQueryKey key, CachedStats value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats.results");
+        this.loadTimer = Timer.builder("stats.results.load")
+                .description("Время вычисления результата /stats при промахе кэша")
+                .register(meterRegistry);
+    }
+
+    public CachedStats get(StatsQueryKey key) {
+        return enabled ? cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * Передаёт строки в sink и параллельно собирает их; если результат уложился в max-rows,
+     * {@link Capture#complete()} кладёт его в кэш.
+     */
+    public Capture capture(StatsQueryKey key, Consumer<ViewStats> sink) {
+        return new Capture(key, sink);
+    }
+
+    @Override
+    public void onBatch(HitBatch batch) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime min = null;
+        LocalDateTime max = null;
+        for (EndpointHit hit : batch.getHits()) {
+            LocalDateTime timestamp = hit.getTimestamp();
+            min = min == null || timestamp.isBefore(min) ? timestamp : min;
+            max = max == null || timestamp.isAfter(max) ? timestamp : max;
+        }
+        LocalDateTime from = min;
+        LocalDateTime to = max;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(from, to);
+                }
+            });
+        } else {
+            invalidate(from, to);
+        }
+    }
+
+    private void invalidate(LocalDateTime from, LocalDateTime to) {
+        // Живые хиты попадают только в открытые диапазоны, которые и так быстро истекают
+        if (from == null || !from.isBefore(closedBefore())) {
+            return;
+        }
+        generation.incrementAndGet();
+        cache.asMap().entrySet().removeIf(entry -> entry.getValue().isClosed()
+                && !entry.getKey().getEnd().isBefore(from)
+                && !entry.getKey().getStart().isAfter(to));
+    }
+
+    private LocalDateTime closedBefore() {
+        return LocalDateTime.now().minusSeconds(closedGraceSeconds);
+    }
+
+    private static String etag(List<ViewStats> rows) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (ViewStats row : rows) {
+                digest.update(row.getApp().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(row.getUri().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Long.toString(row.getHits()).getBytes(StandardCharsets.US_ASCII));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Getter
+    public static class CachedStats {
+        private final List<ViewStats> rows;
+        private final String etag;
+        private final boolean closed;
+
+        private CachedStats(List<ViewStats> rows, boolean closed) {
+            this.rows = rows;
+            this.etag = etag(rows);
+            this.closed = closed;
+        }
+    }
+
+    public class Capture implements Consumer<ViewStats> {
+        private final StatsQueryKey key;
+        private final Consumer<ViewStats> sink;
+        private final long startGeneration = generation.get();
+        private final Timer.Sample sample;
+        private List<ViewStats> rows;
+
+        private Capture(StatsQueryKey key, Consumer<ViewStats> sink) {
+            this.key = key;
+            this.sink = sink;
+            this.sample = enabled ? Timer.start() : null;
+            this.rows = enabled ? new ArrayList<>() : null;
+        }
+
+        @Override
+        public void accept(ViewStats row) {
+            sink.accept(row);
+            if (rows != null) {
+                if (rows.size() < maxRows) {
+                    rows.add(row);
+                } else {
+                    rows = null;
+                }
+            }
+        }
+
+        public void complete() {
+            if (sample != null) {
+                sample.stop(loadTimer);
+            }
+            if (rows == null || generation.get() != startGeneration) {
+                return;
+            }
+            cache.put(key, new CachedStats(List.copyOf(rows), key.getEnd().isBefore(closedBefore())));
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package ru.practicum.statsserver;
 
+import com.fasterxml.jackson.databind.Module;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import ru.practicum.statsdto.StatsJsonModule;
 
 @SpringBootApplication
+@EnableScheduling
 public class StatsServerApplication {
     public static void main(String[] args) {
         SpringApplication.run(StatsServerApplication.class, args);
     }
-}
\ No newline at end of file
+
+    @Bean
+    public Module statsJsonModule() {
+        return new StatsJsonModule();
+    }
+}
@@ -1,35 +1,378 @@
 package ru.practicum.statsserver;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.HitBatchError;
+import ru.practicum.statsdto.HitBatchResult;
+import ru.practicum.statsdto.TimeSeriesStats;
 import ru.practicum.statsdto.ViewStats;
+import ru.practicum.statsdto.ViewStatsEstimate;
+import ru.practicum.statsdto.WindowStats;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class StatsService {
 
-    private final EndpointHitRepository repository;
+    private static final String UNREADABLE_RECORD_MESSAGE = "Не удалось разобрать запись";
+    private static final String INVALID_IP_MESSAGE = "ip: некорректный IP-адрес";
+
+    private final HitBatchWriter hitBatchWriter;
+    private final HitIngestBuffer hitIngestBuffer;
+    private final Validator validator;
+    private final StatsQueryPlanner queryPlanner;
+    private final HitStatsDao hitStatsDao;
+    private final RollupBackfill rollupBackfill;
+    private final SketchBackfill sketchBackfill;
+    private final BitmapBackfill bitmapBackfill;
+    private final RecentHitCounters recentHitCounters;
+    private final HeavyHitters heavyHitters;
+    private final StatsResultCache resultCache;
+    private final LifetimeCounters lifetimeCounters;
+    private final LifetimeBackfill lifetimeBackfill;
+    private final UriTrie uriTrie;
+    private final ParallelStatsExecutor parallelExecutor;
+
+    @Value("${stats.ingest.max-batch-size:10000}")
+    private int maxBatchSize;
+
+    @Value("${stats.ingest.buffer.flush-before-read:true}")
+    private boolean flushBeforeRead;
+
+    @Value("${stats.unique.bitmaps-enabled:true}")
+    private boolean bitmapsEnabled;
+
+    @Value("${stats.sample.rows-per-ms:5000}")
+    private long sampleRowsPerMs;
+
+    @Value("${stats.sample.min-fraction:0.001}")
+    private double minSampleFraction;
+
+    @Value("${stats.sample.min-raw-seconds:3600}")
+    private long minSampledRawSeconds;
 
     public void saveHit(EndpointHit hit) {
-        EndpointHitEntity entity = EndpointHitEntity.builder()
-                .app(hit.getApp())
-                .uri(hit.getUri())
-                .ip(hit.getIp())
-                .timestamp(hit.getTimestamp())
+        if (!IpAddresses.isValid(hit.getIp())) {
+            throw new IllegalArgumentException("Некорректный IP-адрес: " + hit.getIp());
+        }
+        if (!hitIngestBuffer.offer(hit)) {
+            hitBatchWriter.write(List.of(hit));
+        }
+    }
+
+    public HitBatchResult saveHits(List<EndpointHit> hits) {
+        if (hits.size() > maxBatchSize) {
+            throw new IllegalArgumentException(
+                    "Размер пакета " + hits.size() + " превышает допустимый " + maxBatchSize);
+        }
+
+        List<EndpointHit> valid = new ArrayList<>(hits.size());
+        List<HitBatchError> errors = new ArrayList<>();
+        for (int i = 0; i < hits.size(); i++) {
+            EndpointHit hit = hits.get(i);
+            if (hit == null) {
+                errors.add(new HitBatchError(i, UNREADABLE_RECORD_MESSAGE));
+                continue;
+            }
+            Set<ConstraintViolation<EndpointHit>> violations = validator.validate(hit);
+            if (violations.isEmpty() && !IpAddresses.isValid(hit.getIp())) {
+                errors.add(new HitBatchError(i, INVALID_IP_MESSAGE));
+            } else if (violations.isEmpty()) {
+                valid.add(hit);
+            } else {
+                errors.add(new HitBatchError(i, violations.stream()
+                        .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; "))));
+            }
+        }
+
+        hitBatchWriter.write(valid);
+
+        return HitBatchResult.builder()
+                .accepted(valid.size())
+                .rejected(errors.size())
+                .errors(errors)
                 .build();
-        repository.save(entity);
     }
 
     public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
                                     List<String> uris, boolean unique) {
+        return getStats(start, end, UriFilter.of(uris), unique, false);
+    }
+
+    /**
+     * Готовит статистику к выдаче в порядке /stats по одной строке и возвращает её источник. Фильтр, план
+     * и всё, что строится в памяти (unique, счётчики последних хитов, параллельные части), вычисляются сразу,
+     * поэтому их ошибки становятся обычным ответом с кодом ошибки. Отложено только чтение неуникальной
+     * статистики из БД курсором: она не собирается в памяти и читается, когда источник вызван.
+     */
+    public Consumer<Consumer<ViewStats>> streamStats(LocalDateTime start, LocalDateTime end, UriFilter filter,
+                                                     boolean unique, boolean approximate, StatsCursor after,
+                                                     Integer limit) {
+        StatsQueryKey key = StatsQueryKey.of(start, end, filter, unique, approximate);
+        StatsResultCache.CachedStats cached = resultCache.get(key);
+        if (cached != null) {
+            return sink -> ViewStatsUtil.page(cached.getRows(), after, limit, sink);
+        }
+        Consumer<Consumer<ViewStats>> source =
+                computeStats(start, end, uriTrie.resolve(filter), unique, approximate, after, limit);
+        if (after != null || limit != null) {
+            return source;
+        }
+        return sink -> {
+            // Полный результат попадает в кэш, если уложился в stats.cache.max-rows
+            StatsResultCache.Capture capture = resultCache.capture(key, sink);
+            source.accept(capture);
+            capture.complete();
+        };
+    }
+
+    /**
+     * @return закэшированный полный результат запроса или null
+     */
+    public StatsResultCache.CachedStats getCachedStats(LocalDateTime start, LocalDateTime end, UriFilter filter,
+                                                       boolean unique, boolean approximate) {
+        return resultCache.get(StatsQueryKey.of(start, end, filter, unique, approximate));
+    }
+
+    private Consumer<Consumer<ViewStats>> computeStats(LocalDateTime start, LocalDateTime end, UriFilter filter,
+                                                       boolean unique, boolean approximate, StatsCursor after,
+                                                       Integer limit) {
+        List<ViewStats> rows;
         if (unique) {
-            return repository.getUniqueStats(start, end, uris);
+            rows = getStats(start, end, filter, true, approximate);
         } else {
-            return repository.getStats(start, end, uris);
+            if (flushBeforeRead) {
+                hitIngestBuffer.flush();
+            }
+            Optional<List<ViewStats>> recent = recentHitCounters.getStats(start, end, filter);
+            if (recent.isPresent()) {
+                rows = recent.get();
+            } else if (parallelExecutor.applies(start, end)) {
+                // Части длинного диапазона сливаются в памяти, поэтому страница строится по готовому результату
+                rows = parallelExecutor.countHits(start, end, filter, hitsPlan());
+            } else {
+                List<QuerySegment> segments = rollupBackfill.isReady()
+                        ? queryPlanner.plan(start, end)
+                        : List.of(queryPlanner.planRaw(start, end));
+                return sink -> hitStatsDao.streamHits(segments, filter, after, limit, sink);
+            }
+        }
+        return sink -> ViewStatsUtil.page(rows, after, limit, sink);
+    }
+
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
+                                    UriFilter filter, boolean unique, boolean approximate) {
+        if (flushBeforeRead) {
+            hitIngestBuffer.flush();
+        }
+        filter = uriTrie.resolve(filter);
+        if (unique) {
+            if (approximate && sketchBackfill.isReady()) {
+                return hitStatsDao.countUniqueApproximate(queryPlanner.planSketches(start, end), filter);
+            }
+            boolean bitmaps = bitmapsEnabled && bitmapBackfill.isReady();
+            if (parallelExecutor.applies(start, end)) {
+                return parallelExecutor.countUnique(start, end, filter,
+                        bitmaps ? queryPlanner::planBitmaps : this::planRaw);
+            }
+            if (bitmaps) {
+                return hitStatsDao.countUniqueExact(queryPlanner.planBitmaps(start, end), filter);
+            }
+            return hitStatsDao.countUniqueRaw(queryPlanner.planRaw(start, end), filter);
+        }
+        Optional<List<ViewStats>> recent = recentHitCounters.getStats(start, end, filter);
+        if (recent.isPresent()) {
+            return recent.get();
+        }
+        if (parallelExecutor.applies(start, end)) {
+            return parallelExecutor.countHits(start, end, filter, hitsPlan());
+        }
+        if (rollupBackfill.isReady()) {
+            return hitStatsDao.countHits(queryPlanner.plan(start, end), filter);
         }
+        return hitStatsDao.countHits(List.of(queryPlanner.planRaw(start, end)), filter);
+    }
+
+    /**
+     * Статистика за всё время: из счётчиков по uri, а пока они не заполнены — обычным запросом по всей истории.
+     */
+    public List<ViewStats> getLifetimeStats(UriFilter filter, boolean unique) {
+        if (flushBeforeRead) {
+            hitIngestBuffer.flush();
+        }
+        if (lifetimeBackfill.isReady()) {
+            return lifetimeCounters.getStats(filter, unique);
+        }
+        return getStats(LifetimeCounters.START, LifetimeCounters.END, filter, unique, false);
+    }
+
+    /**
+     * Доля выборки: не больше sample и такая, чтобы по оценке числа сырых хитов уложиться в maxLatencyMs.
+     */
+    public double sampleFraction(LocalDateTime start, LocalDateTime end, Double sample, Long maxLatencyMs) {
+        double fraction = sample == null ? 1 : sample;
+        if (maxLatencyMs != null) {
+            long rows = hitStatsDao.estimateRawRows(start, end);
+            if (rows > 0) {
+                fraction = Math.min(fraction, (double) maxLatencyMs * sampleRowsPerMs / rows);
+            }
+        }
+        return Math.max(fraction, minSampleFraction);
+    }
+
+    /**
+     * Оценка статистики по выборке доли fraction с доверительным интервалом. Неуникальные хиты роллапов
+     * и короткие сырые края диапазона считаются точно, выборка делается только для длинных сырых сегментов;
+     * unique считается по сырым хитам для подмножества IP.
+     */
+    public List<ViewStatsEstimate> estimateStats(LocalDateTime start, LocalDateTime end, UriFilter filter,
+                                                 boolean unique, double fraction) {
+        if (flushBeforeRead) {
+            hitIngestBuffer.flush();
+        }
+        filter = uriTrie.resolve(filter);
+        StatsEstimator estimator = new StatsEstimator(fraction);
+        if (fraction >= 1) {
+            getStats(start, end, filter, unique, false)
+                    .forEach(row -> estimator.addExact(row.getApp(), row.getUri(), row.getHits()));
+        } else if (unique) {
+            hitStatsDao.sampleUnique(queryPlanner.planRaw(start, end), filter, estimator);
+        } else {
+            List<QuerySegment> segments = rollupBackfill.isReady()
+                    ? queryPlanner.plan(start, end)
+                    : List.of(queryPlanner.planRaw(start, end));
+            List<QuerySegment> exact = new ArrayList<>();
+            List<QuerySegment> sampled = new ArrayList<>();
+            for (QuerySegment segment : segments) {
+                boolean large = segment.isRaw()
+                        && Duration.between(segment.getFrom(), segment.getTo()).toSeconds() >= minSampledRawSeconds;
+                (large ? sampled : exact).add(segment);
+            }
+            hitStatsDao.sampleHits(exact, sampled, filter, estimator);
+        }
+        return estimator.build();
+    }
+
+    /**
+     * Топ uri по числу просмотров. Без start и end — живой приблизительный топ за окно
+     * {@link HeavyHitters}; для unique, или если живой топ выключен, то же окно считается точно.
+     */
+    public List<ViewStats> getTop(LocalDateTime start, LocalDateTime end, String prefix, boolean unique, int limit) {
+        UriFilter filter = UriFilter.of(null, prefix);
+        if (start == null && end == null) {
+            if (!unique && heavyHitters.isEnabled()) {
+                return heavyHitters.top(filter, limit);
+            }
+            end = LocalDateTime.now();
+            start = end.minusSeconds(heavyHitters.windowSeconds());
+        }
+        // Из БД топ приходит уже с ORDER BY ... LIMIT, в памяти отбирается кучей размера limit
+        List<ViewStats> top = new ArrayList<>(limit);
+        streamStats(start, end, filter, unique, false, null, limit).accept(top::add);
+        return top;
+    }
+
+    /**
+     * Ряды по бакетам interval за один проход по данным. Неуникальные значения берутся из роллапов
+     * не крупнее interval и сырых хитов на краях; уникальные по дням — из битмапов, иначе из сырых хитов.
+     */
+    public TimeSeriesStats getTimeSeries(LocalDateTime start, LocalDateTime end, RollupGranularity interval,
+                                         UriFilter filter, boolean unique) {
+        if (flushBeforeRead) {
+            hitIngestBuffer.flush();
+        }
+        filter = uriTrie.resolve(filter);
+        TimeSeriesBuilder builder = new TimeSeriesBuilder(interval, start, end);
+        if (!unique) {
+            List<QuerySegment> segments = rollupBackfill.isReady()
+                    ? queryPlanner.planUpTo(start, end, interval)
+                    : List.of(queryPlanner.planRaw(start, end));
+            hitStatsDao.countHitsByBucket(segments, interval, filter, builder);
+        } else if (interval == RollupGranularity.DAY && bitmapsEnabled && bitmapBackfill.isReady()) {
+            for (QuerySegment segment : queryPlanner.planBitmaps(start, end)) {
+                if (segment.isRaw()) {
+                    hitStatsDao.countUniqueByBucket(segment, interval, filter, builder);
+                } else {
+                    hitStatsDao.countUniqueByDay(segment, filter, builder);
+                }
+            }
+        } else {
+            hitStatsDao.countUniqueByBucket(queryPlanner.planRaw(start, end), interval, filter, builder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Хиты по нескольким окнам, заканчивающимся в end, за один проход: окна раскладываются на непересекающиеся
+     * полосы, каждая читается один раз (неуникальные — одним запросом с условной агрегацией). Строки упорядочены
+     * по первому окну запроса, затем по app и uri.
+     */
+    public List<WindowStats> getWindowStats(LocalDateTime end, List<StatsWindow> windows, UriFilter filter,
+                                            boolean unique) {
+        if (flushBeforeRead) {
+            hitIngestBuffer.flush();
+        }
+        filter = uriTrie.resolve(filter);
+        LocalDateTime to = end.truncatedTo(ChronoUnit.MICROS);
+        // Полосы строятся от самого узкого окна к самому широкому
+        List<StatsWindow> byStart = new ArrayList<>(windows);
+        byStart.sort(Comparator.comparing((StatsWindow window) -> window.start(to)).reversed());
+        List<LocalDateTime> starts = byStart.stream().map(window -> window.start(to)).toList();
+
+        Map<StatsKey, long[]> counts;
+        if (!unique) {
+            counts = hitStatsDao.countHitsByWindow(queryPlanner.planWindows(starts, to, hitsPlan()), filter);
+        } else {
+            counts = hitStatsDao.countUniqueByWindow(queryPlanner.planWindows(starts, to,
+                    bitmapsEnabled && bitmapBackfill.isReady() ? queryPlanner::planBitmaps : this::planRaw), filter);
+        }
+
+        int[] bandOf = new int[windows.size()];
+        for (int i = 0; i < windows.size(); i++) {
+            bandOf[i] = byStart.indexOf(windows.get(i));
+        }
+        List<WindowStats> result = new ArrayList<>(counts.size());
+        counts.forEach((key, bands) -> {
+            Map<String, Long> hits = new LinkedHashMap<>();
+            for (int i = 0; i < windows.size(); i++) {
+                hits.put(windows.get(i).getName(), bands[bandOf[i]]);
+            }
+            result.add(new WindowStats(key.getApp(), key.getUri(), hits));
+        });
+        String first = windows.get(0).getName();
+        result.sort(Comparator.comparing((WindowStats row) -> row.getHits().get(first)).reversed()
+                .thenComparing(WindowStats::getApp)
+                .thenComparing(WindowStats::getUri));
+        return result;
+    }
+
+    /**
+     * Разбиение диапазона для неуникальных хитов: по роллапам, а пока они не готовы — одним сырым сегментом.
+     */
+    private BiFunction<LocalDateTime, LocalDateTime, List<QuerySegment>> hitsPlan() {
+        return rollupBackfill.isReady() ? queryPlanner::plan : this::planRaw;
+    }
+
+    private List<QuerySegment> planRaw(LocalDateTime start, LocalDateTime end) {
+        return List.of(queryPlanner.planRaw(start, end));
     }
 }
@@ -0,0 +1,11 @@
+package ru.practicum.statsserver;
+
+/**
+ * Ошибка посреди потоковой выдачи статистики, когда статус 200 уже отправлен. Тело ошибки не пишется:
+ * исключение уходит в контейнер, и тот обрывает соединение, не завершая ответ.
+ */
+public class StatsStreamAbortedException extends RuntimeException {
+    public StatsStreamAbortedException(Throwable cause) {
+        super("Выдача статистики прервана: " + cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,63 @@
+package ru.practicum.statsserver;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Окно /stats/windows, заканчивающееся в момент end запроса: {@code 90m}, {@code 24h}, {@code 7d}
+ * или {@code all} — за всё время. Имя окна и есть его запись, под ним окно возвращается в ответе.
+ */
+@Data
+@AllArgsConstructor
+public class StatsWindow {
+    public static final String ALL = "all";
+
+    private String name;
+    /**
+     * Длина окна или null для окна за всё время.
+     */
+    private Duration length;
+
+    public static StatsWindow parse(String name) {
+        if (ALL.equals(name)) {
+            return new StatsWindow(name, null);
+        }
+        if (name.length() < 2) {
+            throw new IllegalArgumentException("Некорректное окно: " + name);
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(name.substring(0, name.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректное окно: " + name);
+        }
+        if (amount < 1) {
+            throw new IllegalArgumentException("Длина окна должна быть положительной: " + name);
+        }
+        try {
+            return switch (name.charAt(name.length() - 1)) {
+                case 'm' -> new StatsWindow(name, Duration.ofMinutes(amount));
+                case 'h' -> new StatsWindow(name, Duration.ofHours(amount));
+                case 'd' -> new StatsWindow(name, Duration.ofDays(amount));
+                default -> throw new IllegalArgumentException(
+                        "Окно задаётся числом с единицей m, h или d либо как all: " + name);
+            };
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Слишком длинное окно: " + name);
+        }
+    }
+
+    /**
+     * @return начало окна, не раньше начала истории {@link LifetimeCounters#START}
+     */
+    public LocalDateTime start(LocalDateTime end) {
+        Duration history = Duration.between(LifetimeCounters.START, end);
+        if (length == null || length.compareTo(history) >= 0) {
+            return LifetimeCounters.START;
+        }
+        return end.minus(length);
+    }
+}
@@ -0,0 +1,67 @@
+package ru.practicum.statsserver;
+
+import ru.practicum.statsdto.TimeSeriesStats;
+import ru.practicum.statsdto.UriTimeSeries;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Раскладывает строки (bucket, app, uri, hits) по плотным массивам: индекс в массиве — номер бакета от начала диапазона.
+ */
+public class TimeSeriesBuilder {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final RollupGranularity interval;
+    private final LocalDateTime first;
+    private final int size;
+    private final Map<StatsKey, long[]> series = new HashMap<>();
+
+    public TimeSeriesBuilder(RollupGranularity interval, LocalDateTime start, LocalDateTime end) {
+        this.interval = interval;
+        this.first = interval.floor(start);
+        this.size = bucketCount(interval, start, end);
+    }
+
+    public static int bucketCount(RollupGranularity interval, LocalDateTime start, LocalDateTime end) {
+        return (int) interval.getUnit().between(interval.floor(start), interval.floor(end)) + 1;
+    }
+
+    public void add(LocalDateTime bucket, String app, String uri, long hits) {
+        int index = (int) interval.getUnit().between(first, bucket);
+        series.computeIfAbsent(new StatsKey(app, uri), k -> new long[size])[index] += hits;
+    }
+
+    public TimeSeriesStats build() {
+        List<String> buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(first.plus(i, interval.getUnit()).format(FORMATTER));
+        }
+        Map<StatsKey, Long> totals = new HashMap<>(series.size());
+        series.forEach((key, hits) -> totals.put(key, total(hits)));
+        List<StatsKey> keys = new ArrayList<>(series.keySet());
+        // Как и в /stats, первыми идут самые просматриваемые uri
+        keys.sort(Comparator.comparing((StatsKey key) -> totals.get(key), Comparator.<Long>reverseOrder())
+                .thenComparing(StatsKey::getApp)
+                .thenComparing(StatsKey::getUri));
+        List<UriTimeSeries> result = new ArrayList<>(keys.size());
+        for (StatsKey key : keys) {
+            result.add(new UriTimeSeries(key.getApp(), key.getUri(), series.get(key)));
+        }
+        return new TimeSeriesStats(interval.getTruncUnit(), buckets, result);
+    }
+
+    private static long total(long[] hits) {
+        long total = 0;
+        for (long value : hits) {
+            total += value;
+        }
+        return total;
+    }
+}
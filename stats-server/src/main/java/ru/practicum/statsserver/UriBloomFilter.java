@@ -0,0 +1,74 @@
+package ru.practicum.statsserver;
+
+/**
+ * Фильтр Блума по uri архивного сегмента: позволяет пропустить сегмент, в котором заведомо нет ни одного
+ * из запрошенных uri, не разбирая его словарь. Около 10 бит на uri и 7 хешей — ~1% ложных срабатываний.
+ */
+public class UriBloomFilter {
+
+    private static final int BITS_PER_URI = 10;
+    private static final int HASHES = 7;
+
+    private final long[] words;
+    private final int hashes;
+
+    public UriBloomFilter(long[] words, int hashes) {
+        this.words = words;
+        this.hashes = hashes;
+    }
+
+    public static UriBloomFilter create(int expectedUris) {
+        int words = Math.max(1, (int) ((Math.max(1, expectedUris) * (long) BITS_PER_URI + 63) / 64));
+        return new UriBloomFilter(new long[words], HASHES);
+    }
+
+    public void add(String uri) {
+        long hash = hash(uri);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long bits = words.length * 64L;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String uri) {
+        long hash = hash(uri);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long bits = words.length * 64L;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            if ((words[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long[] getWords() {
+        return words;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * FNV-1a по символам строки с перемешиванием из MurmurHash3: не зависит от String.hashCode и версии JVM.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
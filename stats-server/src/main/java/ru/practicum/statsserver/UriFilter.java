@@ -0,0 +1,136 @@
+package ru.practicum.statsserver;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ограничение выборки статистики по uri: точный список, префикс и/или шаблон, в котором {@code *} — любая
+ * последовательность символов. Пустой фильтр пропускает всё. Префикс и шаблон могут быть заранее разрешены
+ * через {@link UriTrie} в полный список подходящих uri справочника.
+ */
+@Getter
+public class UriFilter {
+    public static final UriFilter ALL = new UriFilter(null, null, null, null, null);
+
+    private final List<String> uris;
+    private final String prefix;
+    private final String pattern;
+    /**
+     * Все uri справочника, проходящие фильтр, и их идентификаторы, если фильтр разрешён; иначе null.
+     */
+    private final String[] resolvedUris;
+    private final int[] resolvedIds;
+
+    @Getter(AccessLevel.NONE)
+    private final Set<String> uriSet;
+    @Getter(AccessLevel.NONE)
+    private final String[] patternParts;
+
+    private UriFilter(List<String> uris, String prefix, String pattern, String[] resolvedUris, int[] resolvedIds) {
+        this.uris = uris == null || uris.isEmpty() ? null : List.copyOf(uris);
+        this.prefix = prefix == null || prefix.isEmpty() ? null : prefix;
+        this.pattern = pattern == null || pattern.isEmpty() ? null : pattern;
+        this.resolvedUris = resolvedUris;
+        this.resolvedIds = resolvedIds;
+        // Списки из тела /stats/query бывают в тысячи uri, поэтому проверка строки идёт по множеству
+        this.uriSet = this.uris == null ? null : new HashSet<>(this.uris);
+        this.patternParts = this.pattern == null ? null : this.pattern.split("\\*", -1);
+    }
+
+    public static UriFilter of(List<String> uris) {
+        return new UriFilter(uris, null, null, null, null);
+    }
+
+    public static UriFilter of(List<String> uris, String prefix) {
+        return new UriFilter(uris, prefix, null, null, null);
+    }
+
+    public static UriFilter of(List<String> uris, String prefix, String pattern) {
+        return new UriFilter(uris, prefix, pattern, null, null);
+    }
+
+    public UriFilter resolved(String[] resolvedUris, int[] resolvedIds) {
+        return new UriFilter(uris, prefix, pattern, resolvedUris, resolvedIds);
+    }
+
+    public boolean isEmpty() {
+        return uris == null && prefix == null && pattern == null;
+    }
+
+    public boolean isResolved() {
+        return resolvedUris != null;
+    }
+
+    /**
+     * Есть ли условия, которые без разрешения проверяются в БД через LIKE.
+     */
+    public boolean hasPattern() {
+        return prefix != null || pattern != null;
+    }
+
+    /**
+     * @return общее начало всех подходящих uri: более длинное из префикса и части шаблона до первой {@code *}
+     */
+    public String literalPrefix() {
+        String fromPattern = patternParts == null ? "" : patternParts[0];
+        String fromPrefix = prefix == null ? "" : prefix;
+        return fromPattern.length() > fromPrefix.length() ? fromPattern : fromPrefix;
+    }
+
+    public boolean matches(String uri) {
+        return (uriSet == null || uriSet.contains(uri)) && (prefix == null || uri.startsWith(prefix))
+                && (pattern == null || matchesPattern(uri));
+    }
+
+    /**
+     * Условия LIKE для префикса и шаблона; специальные символы LIKE экранируются обратной косой чертой.
+     */
+    public List<String> likePatterns() {
+        List<String> likes = new ArrayList<>(2);
+        if (prefix != null) {
+            likes.add(escapeLike(prefix) + "%");
+        }
+        if (pattern != null) {
+            StringBuilder like = new StringBuilder();
+            for (int i = 0; i < patternParts.length; i++) {
+                if (i > 0) {
+                    like.append('%');
+                }
+                like.append(escapeLike(patternParts[i]));
+            }
+            likes.add(like.toString());
+        }
+        return likes;
+    }
+
+    private boolean matchesPattern(String uri) {
+        String first = patternParts[0];
+        if (patternParts.length == 1) {
+            return uri.equals(first);
+        }
+        String last = patternParts[patternParts.length - 1];
+        if (uri.length() < first.length() + last.length() || !uri.startsWith(first) || !uri.endsWith(last)) {
+            return false;
+        }
+        // Средние части ищутся жадно слева направо между первой и последней
+        int position = first.length();
+        int limit = uri.length() - last.length();
+        for (int i = 1; i < patternParts.length - 1; i++) {
+            int found = uri.indexOf(patternParts[i], position);
+            if (found < 0 || found + patternParts[i].length() > limit) {
+                return false;
+            }
+            position = found + patternParts[i].length();
+        }
+        return true;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,311 @@
+package ru.practicum.statsserver;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Сжатое префиксное дерево всех uri справочника dim_uri с их идентификаторами. Разрешает префикс и шаблон
+ * {@link UriFilter} в полный список подходящих uri, чтобы запрос шёл по индексам uri, а не через LIKE.
+ * Новые uri этого экземпляра добавляются вместе с пакетом хитов, uri других экземпляров — при периодическом
+ * дочитывании справочника, с перекрытием на случай фиксации идентификаторов не по порядку. Идентификатор,
+ * зафиксированный позже перекрытия, дочитывание пропустит, поэтому раз в verify-interval-ms число uri в дереве
+ * сверяется с числом строк справочника (из него uri не удаляются), и при расхождении справочник читается заново.
+ */
+@Component
+@Slf4j
+public class UriTrie implements HitBatchListener {
+
+    private static final int REFRESH_OVERLAP = 1000;
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int maxResolved;
+    private final long verifyIntervalNanos;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node("", -1);
+
+    private volatile boolean ready;
+    private int size;
+    private int maxId;
+    private long verifiedAtNanos;
+
+    public UriTrie(JdbcTemplate jdbcTemplate,
+                   @Value("${stats.uri-trie.enabled:true}") boolean enabled,
+                   @Value("${stats.uri-trie.max-resolved:50000}") int maxResolved,
+                   @Value("${stats.uri-trie.verify-interval-ms:60000}") long verifyIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxResolved = maxResolved;
+        this.verifyIntervalNanos = TimeUnit.MILLISECONDS.toNanos(verifyIntervalMs);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            refresh(Integer.MIN_VALUE);
+            verifiedAtNanos = System.nanoTime();
+            ready = true;
+            log.info("Дерево uri загружено: {} uri", size());
+        } catch (RuntimeException e) {
+            log.error("Не удалось загрузить дерево uri, префиксы и шаблоны будут проверяться в БД: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.uri-trie.refresh-interval-ms:5000}",
+            initialDelayString = "${stats.uri-trie.refresh-interval-ms:5000}")
+    public void refresh() {
+        if (!ready) {
+            return;
+        }
+        boolean verify = System.nanoTime() - verifiedAtNanos >= verifyIntervalNanos;
+        // Строки считаются до дочитывания: uri, зафиксированные между запросами, только увеличат дерево
+        long total = verify ? jdbcTemplate.queryForObject("SELECT count(*) FROM dim_uri", Long.class) : 0;
+        int since;
+        lock.readLock().lock();
+        try {
+            since = maxId - REFRESH_OVERLAP;
+        } finally {
+            lock.readLock().unlock();
+        }
+        refresh(since);
+        if (verify) {
+            verifiedAtNanos = System.nanoTime();
+            int loaded = size();
+            if (loaded < total) {
+                log.warn("В дереве uri {} из {} uri справочника, справочник читается заново", loaded, total);
+                refresh(Integer.MIN_VALUE);
+            }
+        }
+    }
+
+    @Override
+    public void onBatch(HitBatch batch) {
+        if (!ready) {
+            return;
+        }
+        // Идентификаторы справочника зафиксированы отдельной транзакцией и не пропадут при откате пакета
+        List<Map.Entry<String, Integer>> missing = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            batch.getUriIds().entrySet().stream()
+                    .filter(entry -> find(entry.getKey()) == null)
+                    .forEach(missing::add);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            missing.forEach(entry -> put(entry.getKey(), entry.getValue()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return фильтр с полным списком подходящих uri или тот же фильтр, если разрешать нечего, дерево не готово
+     * или подходящих uri больше max-resolved
+     */
+    public UriFilter resolve(UriFilter filter) {
+        if (!ready || filter.isResolved() || !filter.hasPattern()) {
+            return filter;
+        }
+        List<String> uris = new ArrayList<>();
+        int[] ids;
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            StringBuilder path = new StringBuilder();
+            String prefix = filter.literalPrefix();
+            int position = 0;
+            while (position < prefix.length()) {
+                Node child = node.child(prefix.charAt(position));
+                int common = child == null ? 0 : commonPrefix(child.label, prefix, position);
+                if (child == null || common < child.label.length() && position + common < prefix.length()) {
+                    return filter.resolved(new String[0], new int[0]);
+                }
+                path.append(child.label);
+                position += common;
+                node = child;
+            }
+            ids = collect(node, path, filter, uris);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids == null ? filter : filter.resolved(uris.toArray(String[]::new), ids);
+    }
+
+    /**
+     * Обходит поддерево узла в глубину; path уже заканчивается ребром узла.
+     *
+     * @return идентификаторы подходящих uri в порядке uris или null, если их больше max-resolved
+     */
+    private int[] collect(Node node, StringBuilder path, UriFilter filter, List<String> uris) {
+        int[] ids = new int[16];
+        List<Node> stack = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        stack.add(node);
+        depths.add(path.length() - node.label.length());
+        while (!stack.isEmpty()) {
+            Node current = stack.remove(stack.size() - 1);
+            path.setLength(depths.remove(depths.size() - 1));
+            path.append(current.label);
+            if (current.id >= 0) {
+                String uri = path.toString();
+                if (filter.matches(uri)) {
+                    if (uris.size() == maxResolved) {
+                        return null;
+                    }
+                    if (uris.size() == ids.length) {
+                        ids = Arrays.copyOf(ids, ids.length * 2);
+                    }
+                    ids[uris.size()] = current.id;
+                    uris.add(uri);
+                }
+            }
+            for (int i = current.children.length - 1; i >= 0; i--) {
+                stack.add(current.children[i]);
+                depths.add(path.length());
+            }
+        }
+        return Arrays.copyOf(ids, uris.size());
+    }
+
+    private void refresh(int since) {
+        lock.writeLock().lock();
+        try {
+            jdbcTemplate.query("SELECT id, uri FROM dim_uri WHERE id > ?",
+                    rs -> {
+                        put(rs.getString("uri"), rs.getInt("id"));
+                    }, since);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Node find(String uri) {
+        Node node = root;
+        int position = 0;
+        while (position < uri.length()) {
+            Node child = node.child(uri.charAt(position));
+            if (child == null || !uri.startsWith(child.label, position)) {
+                return null;
+            }
+            position += child.label.length();
+            node = child;
+        }
+        return node.id >= 0 ? node : null;
+    }
+
+    private void put(String uri, int id) {
+        maxId = Math.max(maxId, id);
+        Node node = root;
+        int position = 0;
+        while (position < uri.length()) {
+            int index = node.indexOf(uri.charAt(position));
+            if (index < 0) {
+                node.insert(-index - 1, new Node(uri.substring(position), id));
+                size++;
+                return;
+            }
+            Node child = node.children[index];
+            int common = commonPrefix(child.label, uri, position);
+            if (common < child.label.length()) {
+                // Ребро расходится с uri посередине: общее начало становится отдельным узлом
+                Node middle = new Node(child.label.substring(0, common), -1);
+                child.label = child.label.substring(common);
+                middle.children = new Node[]{child};
+                node.children[index] = middle;
+                child = middle;
+            }
+            position += common;
+            node = child;
+        }
+        if (node.id < 0) {
+            size++;
+        }
+        node.id = id;
+    }
+
+    private static int commonPrefix(String label, String value, int offset) {
+        int length = Math.min(label.length(), value.length() - offset);
+        int i = 0;
+        while (i < length && label.charAt(i) == value.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static final class Node {
+        private String label;
+        private int id;
+        private Node[] children = NO_CHILDREN;
+
+        private Node(String label, int id) {
+            this.label = label;
+            this.id = id;
+        }
+
+        /**
+         * @return индекс потомка, ребро которого начинается с символа, или -(точка вставки) - 1
+         */
+        private int indexOf(char first) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char value = children[middle].label.charAt(0);
+                if (value < first) {
+                    low = middle + 1;
+                } else if (value > first) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private Node child(char first) {
+            int index = indexOf(first);
+            return index < 0 ? null : children[index];
+        }
+
+        private void insert(int index, Node child) {
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, index);
+            grown[index] = child;
+            System.arraycopy(children, index, grown, index + 1, children.length - index);
+            children = grown;
+        }
+    }
+}
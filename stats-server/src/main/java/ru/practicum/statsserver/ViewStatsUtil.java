@@ -0,0 +1,67 @@
+package ru.practicum.statsserver;
+
+import ru.practicum.statsdto.ViewStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+public final class ViewStatsUtil {
+    private ViewStatsUtil() {
+    }
+
+    /**
+     * Порядок выдачи /stats; app и uri делают его полным, чтобы по нему можно было листать курсором.
+     * Совпадает с ORDER BY hits DESC, app, uri в "C"-сортировке PostgreSQL.
+     */
+    public static final Comparator<ViewStats> BY_HITS_DESC =
+            Comparator.comparing(ViewStats::getHits).reversed()
+                    .thenComparing(ViewStats::getApp)
+                    .thenComparing(ViewStats::getUri);
+
+    public static List<ViewStats> toSortedList(Map<StatsKey, Long> hits) {
+        List<ViewStats> result = new ArrayList<>(hits.size());
+        hits.forEach((key, count) -> result.add(new ViewStats(key.getApp(), key.getUri(), count)));
+        result.sort(BY_HITS_DESC);
+        return result;
+    }
+
+    /**
+     * Первые limit строк в порядке {@link #BY_HITS_DESC} через кучу размера limit, без сортировки всего набора.
+     */
+    public static List<ViewStats> top(Iterable<ViewStats> stats, int limit) {
+        PriorityQueue<ViewStats> heap = new PriorityQueue<>(limit + 1, BY_HITS_DESC.reversed());
+        for (ViewStats row : stats) {
+            if (heap.size() < limit) {
+                heap.add(row);
+            } else if (BY_HITS_DESC.compare(row, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(row);
+            }
+        }
+        List<ViewStats> result = new ArrayList<>(heap);
+        result.sort(BY_HITS_DESC);
+        return result;
+    }
+
+    /**
+     * Отдаёт строки после курсора after в порядке {@link #BY_HITS_DESC}, не больше limit, если он задан.
+     */
+    public static void page(List<ViewStats> stats, StatsCursor after, Integer limit, Consumer<ViewStats> sink) {
+        List<ViewStats> rows = new ArrayList<>(stats.size());
+        for (ViewStats row : stats) {
+            if (after == null || after.precedes(row)) {
+                rows.add(row);
+            }
+        }
+        if (limit != null) {
+            rows = top(rows, limit);
+        } else {
+            rows.sort(BY_HITS_DESC);
+        }
+        rows.forEach(sink);
+    }
+}
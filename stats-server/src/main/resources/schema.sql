@@ -0,0 +1,260 @@
+-- Скрипт выполняется целиком (spring.sql.init.separator), поэтому внутри допустимы DO-блоки и функции.
+
+-- Таблица хитов со строковыми колонками (до словарного кодирования) переносится в новую схему в конце скрипта
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = 'endpoint_hits' AND column_name = 'uri') THEN
+        ALTER TABLE endpoint_hits RENAME TO endpoint_hits_legacy;
+    END IF;
+END
+$$;
+
+-- Агрегаты со строковыми app и uri тоже переносятся в конце скрипта; индексы старых таблиц переименовываются
+-- и удаляются, чтобы их имена достались индексам новых таблиц
+DO $$
+DECLARE
+    aggregate TEXT;
+BEGIN
+    FOREACH aggregate IN ARRAY ARRAY['hit_rollup_minute', 'hit_rollup_hour', 'hit_rollup_day', 'hit_sketch_hour',
+                                     'hit_sketch_day', 'hit_bitmap_day'] LOOP
+        IF EXISTS (SELECT 1 FROM information_schema.columns
+                   WHERE table_schema = current_schema() AND table_name = aggregate AND column_name = 'uri') THEN
+            EXECUTE format('ALTER TABLE %I RENAME TO %I', aggregate, aggregate || '_legacy');
+            EXECUTE format('ALTER INDEX IF EXISTS %I RENAME TO %I', aggregate || '_pkey', aggregate || '_legacy_pkey');
+            EXECUTE format('DROP INDEX IF EXISTS %I', 'idx_' || aggregate || '_uri');
+        END IF;
+    END LOOP;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION stats_try_inet(value TEXT) RETURNS INET AS $$
+BEGIN
+    RETURN value::inet;
+EXCEPTION WHEN others THEN
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+CREATE TABLE IF NOT EXISTS dim_app (
+    id   SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS dim_uri (
+    id  SERIAL PRIMARY KEY,
+    uri VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE INDEX IF NOT EXISTS idx_dim_uri_pattern ON dim_uri (uri text_pattern_ops);
+
+CREATE TABLE IF NOT EXISTS dim_ip (
+    id   SERIAL PRIMARY KEY,
+    addr INET NOT NULL UNIQUE
+);
+
+-- Ссылки на справочники не объявлены внешними ключами, чтобы не проверять их на каждой вставке хита
+CREATE TABLE IF NOT EXISTS endpoint_hits (
+    app_id    INTEGER      NOT NULL,
+    uri_id    INTEGER      NOT NULL,
+    ip_id     INTEGER      NOT NULL,
+    timestamp TIMESTAMP(6) NOT NULL
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits_default PARTITION OF endpoint_hits DEFAULT;
+
+CREATE INDEX IF NOT EXISTS idx_endpoint_hits_timestamp ON endpoint_hits (timestamp);
+
+CREATE INDEX IF NOT EXISTS idx_endpoint_hits_uri ON endpoint_hits (uri_id, timestamp);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_minute (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER   NOT NULL,
+    uri_id INTEGER   NOT NULL,
+    hits   BIGINT    NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_rollup_minute_uri ON hit_rollup_minute (uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_hour (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER   NOT NULL,
+    uri_id INTEGER   NOT NULL,
+    hits   BIGINT    NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_rollup_hour_uri ON hit_rollup_hour (uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_day (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER   NOT NULL,
+    uri_id INTEGER   NOT NULL,
+    hits   BIGINT    NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_rollup_day_uri ON hit_rollup_day (uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS stats_migration (
+    name         VARCHAR(64) PRIMARY KEY,
+    completed_at TIMESTAMP,
+    watermark    BIGINT
+);
+
+ALTER TABLE stats_migration ADD COLUMN IF NOT EXISTS watermark BIGINT;
+
+ALTER TABLE stats_migration ALTER COLUMN completed_at DROP NOT NULL;
+
+CREATE TABLE IF NOT EXISTS hit_sketch_hour (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER   NOT NULL,
+    uri_id INTEGER   NOT NULL,
+    sketch BYTEA     NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_sketch_hour_uri ON hit_sketch_hour (uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS hit_sketch_day (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER   NOT NULL,
+    uri_id INTEGER   NOT NULL,
+    sketch BYTEA     NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_sketch_day_uri ON hit_sketch_day (uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS hit_bitmap_day (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER   NOT NULL,
+    uri_id INTEGER   NOT NULL,
+    bitmap BYTEA     NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_bitmap_day_uri ON hit_bitmap_day (uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS hit_bitmap_hour (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER   NOT NULL,
+    uri_id INTEGER   NOT NULL,
+    bitmap BYTEA     NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_bitmap_hour_uri ON hit_bitmap_hour (uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS stats_wal_checkpoint (
+    node VARCHAR(64) PRIMARY KEY,
+    lsn  BIGINT      NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS stats_cold_segment (
+    file       VARCHAR(255) PRIMARY KEY,
+    min_ts     TIMESTAMP(6) NOT NULL,
+    max_ts     TIMESTAMP(6) NOT NULL,
+    row_count  BIGINT       NOT NULL,
+    bytes      BIGINT       NOT NULL,
+    created_at TIMESTAMP    NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS hit_lifetime_visitor (
+    uri_id INTEGER NOT NULL,
+    app_id INTEGER NOT NULL,
+    ip_id  INTEGER NOT NULL,
+    PRIMARY KEY (uri_id, app_id, ip_id)
+);
+
+CREATE TABLE IF NOT EXISTS hit_lifetime (
+    uri_id   INTEGER NOT NULL,
+    app_id   INTEGER NOT NULL,
+    hits     BIGINT  NOT NULL,
+    visitors BIGINT  NOT NULL,
+    PRIMARY KEY (uri_id, app_id)
+);
+
+CREATE TABLE IF NOT EXISTS hit_dead_letter (
+    id         BIGSERIAL PRIMARY KEY,
+    app        TEXT,
+    uri        TEXT,
+    ip         TEXT,
+    timestamp  TIMESTAMP(6),
+    error      TEXT      NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- Хиты с адресом, который не разбирается как inet (localhost, unknown, список X-Forwarded-For), уходят
+-- в hit_dead_letter; старая таблица удаляется, только если перенесены или отложены все её строки
+DO $$
+DECLARE
+    legacy_count   BIGINT;
+    rejected_count BIGINT;
+    migrated_count BIGINT;
+BEGIN
+    IF to_regclass('endpoint_hits_legacy') IS NOT NULL THEN
+        SELECT count(*) INTO legacy_count FROM endpoint_hits_legacy;
+        INSERT INTO hit_dead_letter (app, uri, ip, timestamp, error)
+        SELECT app, uri, ip, timestamp, 'Перенос из endpoint_hits_legacy: некорректный IP-адрес'
+        FROM endpoint_hits_legacy
+        WHERE stats_try_inet(ip) IS NULL;
+        GET DIAGNOSTICS rejected_count = ROW_COUNT;
+        INSERT INTO dim_app (name) SELECT DISTINCT app FROM endpoint_hits_legacy ON CONFLICT (name) DO NOTHING;
+        INSERT INTO dim_uri (uri) SELECT DISTINCT uri FROM endpoint_hits_legacy ON CONFLICT (uri) DO NOTHING;
+        INSERT INTO dim_ip (addr)
+        SELECT DISTINCT stats_try_inet(ip) FROM endpoint_hits_legacy WHERE stats_try_inet(ip) IS NOT NULL
+        ON CONFLICT (addr) DO NOTHING;
+        INSERT INTO endpoint_hits (app_id, uri_id, ip_id, timestamp)
+        SELECT a.id, u.id, i.id, l.timestamp
+        FROM endpoint_hits_legacy l
+                 JOIN dim_app a ON a.name = l.app
+                 JOIN dim_uri u ON u.uri = l.uri
+                 JOIN dim_ip i ON i.addr = stats_try_inet(l.ip);
+        GET DIAGNOSTICS migrated_count = ROW_COUNT;
+        IF migrated_count + rejected_count <> legacy_count THEN
+            RAISE EXCEPTION 'Перенос endpoint_hits_legacy прерван: строк %, перенесено %, в hit_dead_letter %',
+                legacy_count, migrated_count, rejected_count;
+        END IF;
+        DROP TABLE endpoint_hits_legacy;
+        IF rejected_count > 0 THEN
+            RAISE WARNING 'При переносе endpoint_hits_legacy % хитов с некорректным IP сохранены в hit_dead_letter',
+                rejected_count;
+        END IF;
+    END IF;
+END
+$$;
+
+-- Агрегаты переходят на идентификаторы справочников строка в строку: пара имён однозначно задаёт пару
+-- идентификаторов, поэтому ключи не сливаются, и старая таблица удаляется, только если перенесены все её строки
+DO $$
+DECLARE
+    aggregate      TEXT;
+    value_column   TEXT;
+    legacy_count   BIGINT;
+    migrated_count BIGINT;
+BEGIN
+    FOR aggregate, value_column IN
+        SELECT * FROM (VALUES ('hit_rollup_minute', 'hits'), ('hit_rollup_hour', 'hits'), ('hit_rollup_day', 'hits'),
+                              ('hit_sketch_hour', 'sketch'), ('hit_sketch_day', 'sketch'),
+                              ('hit_bitmap_day', 'bitmap')) AS v(aggregate, value_column)
+    LOOP
+        CONTINUE WHEN to_regclass(aggregate || '_legacy') IS NULL;
+        EXECUTE format('SELECT count(*) FROM %I', aggregate || '_legacy') INTO legacy_count;
+        EXECUTE format('INSERT INTO dim_app (name) SELECT DISTINCT app FROM %I ON CONFLICT (name) DO NOTHING',
+                       aggregate || '_legacy');
+        EXECUTE format('INSERT INTO dim_uri (uri) SELECT DISTINCT uri FROM %I ON CONFLICT (uri) DO NOTHING',
+                       aggregate || '_legacy');
+        EXECUTE format('INSERT INTO %1$I (bucket, app_id, uri_id, %2$I) SELECT l.bucket, a.id, u.id, l.%2$I '
+                           'FROM %3$I l JOIN dim_app a ON a.name = l.app JOIN dim_uri u ON u.uri = l.uri',
+                       aggregate, value_column, aggregate || '_legacy');
+        GET DIAGNOSTICS migrated_count = ROW_COUNT;
+        IF migrated_count <> legacy_count THEN
+            RAISE EXCEPTION 'Перенос % прерван: строк %, перенесено %', aggregate || '_legacy', legacy_count,
+                migrated_count;
+        END IF;
+        EXECUTE format('DROP TABLE %I', aggregate || '_legacy');
+    END LOOP;
+END
+$$;
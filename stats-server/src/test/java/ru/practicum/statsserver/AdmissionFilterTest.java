@@ -0,0 +1,135 @@
+package ru.practicum.statsserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionFilterTest {
+
+    private static final FilterChain OK = (request, response) -> {
+    };
+    // Потоковый ответ: обработка продолжается после выхода из фильтра
+    private static final FilterChain ASYNC = (request, response) -> request.startAsync();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void fullQueueIsRejectedWith429() throws Exception {
+        AdmissionFilter filter = filter(0, 1000);
+        MockHttpServletRequest held = request("/stats");
+        perform(filter, held, ASYNC);
+
+        MockHttpServletResponse rejected = perform(filter, request("/stats"), OK);
+
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("3");
+        assertThat(rejected.getContentAsString(StandardCharsets.UTF_8))
+                .contains("\"status\":\"TOO_MANY_REQUESTS\"", "Очередь запросов query заполнена");
+        assertThat(rejections("queue_full")).isEqualTo(1);
+    }
+
+    @Test
+    void expiredWaitIsRejectedWith503() throws Exception {
+        AdmissionFilter filter = filter(1, 50);
+        perform(filter, request("/stats"), ASYNC);
+
+        MockHttpServletResponse rejected = perform(filter, request("/stats/top"), OK);
+
+        assertThat(rejected.getStatus()).isEqualTo(503);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("3");
+        assertThat(rejected.getContentAsString(StandardCharsets.UTF_8))
+                .contains("\"status\":\"SERVICE_UNAVAILABLE\"");
+        assertThat(rejections("timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void asyncResponseHoldsPermitUntilCompleted() throws Exception {
+        AdmissionFilter filter = filter(0, 1000);
+        MockHttpServletRequest held = request("/stats");
+        perform(filter, held, ASYNC);
+        assertThat(active()).isEqualTo(1);
+        assertThat(perform(filter, request("/stats"), OK).getStatus()).isEqualTo(429);
+
+        held.getAsyncContext().complete();
+
+        assertThat(active()).isZero();
+        assertThat(perform(filter, request("/stats"), OK).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void synchronousResponseReleasesPermitOnReturn() throws Exception {
+        AdmissionFilter filter = filter(0, 1000);
+
+        assertThat(perform(filter, request("/stats"), OK).getStatus()).isEqualTo(200);
+        assertThat(perform(filter, request("/stats"), OK).getStatus()).isEqualTo(200);
+        assertThat(active()).isZero();
+    }
+
+    @Test
+    void failedRequestReleasesPermit() throws Exception {
+        AdmissionFilter filter = filter(0, 1000);
+        FilterChain failing = (request, response) -> {
+            throw new ServletException("сбой обработчика");
+        };
+
+        assertThatThrownBy(() -> perform(filter, request("/stats"), failing)).isInstanceOf(ServletException.class);
+
+        assertThat(active()).isZero();
+        assertThat(perform(filter, request("/stats"), OK).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void saturatedQueriesDoNotBlockIngest() throws Exception {
+        AdmissionFilter filter = filter(0, 1000);
+        perform(filter, request("/stats"), ASYNC);
+
+        assertThat(perform(filter, request("/hit"), OK).getStatus()).isEqualTo(200);
+        assertThat(perform(filter, request("/hits"), OK).getStatus()).isEqualTo(200);
+        assertThat(perform(filter, request("/stats/top"), OK).getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    void otherPathsAreNotLimited() throws Exception {
+        AdmissionFilter filter = filter(0, 1000);
+        perform(filter, request("/stats"), ASYNC);
+
+        assertThat(perform(filter, request("/actuator/health"), OK).getStatus()).isEqualTo(200);
+        assertThat(perform(filter, request("/statistics"), OK).getStatus()).isEqualTo(200);
+    }
+
+    private AdmissionFilter filter(int queryQueue, long queryWaitMs) {
+        return new AdmissionFilter(new ObjectMapper(), meterRegistry, true, 3, 1, 0, 1000, 1, queryQueue, queryWaitMs);
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    private static MockHttpServletResponse perform(AdmissionFilter filter, MockHttpServletRequest request,
+                                                   FilterChain chain) throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private double active() {
+        return meterRegistry.get("stats.admission.active").tag("class", "query").gauge().value();
+    }
+
+    private double rejections(String reason) {
+        return meterRegistry.get("stats.admission.rejected").tag("class", "query").tag("reason", reason)
+                .counter().count();
+    }
+}
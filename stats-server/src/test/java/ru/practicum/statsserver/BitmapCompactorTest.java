@@ -0,0 +1,88 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BitmapCompactorTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 1, 10, 0, 0);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final BitmapWriter bitmapWriter = mock(BitmapWriter.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void hourlyBitmapsOfClosedDayAreOredIntoDayRow() throws Exception {
+        when(jdbcTemplate.queryForList(contains("FROM hit_bitmap_hour"), eq(Timestamp.class), any()))
+                .thenReturn(List.of(Timestamp.valueOf(DAY)));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(row(1, 7, RoaringBitmap.bitmapOf(1, 2)));
+            handler.processRow(row(1, 7, RoaringBitmap.bitmapOf(2, 3)));
+            handler.processRow(row(1, 8, RoaringBitmap.bitmapOf(5)));
+            return null;
+        }).when(jdbcTemplate).query(contains("DELETE FROM hit_bitmap_hour"), any(RowCallbackHandler.class),
+                eq(Timestamp.valueOf(DAY)), eq(Timestamp.valueOf(DAY.plusDays(1))));
+
+        compactor(true).compact();
+
+        ArgumentCaptor<Map<BucketKey, RoaringBitmap>> merged = ArgumentCaptor.forClass(Map.class);
+        verify(bitmapWriter).merge(merged.capture());
+        assertThat(merged.getValue()).containsOnly(
+                Map.entry(new BucketKey(DAY, 1, 7), RoaringBitmap.bitmapOf(1, 2, 3)),
+                Map.entry(new BucketKey(DAY, 1, 8), RoaringBitmap.bitmapOf(5)));
+    }
+
+    @Test
+    void onlyDaysEndedBeforeGraceAreCompacted() {
+        compactor(true).compact();
+
+        ArgumentCaptor<Object> bound = ArgumentCaptor.forClass(Object.class);
+        verify(jdbcTemplate).queryForList(contains("WHERE bucket < ?"), eq(Timestamp.class), bound.capture());
+        LocalDateTime threshold = ((Timestamp) bound.getValue()).toLocalDateTime();
+        assertThat(threshold).isEqualTo(RollupGranularity.DAY.floor(threshold))
+                .isBefore(LocalDateTime.now().minusHours(1));
+        verify(bitmapWriter, never()).merge(any());
+    }
+
+    @Test
+    void disabledBitmapsSkipCompaction() {
+        compactor(false).compact();
+
+        verify(jdbcTemplate, never()).queryForList(any(String.class), eq(Timestamp.class), any());
+    }
+
+    private BitmapCompactor compactor(boolean enabled) {
+        return new BitmapCompactor(jdbcTemplate, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                bitmapWriter, enabled, 1);
+    }
+
+    private static ResultSet row(int appId, int uriId, RoaringBitmap bitmap) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getInt("app_id")).thenReturn(appId);
+        when(rs.getInt("uri_id")).thenReturn(uriId);
+        when(rs.getBytes("bitmap")).thenReturn(BitmapWriter.CODEC.encode(bitmap));
+        return rs;
+    }
+}
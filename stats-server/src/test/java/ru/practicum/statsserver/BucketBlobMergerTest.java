@@ -0,0 +1,78 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BucketBlobMergerTest {
+
+    private static final LocalDateTime HOUR = LocalDateTime.of(2024, 1, 10, 12, 0);
+    private static final BucketKey FIRST = new BucketKey(HOUR, 1, 7);
+    private static final BucketKey SECOND = new BucketKey(HOUR, 1, 8);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final List<List<BucketKey>> inserted = new ArrayList<>();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rowDeletedBeforeLockIsInsertedAgain() throws Exception {
+        doAnswer(invocation -> {
+            List<Map.Entry<BucketKey, ?>> rows = invocation.getArgument(1);
+            inserted.add(rows.stream().map(Map.Entry::getKey).toList());
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(startsWith("INSERT INTO hit_bitmap_hour"), any(List.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        // Первая блокировка не находит SECOND — строку удалило сворачивание часов.
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(row(FIRST, RoaringBitmap.bitmapOf(1)));
+            return null;
+        }).doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(row(SECOND, RoaringBitmap.bitmapOf(9)));
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        new BucketBlobMerger(jdbcTemplate).merge(BitmapWriter.HOUR_TABLE, "bitmap",
+                Map.of(FIRST, RoaringBitmap.bitmapOf(2), SECOND, RoaringBitmap.bitmapOf(3)), BitmapWriter.CODEC);
+
+        assertThat(inserted).containsExactly(List.of(FIRST, SECOND), List.of(SECOND));
+        verify(jdbcTemplate, times(2)).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        ArgumentCaptor<List<Map.Entry<BucketKey, RoaringBitmap>>> updated = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE hit_bitmap_hour"), updated.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertThat(updated.getValue()).containsExactly(
+                Map.entry(FIRST, RoaringBitmap.bitmapOf(1, 2)),
+                Map.entry(SECOND, RoaringBitmap.bitmapOf(3, 9)));
+    }
+
+    private static ResultSet row(BucketKey key, RoaringBitmap bitmap) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getTimestamp("bucket")).thenReturn(Timestamp.valueOf(key.getBucket()));
+        when(rs.getInt("app_id")).thenReturn(key.getAppId());
+        when(rs.getInt("uri_id")).thenReturn(key.getUriId());
+        when(rs.getBytes("bitmap")).thenReturn(BitmapWriter.CODEC.encode(bitmap));
+        return rs;
+    }
+}
@@ -0,0 +1,166 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Хиты за первые дни переносятся в сегменты, остальные считаются «в БД»: архив, объединённый с БД,
+ * должен давать те же числа, что и все хиты до переноса.
+ */
+class ColdSegmentStoreTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    private static final int DAYS = 5;
+    private static final int ARCHIVED_DAYS = 3;
+    private static final List<String> APPS = List.of("ewm", "admin");
+    private static final LocalDateTime FROM = LocalDateTime.of(2024, 1, 2, 12, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2024, 1, 5, 6, 0);
+
+    @TempDir
+    Path dir;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final List<Hit> hits = new ArrayList<>();
+    private ColdSegmentStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            long micros = ColdSegment.toMicros(FIRST_DAY.atStartOfDay())
+                    + (long) (random.nextDouble() * DAYS * 86_400_000_000L);
+            hits.add(new Hit(random.nextInt(APPS.size()), random.nextInt(20), 1 + random.nextInt(300), micros));
+        }
+        hits.sort(Comparator.comparingLong(Hit::micros));
+
+        store = new ColdSegmentStore(jdbcTemplate, dir.toString(), false, 90, 2);
+        List<String> files = new ArrayList<>();
+        for (int day = 0; day < ARCHIVED_DAYS; day++) {
+            files.add(archive(FIRST_DAY.plusDays(day)).getFileName().toString());
+        }
+        when(jdbcTemplate.queryForList(contains("FROM stats_cold_segment"), eq(String.class))).thenReturn(files);
+        store.refresh();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stop();
+    }
+
+    @Test
+    void archivedHitsMergedWithDatabaseMatchCountsBeforeArchiving() {
+        assertMatchesPreArchive(UriFilter.ALL);
+    }
+
+    @Test
+    void archivedHitsMergedWithDatabaseMatchCountsForSelectedUris() {
+        assertMatchesPreArchive(UriFilter.of(List.of("/events/3", "/events/7", "/users/1")));
+    }
+
+    @Test
+    void rangesAfterArchiveDoNotInvolveSegments() {
+        LocalDateTime archivedUntil = FIRST_DAY.plusDays(ARCHIVED_DAYS).atStartOfDay();
+
+        assertThat(store.involves(new QuerySegment(null, FROM, TO))).isTrue();
+        assertThat(store.involves(new QuerySegment(null, archivedUntil, TO))).isFalse();
+        assertThat(store.involves(new QuerySegment(RollupGranularity.DAY, FROM, TO))).isFalse();
+    }
+
+    @Test
+    void rollupRangesAreNotScanned() {
+        Map<StatsKey, Long> counted = new HashMap<>();
+
+        store.countHits(List.of(new QuerySegment(RollupGranularity.DAY, FROM, TO)), UriFilter.ALL, counted);
+
+        assertThat(counted).isEmpty();
+    }
+
+    private void assertMatchesPreArchive(UriFilter filter) {
+        long from = ColdSegment.toMicros(FROM);
+        long to = ColdSegment.toMicros(TO);
+        long archivedUntil = ColdSegment.toMicros(FIRST_DAY.plusDays(ARCHIVED_DAYS).atStartOfDay());
+        // Сырые края и середина запроса, как их делит планировщик
+        LocalDateTime middle = LocalDateTime.of(2024, 1, 3, 0, 0);
+        List<QuerySegment> ranges = List.of(new QuerySegment(null, FROM, middle), new QuerySegment(null, middle, TO));
+
+        Map<StatsKey, Long> counted = count(from, to, archivedUntil, Long.MAX_VALUE, filter);
+        Map<StatsKey, RoaringBitmap> visitors = visitors(from, to, archivedUntil, Long.MAX_VALUE, filter);
+        store.countHits(ranges, filter, counted);
+        store.distinctIps(ranges, filter, visitors);
+
+        assertThat(counted).isNotEmpty().isEqualTo(count(from, to, Long.MIN_VALUE, Long.MAX_VALUE, filter));
+        assertThat(visitors).isEqualTo(visitors(from, to, Long.MIN_VALUE, Long.MAX_VALUE, filter));
+    }
+
+    private Path archive(LocalDate day) throws IOException {
+        long from = ColdSegment.toMicros(day.atStartOfDay());
+        long to = ColdSegment.toMicros(day.plusDays(1).atStartOfDay());
+        ColdSegmentWriter writer = new ColdSegmentWriter();
+        for (Hit hit : hits) {
+            if (hit.micros() >= from && hit.micros() < to) {
+                writer.add(hit.app(), hit.uri(), hit.ip(), hit.micros());
+            }
+        }
+        Path path = store.newSegmentPath(day);
+        writer.write(path, APPS::get, ColdSegmentStoreTest::uri);
+        return path;
+    }
+
+    /**
+     * Подсчёт по списку хитов с timestamp в [from, to) и одновременно в [storedFrom, storedTo).
+     */
+    private Map<StatsKey, Long> count(long from, long to, long storedFrom, long storedTo, UriFilter filter) {
+        Map<StatsKey, Long> result = new HashMap<>();
+        for (Hit hit : select(from, to, storedFrom, storedTo, filter)) {
+            result.merge(hit.key(), 1L, Long::sum);
+        }
+        return result;
+    }
+
+    private Map<StatsKey, RoaringBitmap> visitors(long from, long to, long storedFrom, long storedTo,
+                                                  UriFilter filter) {
+        Map<StatsKey, RoaringBitmap> result = new HashMap<>();
+        for (Hit hit : select(from, to, storedFrom, storedTo, filter)) {
+            result.computeIfAbsent(hit.key(), key -> new RoaringBitmap()).add(hit.ip());
+        }
+        return result;
+    }
+
+    private List<Hit> select(long from, long to, long storedFrom, long storedTo, UriFilter filter) {
+        return hits.stream()
+                .filter(hit -> hit.micros() >= Math.max(from, storedFrom) && hit.micros() < Math.min(to, storedTo))
+                .filter(hit -> filter.matches(uri(hit.uri())))
+                .toList();
+    }
+
+    private static String uri(int id) {
+        return "/events/" + id;
+    }
+
+    private record Hit(int app, int uri, int ip, long micros) {
+        StatsKey key() {
+            return new StatsKey(APPS.get(app), ColdSegmentStoreTest.uri(uri));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ColdSegmentTest {
+
+    private static final int ROWS = 3 * ColdSegment.BLOCK_ROWS + 17;
+    private static final long START = ColdSegment.toMicros(LocalDateTime.of(2024, 1, 10, 0, 0));
+    private static final Map<Integer, String> APPS = Map.of(1, "ewm", 2, "admin");
+
+    @TempDir
+    Path dir;
+
+    private final List<Row> rows = new ArrayList<>();
+    private ColdSegment segment;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ColdSegmentWriter writer = new ColdSegmentWriter();
+        long micros = START;
+        for (int i = 0; i < ROWS; i++) {
+            // Первая строка второго блока повторяет timestamp последней строки первого
+            if (i != ColdSegment.BLOCK_ROWS) {
+                micros += 1 + i % 3 * 1_000_000L;
+            }
+            int appId = i % 7 == 0 ? 2 : 1;
+            int uriId = i % 5;
+            int ipId = i % 11 == 0 ? Integer.MAX_VALUE - i : i % 97;
+            writer.add(appId, uriId, ipId, micros);
+            rows.add(new Row(APPS.get(appId), uri(uriId), ipId, micros));
+        }
+        Path path = dir.resolve("segment.seg");
+        long bytes = writer.write(path, APPS::get, ColdSegmentTest::uri);
+
+        assertThat(bytes).isEqualTo(Files.size(path));
+        assertThat(dir.resolve("segment.seg.tmp")).doesNotExist();
+        segment = ColdSegment.open(path);
+    }
+
+    @Test
+    void headerAndDictionaryRoundTrip() {
+        assertThat(segment.getRows()).isEqualTo(ROWS);
+        assertThat(segment.getMinMicros()).isEqualTo(rows.get(0).micros());
+        assertThat(segment.getMaxMicros()).isEqualTo(rows.get(ROWS - 1).micros());
+        assertThat(segment.getPairCount()).isEqualTo(10);
+        for (int pair = 0; pair < segment.getPairCount(); pair++) {
+            assertThat(segment.app(pair)).isIn("ewm", "admin");
+            assertThat(segment.uri(pair)).startsWith("/events/");
+        }
+    }
+
+    @Test
+    void fullScanReturnsEveryRowInOrder() {
+        assertThat(scan(Long.MIN_VALUE, Long.MAX_VALUE, null)).containsExactlyElementsOf(rows);
+    }
+
+    @Test
+    void scanFromBlockBoundaryIncludesEqualTimestampInPreviousBlock() {
+        long from = rows.get(ColdSegment.BLOCK_ROWS).micros();
+        long to = rows.get(2 * ColdSegment.BLOCK_ROWS + 5).micros();
+
+        List<Row> scanned = scan(from, to, null);
+
+        assertThat(scanned).containsExactlyElementsOf(expected(from, to, UriFilter.ALL));
+        assertThat(scanned.get(0)).isEqualTo(rows.get(ColdSegment.BLOCK_ROWS - 1));
+    }
+
+    @Test
+    void scanOfRandomRangesMatchesBruteForce() {
+        Random random = new Random(42);
+        long span = rows.get(ROWS - 1).micros() - START;
+        for (int i = 0; i < 200; i++) {
+            long from = START + (long) (random.nextDouble() * span) - 1;
+            long to = from + (long) (random.nextDouble() * span / 3);
+
+            assertThat(scan(from, to, null)).containsExactlyElementsOf(expected(from, to, UriFilter.ALL));
+        }
+    }
+
+    @Test
+    void rangeOutsideSegmentReadsNothing() {
+        assertThat(segment.overlaps(Long.MIN_VALUE, START)).isFalse();
+        assertThat(scan(Long.MIN_VALUE, rows.get(0).micros(), null)).isEmpty();
+        assertThat(scan(rows.get(ROWS - 1).micros() + 1, Long.MAX_VALUE, null)).isEmpty();
+    }
+
+    @Test
+    void uriFilterSelectsPairs() {
+        UriFilter filter = UriFilter.of(List.of("/events/1", "/events/4"));
+        long from = rows.get(100).micros();
+        long to = rows.get(ROWS - 100).micros();
+
+        assertThat(segment.mayMatch(filter)).isTrue();
+        assertThat(scan(from, to, segment.select(filter))).containsExactlyElementsOf(expected(from, to, filter));
+        assertThat(segment.select(UriFilter.ALL)).isNull();
+    }
+
+    @Test
+    void filterWithoutMatchingUrisSkipsSegment() {
+        UriFilter filter = UriFilter.of(List.of("/users/1"));
+
+        assertThat(segment.mayMatch(filter)).isFalse();
+        assertThat(scan(Long.MIN_VALUE, Long.MAX_VALUE, segment.select(filter))).isEmpty();
+    }
+
+    @Test
+    void writerRejectsDecreasingTimestampsAndEmptySegment() {
+        ColdSegmentWriter writer = new ColdSegmentWriter();
+        writer.add(1, 1, 1, START);
+
+        assertThatThrownBy(() -> writer.add(1, 1, 1, START - 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ColdSegmentWriter().write(dir.resolve("empty.seg"), APPS::get, String::valueOf))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void openRejectsForeignFile() throws IOException {
+        Path path = Files.write(dir.resolve("foreign.seg"), new byte[64]);
+
+        assertThatThrownBy(() -> ColdSegment.open(path)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void microsRoundTripBeforeAndAfterEpoch() {
+        for (LocalDateTime time : List.of(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_000),
+                LocalDateTime.of(2024, 5, 1, 10, 0, 0, 123_456_000))) {
+            assertThat(ColdSegment.fromMicros(ColdSegment.toMicros(time))).isEqualTo(time);
+        }
+    }
+
+    private List<Row> scan(long from, long to, boolean[] pairs) {
+        List<Row> scanned = new ArrayList<>();
+        segment.scan(from, to, pairs, (pair, ip, micros) ->
+                scanned.add(new Row(segment.app(pair), segment.uri(pair), ip, micros)));
+        return scanned;
+    }
+
+    private List<Row> expected(long from, long to, UriFilter filter) {
+        return rows.stream()
+                .filter(row -> row.micros() >= from && row.micros() < to && filter.matches(row.uri()))
+                .toList();
+    }
+
+    private static String uri(int id) {
+        return "/events/" + id;
+    }
+
+    private record Row(String app, String uri, int ip, long micros) {
+    }
+}
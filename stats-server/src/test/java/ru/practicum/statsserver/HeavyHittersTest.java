@@ -0,0 +1,60 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeavyHittersTest {
+
+    private final HeavyHitters heavyHitters = new HeavyHitters(true, 60, 5, 100);
+
+    @Test
+    void topMergesSlotsOfCurrentWindow() {
+        LocalDateTime now = LocalDateTime.now();
+        add(hits("/a", 3, now), hits("/b", 1, now), hits("/a", 2, now.minusMinutes(2)), hits("/c", 4, now));
+
+        assertThat(heavyHitters.top(UriFilter.ALL, 2))
+                .containsExactly(new ViewStats("ewm", "/a", 5L), new ViewStats("ewm", "/c", 4L));
+    }
+
+    @Test
+    void hitsOlderThanWindowAreIgnored() {
+        LocalDateTime now = LocalDateTime.now();
+        add(hits("/old", 10, now.minusMinutes(30)), hits("/a", 1, now));
+
+        assertThat(heavyHitters.top(UriFilter.ALL, 10)).containsExactly(new ViewStats("ewm", "/a", 1L));
+    }
+
+    @Test
+    void topAppliesUriFilter() {
+        LocalDateTime now = LocalDateTime.now();
+        add(hits("/events/1", 2, now), hits("/users/1", 5, now));
+
+        assertThat(heavyHitters.top(UriFilter.of(null, "/events/"), 10))
+                .containsExactly(new ViewStats("ewm", "/events/1", 2L));
+    }
+
+    @SafeVarargs
+    private void add(List<EndpointHit>... parts) {
+        List<EndpointHit> hits = new ArrayList<>();
+        for (List<EndpointHit> part : parts) {
+            hits.addAll(part);
+        }
+        heavyHitters.onBatch(new HitBatch(hits, Map.of(), Map.of(), Map.of()));
+    }
+
+    private static List<EndpointHit> hits(String uri, int count, LocalDateTime timestamp) {
+        List<EndpointHit> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hits.add(new EndpointHit("ewm", uri, "10.0.0." + i, timestamp));
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,172 @@
+package ru.practicum.statsserver;
+
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HitIngestBufferTest {
+
+    private final HitBatchWriter writer = mock(HitBatchWriter.class);
+    private final HitWal wal = mock(HitWal.class);
+    private final HitDeadLetters deadLetters = mock(HitDeadLetters.class);
+    private final HitIngestBuffer buffer = new HitIngestBuffer(writer, wal, deadLetters);
+
+    @BeforeEach
+    void setUp() {
+        // Без фонового потока: сбросы вызываются из теста
+        ReflectionTestUtils.setField(buffer, "running", true);
+        ReflectionTestUtils.setField(buffer, "capacity", 100);
+        ReflectionTestUtils.setField(buffer, "batchSize", 10);
+        ReflectionTestUtils.setField(buffer, "retryBackoffMs", 1L);
+        ReflectionTestUtils.setField(buffer, "maxRetryBackoffMs", 60_000L);
+    }
+
+    @Test
+    void badRecordGoesToDeadLettersAndRestIsWritten() {
+        EndpointHit bad = hit("/bad");
+        List<EndpointHit> written = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<EndpointHit> hits = invocation.getArgument(0);
+            if (hits.contains(bad)) {
+                throw new IllegalStateException("нарушено ограничение");
+            }
+            written.addAll(hits);
+            return null;
+        }).when(writer).write(anyList());
+        when(deadLetters.store(eq(bad), any())).thenReturn(true);
+
+        buffer.offerAll(List.of(hit("/a"), bad, hit("/b")));
+        buffer.flush();
+
+        // Пакет отложен до сброса после паузы
+        verify(writer, times(1)).write(anyList());
+        assertThat(retryBatch()).asInstanceOf(InstanceOfAssertFactories.LIST).hasSize(3);
+
+        retryNow();
+        buffer.flush();
+
+        assertThat(written).extracting(EndpointHit::getUri).containsExactly("/a", "/b");
+        verify(deadLetters).store(eq(bad), any());
+        // Две попытки целым пакетом и по одной на каждую запись
+        verify(writer, times(5)).write(anyList());
+        assertThat(retryBatch()).isNull();
+    }
+
+    @Test
+    void batchIsPostponedWithBackoffWhenDatabaseIsDown() {
+        doThrow(new IllegalStateException("нет соединения")).when(writer).write(anyList());
+        when(deadLetters.store(any(), any())).thenReturn(false);
+        // Пауза после прошлых неудач уже упирается в max-retry-backoff-ms и не истекает между сбросами
+        ReflectionTestUtils.setField(buffer, "retryFailures", 20);
+
+        buffer.offerAll(List.of(hit("/a"), hit("/b")));
+        buffer.flush();
+        retryNow();
+        buffer.flush();
+        buffer.flush();
+
+        // Третий сброс приходится на паузу и не обращается к БД
+        verify(writer, times(3)).write(anyList());
+        assertThat(retryBatch()).asInstanceOf(InstanceOfAssertFactories.LIST).hasSize(2);
+        verify(deadLetters, never()).log(any(), any());
+    }
+
+    @Test
+    void flushDoesNotSleepThroughRetryBackoff() {
+        doThrow(new IllegalStateException("нет соединения")).when(writer).write(anyList());
+        ReflectionTestUtils.setField(buffer, "retryBackoffMs", 60_000L);
+
+        buffer.offerAll(List.of(hit("/a")));
+
+        // Чтения с flush-before-read вызывают flush на каждом запросе и не должны ждать паузу перед повтором
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            buffer.flush();
+            buffer.flush();
+        });
+        verify(writer, times(1)).write(anyList());
+        assertThat(retryBatch()).asInstanceOf(InstanceOfAssertFactories.LIST).hasSize(1);
+    }
+
+    @Test
+    void stopWritesFailedBatchRecordByRecord() throws InterruptedException {
+        EndpointHit bad = hit("/bad");
+        doAnswer(invocation -> {
+            if (invocation.<List<EndpointHit>>getArgument(0).contains(bad)) {
+                throw new IllegalStateException("нарушено ограничение");
+            }
+            return null;
+        }).when(writer).write(anyList());
+        when(deadLetters.store(eq(bad), any())).thenReturn(true);
+        ReflectionTestUtils.setField(buffer, "retryBackoffMs", 60_000L);
+        ReflectionTestUtils.setField(buffer, "flusher", Thread.ofVirtual().unstarted(() -> {
+        }));
+
+        buffer.offerAll(List.of(hit("/a"), bad));
+        buffer.stop();
+
+        verify(writer).write(List.of(hit("/a")));
+        verify(deadLetters).store(eq(bad), any());
+        verify(deadLetters, never()).log(any(), any());
+    }
+
+    @Test
+    void walCheckpointAdvancesPastDeadLetter() {
+        EndpointHit bad = hit("/bad");
+        when(wal.isEnabled()).thenReturn(true);
+        when(wal.append(any(), any())).thenAnswer(invocation -> {
+            EndpointHit hit = invocation.getArgument(0);
+            long lsn = hit == bad ? 2 : 1;
+            invocation.<LongConsumer>getArgument(1).accept(lsn);
+            return lsn;
+        });
+        doAnswer(invocation -> {
+            if (invocation.<List<EndpointHit>>getArgument(0).contains(bad)) {
+                throw new IllegalStateException("нарушено ограничение");
+            }
+            return null;
+        }).when(wal).write(anyList(), anyLong());
+        when(deadLetters.store(eq(bad), any())).thenReturn(true);
+
+        buffer.offerAll(List.of(hit("/a"), bad));
+        buffer.flush();
+        retryNow();
+        buffer.flush();
+
+        verify(wal).write(List.of(), 2);
+        assertThat(retryBatch()).isNull();
+    }
+
+    private void retryNow() {
+        ReflectionTestUtils.setField(buffer, "retryAtNanos", System.nanoTime());
+    }
+
+    private Object retryBatch() {
+        return ReflectionTestUtils.getField(buffer, "retryBatch");
+    }
+
+    private static EndpointHit hit(String uri) {
+        return new EndpointHit("ewm", uri, "10.0.0.1", LocalDateTime.of(2024, 5, 1, 10, 0));
+    }
+}
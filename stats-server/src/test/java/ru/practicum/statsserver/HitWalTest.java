@@ -0,0 +1,144 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.practicum.statsdto.EndpointHit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class HitWalTest {
+
+    private static final int SEGMENT_SIZE = 1 << 20;
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 5, 1, 10, 0, 0, 123_456_000);
+
+    @TempDir
+    Path dir;
+
+    private final HitBatchWriter writer = mock(HitBatchWriter.class);
+
+    @Test
+    void replayRestoresUnwrittenHitsWithMicroseconds() throws Exception {
+        appendAndStop(hit("/a", TIMESTAMP), hit("/b", TIMESTAMP.plusNanos(1_000)), hit("/c", TIMESTAMP.plusDays(1)));
+
+        assertThat(replay()).containsExactly(
+                hit("/a", TIMESTAMP), hit("/b", TIMESTAMP.plusNanos(1_000)), hit("/c", TIMESTAMP.plusDays(1)));
+    }
+
+    @Test
+    void replayStopsAtRecordWithBadCrc() throws Exception {
+        appendAndStop(hit("/a", TIMESTAMP), hit("/b", TIMESTAMP), hit("/c", TIMESTAMP));
+        Path segment = segments().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        int second = indexOf(bytes, "/b");
+        bytes[second] ^= 1;
+        Files.write(segment, bytes);
+
+        assertThat(replay()).containsExactly(hit("/a", TIMESTAMP));
+    }
+
+    @Test
+    void replayIgnoresRecordCutOffByTruncation() throws Exception {
+        appendAndStop(hit("/a", TIMESTAMP), hit("/b", TIMESTAMP), hit("/c", TIMESTAMP));
+        Path segment = segments().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(indexOf(bytes, "/c"));
+        }
+
+        assertThat(replay()).containsExactly(hit("/a", TIMESTAMP), hit("/b", TIMESTAMP));
+    }
+
+    @Test
+    void segmentWithoutHeaderOnDiskIsEmpty() throws Exception {
+        Files.write(dir.resolve(String.format("wal-%020d.log", 1)), new byte[SEGMENT_SIZE]);
+
+        assertThat(replay()).isEmpty();
+    }
+
+    @Test
+    void foreignSegmentFailsStartup() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(SEGMENT_SIZE).putInt(0x4557414C).putInt(99);
+        Files.write(dir.resolve(String.format("wal-%020d.log", 1)), buffer.array());
+
+        assertThatThrownBy(() -> wal().start()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void emptyJournalReplaysNothing() throws Exception {
+        appendAndStop();
+
+        replay();
+        verify(writer, never()).prepare(anyList());
+    }
+
+    private void appendAndStop(EndpointHit... hits) throws Exception {
+        HitWal wal = wal();
+        wal.start();
+        for (EndpointHit hit : hits) {
+            wal.append(hit, lsn -> {
+            });
+        }
+        wal.stop();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<EndpointHit> replay() throws Exception {
+        HitWal wal = wal();
+        wal.start();
+        wal.stop();
+        ArgumentCaptor<List<EndpointHit>> batches = ArgumentCaptor.forClass(List.class);
+        verify(writer, atLeast(0)).prepare(batches.capture());
+        List<EndpointHit> replayed = new ArrayList<>();
+        batches.getAllValues().forEach(replayed::addAll);
+        return replayed;
+    }
+
+    private HitWal wal() {
+        return new HitWal(writer, mock(JdbcTemplate.class), mock(PlatformTransactionManager.class), true,
+                dir.toString(), SEGMENT_SIZE, "none", 100, "test", 500);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, String value) {
+        byte[] needle = value.getBytes(StandardCharsets.UTF_8);
+        outer:
+        for (int i = 0; i <= bytes.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (bytes[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError(value + " не найдено");
+    }
+
+    private static EndpointHit hit(String uri, LocalDateTime timestamp) {
+        return new EndpointHit("ewm", uri, "10.0.0.1", timestamp);
+    }
+}
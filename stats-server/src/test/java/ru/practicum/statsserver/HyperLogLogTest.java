@@ -0,0 +1,74 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    // Три стандартные ошибки 1.04 / sqrt(4096)
+    private static final double MAX_RELATIVE_ERROR = 3 * 1.04 / Math.sqrt(HyperLogLog.REGISTERS);
+
+    @ParameterizedTest
+    @ValueSource(ints = {20_000, 100_000, 1_000_000})
+    void estimateStaysWithinErrorBound(int count) {
+        for (long offset : new long[]{0, 1L << 40, 7_777_777_777L}) {
+            HyperLogLog sketch = sketch(offset, count);
+
+            assertThat((double) sketch.estimate()).isCloseTo(count, within(count * MAX_RELATIVE_ERROR));
+        }
+    }
+
+    @Test
+    void smallSetsAreCountedAlmostExactly() {
+        assertThat(new HyperLogLog().estimate()).isZero();
+        assertThat(sketch(0, 1).estimate()).isEqualTo(1);
+        assertThat(sketch(0, 100).estimate()).isCloseTo(100, within(1L));
+        assertThat(sketch(0, 1_000).estimate()).isCloseTo(1_000, within(15L));
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog left = sketch(0, 60_000);
+        HyperLogLog right = sketch(40_000, 60_000);
+
+        left.merge(right);
+
+        assertThat(left.toBytes()).isEqualTo(sketch(0, 100_000).toBytes());
+    }
+
+    @Test
+    void mergeAndRepeatedIdsAreIdempotent() {
+        HyperLogLog sketch = sketch(0, 50_000);
+        byte[] before = sketch.toBytes();
+
+        sketch.merge(HyperLogLog.fromBytes(before));
+        for (long id = 0; id < 1_000; id++) {
+            sketch.addId(id);
+        }
+
+        assertThat(sketch.toBytes()).isEqualTo(before);
+    }
+
+    @Test
+    void bytesRoundTrip() {
+        HyperLogLog sketch = sketch(0, 10_000);
+
+        HyperLogLog copy = HyperLogLog.fromBytes(sketch.toBytes());
+
+        assertThat(copy.estimate()).isEqualTo(sketch.estimate());
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[16])).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static HyperLogLog sketch(long first, int count) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long id = first; id < first + count; id++) {
+            sketch.addId(id);
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAddressesTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "0.0.0.0", "10.0.0.1", "255.255.255.255",
+            "::", "::1", "1::", "2001:db8::ff00:42:8329", "2001:0db8:0000:0000:0000:ff00:0042:8329",
+            "1:2:3:4:5:6:7::", "::ffff:192.0.2.128", "1:2:3:4:5:6:192.0.2.128", "FE80::A"
+    })
+    void acceptsIpLiterals(String ip) {
+        assertThat(IpAddresses.isValid(ip)).isTrue();
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {
+            "256.0.0.1", "1.2.3", "1.2.3.4.5", "1..2.3", "1.2.3.-4", "1.2.3.4 ", "1234.1.1.1", "localhost",
+            "1.2.3.4:80", "1::2::3", ":::", ":1::2", "1::2:", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9",
+            "1:2:3:4:5:6:7:8::", "12345::1", "g::1", "::1.2.3", "1.2.3.4::"
+    })
+    void rejectsEverythingElse(String ip) {
+        assertThat(IpAddresses.isValid(ip)).isFalse();
+    }
+}
@@ -0,0 +1,68 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongCountMapTest {
+
+    @Test
+    void addAccumulatesAndGetReturnsZeroForMissingKey() {
+        LongCountMap map = new LongCountMap();
+        map.add(7, 2);
+        map.add(7, 3);
+        map.add(-1, 1);
+
+        assertThat(map.get(7)).isEqualTo(5);
+        assertThat(map.get(-1)).isEqualTo(1);
+        assertThat(map.get(8)).isZero();
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    @Test
+    void matchesHashMapAcrossResizes() {
+        LongCountMap map = new LongCountMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            // Пары uri_id/app_id, как в LifetimeCounters.pair: значимы младшие биты обеих половин
+            long key = LifetimeCounters.pair(random.nextInt(5_000), random.nextInt(4));
+            long delta = random.nextInt(10);
+            map.add(key, delta);
+            expected.merge(key, delta, Long::sum);
+        }
+
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+        assertThat(map.size()).isEqualTo(expected.size());
+    }
+
+    @Test
+    void addAllSumsCounters() {
+        LongCountMap left = new LongCountMap();
+        left.add(1, 1);
+        left.add(2, 2);
+        LongCountMap right = new LongCountMap();
+        right.add(2, 5);
+        right.add(3, 3);
+
+        left.addAll(right);
+
+        assertThat(left.get(1)).isEqualTo(1);
+        assertThat(left.get(2)).isEqualTo(7);
+        assertThat(left.get(3)).isEqualTo(3);
+        assertThat(left.size()).isEqualTo(3);
+    }
+
+    @Test
+    void reservedKeyIsRejected() {
+        assertThatThrownBy(() -> new LongCountMap().add(LongCountMap.EMPTY, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
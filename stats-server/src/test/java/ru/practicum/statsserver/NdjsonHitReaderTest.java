@@ -0,0 +1,64 @@
+package ru.practicum.statsserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.StatsJsonModule;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NdjsonHitReaderTest {
+
+    private final NdjsonHitReader reader = new NdjsonHitReader(new ObjectMapper().registerModule(new StatsJsonModule()));
+
+    @Test
+    void readArrayKeepsIndexesOfUnreadableRecords() throws IOException {
+        List<EndpointHit> hits = reader.readArray(body("["
+                + "{\"app\":\"ewm\",\"uri\":\"/events/1\",\"ip\":\"10.0.0.1\",\"timestamp\":\"2024-05-01 10:00:00\"},"
+                + "{\"app\":\"ewm\",\"uri\":\"/events/2\",\"ip\":\"10.0.0.2\",\"timestamp\":\"not a date\"},"
+                + "{\"app\":[1,2],\"uri\":\"/events/3\"},"
+                + "null,"
+                + "{\"app\":\"ewm\",\"uri\":\"/events/5\",\"ip\":\"10.0.0.5\",\"timestamp\":\"2024-05-01 10:00:05\"}"
+                + "]"));
+
+        assertThat(hits).hasSize(5);
+        assertThat(hits.get(0).getUri()).isEqualTo("/events/1");
+        assertThat(hits.get(0).getTimestamp()).isEqualTo(LocalDateTime.of(2024, 5, 1, 10, 0, 0));
+        assertThat(hits.subList(1, 4)).containsOnlyNulls();
+        assertThat(hits.get(4).getUri()).isEqualTo("/events/5");
+    }
+
+    @Test
+    void readArrayRejectsMalformedJson() {
+        assertThatThrownBy(() -> reader.readArray(body("[{\"app\":\"ewm\"}, {\"app\":")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("#1");
+        assertThatThrownBy(() -> reader.readArray(body("{\"app\":\"ewm\"}")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void readSkipsBlankLinesAndKeepsBrokenLinesAsNull() throws IOException {
+        List<EndpointHit> hits = reader.read(body(
+                "{\"app\":\"ewm\",\"uri\":\"/a\",\"ip\":\"10.0.0.1\",\"timestamp\":\"2024-05-01 10:00:00\"}\n"
+                        + "\n"
+                        + "{broken\n"
+                        + "{\"app\":\"ewm\",\"uri\":\"/b\",\"ip\":\"10.0.0.2\",\"timestamp\":\"2024-05-01 10:00:01\"}\n"));
+
+        assertThat(hits).hasSize(3);
+        assertThat(hits.get(1)).isNull();
+        assertThat(hits.get(2).getUri()).isEqualTo("/b");
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
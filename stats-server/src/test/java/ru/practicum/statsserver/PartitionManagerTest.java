@@ -0,0 +1,105 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PartitionManagerTest {
+
+    private static final LocalDate HISTORY = LocalDate.of(2024, 1, 10);
+    private static final String HISTORY_PARTITION = "endpoint_hits_p20240110";
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    @Test
+    void historicalRowsAreMovedFromDefaultIntoTheirPartition() {
+        stubPartitionedTable(List.of(HISTORY));
+
+        manager(0, "detach").maintain();
+
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute(startsWith("CREATE TABLE " + HISTORY_PARTITION + " "));
+        order.verify(jdbcTemplate).update(contains("DELETE FROM endpoint_hits_default"),
+                eq(Timestamp.valueOf("2024-01-10 00:00:00")), eq(Timestamp.valueOf("2024-01-11 00:00:00")));
+        order.verify(jdbcTemplate).execute("ALTER TABLE endpoint_hits ATTACH PARTITION " + HISTORY_PARTITION +
+                " FOR VALUES FROM ('2024-01-10 00:00:00.0') TO ('2024-01-11 00:00:00.0')");
+        verify(jdbcTemplate).execute(startsWith("CREATE TABLE endpoint_hits_p" + today() + " "));
+        verify(jdbcTemplate, never()).execute(startsWith("ALTER TABLE endpoint_hits DETACH"));
+    }
+
+    @Test
+    void retentionDropsPartitionSplitFromDefault() {
+        stubPartitionedTable(List.of(HISTORY));
+        when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class), eq("endpoint_hits")))
+                .thenReturn(List.of("endpoint_hits_default", HISTORY_PARTITION, "endpoint_hits_p" + today()));
+
+        manager(30, "drop").maintain();
+
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute(startsWith("CREATE TABLE " + HISTORY_PARTITION + " "));
+        order.verify(jdbcTemplate).execute("ALTER TABLE endpoint_hits DETACH PARTITION " + HISTORY_PARTITION);
+        order.verify(jdbcTemplate).execute("DROP TABLE " + HISTORY_PARTITION);
+        verify(jdbcTemplate, never()).execute("ALTER TABLE endpoint_hits DETACH PARTITION endpoint_hits_default");
+        verify(jdbcTemplate, never()).execute("ALTER TABLE endpoint_hits DETACH PARTITION endpoint_hits_p" + today());
+    }
+
+    @Test
+    void retentionDetachesWithoutDropping() {
+        stubPartitionedTable(List.of(HISTORY));
+        when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class), eq("endpoint_hits")))
+                .thenReturn(List.of(HISTORY_PARTITION));
+
+        manager(30, "detach").maintain();
+
+        verify(jdbcTemplate).execute("ALTER TABLE endpoint_hits DETACH PARTITION " + HISTORY_PARTITION);
+        verify(jdbcTemplate, never()).execute("DROP TABLE " + HISTORY_PARTITION);
+        verify(jdbcTemplate, never()).update(startsWith("DELETE FROM endpoint_hits_default"), any(Object[].class));
+    }
+
+    @Test
+    void monthlyPartitionsSplitDefaultByMonth() {
+        stubPartitionedTable(List.of(LocalDate.of(2024, 1, 1)));
+
+        new PartitionManager(jdbcTemplate, transactionTemplate(), true, "month", 0, 0, "detach").maintain();
+
+        verify(jdbcTemplate).queryForList(contains("date_trunc('month', timestamp)"), eq(LocalDate.class), any());
+        verify(jdbcTemplate).execute("ALTER TABLE endpoint_hits ATTACH PARTITION endpoint_hits_p202401" +
+                " FOR VALUES FROM ('2024-01-01 00:00:00.0') TO ('2024-02-01 00:00:00.0')");
+    }
+
+    private void stubPartitionedTable(List<LocalDate> defaultPeriods) {
+        when(jdbcTemplate.queryForObject(contains("relkind"), eq(String.class), eq("endpoint_hits"))).thenReturn("p");
+        when(jdbcTemplate.queryForObject(contains("to_regclass"), eq(Boolean.class), anyString())).thenReturn(false);
+        when(jdbcTemplate.queryForList(contains("FROM endpoint_hits_default"), eq(LocalDate.class), any()))
+                .thenReturn(defaultPeriods);
+    }
+
+    private PartitionManager manager(int retention, String retentionAction) {
+        return new PartitionManager(jdbcTemplate, transactionTemplate(), true, "day", 1, retention, retentionAction);
+    }
+
+    private static TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(mock(PlatformTransactionManager.class));
+    }
+
+    private static String today() {
+        return LocalDate.now().format(PartitionInterval.DAY.getSuffixFormat());
+    }
+}
@@ -0,0 +1,174 @@
+package ru.practicum.statsserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.ViewStats;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Кольцо сдвигается по времени хитов, а не по часам сервера, поэтому время здесь задаётся меткой хитов:
+ * 6 слотов по 10 секунд, покрытие начинается с {@link #START}.
+ */
+class RecentHitCountersTest {
+
+    private static final long SLOT_SECONDS = 10;
+    private static final int SLOTS = 6;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 5, 1, 12, 0, 0);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RecentHitCounters counters = new RecentHitCounters(jdbcTemplate, meterRegistry, true,
+            SLOT_SECONDS, SLOTS);
+    private LocalDateTime now = START;
+
+    @BeforeEach
+    void setUp() {
+        // Последний хит, записанный до запуска, — за секунду до START
+        when(jdbcTemplate.queryForObject(anyString(), eq(Timestamp.class)))
+                .thenReturn(Timestamp.valueOf(START.minusSeconds(1)));
+        counters.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void countsHitsOfSlotsInWindow() {
+        hit("/events/1");
+        hit("/events/2");
+        tick(10);
+        hit("/events/1");
+        tick(10);
+        hit("/events/1");
+
+        assertThat(stats(START, 20)).contains(List.of(
+                new ViewStats("ewm", "/events/1", 2L), new ViewStats("ewm", "/events/2", 1L)));
+        assertThat(stats(START.plusSeconds(10), 20)).contains(List.of(new ViewStats("ewm", "/events/1", 2L)));
+        assertThat(counters.getStats(START, START.plusSeconds(29), UriFilter.of(List.of("/events/2"))))
+                .contains(List.of(new ViewStats("ewm", "/events/2", 1L)));
+    }
+
+    @Test
+    void rotatedSlotIsNoLongerServed() {
+        hit("/events/1");
+        tick(SLOT_SECONDS * (SLOTS - 1));
+        hit("/events/1");
+        assertThat(stats(START, SLOT_SECONDS * SLOTS)).contains(List.of(new ViewStats("ewm", "/events/1", 2L)));
+
+        // Хит следующего периода занимает ячейку START
+        tick(SLOT_SECONDS);
+        hit("/events/1");
+
+        assertThat(stats(START, SLOT_SECONDS)).isEmpty();
+        assertThat(stats(START.plusSeconds(SLOT_SECONDS), SLOT_SECONDS * SLOTS))
+                .contains(List.of(new ViewStats("ewm", "/events/1", 2L)));
+    }
+
+    @Test
+    void slotsWithoutHitsCountAsZero() {
+        hit("/events/1");
+        tick(SLOT_SECONDS * SLOTS * 3);
+
+        // Ячейки хранят давно прошедшие периоды — в новом окне хитов не было
+        assertThat(stats(now, SLOT_SECONDS * SLOTS)).contains(List.of());
+    }
+
+    @Test
+    void lateHitForRotatedPeriodIsDropped() {
+        tick(SLOT_SECONDS * SLOTS);
+        hit("/events/1");
+
+        counters.onBatch(batch(START, "/events/2"));
+
+        assertThat(stats(now, SLOT_SECONDS)).contains(List.of(new ViewStats("ewm", "/events/1", 1L)));
+        assertThat(stats(START, SLOT_SECONDS)).isEmpty();
+    }
+
+    @Test
+    void windowOutsideRingOrCoverageIsNotServed() {
+        hit("/events/1");
+
+        assertThat(stats(START.minusSeconds(SLOT_SECONDS), SLOT_SECONDS * 2)).isEmpty();
+        assertThat(stats(START, SLOT_SECONDS * (SLOTS + 1))).isEmpty();
+        assertThat(counters.getStats(START.plusSeconds(1), START.plusSeconds(SLOT_SECONDS), UriFilter.ALL)).isEmpty();
+        assertThat(counters.getStats(START, START.plusSeconds(SLOT_SECONDS), UriFilter.ALL)).isEmpty();
+    }
+
+    @Test
+    void nothingIsServedBeforeStart() {
+        RecentHitCounters notStarted = new RecentHitCounters(jdbcTemplate, new SimpleMeterRegistry(), true,
+                SLOT_SECONDS, SLOTS);
+        notStarted.onBatch(batch(START, "/events/1"));
+
+        assertThat(notStarted.getStats(START, START.plusSeconds(SLOT_SECONDS - 1), UriFilter.ALL)).isEmpty();
+    }
+
+    @Test
+    void hitsAreCountedAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        hit("/events/1");
+
+        assertThat(stats(START, SLOT_SECONDS)).contains(List.of());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(stats(START, SLOT_SECONDS)).contains(List.of(new ViewStats("ewm", "/events/1", 1L)));
+    }
+
+    @Test
+    void hitRatioReflectsServedQueries() {
+        assertThat(hitRatio()).isZero();
+        hit("/events/1");
+
+        stats(START, SLOT_SECONDS);
+        stats(START, SLOT_SECONDS * 2);
+        stats(START, SLOT_SECONDS * 3);
+        stats(START.minusSeconds(SLOT_SECONDS), SLOT_SECONDS);
+
+        assertThat(meterRegistry.get("stats.recent.queries").tag("result", "hit").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("stats.recent.queries").tag("result", "miss").counter().count()).isEqualTo(1);
+        assertThat(hitRatio()).isEqualTo(0.75);
+    }
+
+    private void tick(long seconds) {
+        now = now.plusSeconds(seconds);
+    }
+
+    private void hit(String uri) {
+        counters.onBatch(batch(now, uri));
+    }
+
+    /**
+     * @return статистика за seconds секунд с from, как её запрашивает /stats (конец включается)
+     */
+    private Optional<List<ViewStats>> stats(LocalDateTime from, long seconds) {
+        return counters.getStats(from, from.plusSeconds(seconds - 1), UriFilter.ALL);
+    }
+
+    private double hitRatio() {
+        return meterRegistry.get("stats.recent.hit.ratio").gauge().value();
+    }
+
+    private static HitBatch batch(LocalDateTime timestamp, String uri) {
+        return new HitBatch(List.of(new EndpointHit("ewm", uri, "10.0.0.1", timestamp)), Map.of(), Map.of(), Map.of());
+    }
+}
@@ -0,0 +1,67 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpaceSavingTest {
+
+    @Test
+    void countsAreExactWhileKeysFit() {
+        SpaceSaving<String> summary = new SpaceSaving<>(3);
+        summary.add("a", 5);
+        summary.add("b", 2);
+        summary.add("a", 1);
+
+        assertThat(counts(summary)).containsExactlyInAnyOrderEntriesOf(Map.of("a", 6L, "b", 2L));
+        assertThat(summary.entries()).allSatisfy(entry -> assertThat(entry.getError()).isZero());
+    }
+
+    @Test
+    void newKeyReplacesMinimumAndInheritsItsCountAsError() {
+        SpaceSaving<String> summary = new SpaceSaving<>(2);
+        summary.add("a", 10);
+        summary.add("b", 3);
+        summary.add("c", 1);
+
+        Map<String, SpaceSaving.Entry<String>> entries = new HashMap<>();
+        summary.entries().forEach(entry -> entries.put(entry.getKey(), entry));
+        assertThat(entries).containsOnlyKeys("a", "c");
+        assertThat(entries.get("c").getCount()).isEqualTo(4);
+        assertThat(entries.get("c").getError()).isEqualTo(3);
+    }
+
+    @Test
+    void frequentKeysSurviveWithBoundedOverestimate() {
+        int capacity = 50;
+        SpaceSaving<Integer> summary = new SpaceSaving<>(capacity);
+        Map<Integer, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        long total = 0;
+        for (int i = 0; i < 200_000; i++) {
+            // Пять частых ключей на фоне длинного хвоста
+            int key = random.nextInt(4) == 0 ? random.nextInt(5) : 100 + random.nextInt(100_000);
+            summary.add(key, 1);
+            exact.merge(key, 1L, Long::sum);
+            total++;
+        }
+
+        Map<Integer, Long> counts = counts(summary);
+        assertThat(counts).containsKeys(0, 1, 2, 3, 4);
+        for (SpaceSaving.Entry<Integer> entry : summary.entries()) {
+            long truth = exact.get(entry.getKey());
+            assertThat(entry.getCount()).isBetween(truth, truth + total / capacity);
+            assertThat(entry.getCount() - entry.getError()).isLessThanOrEqualTo(truth);
+        }
+    }
+
+    private static <K> Map<K, Long> counts(SpaceSaving<K> summary) {
+        Map<K, Long> counts = new HashMap<>();
+        summary.entries().forEach(entry -> counts.put(entry.getKey(), entry.getCount()));
+        return counts;
+    }
+}
@@ -0,0 +1,106 @@
+package ru.practicum.statsserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.practicum.statsdto.StatsJsonModule;
+import ru.practicum.statsdto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class StatsControllerCacheTest {
+
+    private final StatsService statsService = mock(StatsService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new StatsJsonModule());
+    private MockMvc mvc;
+    private StatsResultCache.CachedStats cached;
+
+    @BeforeEach
+    void setUp() {
+        StatsController controller = new StatsController(statsService, new NdjsonHitReader(objectMapper), objectMapper);
+        ReflectionTestUtils.setField(controller, "maxPageSize", 1000);
+        mvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new ErrorHandler())
+                .build();
+
+        StatsResultCache cache = new StatsResultCache(new SimpleMeterRegistry(), true, 100, 100, 5, 60);
+        StatsQueryKey key = StatsQueryKey.of(LocalDateTime.of(2024, 5, 1, 0, 0), LocalDateTime.of(2024, 5, 2, 0, 0),
+                UriFilter.ALL, false, false);
+        StatsResultCache.Capture capture = cache.capture(key, row -> {
+        });
+        capture.accept(new ViewStats("ewm", "/events/1", 5L));
+        capture.complete();
+        cached = cache.get(key);
+        when(statsService.getCachedStats(any(), any(), any(), anyBoolean(), anyBoolean())).thenReturn(cached);
+    }
+
+    @Test
+    void matchingIfNoneMatchReturnsNotModified() throws Exception {
+        String etag = "\"" + cached.getEtag() + "\"";
+
+        mvc.perform(get("/stats").header("If-None-Match", etag)
+                        .param("start", "2024-05-01 00:00:00").param("end", "2024-05-02 00:00:00"))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void staleIfNoneMatchReturnsCachedBodyWithEtag() throws Exception {
+        MvcResult started = mvc.perform(get("/stats").header("If-None-Match", "\"устаревший\"")
+                        .param("start", "2024-05-01 00:00:00").param("end", "2024-05-02 00:00:00"))
+                .andExpect(header().string("ETag", "\"" + cached.getEtag() + "\""))
+                .andReturn();
+
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"app\":\"ewm\",\"uri\":\"/events/1\",\"hits\":5}]"));
+        verify(statsService, never()).streamStats(any(), any(), any(), anyBoolean(), anyBoolean(), any(), any());
+    }
+
+    @Test
+    void ndjsonEtagDoesNotMatchJsonEtag() throws Exception {
+        String ndjsonEtag = "\"" + cached.getEtag() + "-ndjson\"";
+
+        mvc.perform(get("/stats").header("Accept", "application/x-ndjson")
+                        .header("If-None-Match", "\"" + cached.getEtag() + "\"")
+                        .param("start", "2024-05-01 00:00:00").param("end", "2024-05-02 00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", ndjsonEtag));
+        mvc.perform(get("/stats").header("Accept", "application/x-ndjson").header("If-None-Match", ndjsonEtag)
+                        .param("start", "2024-05-01 00:00:00").param("end", "2024-05-02 00:00:00"))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void pagedRequestBypassesCache() throws Exception {
+        when(statsService.streamStats(any(), any(), any(), anyBoolean(), anyBoolean(), isNull(), anyInt()))
+                .thenReturn(sink -> sink.accept(new ViewStats("ewm", "/events/1", 5L)));
+
+        mvc.perform(get("/stats").header("If-None-Match", "\"" + cached.getEtag() + "\"").param("limit", "10")
+                        .param("start", "2024-05-01 00:00:00").param("end", "2024-05-02 00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"));
+        verify(statsService, never()).getCachedStats(any(), any(), any(), anyBoolean(), anyBoolean());
+    }
+}
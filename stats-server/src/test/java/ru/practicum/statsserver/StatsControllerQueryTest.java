@@ -0,0 +1,65 @@
+package ru.practicum.statsserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.practicum.statsdto.StatsJsonModule;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+
+class StatsControllerQueryTest {
+
+    private final StatsService statsService = mock(StatsService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new StatsJsonModule());
+    private final MockMvc mvc = MockMvcBuilders
+            .standaloneSetup(new StatsController(statsService, new NdjsonHitReader(objectMapper), objectMapper))
+            .setControllerAdvice(new ErrorHandler())
+            .build();
+
+    @Test
+    void emptyEventListReturnsNothing() throws Exception {
+        perform("{\"eventIds\":[],\"unique\":true}", "[]");
+
+        verifyNoInteractions(statsService);
+    }
+
+    @Test
+    void emptyUriListReturnsNothing() throws Exception {
+        perform("{\"start\":\"2024-05-01 00:00:00\",\"end\":\"2024-05-02 00:00:00\",\"uris\":[]}", "[]");
+
+        verifyNoInteractions(statsService);
+    }
+
+    @Test
+    void absentListsMeanAllUris() throws Exception {
+        when(statsService.getLifetimeStats(any(), anyBoolean())).thenReturn(List.of());
+
+        perform("{\"unique\":false}", "[]");
+
+        ArgumentCaptor<UriFilter> filter = ArgumentCaptor.forClass(UriFilter.class);
+        verify(statsService).getLifetimeStats(filter.capture(), eq(false));
+        assertThat(filter.getValue().isEmpty()).isTrue();
+    }
+
+    private void perform(String body, String expected) throws Exception {
+        MvcResult started = mvc.perform(post("/stats/query").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andReturn();
+        mvc.perform(asyncDispatch(started)).andExpect(content().json(expected));
+    }
+}
@@ -0,0 +1,81 @@
+package ru.practicum.statsserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.practicum.statsdto.StatsJsonModule;
+import ru.practicum.statsdto.ViewStats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class StatsControllerStreamingTest {
+
+    private final StatsService statsService = mock(StatsService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new StatsJsonModule());
+    private final MockMvc mvc = MockMvcBuilders
+            .standaloneSetup(new StatsController(statsService, new NdjsonHitReader(objectMapper), objectMapper))
+            .setControllerAdvice(new ErrorHandler())
+            .build();
+
+    @Test
+    void validationErrorIsReportedBeforeStreaming() throws Exception {
+        when(statsService.streamStats(any(), any(), any(), anyBoolean(), anyBoolean(), isNull(), isNull()))
+                .thenThrow(new IllegalArgumentException("Некорректный шаблон uri"));
+
+        mvc.perform(get("/stats").param("start", "2024-05-01 00:00:00").param("end", "2024-05-02 00:00:00"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void failureMidStreamDoesNotCloseJsonArray() throws Exception {
+        when(statsService.streamStats(any(), any(), any(), anyBoolean(), anyBoolean(), isNull(), isNull()))
+                .thenReturn(failingSource());
+
+        MvcResult started = mvc.perform(get("/stats")
+                        .param("start", "2024-05-01 00:00:00").param("end", "2024-05-02 00:00:00"))
+                .andReturn();
+
+        assertThatThrownBy(() -> mvc.perform(asyncDispatch(started)))
+                .hasCauseInstanceOf(StatsStreamAbortedException.class);
+        assertThat(started.getResponse().getContentAsString(StandardCharsets.UTF_8))
+                .startsWith("[")
+                .doesNotEndWith("]");
+    }
+
+    @Test
+    void failureMidStreamEndsNdjsonWithErrorLine() throws Exception {
+        when(statsService.streamStats(any(), any(), any(), anyBoolean(), anyBoolean(), isNull(), isNull()))
+                .thenReturn(failingSource());
+
+        MvcResult started = mvc.perform(get("/stats").header("Accept", "application/x-ndjson")
+                        .param("start", "2024-05-01 00:00:00").param("end", "2024-05-02 00:00:00"))
+                .andReturn();
+
+        assertThatThrownBy(() -> mvc.perform(asyncDispatch(started)))
+                .hasCauseInstanceOf(StatsStreamAbortedException.class);
+        String[] lines = started.getResponse().getContentAsString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[1]).isEqualTo("{\"error\":\"соединение с БД потеряно\"}");
+    }
+
+    private static Consumer<Consumer<ViewStats>> failingSource() {
+        return sink -> {
+            sink.accept(new ViewStats("ewm", "/events/1", 5L));
+            throw new IllegalStateException("соединение с БД потеряно");
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.ViewStatsEstimate;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class StatsEstimatorTest {
+
+    @Test
+    void estimateScalesSampledPartByFraction() {
+        StatsEstimator estimator = new StatsEstimator(0.25);
+        estimator.addExact("ewm", "/events/1", 60);
+        estimator.addExact("ewm", "/events/1", 40);
+        estimator.addSampled("ewm", "/events/1", 50);
+
+        double halfWidth = 1.96 * Math.sqrt(50 * 0.75) / 0.25;
+        assertThat(estimator.build()).containsExactly(new ViewStatsEstimate("ewm", "/events/1", 300L,
+                Math.round(300 - halfWidth), Math.round(300 + halfWidth)));
+    }
+
+    @Test
+    void lowerBoundIsNotBelowObservedHits() {
+        StatsEstimator estimator = new StatsEstimator(0.01);
+        estimator.addExact("ewm", "/events/1", 10);
+        estimator.addSampled("ewm", "/events/1", 1);
+
+        ViewStatsEstimate estimate = estimator.build().get(0);
+
+        assertThat(estimate.getHits()).isEqualTo(110L);
+        // Без ограничения нижняя граница ушла бы в минус: 110 - 1.96 * sqrt(0.99) / 0.01 ≈ -85
+        assertThat(estimate.getHitsLower()).isEqualTo(11L);
+        assertThat(estimate.getHitsUpper()).isEqualTo(Math.round(110 + 1.96 * Math.sqrt(0.99) / 0.01));
+    }
+
+    @Test
+    void fullSampleIsExact() {
+        StatsEstimator estimator = new StatsEstimator(1);
+        estimator.addExact("ewm", "/events/1", 7);
+        estimator.addSampled("ewm", "/events/1", 5);
+
+        assertThat(estimator.build()).containsExactly(new ViewStatsEstimate("ewm", "/events/1", 12L, 12L, 12L));
+    }
+
+    @Test
+    void onlyExactPartHasZeroWidth() {
+        StatsEstimator estimator = new StatsEstimator(0.1);
+        estimator.addExact("ewm", "/events/1", 42);
+
+        assertThat(estimator.build()).containsExactly(new ViewStatsEstimate("ewm", "/events/1", 42L, 42L, 42L));
+    }
+
+    @Test
+    void rowsAreSortedByEstimatedHits() {
+        StatsEstimator estimator = new StatsEstimator(0.5);
+        estimator.addExact("ewm", "/events/1", 30);
+        estimator.addSampled("ewm", "/events/2", 20);
+        estimator.addExact("admin", "/events/3", 40);
+        estimator.addSampled("ewm", "/events/4", 1);
+
+        List<String> uris = estimator.build().stream().map(ViewStatsEstimate::getUri).toList();
+
+        assertThat(uris).containsExactly("/events/3", "/events/2", "/events/1", "/events/4");
+    }
+
+    @Test
+    void ipSamplingRateMatchesFraction() {
+        StatsEstimator estimator = new StatsEstimator(0.1);
+
+        long sampled = IntStream.rangeClosed(1, 200_000).filter(estimator::isSampledIp).count();
+
+        assertThat(sampled / 200_000.0).isCloseTo(0.1, within(0.005));
+    }
+
+    @Test
+    void ipSamplingIsNestedAcrossFractions() {
+        StatsEstimator narrow = new StatsEstimator(0.05);
+        StatsEstimator wide = new StatsEstimator(0.2);
+
+        // Выборка меньшей доли — подмножество большей, как у условия hash < bound в SQL
+        assertThat(IntStream.rangeClosed(1, 50_000).filter(narrow::isSampledIp).allMatch(wide::isSampledIp))
+                .isTrue();
+    }
+
+    @Test
+    void ipHashBoundCoversWholeRangeForFullSample() {
+        StatsEstimator estimator = new StatsEstimator(1);
+
+        assertThat(estimator.ipHashBound()).isEqualTo(StatsEstimator.IP_HASH_MODULUS);
+        assertThat(IntStream.of(0, 1, Integer.MAX_VALUE, -1, Integer.MIN_VALUE).allMatch(estimator::isSampledIp))
+                .isTrue();
+    }
+
+    @Test
+    void ipSamplingTreatsIdAsUnsigned() {
+        StatsEstimator estimator = new StatsEstimator(0.3);
+        int ipId = -123_456;
+
+        long hash = (Integer.toUnsignedLong(ipId) * StatsEstimator.IP_HASH_MULTIPLIER) % StatsEstimator.IP_HASH_MODULUS;
+
+        assertThat(estimator.isSampledIp(ipId)).isEqualTo(hash < estimator.ipHashBound());
+    }
+}
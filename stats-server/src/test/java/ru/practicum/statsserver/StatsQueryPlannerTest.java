@@ -0,0 +1,158 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsQueryPlannerTest {
+
+    private final StatsQueryPlanner planner = new StatsQueryPlanner();
+
+    @Test
+    void planCoversMiddleWithCoarsestBucketsAndEdgesWithFinerOnes() {
+        List<QuerySegment> segments = planner.plan(at("2024-05-01T10:30:15"), at("2024-05-03T12:45:00"));
+
+        assertThat(segments).containsExactly(
+                raw("2024-05-01T10:30:15", "2024-05-01T10:31:00"),
+                segment(RollupGranularity.MINUTE, "2024-05-01T10:31:00", "2024-05-01T11:00:00"),
+                segment(RollupGranularity.HOUR, "2024-05-01T11:00:00", "2024-05-02T00:00:00"),
+                segment(RollupGranularity.DAY, "2024-05-02T00:00:00", "2024-05-03T00:00:00"),
+                segment(RollupGranularity.HOUR, "2024-05-03T00:00:00", "2024-05-03T12:00:00"),
+                segment(RollupGranularity.MINUTE, "2024-05-03T12:00:00", "2024-05-03T12:45:00"),
+                raw("2024-05-03T12:45:00", "2024-05-03T12:45:00.000001"));
+        assertContiguous(segments, at("2024-05-01T10:30:15"), at("2024-05-03T12:45:00"));
+    }
+
+    @Test
+    void planOfAlignedRangeHasOnlyRollupsAndMicrosecondTail() {
+        List<QuerySegment> segments = planner.plan(at("2024-05-01T00:00:00"), at("2024-05-02T23:59:59.999999"));
+
+        assertThat(segments).containsExactly(
+                segment(RollupGranularity.DAY, "2024-05-01T00:00:00", "2024-05-03T00:00:00"));
+    }
+
+    @Test
+    void shortRangeIsReadFromRawHits() {
+        assertThat(planner.plan(at("2024-05-01T10:30:15"), at("2024-05-01T10:30:45")))
+                .containsExactly(raw("2024-05-01T10:30:15", "2024-05-01T10:30:45.000001"));
+    }
+
+    @Test
+    void sketchAndBitmapPlansSkipFinerGranularities() {
+        LocalDateTime start = at("2024-05-01T10:30:15");
+        LocalDateTime end = at("2024-05-03T12:45:00");
+
+        assertThat(planner.planSketches(start, end)).extracting(QuerySegment::getGranularity)
+                .containsExactly(null, RollupGranularity.HOUR, RollupGranularity.DAY, RollupGranularity.HOUR, null);
+        assertThat(planner.planBitmaps(start, end)).extracting(QuerySegment::getGranularity)
+                .containsExactly(null, RollupGranularity.DAY, null);
+    }
+
+    @Test
+    void planUpToDoesNotUseBucketsCoarserThanInterval() {
+        assertThat(planner.planUpTo(at("2024-05-01T10:30:15"), at("2024-05-03T12:45:00"), RollupGranularity.HOUR))
+                .extracting(QuerySegment::getGranularity)
+                .containsExactly(null, RollupGranularity.MINUTE, RollupGranularity.HOUR, RollupGranularity.MINUTE,
+                        null);
+    }
+
+    @Test
+    void windowsAreSplitIntoDisjointBands() {
+        LocalDateTime end = at("2024-05-03T12:45:00");
+
+        List<List<QuerySegment>> bands = planner.planWindows(
+                List.of(at("2024-05-03T12:00:00"), at("2024-05-03T00:00:00"), at("2024-05-01T10:30:15")), end,
+                (from, to) -> List.of(new QuerySegment(null, from, to)));
+
+        assertThat(bands).containsExactly(
+                List.of(raw("2024-05-03T12:00:00", "2024-05-03T12:45:00")),
+                List.of(raw("2024-05-03T00:00:00", "2024-05-03T11:59:59.999999")),
+                List.of(raw("2024-05-01T10:30:15", "2024-05-02T23:59:59.999999")));
+    }
+
+    @Test
+    void widestWindowBandsTogetherCoverItsWholeRange() {
+        LocalDateTime end = at("2024-05-03T12:45:00");
+        LocalDateTime widest = at("2024-04-20T08:00:00");
+
+        List<List<QuerySegment>> bands = planner.planWindows(
+                List.of(at("2024-05-03T11:45:00"), at("2024-05-02T12:45:00"), widest), end, planner::plan);
+
+        List<QuerySegment> all = new ArrayList<>();
+        for (int i = bands.size() - 1; i >= 0; i--) {
+            all.addAll(bands.get(i));
+        }
+        assertContiguous(all, widest, end);
+        assertThat(bands.get(2)).extracting(QuerySegment::getGranularity).contains(RollupGranularity.DAY);
+    }
+
+    @Test
+    void windowStartingAfterPreviousOneGetsEmptyBand() {
+        LocalDateTime end = at("2024-05-03T12:45:00");
+
+        List<List<QuerySegment>> bands = planner.planWindows(
+                List.of(at("2024-05-03T12:00:00"), at("2024-05-03T12:30:00")), end, planner::plan);
+
+        assertThat(bands.get(0)).isNotEmpty();
+        assertThat(bands.get(1)).isEmpty();
+    }
+
+    @Test
+    void splitBoundariesFallOnDayStarts() {
+        List<List<QuerySegment>> parts = planner.planSplit(at("2024-05-01T10:30:15"), at("2024-05-11T12:00:00"), 4,
+                (from, to) -> List.of(new QuerySegment(null, from, to)));
+
+        assertThat(parts).containsExactly(
+                List.of(raw("2024-05-01T10:30:15", "2024-05-03T23:59:59.999999")),
+                List.of(raw("2024-05-04T00:00:00", "2024-05-05T23:59:59.999999")),
+                List.of(raw("2024-05-06T00:00:00", "2024-05-07T23:59:59.999999")),
+                List.of(raw("2024-05-08T00:00:00", "2024-05-11T12:00:00")));
+    }
+
+    @Test
+    void splitKeepsRawSegmentsOnlyAtOuterEdges() {
+        LocalDateTime start = at("2024-05-01T10:30:15");
+        LocalDateTime end = at("2024-05-11T12:00:00");
+
+        List<List<QuerySegment>> parts = planner.planSplit(start, end, 3, planner::plan);
+
+        List<QuerySegment> all = new ArrayList<>();
+        parts.forEach(all::addAll);
+        assertContiguous(all, start, end);
+        assertThat(all.subList(1, all.size() - 1)).noneMatch(QuerySegment::isRaw);
+        assertThat(parts).hasSize(3);
+    }
+
+    @Test
+    void splitIsLimitedByWholeDays() {
+        LocalDateTime start = at("2024-05-01T10:30:15");
+
+        assertThat(planner.planSplit(start, at("2024-05-02T12:00:00"), 8, planner::plan))
+                .containsExactly(planner.plan(start, at("2024-05-02T12:00:00")));
+        assertThat(planner.planSplit(start, at("2024-05-05T12:00:00"), 8, planner::plan)).hasSize(3);
+    }
+
+    private static void assertContiguous(List<QuerySegment> segments, LocalDateTime start, LocalDateTime end) {
+        assertThat(segments.get(0).getFrom()).isEqualTo(start);
+        for (int i = 1; i < segments.size(); i++) {
+            assertThat(segments.get(i).getFrom()).isEqualTo(segments.get(i - 1).getTo());
+        }
+        assertThat(segments.get(segments.size() - 1).getTo()).isEqualTo(end.plusNanos(1_000));
+    }
+
+    private static LocalDateTime at(String value) {
+        return LocalDateTime.parse(value);
+    }
+
+    private static QuerySegment raw(String from, String to) {
+        return new QuerySegment(null, at(from), at(to));
+    }
+
+    private static QuerySegment segment(RollupGranularity granularity, String from, String to) {
+        return new QuerySegment(granularity, at(from), at(to));
+    }
+}
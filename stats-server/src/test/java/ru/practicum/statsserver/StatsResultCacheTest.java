@@ -0,0 +1,178 @@
+package ru.practicum.statsserver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statsdto.EndpointHit;
+import ru.practicum.statsdto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsResultCacheTest {
+
+    private static final long TTL_SECONDS = 5;
+    private static final List<ViewStats> ROWS = List.of(
+            new ViewStats("ewm", "/events/1", 10L), new ViewStats("ewm", "/events/2", 3L));
+    private static final StatsQueryKey JANUARY = key(LocalDateTime.of(2024, 1, 1, 0, 0),
+            LocalDateTime.of(2024, 1, 31, 23, 59, 59));
+    private static final StatsQueryKey MARCH = key(LocalDateTime.of(2024, 3, 1, 0, 0),
+            LocalDateTime.of(2024, 3, 31, 23, 59, 59));
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final StatsResultCache cache = cache(true, 100);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void closedRangeOutlivesOpenTtl() {
+        store(cache, JANUARY, ROWS);
+        advance(TTL_SECONDS * 100);
+
+        StatsResultCache.CachedStats cached = cache.get(JANUARY);
+        assertThat(cached).isNotNull();
+        assertThat(cached.isClosed()).isTrue();
+        assertThat(cached.getRows()).isEqualTo(ROWS);
+    }
+
+    @Test
+    void openRangeExpiresAfterTtl() {
+        StatsQueryKey open = key(LocalDateTime.now().minusHours(1), LocalDateTime.now().plusHours(1));
+        store(cache, open, ROWS);
+
+        advance(TTL_SECONDS - 1);
+        assertThat(cache.get(open)).isNotNull().extracting(StatsResultCache.CachedStats::isClosed).isEqualTo(false);
+
+        advance(2);
+        assertThat(cache.get(open)).isNull();
+    }
+
+    @Test
+    void rangeEndingWithinGraceIsOpen() {
+        StatsQueryKey recent = key(LocalDateTime.now().minusHours(1), LocalDateTime.now().minusSeconds(10));
+        store(cache, recent, ROWS);
+
+        assertThat(cache.get(recent).isClosed()).isFalse();
+    }
+
+    @Test
+    void lateHitInvalidatesOnlyOverlappingClosedRanges() {
+        store(cache, JANUARY, ROWS);
+        store(cache, MARCH, ROWS);
+
+        cache.onBatch(batch(LocalDateTime.of(2024, 1, 31, 23, 59, 59)));
+
+        assertThat(cache.get(JANUARY)).isNull();
+        assertThat(cache.get(MARCH)).isNotNull();
+    }
+
+    @Test
+    void liveHitKeepsClosedRanges() {
+        store(cache, JANUARY, ROWS);
+
+        cache.onBatch(batch(LocalDateTime.now()));
+
+        assertThat(cache.get(JANUARY)).isNotNull();
+    }
+
+    @Test
+    void invalidationWaitsForCommit() {
+        store(cache, JANUARY, ROWS);
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.onBatch(batch(LocalDateTime.of(2024, 1, 15, 12, 0)));
+
+        assertThat(cache.get(JANUARY)).isNotNull();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(cache.get(JANUARY)).isNull();
+    }
+
+    @Test
+    void resultComputedAcrossInvalidationIsNotCached() {
+        StatsResultCache.Capture capture = cache.capture(JANUARY, row -> {
+        });
+        ROWS.forEach(capture);
+
+        // Запоздавший хит закоммичен, пока результат ещё считался по старым данным
+        cache.onBatch(batch(LocalDateTime.of(2024, 1, 15, 12, 0)));
+        capture.complete();
+
+        assertThat(cache.get(JANUARY)).isNull();
+        store(cache, JANUARY, ROWS);
+        assertThat(cache.get(JANUARY)).isNotNull();
+    }
+
+    @Test
+    void resultOverMaxRowsIsStreamedButNotCached() {
+        StatsResultCache small = cache(true, 1);
+        List<ViewStats> streamed = new ArrayList<>();
+
+        StatsResultCache.Capture capture = small.capture(JANUARY, streamed::add);
+        ROWS.forEach(capture);
+        capture.complete();
+
+        assertThat(streamed).isEqualTo(ROWS);
+        assertThat(small.get(JANUARY)).isNull();
+    }
+
+    @Test
+    void disabledCacheStoresNothing() {
+        StatsResultCache disabled = cache(false, 100);
+        List<ViewStats> streamed = new ArrayList<>();
+
+        StatsResultCache.Capture capture = disabled.capture(JANUARY, streamed::add);
+        ROWS.forEach(capture);
+        capture.complete();
+
+        assertThat(streamed).isEqualTo(ROWS);
+        assertThat(disabled.get(JANUARY)).isNull();
+    }
+
+    @Test
+    void etagDependsOnRows() {
+        store(cache, JANUARY, ROWS);
+        store(cache, MARCH, ROWS);
+        StatsQueryKey february = key(LocalDateTime.of(2024, 2, 1, 0, 0), LocalDateTime.of(2024, 2, 29, 0, 0));
+        store(cache, february, List.of(new ViewStats("ewm", "/events/1", 11L), ROWS.get(1)));
+
+        assertThat(cache.get(JANUARY).getEtag()).isEqualTo(cache.get(MARCH).getEtag()).hasSize(32);
+        assertThat(cache.get(february).getEtag()).isNotEqualTo(cache.get(JANUARY).getEtag());
+    }
+
+    private StatsResultCache cache(boolean enabled, int maxRows) {
+        return new StatsResultCache(new SimpleMeterRegistry(), enabled, 1000, maxRows, TTL_SECONDS, 60, nanos::get);
+    }
+
+    private void advance(long seconds) {
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private static void store(StatsResultCache cache, StatsQueryKey key, List<ViewStats> rows) {
+        StatsResultCache.Capture capture = cache.capture(key, row -> {
+        });
+        rows.forEach(capture);
+        capture.complete();
+    }
+
+    private static StatsQueryKey key(LocalDateTime start, LocalDateTime end) {
+        return StatsQueryKey.of(start, end, UriFilter.ALL, false, false);
+    }
+
+    private static HitBatch batch(LocalDateTime timestamp) {
+        return new HitBatch(List.of(new EndpointHit("ewm", "/events/1", "10.0.0.1", timestamp)),
+                Map.of(), Map.of(), Map.of());
+    }
+}
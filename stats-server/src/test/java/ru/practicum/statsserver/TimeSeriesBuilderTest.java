@@ -0,0 +1,91 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.TimeSeriesStats;
+import ru.practicum.statsdto.UriTimeSeries;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeSeriesBuilderTest {
+
+    @Test
+    void bucketsAreAlignedToInterval() {
+        TimeSeriesBuilder builder = new TimeSeriesBuilder(RollupGranularity.HOUR,
+                LocalDateTime.of(2024, 5, 1, 10, 17, 45), LocalDateTime.of(2024, 5, 1, 12, 3, 0));
+
+        TimeSeriesStats stats = builder.build();
+
+        assertThat(stats.getInterval()).isEqualTo("hour");
+        assertThat(stats.getBuckets()).containsExactly("2024-05-01 10:00:00", "2024-05-01 11:00:00",
+                "2024-05-01 12:00:00");
+        assertThat(stats.getSeries()).isEmpty();
+    }
+
+    @Test
+    void missingBucketsAreZero() {
+        TimeSeriesBuilder builder = new TimeSeriesBuilder(RollupGranularity.DAY,
+                LocalDateTime.of(2024, 5, 1, 0, 0), LocalDateTime.of(2024, 5, 5, 23, 59, 59));
+
+        builder.add(LocalDateTime.of(2024, 5, 3, 0, 0), "ewm", "/events/1", 7);
+
+        assertThat(builder.build().getSeries()).singleElement()
+                .satisfies(series -> assertThat(series.getHits()).containsExactly(0, 0, 7, 0, 0));
+    }
+
+    @Test
+    void partialEdgeBucketsAreIncluded() {
+        // Включающий диапазон [start, end] задевает часть первого и последнего бакета
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 10, 59, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 5, 1, 11, 2, 0, 1000);
+        TimeSeriesBuilder builder = new TimeSeriesBuilder(RollupGranularity.MINUTE, start, end);
+
+        builder.add(LocalDateTime.of(2024, 5, 1, 10, 59), "ewm", "/events/1", 2);
+        builder.add(LocalDateTime.of(2024, 5, 1, 11, 2), "ewm", "/events/1", 3);
+        TimeSeriesStats stats = builder.build();
+
+        assertThat(TimeSeriesBuilder.bucketCount(RollupGranularity.MINUTE, start, end)).isEqualTo(4);
+        assertThat(stats.getBuckets()).first().isEqualTo("2024-05-01 10:59:00");
+        assertThat(stats.getBuckets()).last().isEqualTo("2024-05-01 11:02:00");
+        assertThat(stats.getSeries().get(0).getHits()).containsExactly(2, 0, 0, 3);
+    }
+
+    @Test
+    void endOnBucketBoundaryKeepsItsBucket() {
+        // Конец включается, поэтому хиты ровно в end попадают в бакет, который с него начинается
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 5, 2, 0, 0);
+
+        assertThat(TimeSeriesBuilder.bucketCount(RollupGranularity.DAY, start, end)).isEqualTo(2);
+        assertThat(TimeSeriesBuilder.bucketCount(RollupGranularity.DAY, start, end.minusNanos(1000))).isEqualTo(1);
+        assertThat(TimeSeriesBuilder.bucketCount(RollupGranularity.HOUR, start, start)).isEqualTo(1);
+    }
+
+    @Test
+    void partsOfOneBucketAreSummed() {
+        // Середина бакета приходит из роллапа, края — из сырых хитов
+        TimeSeriesBuilder builder = new TimeSeriesBuilder(RollupGranularity.HOUR,
+                LocalDateTime.of(2024, 5, 1, 10, 0), LocalDateTime.of(2024, 5, 1, 11, 59, 59));
+
+        builder.add(LocalDateTime.of(2024, 5, 1, 10, 0), "ewm", "/events/1", 100);
+        builder.add(LocalDateTime.of(2024, 5, 1, 10, 0), "ewm", "/events/1", 5);
+        builder.add(LocalDateTime.of(2024, 5, 1, 11, 0), "ewm", "/events/1", 1);
+
+        assertThat(builder.build().getSeries().get(0).getHits()).containsExactly(105, 1);
+    }
+
+    @Test
+    void seriesAreOrderedByTotalHits() {
+        TimeSeriesBuilder builder = new TimeSeriesBuilder(RollupGranularity.HOUR,
+                LocalDateTime.of(2024, 5, 1, 10, 0), LocalDateTime.of(2024, 5, 1, 11, 0));
+
+        builder.add(LocalDateTime.of(2024, 5, 1, 10, 0), "ewm", "/events/1", 3);
+        builder.add(LocalDateTime.of(2024, 5, 1, 10, 0), "ewm", "/events/2", 2);
+        builder.add(LocalDateTime.of(2024, 5, 1, 11, 0), "ewm", "/events/2", 2);
+        builder.add(LocalDateTime.of(2024, 5, 1, 11, 0), "admin", "/events/3", 3);
+
+        assertThat(builder.build().getSeries()).extracting(UriTimeSeries::getUri)
+                .containsExactly("/events/2", "/events/3", "/events/1");
+    }
+}
@@ -0,0 +1,61 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UriBloomFilterTest {
+
+    private static final int URIS = 10_000;
+
+    @Test
+    void addedUrisAreAlwaysFound() {
+        UriBloomFilter filter = filled();
+
+        for (int i = 0; i < URIS; i++) {
+            assertThat(filter.mightContain("/events/" + i)).as("/events/%d", i).isTrue();
+        }
+    }
+
+    @Test
+    void falsePositiveRateIsAboutOnePercent() {
+        UriBloomFilter filter = filled();
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("/users/" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertThat((double) falsePositives / probes).isLessThan(0.02);
+    }
+
+    @Test
+    void restoredFilterGivesSameAnswers() {
+        UriBloomFilter filter = filled();
+        UriBloomFilter restored = new UriBloomFilter(filter.getWords().clone(), filter.getHashes());
+
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(restored.mightContain("/events/" + i)).isTrue();
+            assertThat(restored.mightContain("/users/" + i)).isEqualTo(filter.mightContain("/users/" + i));
+        }
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        UriBloomFilter filter = UriBloomFilter.create(0);
+
+        assertThat(filter.getWords()).hasSize(1);
+        assertThat(filter.mightContain("/events/1")).isFalse();
+        assertThat(filter.mightContain("")).isFalse();
+    }
+
+    private static UriBloomFilter filled() {
+        UriBloomFilter filter = UriBloomFilter.create(URIS);
+        for (int i = 0; i < URIS; i++) {
+            filter.add("/events/" + i);
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,66 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UriFilterTest {
+
+    @Test
+    void patternMatchesWholeUri() {
+        UriFilter filter = UriFilter.of(null, null, "/events/*/comments");
+
+        assertThat(filter.matches("/events/1/comments")).isTrue();
+        assertThat(filter.matches("/events//comments")).isTrue();
+        assertThat(filter.matches("/events/1/comments/2")).isFalse();
+        assertThat(filter.matches("/users/1/comments")).isFalse();
+    }
+
+    @Test
+    void patternPartsDoNotOverlap() {
+        assertThat(UriFilter.of(null, null, "ab*ba").matches("aba")).isFalse();
+        assertThat(UriFilter.of(null, null, "ab*ba").matches("abba")).isTrue();
+        assertThat(UriFilter.of(null, null, "a*b*a").matches("aba")).isTrue();
+        assertThat(UriFilter.of(null, null, "a*bb*a").matches("abba")).isTrue();
+        assertThat(UriFilter.of(null, null, "a*bb*a").matches("abab")).isFalse();
+    }
+
+    @Test
+    void patternWithoutStarIsExactAndStarAloneMatchesEverything() {
+        assertThat(UriFilter.of(null, null, "/events").matches("/events")).isTrue();
+        assertThat(UriFilter.of(null, null, "/events").matches("/events/1")).isFalse();
+        assertThat(UriFilter.of(null, null, "*").matches("")).isTrue();
+        assertThat(UriFilter.of(null, null, "**").matches("/any")).isTrue();
+    }
+
+    @Test
+    void conditionsAreCombined() {
+        UriFilter filter = UriFilter.of(List.of("/events/1", "/events/2/comments"), "/events/", "*/comments");
+
+        assertThat(filter.matches("/events/2/comments")).isTrue();
+        assertThat(filter.matches("/events/1")).isFalse();
+        assertThat(filter.matches("/events/3/comments")).isFalse();
+    }
+
+    @Test
+    void emptyValuesMeanNoCondition() {
+        UriFilter filter = UriFilter.of(List.of(), "", "");
+
+        assertThat(filter.isEmpty()).isTrue();
+        assertThat(filter.matches("/anything")).isTrue();
+    }
+
+    @Test
+    void literalPrefixIsLongerOfPrefixAndPatternStart() {
+        assertThat(UriFilter.of(null, "/events/", "/events/1*").literalPrefix()).isEqualTo("/events/1");
+        assertThat(UriFilter.of(null, "/events/", "*/comments").literalPrefix()).isEqualTo("/events/");
+    }
+
+    @Test
+    void likePatternsEscapeSpecialCharacters() {
+        assertThat(UriFilter.of(null, "/a_b", "/x%*\\y").likePatterns())
+                .containsExactly("/a\\_b%", "/x\\%%\\\\y");
+    }
+}
@@ -0,0 +1,117 @@
+package ru.practicum.statsserver;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UriTrieTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    // Справочник dim_uri: id -> uri
+    private final Map<Integer, String> dimUri = new TreeMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            int since = invocation.getArgument(2);
+            for (Map.Entry<Integer, String> row : dimUri.entrySet()) {
+                if (row.getKey() > since) {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.getInt("id")).thenReturn(row.getKey());
+                    when(rs.getString("uri")).thenReturn(row.getValue());
+                    handler.processRow(rs);
+                }
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object.class));
+        when(jdbcTemplate.queryForObject(eq("SELECT count(*) FROM dim_uri"), eq(Long.class)))
+                .thenAnswer(invocation -> (long) dimUri.size());
+        dimUri.put(1, "/events/1");
+        dimUri.put(2, "/events/10");
+        dimUri.put(3, "/events/2/comments");
+        dimUri.put(4, "/events/20/comments");
+        dimUri.put(5, "/users/1");
+    }
+
+    @Test
+    void prefixResolvesToAllUrisBelowIt() {
+        UriTrie trie = loaded(50_000, 60_000);
+
+        UriFilter filter = trie.resolve(UriFilter.of(null, "/events/1"));
+
+        assertThat(filter.getResolvedUris()).containsExactly("/events/1", "/events/10");
+        assertThat(filter.getResolvedIds()).containsExactly(1, 2);
+    }
+
+    @Test
+    void patternIsCheckedAgainstEveryUriUnderItsLiteralPrefix() {
+        UriTrie trie = loaded(50_000, 60_000);
+
+        UriFilter filter = trie.resolve(UriFilter.of(null, null, "/events/*/comments"));
+
+        assertThat(filter.getResolvedUris()).containsExactly("/events/2/comments", "/events/20/comments");
+        assertThat(filter.getResolvedIds()).containsExactly(3, 4);
+    }
+
+    @Test
+    void prefixInsideEdgeAndUnknownPrefix() {
+        UriTrie trie = loaded(50_000, 60_000);
+
+        assertThat(trie.resolve(UriFilter.of(null, "/eve")).getResolvedIds()).containsExactly(1, 2, 3, 4);
+        assertThat(trie.resolve(UriFilter.of(null, "/events/3")).getResolvedUris()).isEmpty();
+        assertThat(trie.resolve(UriFilter.of(null, "/usersX")).getResolvedUris()).isEmpty();
+        assertThat(trie.size()).isEqualTo(5);
+    }
+
+    @Test
+    void tooManyMatchesLeaveFilterUnresolved() {
+        UriTrie trie = loaded(3, 60_000);
+
+        assertThat(trie.resolve(UriFilter.of(null, "/events/")).isResolved()).isFalse();
+        assertThat(trie.resolve(UriFilter.of(null, "/users/")).isResolved()).isTrue();
+    }
+
+    @Test
+    void uriCommittedBelowOverlapIsFoundBySizeCheck() {
+        UriTrie trie = loaded(50_000, 0);
+        dimUri.put(5_000, "/events/5000");
+        trie.refresh();
+        // Идентификатор выдан раньше, а зафиксирован позже: он ниже перекрытия дочитывания
+        dimUri.put(6, "/events/late");
+        trie.refresh();
+
+        assertThat(trie.size()).isEqualTo(7);
+        assertThat(trie.resolve(UriFilter.of(null, "/events/late")).getResolvedIds()).containsExactly(6);
+    }
+
+    @Test
+    void withoutSizeCheckLateUriIsMissed() {
+        UriTrie trie = loaded(50_000, 3_600_000);
+        dimUri.put(5_000, "/events/5000");
+        trie.refresh();
+        dimUri.put(6, "/events/late");
+        trie.refresh();
+
+        assertThat(trie.size()).isEqualTo(6);
+    }
+
+    private UriTrie loaded(int maxResolved, long verifyIntervalMs) {
+        UriTrie trie = new UriTrie(jdbcTemplate, true, maxResolved, verifyIntervalMs);
+        trie.load();
+        return trie;
+    }
+}